@@ -0,0 +1,344 @@
+package com.example.actividad_llamar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Instantánea inmutable de la configuración: contactos de confianza, plazos,
+ * textos, reglas por contacto y política de energía. Se construye una vez al
+ * cargar el fichero (con el índice de números y las reglas ya compilados) y
+ * se publica por referencia, así que
+ * cualquier hilo la lee sin bloqueos. Para cambiarla se crea otra con
+ * {@link #toBuilder()}.
+ */
+public final class AlertConfig {
+
+    public static final int FLAG_ALERT_SMS = 1;
+    public static final int FLAG_REDIAL = 1 << 1;
+    // Viene del grupo de contactos, no del fichero; no se guarda
+    public static final int FLAG_FROM_GROUP = 1 << 2;
+    public static final int DEFAULT_CONTACT_FLAGS = FLAG_ALERT_SMS | FLAG_REDIAL;
+    // Contactos propios, los que se guardan; los del grupo no cuentan
+    public static final int MAX_CONTACTS = 2000;
+
+    public static final String DEFAULT_ALERT_PREFIX = AlertMessageEncoder.DEFAULT_PREFIX;
+    public static final String DEFAULT_RESEND_PREFIX = "Nueva ubicación.";
+    public static final long DEFAULT_RESEND_DELAY_MS = 10000;
+    public static final long DEFAULT_TRAIL_WINDOW_MS = 10 * 60 * 1000;
+
+    public static final AlertConfig EMPTY = new Builder().build();
+
+    public static final class Contact {
+        private final String number;
+        private final String name;
+        private final int flags;
+
+        public Contact(String number, String name, int flags) {
+            this.number = number;
+            this.name = name == null ? "" : name;
+            this.flags = flags;
+        }
+
+        public String getNumber() {
+            return number;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public boolean has(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private final List<Contact> contacts;
+    private final TrustedNumberIndex trustedNumbers;
+    private final long alertDelayMs;
+    private final String alertPrefix;
+    private final String resendPrefix;
+    private final long resendDelayMs;
+    private final float minDisplacementM;
+    private final long trailWindowMs;
+    private final long backgroundIntervalMs;
+    private final long backgroundSessionMs;
+    private final float maxAccuracyM;
+    private final String trustedGroup;
+    private final String policyRules;
+    private final AlertPolicy policy;
+
+    private AlertConfig(Builder b) {
+        this.contacts = Collections.unmodifiableList(new ArrayList<>(b.contacts));
+        this.alertDelayMs = b.alertDelayMs;
+        this.alertPrefix = b.alertPrefix;
+        this.resendPrefix = b.resendPrefix;
+        this.resendDelayMs = b.resendDelayMs;
+        this.minDisplacementM = b.minDisplacementM;
+        this.trailWindowMs = b.trailWindowMs;
+        this.backgroundIntervalMs = b.backgroundIntervalMs;
+        this.backgroundSessionMs = b.backgroundSessionMs;
+        this.maxAccuracyM = b.maxAccuracyM;
+        this.trustedGroup = b.trustedGroup;
+        // El perfil de cada número es su posición en la lista de contactos
+        TrustedNumberIndex index = new TrustedNumberIndex();
+        for (int i = 0; i < contacts.size(); i++) {
+            index.add(contacts.get(i).getNumber(), i);
+        }
+        this.trustedNumbers = index;
+        this.policyRules = b.policyRules;
+        // Al final: las reglas se resuelven contra los contactos y valores de arriba
+        this.policy = AlertPolicy.compile(policyRules, this);
+    }
+
+    public List<Contact> getContacts() {
+        return contacts;
+    }
+
+    /** Índice de números de confianza; no se debe modificar. */
+    public TrustedNumberIndex getTrustedNumbers() {
+        return trustedNumbers;
+    }
+
+    /** Contacto correspondiente a un perfil de {@link #getTrustedNumbers()}, o null. */
+    public Contact contactForProfile(int profile) {
+        return profile >= 0 && profile < contacts.size() ? contacts.get(profile) : null;
+    }
+
+    /** Primer contacto, el que se edita desde la pantalla principal; o null. */
+    public String getPrimaryNumber() {
+        return contacts.isEmpty() ? null : contacts.get(0).getNumber();
+    }
+
+    /**
+     * Destinatarios de una alerta: primero quien llama y después los
+     * contactos marcados con {@link #FLAG_ALERT_SMS}, sin repetir números y
+     * como mucho {@code max}. Los del grupo de confianza nunca la reciben
+     * salvo que sean quien llama.
+     */
+    public void alertRecipients(String caller, List<String> out, int max) {
+        long[] seen = new long[max];
+        int n = 0;
+        if (caller != null && !caller.isEmpty() && max > 0) {
+            out.add(caller);
+            seen[n++] = keyOf(caller);
+        }
+        for (int i = 0; i < contacts.size() && n < max; i++) {
+            Contact c = contacts.get(i);
+            if (!c.has(FLAG_ALERT_SMS) || c.has(FLAG_FROM_GROUP)) {
+                continue;
+            }
+            long key = keyOf(c.getNumber());
+            boolean repeated = false;
+            for (int j = 0; j < n && !repeated; j++) {
+                repeated = key != TrustedNumberIndex.INVALID && seen[j] == key;
+            }
+            if (!repeated) {
+                out.add(c.getNumber());
+                seen[n++] = key;
+            }
+        }
+    }
+
+    private static long keyOf(String number) {
+        return TrustedNumberIndex.normalize(number, TrustedNumberIndex.DEFAULT_COUNTRY_CODE, false);
+    }
+
+    /** Hay algún contacto de confianza o un grupo del que tomarlos. */
+    public boolean isConfigured() {
+        return !contacts.isEmpty() || !trustedGroup.isEmpty();
+    }
+
+    public long getAlertDelayMs() {
+        return alertDelayMs;
+    }
+
+    public String getAlertPrefix() {
+        return alertPrefix;
+    }
+
+    public String getResendPrefix() {
+        return resendPrefix;
+    }
+
+    public long getResendDelayMs() {
+        return resendDelayMs;
+    }
+
+    public float getMinDisplacementM() {
+        return minDisplacementM;
+    }
+
+    public long getTrailWindowMs() {
+        return trailWindowMs;
+    }
+
+    public long getBackgroundIntervalMs() {
+        return backgroundIntervalMs;
+    }
+
+    public long getBackgroundSessionMs() {
+        return backgroundSessionMs;
+    }
+
+    public float getMaxAccuracyM() {
+        return maxAccuracyM;
+    }
+
+    /** Título del grupo de contactos cuyos miembros también son de confianza; vacío si no hay. */
+    public String getTrustedGroup() {
+        return trustedGroup;
+    }
+
+    /** Texto de las reglas por contacto y franja horaria; vacío si no hay. */
+    public String getPolicyRules() {
+        return policyRules;
+    }
+
+    /** Reglas compiladas; es lo que se consulta al sonar el teléfono. */
+    public AlertPolicy getPolicy() {
+        return policy;
+    }
+
+    public Builder toBuilder() {
+        Builder b = new Builder();
+        b.contacts.addAll(contacts);
+        for (Contact c : contacts) {
+            if (!c.has(FLAG_FROM_GROUP)) {
+                b.ownContacts++;
+            }
+        }
+        b.alertDelayMs = alertDelayMs;
+        b.alertPrefix = alertPrefix;
+        b.resendPrefix = resendPrefix;
+        b.resendDelayMs = resendDelayMs;
+        b.minDisplacementM = minDisplacementM;
+        b.trailWindowMs = trailWindowMs;
+        b.backgroundIntervalMs = backgroundIntervalMs;
+        b.backgroundSessionMs = backgroundSessionMs;
+        b.maxAccuracyM = maxAccuracyM;
+        b.trustedGroup = trustedGroup;
+        b.policyRules = policyRules;
+        return b;
+    }
+
+    public static final class Builder {
+        private final List<Contact> contacts = new ArrayList<>();
+        private int ownContacts;
+        private long alertDelayMs = CallStateEngine.DEFAULT_ALERT_DELAY_MS;
+        private String alertPrefix = DEFAULT_ALERT_PREFIX;
+        private String resendPrefix = DEFAULT_RESEND_PREFIX;
+        private long resendDelayMs = DEFAULT_RESEND_DELAY_MS;
+        private float minDisplacementM = (float) MovementFilter.DEFAULT_MIN_DISPLACEMENT_M;
+        private long trailWindowMs = DEFAULT_TRAIL_WINDOW_MS;
+        private long backgroundIntervalMs = LocationScheduler.DEFAULT_BACKGROUND_INTERVAL_MS;
+        private long backgroundSessionMs = LocationScheduler.DEFAULT_BACKGROUND_SESSION_MS;
+        private float maxAccuracyM = LocationScheduler.DEFAULT_MAX_ACCURACY_M;
+        private String trustedGroup = "";
+        private String policyRules = "";
+
+        /** Lanza IllegalArgumentException si ya hay {@link #MAX_CONTACTS} contactos propios. */
+        public Builder addContact(String number, String name, int flags) {
+            if ((flags & FLAG_FROM_GROUP) == 0) {
+                checkRoom();
+                ownContacts++;
+            }
+            contacts.add(new Contact(number.trim(), name, flags));
+            return this;
+        }
+
+        public Builder addContact(String number, String name) {
+            return addContact(number, name, DEFAULT_CONTACT_FLAGS);
+        }
+
+        /** Sustituye el primer contacto (o lo añade), conservando el resto. */
+        public Builder setPrimaryNumber(String number) {
+            String value = number == null ? "" : number.trim();
+            if (value.isEmpty()) {
+                if (!contacts.isEmpty() && !contacts.remove(0).has(FLAG_FROM_GROUP)) {
+                    ownContacts--;
+                }
+            } else if (contacts.isEmpty()) {
+                addContact(value, "", DEFAULT_CONTACT_FLAGS);
+            } else {
+                Contact old = contacts.get(0);
+                contacts.set(0, new Contact(value, old.getName(), old.getFlags()));
+            }
+            return this;
+        }
+
+        public Builder clearContacts() {
+            contacts.clear();
+            ownContacts = 0;
+            return this;
+        }
+
+        public Builder setAlertDelayMs(long alertDelayMs) {
+            this.alertDelayMs = alertDelayMs;
+            return this;
+        }
+
+        public Builder setAlertPrefix(String alertPrefix) {
+            this.alertPrefix = alertPrefix;
+            return this;
+        }
+
+        public Builder setResendPrefix(String resendPrefix) {
+            this.resendPrefix = resendPrefix;
+            return this;
+        }
+
+        public Builder setResendDelayMs(long resendDelayMs) {
+            this.resendDelayMs = resendDelayMs;
+            return this;
+        }
+
+        public Builder setMinDisplacementM(float minDisplacementM) {
+            this.minDisplacementM = minDisplacementM;
+            return this;
+        }
+
+        public Builder setTrailWindowMs(long trailWindowMs) {
+            this.trailWindowMs = trailWindowMs;
+            return this;
+        }
+
+        public Builder setBackgroundCadence(long intervalMs, long sessionMs) {
+            this.backgroundIntervalMs = intervalMs;
+            this.backgroundSessionMs = sessionMs;
+            return this;
+        }
+
+        public Builder setMaxAccuracyM(float maxAccuracyM) {
+            this.maxAccuracyM = maxAccuracyM;
+            return this;
+        }
+
+        public Builder setTrustedGroup(String trustedGroup) {
+            this.trustedGroup = trustedGroup == null ? "" : trustedGroup.trim();
+            return this;
+        }
+
+        /** Lanza IllegalArgumentException, con la línea, si alguna regla no se entiende. */
+        public Builder setPolicyRules(String policyRules) {
+            String value = policyRules == null ? "" : policyRules.trim();
+            AlertPolicy.validate(value);
+            this.policyRules = value;
+            return this;
+        }
+
+        public AlertConfig build() {
+            return new AlertConfig(this);
+        }
+
+        private void checkRoom() {
+            if (ownContacts >= MAX_CONTACTS) {
+                throw new IllegalArgumentException("Demasiados contactos: como mucho " + MAX_CONTACTS);
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.actividad_llamar;
+
+import java.util.List;
+
+/**
+ * Reparte una alerta ya codificada entre varios destinatarios (quien llama y
+ * los contactos que deben enterarse). Todos los SMS se meten en la bandeja a
+ * la vez, así que viajan en paralelo; solo se aplaza el destinatario al que
+ * el freno no deja escribir todavía, sin retrasar a los demás. Lleva el
+ * estado de cada uno hasta que la radio confirma el envío.
+ *
+ * No bloquea nunca: los aplazamientos van por un único temporizador del
+ * anfitrión. No es seguro entre hilos: se usa desde el hilo de trabajo.
+ */
+public final class AlertFanout {
+
+    public interface Host {
+        /**
+         * Mete el SMS en la bandeja. Devuelve su id, o -1 si se frenó o no se
+         * pudo guardar. El índice 0 es siempre quien llamó.
+         */
+        long send(int index, String recipient, String text);
+
+        /** Milisegundos hasta que se le pueda volver a escribir, 0 si ya. */
+        long msUntilAllowed(String recipient);
+
+        /** Programa una única llamada a {@link #onTimer()}, sustituyendo la anterior. */
+        void scheduleTimer(long delayMs);
+
+        void cancelTimer();
+
+        /**
+         * Terminó el reparto. {@code msToLastSent} es el tiempo hasta el
+         * último destinatario enviado, o -1 si no se envió a ninguno.
+         */
+        void onFanoutDone(int sent, int failed, long msToLastSent);
+    }
+
+    public enum Status {
+        WAITING,
+        QUEUED,
+        SENT,
+        DELIVERED,
+        // Frenado o sin poder guardarlo, o sin confirmar antes del plazo
+        FAILED,
+        // El freno pedía esperar más de lo razonable
+        SKIPPED
+    }
+
+    public static final int MAX_RECIPIENTS = 8;
+    public static final long DEFAULT_MAX_WAIT_MS = 2 * 60 * 1000;
+    // Si la radio no confirma en este plazo se da el reparto por terminado;
+    // la bandeja sigue reintentando por su cuenta
+    public static final long DEFAULT_DEADLINE_MS = 5 * 60 * 1000;
+
+    private final Clock clock;
+    private final Host host;
+    private long maxWaitMs = DEFAULT_MAX_WAIT_MS;
+    private long deadlineMs = DEFAULT_DEADLINE_MS;
+
+    private final String[] recipients = new String[MAX_RECIPIENTS];
+    private final Status[] status = new Status[MAX_RECIPIENTS];
+    private final long[] smsIds = new long[MAX_RECIPIENTS];
+    private final long[] dueAt = new long[MAX_RECIPIENTS];
+    private final long[] sentAt = new long[MAX_RECIPIENTS];
+    private int count;
+    private String text;
+    private boolean active;
+    private long startedAt;
+    private long lastSentAt;
+
+    private int fanouts;
+    private long lastMsToLastSent = -1;
+
+    public AlertFanout(Clock clock, Host host) {
+        this.clock = clock;
+        this.host = host;
+    }
+
+    public void setLimits(long maxWaitMs, long deadlineMs) {
+        this.maxWaitMs = maxWaitMs;
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Empieza a repartir {@code text}. Si había otro reparto en curso se da
+     * por terminado: sus SMS ya en la bandeja siguen su camino.
+     */
+    public void start(String text, List<String> to) {
+        if (active) {
+            finish();
+        }
+        long now = clock.elapsedRealtime();
+        this.text = text;
+        count = Math.min(to.size(), MAX_RECIPIENTS);
+        for (int i = 0; i < count; i++) {
+            recipients[i] = to.get(i);
+            status[i] = Status.WAITING;
+            smsIds[i] = -1;
+            dueAt[i] = now;
+            sentAt[i] = -1;
+        }
+        active = true;
+        startedAt = now;
+        lastSentAt = -1;
+        fanouts++;
+        dispatch();
+    }
+
+    /** Vencimiento de un aplazamiento o del plazo del reparto. */
+    public void onTimer() {
+        if (active) {
+            dispatch();
+        }
+    }
+
+    /** Resultado del envío que devuelve la radio para un SMS de la bandeja. */
+    public void onSent(long smsId, boolean success) {
+        int i = indexOf(smsId);
+        // Si falla, la bandeja lo reintenta con el mismo id
+        if (i < 0 || !success || status[i] != Status.QUEUED) {
+            return;
+        }
+        status[i] = Status.SENT;
+        sentAt[i] = clock.elapsedRealtime();
+        lastSentAt = sentAt[i];
+        finishIfDone();
+    }
+
+    public void onDelivered(long smsId) {
+        int i = indexOf(smsId);
+        if (i < 0) {
+            return;
+        }
+        if (status[i] == Status.QUEUED) {
+            onSent(smsId, true);
+        }
+        status[i] = Status.DELIVERED;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public int getRecipientCount() {
+        return count;
+    }
+
+    public String getRecipient(int i) {
+        return recipients[i];
+    }
+
+    public Status getStatus(int i) {
+        return status[i];
+    }
+
+    /** Milisegundos desde el inicio hasta que se envió, o -1. */
+    public long getSentAfterMs(int i) {
+        return sentAt[i] < 0 ? -1 : sentAt[i] - startedAt;
+    }
+
+    public int getFanoutCount() {
+        return fanouts;
+    }
+
+    /** Tiempo hasta el último destinatario del último reparto terminado, o -1. */
+    public long getLastMsToLastSent() {
+        return lastMsToLastSent;
+    }
+
+    /** Una línea por destinatario del último reparto. */
+    public void appendStatus(StringBuilder out) {
+        for (int i = 0; i < count; i++) {
+            out.append("reparto ").append(recipients[i])
+                    .append(' ').append(status[i])
+                    .append(" enviado_ms=").append(getSentAfterMs(i)).append('\n');
+        }
+    }
+
+    private void dispatch() {
+        long now = clock.elapsedRealtime();
+        long next = startedAt + deadlineMs;
+        for (int i = 0; i < count; i++) {
+            if (status[i] != Status.WAITING || dueAt[i] > now) {
+                if (status[i] == Status.WAITING) {
+                    next = Math.min(next, dueAt[i]);
+                }
+                continue;
+            }
+            long wait = host.msUntilAllowed(recipients[i]);
+            if (wait > 0) {
+                if (now + wait - startedAt > maxWaitMs) {
+                    status[i] = Status.SKIPPED;
+                } else {
+                    dueAt[i] = now + wait;
+                    next = Math.min(next, dueAt[i]);
+                }
+                continue;
+            }
+            long id = host.send(i, recipients[i], text);
+            if (id < 0) {
+                status[i] = Status.FAILED;
+            } else {
+                smsIds[i] = id;
+                status[i] = Status.QUEUED;
+            }
+        }
+        if (now >= startedAt + deadlineMs) {
+            for (int i = 0; i < count; i++) {
+                if (status[i] == Status.WAITING || status[i] == Status.QUEUED) {
+                    status[i] = Status.FAILED;
+                }
+            }
+        }
+        if (!finishIfDone()) {
+            host.scheduleTimer(Math.max(0, next - now));
+        }
+    }
+
+    private boolean finishIfDone() {
+        if (!active) {
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            if (status[i] == Status.WAITING || status[i] == Status.QUEUED) {
+                return false;
+            }
+        }
+        finish();
+        return true;
+    }
+
+    private void finish() {
+        active = false;
+        host.cancelTimer();
+        int sent = 0;
+        int failed = 0;
+        for (int i = 0; i < count; i++) {
+            if (status[i] == Status.SENT || status[i] == Status.DELIVERED) {
+                sent++;
+            } else if (status[i] != Status.WAITING && status[i] != Status.QUEUED) {
+                failed++;
+            }
+        }
+        lastMsToLastSent = lastSentAt < 0 ? -1 : lastSentAt - startedAt;
+        host.onFanoutDone(sent, failed, lastMsToLastSent);
+    }
+
+    private int indexOf(long smsId) {
+        for (int i = 0; i < count; i++) {
+            if (smsIds[i] == smsId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.actividad_llamar;
+
+/**
+ * Compone el texto de la alerta de forma que quepa en un solo SMS siempre que
+ * sea posible. Las coordenadas van en punto fijo con los decimales indicados,
+ * el enlace es corto (o {@code geo:}) y el texto se pasa a GSM-7 para no caer
+ * en UCS-2, que solo admite 70 caracteres por segmento.
+ *
+ * Reutiliza su StringBuilder, así que cada hilo debe tener su propia instancia.
+ */
+public final class AlertMessageEncoder {
+
+    public enum LinkStyle {
+        NONE,
+        GEO,
+        MAPS
+    }
+
+    public static final int GSM7_SINGLE_SEGMENT = 160;
+    public static final int GSM7_MULTI_SEGMENT = 153;
+    public static final int UCS2_SINGLE_SEGMENT = 70;
+    public static final int UCS2_MULTI_SEGMENT = 67;
+
+    public static final int DEFAULT_DECIMALS = 5;
+    public static final String DEFAULT_PREFIX = "Llamada detectada.";
+
+    private static final String MAPS_URL = "https://maps.google.com/?q=";
+
+    // Tabla básica GSM 03.38 fuera de ASCII y tabla de extensión (2 septetos)
+    private static final String GSM7_BASIC_NON_ASCII = "£¥èéùìòÇØøÅåΔΦΓΛΩΠΨΣΘΞÆæßÉ¤¡ÄÖÑÜ§¿äöñüà";
+    private static final String GSM7_EXTENSION = "^{}\\[~]|€\f";
+    private static final String TRANSLITERATE_FROM = "áíóúÁÍÓÚâêîôûÂÊÎÔÛãõÃÕ";
+    private static final String TRANSLITERATE_TO = "aiouAIOUaeiouAEIOUaoAO";
+
+    private final StringBuilder sb = new StringBuilder(GSM7_SINGLE_SEGMENT);
+    private String prefix = DEFAULT_PREFIX;
+    private int decimals = DEFAULT_DECIMALS;
+    private LinkStyle linkStyle = LinkStyle.MAPS;
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public void setDecimals(int decimals) {
+        this.decimals = decimals;
+    }
+
+    public void setLinkStyle(LinkStyle linkStyle) {
+        this.linkStyle = linkStyle;
+    }
+
+    /**
+     * Texto de la alerta. Si con la configuración elegida no cabe en un
+     * segmento se va recortando: enlace geo:, menos decimales, sin enlace.
+     */
+    public String encodeAlert(double latitude, double longitude, float accuracyM, long staleAgeMs) {
+        return encodeAlert(latitude, longitude, accuracyM, staleAgeMs, null, 0, 0);
+    }
+
+    /**
+     * Igual que {@link #encodeAlert(double, double, float, long)} y, en el
+     * espacio que quede del segmento, el rastro reciente tal como lo deja
+     * {@link BreadcrumbTrail#summarize}: " Ruta 10min:3,-2;5,0" son pasos
+     * hacia atrás en unidades de 1e-4 grados. Los pasos que no caben se omiten.
+     */
+    public String encodeAlert(double latitude, double longitude, float accuracyM, long staleAgeMs,
+                              int[] trail, int trailPairs, int trailMinutes) {
+        return encodeAlert(latitude, longitude, accuracyM, staleAgeMs, null, trail, trailPairs, trailMinutes);
+    }
+
+    /**
+     * Como la anterior, con el nombre del lugar más cercano (" Cerca de
+     * Calle Mayor.") antes del rastro. Tiene prioridad sobre el rastro, pero
+     * nunca desplaza las coordenadas ni el enlace: si no cabe se omite.
+     */
+    public String encodeAlert(double latitude, double longitude, float accuracyM, long staleAgeMs,
+                              String place, int[] trail, int trailPairs, int trailMinutes) {
+        compose(latitude, longitude, accuracyM, staleAgeMs, decimals, linkStyle);
+        if (segmentCount(sb) > 1 && linkStyle == LinkStyle.MAPS) {
+            compose(latitude, longitude, accuracyM, staleAgeMs, decimals, LinkStyle.GEO);
+        }
+        if (segmentCount(sb) > 1) {
+            compose(latitude, longitude, accuracyM, staleAgeMs, Math.min(decimals, 4), LinkStyle.NONE);
+        }
+        if (place != null && !place.isEmpty()) {
+            appendPlace(place);
+        }
+        if (trail != null && trailPairs > 0) {
+            appendTrail(trail, trailPairs, trailMinutes);
+        }
+        return sb.toString();
+    }
+
+    /** Alerta sin ninguna posición que dar: solo el aviso de la llamada. */
+    public String encodeNoLocation() {
+        sb.setLength(0);
+        if (prefix != null && !prefix.isEmpty()) {
+            appendGsm7(sb, prefix);
+            sb.append(' ');
+        }
+        sb.append("Sin ubicacion disponible.");
+        return sb.toString();
+    }
+
+    private void appendPlace(String place) {
+        int mark = sb.length();
+        sb.append(" Cerca de ");
+        appendGsm7(sb, place);
+        sb.append('.');
+        int septets = gsm7Length(sb);
+        if (septets < 0 || septets > GSM7_SINGLE_SEGMENT) {
+            sb.setLength(mark);
+        }
+    }
+
+    // Todo lo que se añade es ASCII de un septeto, así que basta con la longitud
+    private void appendTrail(int[] trail, int trailPairs, int trailMinutes) {
+        int septets = gsm7Length(sb);
+        if (septets < 0) {
+            return;
+        }
+        int mark = sb.length();
+        sb.append(" Ruta ").append(trailMinutes).append("min:");
+        int added = 0;
+        for (int i = 0; i < trailPairs; i++) {
+            int before = sb.length();
+            if (added > 0) {
+                sb.append(';');
+            }
+            sb.append(trail[2 * i]).append(',').append(trail[2 * i + 1]);
+            if (septets + sb.length() - mark > GSM7_SINGLE_SEGMENT) {
+                sb.setLength(before);
+                break;
+            }
+            added++;
+        }
+        if (added == 0) {
+            sb.setLength(mark);
+        }
+    }
+
+    private void compose(double latitude, double longitude, float accuracyM, long staleAgeMs,
+                         int decimals, LinkStyle link) {
+        sb.setLength(0);
+        if (prefix != null && !prefix.isEmpty()) {
+            appendGsm7(sb, prefix);
+            sb.append(' ');
+        }
+        sb.append("Estoy en ");
+        appendFixed(sb, latitude, decimals);
+        sb.append(',');
+        appendFixed(sb, longitude, decimals);
+        if (accuracyM > 0) {
+            sb.append(" (+-").append(Math.round(accuracyM)).append("m)");
+        }
+        if (staleAgeMs > 0) {
+            sb.append(" hace ").append(staleAgeMs / 60000).append(" min");
+        }
+        if (link == LinkStyle.MAPS) {
+            sb.append(' ').append(MAPS_URL);
+            appendFixed(sb, latitude, decimals);
+            sb.append(',');
+            appendFixed(sb, longitude, decimals);
+        } else if (link == LinkStyle.GEO) {
+            sb.append(" geo:");
+            appendFixed(sb, latitude, decimals);
+            sb.append(',');
+            appendFixed(sb, longitude, decimals);
+        }
+    }
+
+    /** Escribe {@code value} con {@code decimals} decimales, sin notación científica. */
+    public static void appendFixed(StringBuilder out, double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append('0');
+            return;
+        }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            out.append('-');
+        }
+        out.append(scaled / scale);
+        if (decimals > 0) {
+            out.append('.');
+            long fraction = scaled % scale;
+            for (long div = scale / 10; div > 0; div /= 10) {
+                out.append((char) ('0' + (fraction / div) % 10));
+            }
+        }
+    }
+
+    /** Longitud en septetos GSM-7, o -1 si el texto necesita UCS-2. */
+    public static int gsm7Length(CharSequence text) {
+        int septets = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int w = gsm7Width(text.charAt(i));
+            if (w < 0) {
+                return -1;
+            }
+            septets += w;
+        }
+        return septets;
+    }
+
+    public static boolean isGsm7(CharSequence text) {
+        return gsm7Length(text) >= 0;
+    }
+
+    /** Número de segmentos SMS que ocupará el texto. */
+    public static int segmentCount(CharSequence text) {
+        int septets = gsm7Length(text);
+        if (septets >= 0) {
+            return septets <= GSM7_SINGLE_SEGMENT ? 1 : (septets + GSM7_MULTI_SEGMENT - 1) / GSM7_MULTI_SEGMENT;
+        }
+        int units = text.length();
+        return units <= UCS2_SINGLE_SEGMENT ? 1 : (units + UCS2_MULTI_SEGMENT - 1) / UCS2_MULTI_SEGMENT;
+    }
+
+    /** Quita las tildes que GSM-7 no tiene (á, í, ó, ú...) para no pasar a UCS-2. */
+    public static String toGsm7(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length());
+        appendGsm7(out, text);
+        return out.toString();
+    }
+
+    private static void appendGsm7(StringBuilder out, CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int t = TRANSLITERATE_FROM.indexOf(c);
+            out.append(t >= 0 ? TRANSLITERATE_TO.charAt(t) : c);
+        }
+    }
+
+    private static int gsm7Width(char c) {
+        if (c >= ' ' && c < 0x7F) {
+            if (c == '`') {
+                return -1;
+            }
+            return GSM7_EXTENSION.indexOf(c) >= 0 ? 2 : 1;
+        }
+        if (c == '\n' || c == '\r') {
+            return 1;
+        }
+        if (GSM7_BASIC_NON_ASCII.indexOf(c) >= 0) {
+            return 1;
+        }
+        return GSM7_EXTENSION.indexOf(c) >= 0 ? 2 : -1;
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.actividad_llamar;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Instrumentación del camino de la alerta: histogramas de latencia desde que
+ * suena la llamada hasta cada etapa (alerta, fix, SMS emitido, enviado,
+ * entregado) y contadores. Registrar no crea objetos y se puede hacer desde
+ * cualquier hilo; el volcado va a texto (logcat, dumpsys) o a un fichero
+ * binario compacto para comparar versiones y dispositivos.
+ */
+public final class AlertMetrics {
+
+    public enum Stage {
+        CALLBACK_QUEUE("callback_cola"),
+        CALL_HANDLING("proceso_llamada"),
+        RING_TO_ALERT("timbre_alerta"),
+        RING_TO_FIX("timbre_fix"),
+        RING_TO_SMS_ISSUED("timbre_sms_emitido"),
+        RING_TO_SMS_SENT("timbre_sms_enviado"),
+        RING_TO_SMS_DELIVERED("timbre_sms_entregado"),
+        SMS_ISSUED_TO_SENT("sms_emitido_enviado"),
+        // Desde que se reparte la alerta hasta que sale el SMS del último destinatario
+        FANOUT_TO_LAST_SENT("reparto_ultimo_enviado"),
+        BOOT_TO_ARMED("arranque_armado"),
+        BOOT_RECEIVER_TO_ARMED("aviso_arranque_armado");
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    public enum Counter {
+        RINGS("timbres"),
+        TRUSTED_MATCHES("coincidencias"),
+        ALERTS("alertas"),
+        ALERTS_WITHOUT_LOCATION("alertas_sin_ubicacion"),
+        SMS_ISSUED("sms_emitidos"),
+        SMS_SENT("sms_enviados"),
+        SMS_FAILED("sms_fallidos"),
+        SMS_DELIVERED("sms_entregados"),
+        SMS_RETRIES("sms_reintentos"),
+        SMS_ABANDONED("sms_abandonados"),
+        SMS_SUPPRESSED("sms_frenados"),
+        CALLS_SUPPRESSED("llamadas_frenadas"),
+        RESENDS("reenvios"),
+        REDIALS("rellamadas"),
+        GPS_ON_MS("gps_encendido_ms"),
+        // Del timbre al primer fix utilizable, según la caché de ubicación
+        TIME_TO_FIX_MEAN_MS("fix_tras_timbre_medio_ms"),
+        TIME_TO_FIX_MAX_MS("fix_tras_timbre_max_ms"),
+        RINGS_WITHOUT_FIX("timbres_sin_fix"),
+        WAKELOCK_MS("wakelock_ms");
+
+        final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final int MAGIC = 0x414C4D31; // "ALM1"
+    private static final int VERSION = 1;
+    private static final long NONE = Long.MIN_VALUE;
+    // Últimos SMS emitidos, para relacionar el id de la alerta con su hora de emisión
+    private static final int ISSUED_RING = 8;
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+
+    private long ringNanos = NONE;
+    private boolean awaitingFix;
+    private long alertSmsId = -1;
+    private long alertIssuedNanos = NONE;
+    private final long[] issuedIds = new long[ISSUED_RING];
+    private final long[] issuedNanos = new long[ISSUED_RING];
+    private int issuedNext;
+
+    public AlertMetrics() {
+        for (Stage s : STAGES) {
+            histograms[s.ordinal()] = new LatencyHistogram(s.label);
+        }
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void recordNanos(Stage stage, long nanos) {
+        histograms[stage.ordinal()].recordNanos(nanos);
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    /** Para valores que otro componente ya acumula, como el tiempo de GPS. */
+    public void set(Counter counter, long value) {
+        counters.set(counter.ordinal(), value);
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    public synchronized void onRing(boolean trusted, long nanos) {
+        increment(Counter.RINGS);
+        if (trusted) {
+            increment(Counter.TRUSTED_MATCHES);
+            ringNanos = nanos;
+            awaitingFix = true;
+            alertSmsId = -1;
+            alertIssuedNanos = NONE;
+        }
+    }
+
+    /**
+     * El número llegó en un segundo aviso del mismo timbre y es de confianza:
+     * no es otro timbre, y las etapas cuentan desde el primero.
+     */
+    public synchronized void onCallerIdentified(long ringNanos) {
+        increment(Counter.TRUSTED_MATCHES);
+        this.ringNanos = ringNanos;
+        awaitingFix = true;
+        alertSmsId = -1;
+        alertIssuedNanos = NONE;
+    }
+
+    public synchronized void onAlertDue(long nanos) {
+        increment(Counter.ALERTS);
+        sinceRing(Stage.RING_TO_ALERT, nanos);
+    }
+
+    /** Primer fix utilizable tras el timbre. */
+    public synchronized void onUsableFix(long nanos) {
+        if (awaitingFix) {
+            awaitingFix = false;
+            sinceRing(Stage.RING_TO_FIX, nanos);
+        }
+    }
+
+    /** Justo después de entregar el SMS a la radio (sendTextMessage). */
+    public synchronized void onSmsIssued(long id, long nanos) {
+        increment(Counter.SMS_ISSUED);
+        issuedIds[issuedNext] = id;
+        issuedNanos[issuedNext] = nanos;
+        issuedNext = (issuedNext + 1) % ISSUED_RING;
+        if (id == alertSmsId) {
+            // Reintento de la alerta: cuenta desde la última emisión
+            alertIssuedNanos = nanos;
+        }
+    }
+
+    /** La bandeja devuelve el id después de intentar el primer envío, así que se busca aquí. */
+    public synchronized void onAlertQueued(long id) {
+        if (ringNanos == NONE) {
+            return;
+        }
+        alertSmsId = id;
+        for (int i = 0; i < ISSUED_RING; i++) {
+            if (issuedIds[i] == id && issuedNanos[i] != NONE) {
+                alertIssuedNanos = issuedNanos[i];
+                sinceRing(Stage.RING_TO_SMS_ISSUED, alertIssuedNanos);
+                return;
+            }
+        }
+    }
+
+    public synchronized void onSmsSent(long id, boolean success, long nanos) {
+        increment(success ? Counter.SMS_SENT : Counter.SMS_FAILED);
+        if (success && id == alertSmsId) {
+            sinceRing(Stage.RING_TO_SMS_SENT, nanos);
+            if (alertIssuedNanos != NONE) {
+                recordNanos(Stage.SMS_ISSUED_TO_SENT, nanos - alertIssuedNanos);
+            }
+        }
+    }
+
+    public synchronized void onSmsDelivered(long id, long nanos) {
+        increment(Counter.SMS_DELIVERED);
+        if (id == alertSmsId) {
+            sinceRing(Stage.RING_TO_SMS_DELIVERED, nanos);
+            alertSmsId = -1;
+        }
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : histograms) {
+            h.reset();
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /** Texto legible, una línea por contador o histograma. */
+    public void dump(StringBuilder out) {
+        for (Counter c : COUNTERS) {
+            out.append(c.label).append('=').append(get(c)).append('\n');
+        }
+        for (LatencyHistogram h : histograms) {
+            h.appendSummary(out);
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Guarda contadores e histogramas en un fichero binario. Se escribe
+     * aparte y se renombra, como la bandeja de SMS.
+     */
+    public void writeTo(File file, String label, long wallTimeMs) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(fos)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(wallTimeMs);
+            out.writeUTF(label);
+            out.writeShort(COUNTERS.length);
+            for (Counter c : COUNTERS) {
+                out.writeUTF(c.label);
+                out.writeLong(get(c));
+            }
+            out.writeShort(histograms.length);
+            for (LatencyHistogram h : histograms) {
+                h.writeTo(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("No se pudo renombrar " + tmp);
+        }
+    }
+
+    private void sinceRing(Stage stage, long nanos) {
+        if (ringNanos != NONE) {
+            recordNanos(stage, nanos - ringNanos);
+        }
+    }
+}
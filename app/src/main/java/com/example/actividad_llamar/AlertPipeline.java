@@ -0,0 +1,448 @@
+package com.example.actividad_llamar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Camino de la llamada a la alerta, sin clases de Android: estados de
+ * llamada del {@link TelephonySource}, posiciones del {@link LocationSource}
+ * y SMS por el {@link SmsSink}, con el motor, la caché de fixes, el freno,
+ * la bandeja de salida y el reparto entre medias. {@link BackgroundService}
+ * le da las implementaciones del sistema y su hilo de trabajo; las pruebas,
+ * implementaciones falsas y un reloj virtual.
+ *
+ * Todo se llama desde el hilo de trabajo salvo {@link #onFix}, que puede
+ * llegar desde cualquiera. Audio, notificaciones y GPS quedan fuera: el
+ * servicio se suscribe al motor para eso.
+ */
+public final class AlertPipeline implements TelephonySource.Sink, LocationSource.Sink {
+
+    // Espera máxima por un fix mejor cuando vence el plazo de la alerta
+    public static final long ALERT_FIX_WAIT_MS = 3000;
+    // Paso mínimo del rastro que se adjunta a la alerta
+    private static final int TRAIL_MIN_STEP = 2;
+
+    public interface Host {
+        long elapsedRealtimeNanos();
+
+        /** Llegó un fix; se responde con {@link #onFixAvailable()} en el hilo de trabajo. */
+        void onFixReceived(float accuracyM, long fixTimeMs);
+
+        /** Cambió la llamada o se repartió la alerta: momento de guardar la sesión. */
+        void onSessionChanged();
+
+        void showMessage(String text);
+
+        void log(String text);
+    }
+
+    private final Clock clock;
+    private final TimerWheel timers;
+    private final AlertMetrics metrics;
+    private final EventJournal journal;
+    private final TelephonySource telephony;
+    private final LocationSource location;
+    private final SmsSink sms;
+    private final Host host;
+
+    // Delante de cada SMS y llamada que sale, venga de donde venga
+    private final AlertRateLimiter rateLimiter;
+    private final CallStateEngine engine;
+    private final LocationFixCache locationCache;
+    private final LocationFixCache.Fix alertFix = new LocationFixCache.Fix();
+    private final AlertMessageEncoder alertEncoder = new AlertMessageEncoder();
+    // La alerta se codifica una vez y se reparte entre quien llama y los contactos
+    private final AlertFanout fanout;
+    private final List<String> alertRecipients = new ArrayList<>(AlertFanout.MAX_RECIPIENTS);
+    private final int[] trailSummary = new int[2 * BreadcrumbTrail.MAX_SUMMARY_POINTS];
+    private final OfflineGeocoder.Match placeMatch = new OfflineGeocoder.Match();
+    private final TimerWheel.Timer alertTimer;
+    private final TimerWheel.Timer alertFixTimer;
+    private final TimerWheel.Timer fanoutTimer;
+    private final TimerWheel.Timer smsRetryTimer;
+
+    private SmsOutbox smsOutbox;
+    private BreadcrumbTrail trail;
+    // Separación mínima entre puntos del rastro, según el perfil de batería
+    private volatile long trailMinIntervalMs;
+    private volatile long lastTrailAt = Long.MIN_VALUE;
+    // null si la aplicación no trae índice de lugares
+    private OfflineGeocoder geocoder;
+    // Número cuya alerta espera un fix; null si no hay ninguna
+    private String pendingAlertNumber;
+    private boolean alertQueued;
+    private boolean callDetectionStarted;
+
+    public AlertPipeline(Clock clock, TimerWheel timers, AlertMetrics metrics, EventJournal journal,
+                         TelephonySource telephony, LocationSource location, SmsSink sms,
+                         AlertPolicy.DayClock dayClock, Host host) {
+        this.clock = clock;
+        this.timers = timers;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.telephony = telephony;
+        this.location = location;
+        this.sms = sms;
+        this.host = host;
+        rateLimiter = new AlertRateLimiter(clock);
+        locationCache = new LocationFixCache(clock);
+        alertTimer = timers.newTimer("alert", this::onAlertTimer);
+        alertFixTimer = timers.newTimer("alert_fix", this::prepareAlert);
+        fanoutTimer = timers.newTimer("fanout", this::onFanoutTimer);
+        smsRetryTimer = timers.newTimer("sms_retry", this::onSmsRetryTimer);
+        engine = new CallStateEngine(new CallStateEngine.AlertTimer() {
+            @Override
+            public void arm(long delayMs) {
+                timers.schedule(alertTimer, delayMs);
+            }
+
+            @Override
+            public void disarm() {
+                timers.cancel(alertTimer);
+            }
+        }, dayClock);
+        engine.addListener(callListener);
+        fanout = new AlertFanout(clock, new AlertFanout.Host() {
+            @Override
+            public long send(int index, String recipient, String text) {
+                long id = enqueueSms(recipient, text);
+                // Las latencias desde el timbre se miden con el SMS de quien llamó
+                if (index == 0 && id >= 0) {
+                    metrics.onAlertQueued(id);
+                }
+                return id;
+            }
+
+            @Override
+            public long msUntilAllowed(String recipient) {
+                return rateLimiter.msUntilAvailable(AlertRateLimiter.Action.SMS, recipient);
+            }
+
+            @Override
+            public void scheduleTimer(long delayMs) {
+                timers.schedule(fanoutTimer, delayMs);
+            }
+
+            @Override
+            public void cancelTimer() {
+                timers.cancel(fanoutTimer);
+            }
+
+            @Override
+            public void onFanoutDone(int sent, int failed, long msToLastSent) {
+                if (msToLastSent >= 0) {
+                    metrics.recordNanos(AlertMetrics.Stage.FANOUT_TO_LAST_SENT, msToLastSent * 1000000L);
+                }
+                host.log("Alerta repartida: " + sent + " enviados, " + failed + " fallidos, último a los "
+                        + msToLastSent + " ms");
+            }
+        });
+    }
+
+    public CallStateEngine getCallEngine() {
+        return engine;
+    }
+
+    public LocationFixCache getLocationCache() {
+        return locationCache;
+    }
+
+    public AlertRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public AlertFanout getFanout() {
+        return fanout;
+    }
+
+    /** null hasta {@link #openOutbox(File)}. */
+    public SmsOutbox getSmsOutbox() {
+        return smsOutbox;
+    }
+
+    public void setTrail(BreadcrumbTrail trail) {
+        this.trail = trail;
+    }
+
+    /** Se puede cambiar en cualquier momento; vale desde el siguiente fix. */
+    public void setTrailMinIntervalMs(long ms) {
+        trailMinIntervalMs = ms;
+    }
+
+    /** Cadencia del GPS y del rastro del perfil; la petición de GPS en curso se rehace. */
+    public void applyProfile(ProtectionProfiles.Profile profile) {
+        location.setGpsCadence(profile.getGpsIntervalMs(), profile.getGpsMinDistanceM());
+        setTrailMinIntervalMs(profile.getTrailMinIntervalMs());
+    }
+
+    public void setGeocoder(OfflineGeocoder geocoder) {
+        this.geocoder = geocoder;
+    }
+
+    /** El SMS de alerta de la llamada en curso ya está repartido. */
+    public boolean isAlertQueued() {
+        return alertQueued;
+    }
+
+    /** Lo que le queda a la alerta armada, o -1. */
+    public long getAlertRemainingMs() {
+        return alertTimer.remainingMs();
+    }
+
+    public boolean isCallDetectionStarted() {
+        return callDetectionStarted;
+    }
+
+    /** Bandeja de salida persistente; lo que quedó pendiente se reenvía con {@link SmsOutbox#flushPending()}. */
+    public void openOutbox(File file) throws IOException {
+        smsOutbox = new SmsOutbox(file, clock, new SmsOutbox.Host() {
+            @Override
+            public void send(long id, String destination, String text) {
+                if (sms.send(id, destination, text)) {
+                    metrics.onSmsIssued(id, host.elapsedRealtimeNanos());
+                }
+            }
+
+            @Override
+            public void scheduleRetry(long delayMs) {
+                timers.schedule(smsRetryTimer, delayMs);
+            }
+        });
+        smsOutbox.load();
+    }
+
+    public void closeOutbox() {
+        if (smsOutbox != null) {
+            smsOutbox.close();
+        }
+    }
+
+    /** Devuelve false si la telefonía no se pudo escuchar; se puede volver a intentar. */
+    public boolean startCallDetection() {
+        if (!callDetectionStarted) {
+            callDetectionStarted = telephony.start(this);
+        }
+        return callDetectionStarted;
+    }
+
+    public void stopCallDetection() {
+        if (callDetectionStarted) {
+            telephony.stop();
+            callDetectionStarted = false;
+        }
+    }
+
+    @Override
+    public void onCallStateChanged(int state, String phoneNumber) {
+        long start = host.elapsedRealtimeNanos();
+        journal.recordCallState(state, phoneNumber);
+        engine.onCallStateChanged(state, phoneNumber);
+        host.onSessionChanged();
+        metrics.recordNanos(AlertMetrics.Stage.CALL_HANDLING, host.elapsedRealtimeNanos() - start);
+    }
+
+    @Override
+    public void onFix(int provider, double latitude, double longitude, float accuracyM, long fixTimeMs, long wallTimeMs) {
+        locationCache.put(provider, latitude, longitude, accuracyM, fixTimeMs);
+        journal.recordFix(provider, latitude, longitude, accuracyM, fixTimeMs);
+        BreadcrumbTrail t = trail;
+        long last = lastTrailAt;
+        if (t != null && (last == Long.MIN_VALUE || wallTimeMs < last || wallTimeMs - last >= trailMinIntervalMs)) {
+            // En el rastro, 0 es precisión desconocida
+            t.append(latitude, longitude, accuracyM >= LocationFixCache.UNKNOWN_ACCURACY_M ? 0 : accuracyM, wallTimeMs);
+            lastTrailAt = wallTimeMs;
+        }
+        if (locationCache.hasUsableFix()) {
+            metrics.onUsableFix(host.elapsedRealtimeNanos());
+        }
+        host.onFixReceived(accuracyM, fixTimeMs);
+    }
+
+    /** En el hilo de trabajo, tras {@link Host#onFixReceived}: si una alerta esperaba fix, sale ya. */
+    public void onFixAvailable() {
+        if (pendingAlertNumber != null && locationCache.hasUsableFix()) {
+            prepareAlert();
+        }
+    }
+
+    public void onSmsSent(long id, boolean ok) {
+        metrics.onSmsSent(id, ok, host.elapsedRealtimeNanos());
+        if (smsOutbox != null) {
+            smsOutbox.onSent(id, ok);
+        }
+        fanout.onSent(id, ok);
+    }
+
+    public void onSmsDelivered(long id) {
+        metrics.onSmsDelivered(id, host.elapsedRealtimeNanos());
+        if (smsOutbox != null) {
+            smsOutbox.onDelivered(id);
+        }
+        fanout.onDelivered(id);
+    }
+
+    /**
+     * Pide permiso para llamar al número. Devuelve false si ya se le ha
+     * llamado demasiadas veces seguidas.
+     */
+    public boolean allowCall(String phoneNumber) {
+        AlertRateLimiter.Decision decision = rateLimiter.tryAcquire(AlertRateLimiter.Action.CALL, phoneNumber, null);
+        journal.recordCall(phoneNumber, decision);
+        if (decision != AlertRateLimiter.Decision.ALLOWED) {
+            metrics.increment(AlertMetrics.Counter.CALLS_SUPPRESSED);
+            host.log("Llamada a " + phoneNumber + " descartada: " + decision);
+            return false;
+        }
+        return true;
+    }
+
+    // Devuelve el id en la bandeja, o -1 si se frenó o no se pudo guardar.
+    // Los reintentos de la bandeja no vuelven a pasar por el freno
+    public long enqueueSms(String phoneNumber, String text) {
+        AlertRateLimiter.Decision decision = rateLimiter.tryAcquire(AlertRateLimiter.Action.SMS, phoneNumber, text);
+        journal.recordSms(phoneNumber, text.length(), decision);
+        if (decision != AlertRateLimiter.Decision.ALLOWED) {
+            metrics.increment(AlertMetrics.Counter.SMS_SUPPRESSED);
+            host.log("SMS a " + phoneNumber + " descartado: " + decision);
+            return -1;
+        }
+        try {
+            return smsOutbox.enqueue(phoneNumber, text);
+        } catch (IOException e) {
+            e.printStackTrace();
+            host.showMessage("Error al enviar el mensaje");
+            return -1;
+        }
+    }
+
+    /**
+     * Retoma una llamada guardada antes de que muriera el proceso. Si la
+     * alerta había vencido pero no se llegó a repartir, se reparte ahora.
+     */
+    public void resume(CallSessionStore.Snapshot session, long now) {
+        alertQueued = session.alertQueued;
+        engine.restore(session.state, session.number, session.trusted, session.profile,
+                session.alertDueAt < 0 ? -1 : Math.max(0, session.alertDueAt - now));
+        if (session.trusted && session.state == CallStateEngine.State.RINGING) {
+            locationCache.markRing();
+        } else if (session.state == CallStateEngine.State.ALERTED && !alertQueued) {
+            awaitAlertFix(session.number);
+        }
+    }
+
+    private final CallStateEngine.Listener callListener = new CallStateEngine.Listener() {
+        // Inicio del timbre en curso, o -1; un segundo aviso solo identifica al llamante
+        private long ringNanos = -1;
+
+        @Override
+        public void onIncomingCall(String number, boolean trusted) {
+            if (ringNanos < 0) {
+                ringNanos = host.elapsedRealtimeNanos();
+                metrics.onRing(trusted, ringNanos);
+            } else {
+                metrics.onCallerIdentified(ringNanos);
+            }
+            alertQueued = false;
+            if (trusted) {
+                locationCache.markRing();
+            }
+        }
+
+        @Override
+        public void onAlertDue(String number) {
+            metrics.onAlertDue(host.elapsedRealtimeNanos());
+            journal.recordAlert(number);
+            host.onSessionChanged();
+            awaitAlertFix(number);
+        }
+
+        @Override
+        public void onCallAnswered(String number, boolean trusted, boolean alertSent) {
+        }
+
+        @Override
+        public void onCallEnded(String number, boolean trusted, boolean answered) {
+            ringNanos = -1;
+        }
+    };
+
+    private void onAlertTimer() {
+        engine.onAlertTimerExpired();
+    }
+
+    private void onFanoutTimer() {
+        fanout.onTimer();
+    }
+
+    private void onSmsRetryTimer() {
+        smsOutbox.onRetryTimer();
+    }
+
+    // Si no hay fix utilizable se espera a uno sin bloquear: llegará por
+    // onFixAvailable o vencerá alertFixTimer y se usará el mejor que haya
+    private void awaitAlertFix(String phoneNumber) {
+        pendingAlertNumber = phoneNumber;
+        // El texto puede depender de quién llama y de la hora
+        alertEncoder.setPrefix(engine.getCallPolicy().getAlertPrefix(engine.getCallDecision()));
+        if (!locationCache.hasUsableFix()) {
+            location.seed();
+        }
+        if (locationCache.hasUsableFix()) {
+            prepareAlert();
+        } else {
+            timers.schedule(alertFixTimer, ALERT_FIX_WAIT_MS);
+        }
+    }
+
+    private void prepareAlert() {
+        timers.cancel(alertFixTimer);
+        String phoneNumber = pendingAlertNumber;
+        pendingAlertNumber = null;
+        if (phoneNumber == null) {
+            return;
+        }
+        if (!locationCache.best(alertFix)) {
+            // La alerta sale igual, con el aviso de la llamada y sin posición
+            host.showMessage("Sin ubicación disponible");
+            metrics.increment(AlertMetrics.Counter.ALERTS_WITHOUT_LOCATION);
+            fanOut(phoneNumber, alertEncoder.encodeNoLocation());
+            return;
+        }
+        long ageMs = locationCache.isStale(alertFix) ? alertFix.ageMs(clock.elapsedRealtime()) : 0;
+        sendMessageWithCoordinates(phoneNumber, alertFix.latitude, alertFix.longitude, alertFix.accuracyM, ageMs);
+    }
+
+    /** Copia en las métricas lo que mide la caché de ubicación, antes de volcarlas. */
+    public void refreshMetricGauges() {
+        metrics.set(AlertMetrics.Counter.TIME_TO_FIX_MEAN_MS, Math.max(0, locationCache.getMeanTimeToFixMs()));
+        metrics.set(AlertMetrics.Counter.TIME_TO_FIX_MAX_MS, locationCache.getMaxTimeToFixMs());
+        metrics.set(AlertMetrics.Counter.RINGS_WITHOUT_FIX, locationCache.getRingsWithoutFix());
+    }
+
+    // Un único SMS con el aviso de llamada, las coordenadas y el enlace,
+    // codificado una vez para todos los destinatarios
+    private void sendMessageWithCoordinates(String phoneNumber, double latitude, double longitude, float accuracyM, long staleAgeMs) {
+        AlertConfig config = engine.getConfig();
+        long trailWindowMs = config.getTrailWindowMs();
+        int pairs = trail == null ? 0 : trail.summarize(System.currentTimeMillis() - trailWindowMs,
+                latitude, longitude, TRAIL_MIN_STEP, trailSummary);
+        String place = geocoder != null && geocoder.lookup(latitude, longitude, placeMatch) ? placeMatch.name : null;
+        String message = alertEncoder.encodeAlert(latitude, longitude, accuracyM, staleAgeMs,
+                place, trailSummary, pairs, (int) (trailWindowMs / 60000));
+        fanOut(phoneNumber, message);
+    }
+
+    private void fanOut(String phoneNumber, String message) {
+        AlertConfig config = engine.getConfig();
+        alertRecipients.clear();
+        config.alertRecipients(phoneNumber, alertRecipients, AlertFanout.MAX_RECIPIENTS);
+        fanout.start(message, alertRecipients);
+        alertQueued = true;
+        host.onSessionChanged();
+        if (fanout.getRecipientCount() > 0) {
+            host.showMessage("Mensaje de alerta enviado");
+        }
+    }
+}
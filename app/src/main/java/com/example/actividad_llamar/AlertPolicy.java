@@ -0,0 +1,485 @@
+package com.example.actividad_llamar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Qué hacer con cada llamada de confianza según quién llama y a qué hora:
+ * plazo de la alerta, reenvío, silenciar el micrófono, volver a llamar y
+ * textos. Las reglas se escriben una por línea:
+ *
+ * <pre>
+ * # quién     horas        ajustes
+ * *           23:00-07:00  retardo=3s
+ * 600111222   *            rellamar=no
+ * grupo       *            silenciar=no plantilla="Ayuda urgente."
+ * </pre>
+ *
+ * Quién es {@code *}, {@code grupo} (los contactos del grupo de confianza)
+ * o un número; las horas son {@code *} o una franja que puede cruzar la
+ * medianoche. Se aplican todas las que coinciden, en orden, y cada una
+ * cambia solo los ajustes que nombra; lo demás sale de la configuración.
+ *
+ * Al cargar la configuración las reglas se compilan a una tabla plana
+ * (fila por clase de contacto, columna por tramo horario), así que decidir
+ * al sonar el teléfono son tres lecturas de array, sin reservar memoria.
+ */
+public final class AlertPolicy {
+
+    public static final int MAX_RULES = 64;
+    /** Minuto del día desconocido: solo cuentan las reglas de todo el día. */
+    public static final int NO_TIME = -1;
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    /** Minuto del día en hora local, de 0 a 1439, o {@link #NO_TIME}. */
+    public interface DayClock {
+        int minuteOfDay();
+    }
+
+    public static final DayClock NO_DAY_CLOCK = () -> NO_TIME;
+
+    private static final int MAX_TEXT_CHARS = 8000;
+
+    private static final int SET_ALERT_DELAY = 1;
+    private static final int SET_RESEND_DELAY = 1 << 1;
+    private static final int SET_MUTE = 1 << 2;
+    private static final int SET_REDIAL = 1 << 3;
+    private static final int SET_ALERT_PREFIX = 1 << 4;
+    private static final int SET_RESEND_PREFIX = 1 << 5;
+
+    private static final int FLAG_MUTE = 1;
+    private static final int FLAG_REDIAL = 1 << 1;
+
+    private static final int ANY = 0;
+    private static final int GROUP = 1;
+    private static final int NUMBER = 2;
+
+    private static final class Rule {
+        int who = ANY;
+        long key;
+        // from == to: todo el día
+        int from;
+        int to;
+        int set;
+        long alertDelayMs;
+        long resendDelayMs;
+        boolean mute;
+        boolean redial;
+        String alertPrefix;
+        String resendPrefix;
+
+        boolean appliesAt(int minute) {
+            if (from == to) {
+                return true;
+            }
+            if (minute < 0) {
+                return false;
+            }
+            return from < to ? minute >= from && minute < to : minute >= from || minute < to;
+        }
+    }
+
+    private final int ruleCount;
+    // Columna de cada minuto del día; la última columna es la de NO_TIME
+    private final byte[] columnOfMinute;
+    private final int columns;
+    // Fila de cada perfil, desplazada en uno para que NO_PROFILE sea la 0
+    private final int[] rowOfProfile;
+    private final short[] table;
+    private final long[] alertDelayMs;
+    private final long[] resendDelayMs;
+    private final int[] flags;
+    private final String[] alertPrefix;
+    private final String[] resendPrefix;
+
+    private AlertPolicy(int ruleCount, byte[] columnOfMinute, int columns, int[] rowOfProfile, short[] table,
+                        List<long[]> decisions, List<String[]> texts) {
+        this.ruleCount = ruleCount;
+        this.columnOfMinute = columnOfMinute;
+        this.columns = columns;
+        this.rowOfProfile = rowOfProfile;
+        this.table = table;
+        int n = decisions.size();
+        alertDelayMs = new long[n];
+        resendDelayMs = new long[n];
+        flags = new int[n];
+        alertPrefix = new String[n];
+        resendPrefix = new String[n];
+        for (int i = 0; i < n; i++) {
+            long[] d = decisions.get(i);
+            alertDelayMs[i] = d[0];
+            resendDelayMs[i] = d[1];
+            flags[i] = (int) d[2];
+            alertPrefix[i] = texts.get(i)[0];
+            resendPrefix[i] = texts.get(i)[1];
+        }
+    }
+
+    /**
+     * Decisión para un perfil de {@link AlertConfig#getTrustedNumbers()} a
+     * un minuto del día. Tiempo constante y sin reservar memoria.
+     */
+    public int decide(int profile, int minuteOfDay) {
+        int row = profile >= 0 && profile + 1 < rowOfProfile.length ? rowOfProfile[profile + 1] : rowOfProfile[0];
+        int column = minuteOfDay >= 0 && minuteOfDay < MINUTES_PER_DAY
+                ? columnOfMinute[minuteOfDay] & 0xFF : columns - 1;
+        return table[row * columns + column];
+    }
+
+    public long getAlertDelayMs(int decision) {
+        return alertDelayMs[decision];
+    }
+
+    public long getResendDelayMs(int decision) {
+        return resendDelayMs[decision];
+    }
+
+    public boolean shouldMute(int decision) {
+        return (flags[decision] & FLAG_MUTE) != 0;
+    }
+
+    public boolean shouldRedial(int decision) {
+        return (flags[decision] & FLAG_REDIAL) != 0;
+    }
+
+    public String getAlertPrefix(int decision) {
+        return alertPrefix[decision];
+    }
+
+    public String getResendPrefix(int decision) {
+        return resendPrefix[decision];
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /** Decisiones distintas que hay en la tabla. */
+    public int getDecisionCount() {
+        return flags.length;
+    }
+
+    public int getTableSize() {
+        return table.length;
+    }
+
+    /** Minuto del día en la zona dada; no reserva memoria. */
+    public static int minuteOfDay(long wallTimeMs, TimeZone zone) {
+        long local = wallTimeMs + zone.getOffset(wallTimeMs);
+        long minute = (local / 60000) % MINUTES_PER_DAY;
+        return (int) (minute < 0 ? minute + MINUTES_PER_DAY : minute);
+    }
+
+    /** Comprueba el texto de las reglas sin compilarlo; lanza la misma excepción que {@link #compile}. */
+    public static void validate(String text) {
+        parse(text);
+    }
+
+    /**
+     * Compila las reglas contra los contactos y valores por defecto de
+     * {@code base}. Lanza IllegalArgumentException con la línea si alguna
+     * no se entiende.
+     */
+    public static AlertPolicy compile(String text, AlertConfig base) {
+        List<Rule> rules = parse(text);
+
+        // Tramos horarios: cortes en cada extremo de franja
+        int[] cuts = new int[rules.size() * 2 + 1];
+        int cutCount = 0;
+        cuts[cutCount++] = 0;
+        for (Rule r : rules) {
+            if (r.from != r.to) {
+                cuts[cutCount++] = r.from;
+                cuts[cutCount++] = r.to;
+            }
+        }
+        Arrays.sort(cuts, 0, cutCount);
+        int[] starts = new int[cutCount + 1];
+        int columns = 0;
+        for (int i = 0; i < cutCount; i++) {
+            if (columns == 0 || starts[columns - 1] != cuts[i]) {
+                starts[columns++] = cuts[i];
+            }
+        }
+        byte[] columnOfMinute = new byte[MINUTES_PER_DAY];
+        for (int c = 0, m = 0; m < MINUTES_PER_DAY; m++) {
+            if (c + 1 < columns && starts[c + 1] == m) {
+                c++;
+            }
+            columnOfMinute[m] = (byte) c;
+        }
+        starts[columns++] = NO_TIME;
+
+        // Filas: cada contacto nombrado en una regla tiene la suya; el resto
+        // solo se distingue por venir del grupo y por su marca de rellamada
+        List<AlertConfig.Contact> contacts = base.getContacts();
+        int[] rowOfProfile = new int[contacts.size() + 1];
+        List<int[]> rows = new ArrayList<>();
+        List<long[]> decisions = new ArrayList<>();
+        List<String[]> texts = new ArrayList<>();
+        int[] classRow = {-1, -1, -1, -1};
+        for (int p = -1; p < contacts.size(); p++) {
+            AlertConfig.Contact contact = p < 0 ? null : contacts.get(p);
+            long key = contact == null ? TrustedNumberIndex.INVALID : keyOf(contact.getNumber());
+            boolean named = false;
+            for (Rule r : rules) {
+                named |= r.who == NUMBER && key != TrustedNumberIndex.INVALID && r.key == key;
+            }
+            int cls = contact == null ? -1
+                    : (contact.has(AlertConfig.FLAG_FROM_GROUP) ? 2 : 0) | (contact.has(AlertConfig.FLAG_REDIAL) ? 1 : 0);
+            if (!named && cls >= 0 && classRow[cls] >= 0) {
+                rowOfProfile[p + 1] = classRow[cls];
+                continue;
+            }
+            int[] row = new int[columns];
+            for (int c = 0; c < columns; c++) {
+                row[c] = decisionIndex(rules, base, contact, key, starts[c], decisions, texts);
+            }
+            int index = indexOf(rows, row);
+            if (index < 0) {
+                index = rows.size();
+                rows.add(row);
+            }
+            rowOfProfile[p + 1] = index;
+            if (!named && cls >= 0) {
+                classRow[cls] = index;
+            }
+        }
+
+        short[] table = new short[rows.size() * columns];
+        for (int r = 0; r < rows.size(); r++) {
+            for (int c = 0; c < columns; c++) {
+                table[r * columns + c] = (short) rows.get(r)[c];
+            }
+        }
+        return new AlertPolicy(rules.size(), columnOfMinute, columns, rowOfProfile, table, decisions, texts);
+    }
+
+    private static int decisionIndex(List<Rule> rules, AlertConfig base, AlertConfig.Contact contact, long key,
+                                     int minute, List<long[]> decisions, List<String[]> texts) {
+        long alertDelay = base.getAlertDelayMs();
+        long resendDelay = base.getResendDelayMs();
+        boolean mute = true;
+        boolean redial = contact != null && contact.has(AlertConfig.FLAG_REDIAL);
+        String alert = base.getAlertPrefix();
+        String resend = base.getResendPrefix();
+        for (Rule r : rules) {
+            boolean who = r.who == ANY
+                    || (r.who == GROUP && contact != null && contact.has(AlertConfig.FLAG_FROM_GROUP))
+                    || (r.who == NUMBER && key != TrustedNumberIndex.INVALID && r.key == key);
+            if (!who || !r.appliesAt(minute)) {
+                continue;
+            }
+            if ((r.set & SET_ALERT_DELAY) != 0) {
+                alertDelay = r.alertDelayMs;
+            }
+            if ((r.set & SET_RESEND_DELAY) != 0) {
+                resendDelay = r.resendDelayMs;
+            }
+            if ((r.set & SET_MUTE) != 0) {
+                mute = r.mute;
+            }
+            if ((r.set & SET_REDIAL) != 0) {
+                redial = r.redial;
+            }
+            if ((r.set & SET_ALERT_PREFIX) != 0) {
+                alert = r.alertPrefix;
+            }
+            if ((r.set & SET_RESEND_PREFIX) != 0) {
+                resend = r.resendPrefix;
+            }
+        }
+        long[] d = {alertDelay, resendDelay, (mute ? FLAG_MUTE : 0) | (redial ? FLAG_REDIAL : 0)};
+        for (int i = 0; i < decisions.size(); i++) {
+            if (Arrays.equals(decisions.get(i), d)
+                    && texts.get(i)[0].equals(alert) && texts.get(i)[1].equals(resend)) {
+                return i;
+            }
+        }
+        decisions.add(d);
+        texts.add(new String[]{alert, resend});
+        return decisions.size() - 1;
+    }
+
+    private static int indexOf(List<int[]> rows, int[] row) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (Arrays.equals(rows.get(i), row)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long keyOf(String number) {
+        return TrustedNumberIndex.normalize(number, TrustedNumberIndex.DEFAULT_COUNTRY_CODE, false);
+    }
+
+    private static List<Rule> parse(String text) {
+        List<Rule> rules = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return rules;
+        }
+        if (text.length() > MAX_TEXT_CHARS) {
+            throw new IllegalArgumentException("Reglas demasiado largas: " + text.length() + " caracteres");
+        }
+        String[] lines = text.split("\n");
+        List<String> tokens = new ArrayList<>();
+        for (int n = 0; n < lines.length; n++) {
+            String line = lines[n].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            tokenize(line, n + 1, tokens);
+            if (tokens.size() < 3) {
+                throw error(n + 1, "faltan campos");
+            }
+            if (rules.size() == MAX_RULES) {
+                throw error(n + 1, "más de " + MAX_RULES + " reglas");
+            }
+            Rule r = new Rule();
+            parseWho(tokens.get(0), r, n + 1);
+            parseWindow(tokens.get(1), r, n + 1);
+            for (int i = 2; i < tokens.size(); i++) {
+                parseSetting(tokens.get(i), r, n + 1);
+            }
+            rules.add(r);
+        }
+        return rules;
+    }
+
+    // Separa por espacios respetando las comillas, que se quitan
+    private static void tokenize(String line, int n, List<String> out) {
+        out.clear();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch == '"') {
+                quoted = !quoted;
+            } else if (!quoted && Character.isWhitespace(ch)) {
+                if (sb.length() > 0) {
+                    out.add(sb.toString());
+                    sb.setLength(0);
+                }
+            } else {
+                sb.append(ch);
+            }
+        }
+        if (quoted) {
+            throw error(n, "comillas sin cerrar");
+        }
+        if (sb.length() > 0) {
+            out.add(sb.toString());
+        }
+    }
+
+    private static void parseWho(String token, Rule r, int n) {
+        if (token.equals("*")) {
+            r.who = ANY;
+        } else if (token.equalsIgnoreCase("grupo")) {
+            r.who = GROUP;
+        } else {
+            r.who = NUMBER;
+            r.key = keyOf(token);
+            if (r.key == TrustedNumberIndex.INVALID) {
+                throw error(n, "número no válido: " + token);
+            }
+        }
+    }
+
+    private static void parseWindow(String token, Rule r, int n) {
+        if (token.equals("*")) {
+            return;
+        }
+        int dash = token.indexOf('-');
+        if (dash < 0) {
+            throw error(n, "franja no válida: " + token);
+        }
+        r.from = parseTime(token.substring(0, dash), n);
+        r.to = parseTime(token.substring(dash + 1), n);
+        if (r.from == r.to) {
+            throw error(n, "franja vacía: " + token);
+        }
+    }
+
+    private static int parseTime(String s, int n) {
+        int colon = s.indexOf(':');
+        try {
+            int h = Integer.parseInt(colon < 0 ? s : s.substring(0, colon));
+            int m = colon < 0 ? 0 : Integer.parseInt(s.substring(colon + 1));
+            if (h >= 0 && h <= 24 && m >= 0 && m < 60 && h * 60 + m <= MINUTES_PER_DAY) {
+                return (h * 60 + m) % MINUTES_PER_DAY;
+            }
+        } catch (NumberFormatException e) {
+            // Se informa abajo
+        }
+        throw error(n, "hora no válida: " + s);
+    }
+
+    private static void parseSetting(String token, Rule r, int n) {
+        int eq = token.indexOf('=');
+        if (eq <= 0) {
+            throw error(n, "ajuste no válido: " + token);
+        }
+        String name = token.substring(0, eq).toLowerCase();
+        String value = token.substring(eq + 1);
+        switch (name) {
+            case "retardo":
+                r.alertDelayMs = parseDuration(value, n);
+                r.set |= SET_ALERT_DELAY;
+                break;
+            case "reenvio":
+                r.resendDelayMs = parseDuration(value, n);
+                r.set |= SET_RESEND_DELAY;
+                break;
+            case "silenciar":
+                r.mute = parseYesNo(value, n);
+                r.set |= SET_MUTE;
+                break;
+            case "rellamar":
+                r.redial = parseYesNo(value, n);
+                r.set |= SET_REDIAL;
+                break;
+            case "plantilla":
+                r.alertPrefix = value;
+                r.set |= SET_ALERT_PREFIX;
+                break;
+            case "plantilla_reenvio":
+                r.resendPrefix = value;
+                r.set |= SET_RESEND_PREFIX;
+                break;
+            default:
+                throw error(n, "ajuste desconocido: " + name);
+        }
+    }
+
+    // Milisegundos, o segundos con el sufijo "s"
+    private static long parseDuration(String value, int n) {
+        boolean seconds = value.endsWith("s");
+        try {
+            long v = Long.parseLong(seconds ? value.substring(0, value.length() - 1) : value);
+            if (v >= 0 && v <= (seconds ? 60 * 60 : 60 * 60 * 1000)) {
+                return seconds ? v * 1000 : v;
+            }
+        } catch (NumberFormatException e) {
+            // Se informa abajo
+        }
+        throw error(n, "duración no válida: " + value);
+    }
+
+    private static boolean parseYesNo(String value, int n) {
+        if (value.equalsIgnoreCase("si") || value.equalsIgnoreCase("sí")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("no")) {
+            return false;
+        }
+        throw error(n, "se esperaba si o no: " + value);
+    }
+
+    private static IllegalArgumentException error(int line, String message) {
+        return new IllegalArgumentException("Regla " + line + ": " + message);
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.actividad_llamar;
+
+import java.util.Arrays;
+
+/**
+ * Freno para los SMS y llamadas que salen del teléfono. Cada destinatario
+ * tiene un cubo de fichas por tipo de acción: una ráfaga corta pasa, pero si
+ * el contacto llama y cuelga una y otra vez no se le devuelve un SMS o una
+ * llamada por cada timbre. Además, el mismo SMS al mismo destinatario
+ * dentro de una ventana se descarta sin gastar ficha; las llamadas no tienen
+ * contenido y solo las frena el cubo, así que se puede volver a llamar tras
+ * una llamada cortada.
+ *
+ * Los cubos van en una tabla hash abierta de tamaño fijo, como
+ * {@link TrustedNumberIndex}: comprobar no reserva memoria. Se puede usar
+ * desde cualquier hilo.
+ */
+public final class AlertRateLimiter {
+
+    public enum Action {
+        SMS(3, 60 * 1000),
+        CALL(2, 5 * 60 * 1000);
+
+        final int defaultCapacity;
+        final long defaultRefillMs;
+
+        Action(int defaultCapacity, long defaultRefillMs) {
+            this.defaultCapacity = defaultCapacity;
+            this.defaultRefillMs = defaultRefillMs;
+        }
+    }
+
+    public enum Decision {
+        ALLOWED,
+        RATE_LIMITED,
+        DUPLICATE
+    }
+
+    public static final long DEFAULT_DEDUP_WINDOW_MS = 30000;
+    // Destinatarios con cubo en memoria; se olvida el que lleve más tiempo sin usarse
+    private static final int MAX_BUCKETS = 64;
+    private static final int TABLE_SIZE = 2 * MAX_BUCKETS;
+    private static final int TABLE_SHIFT = 64 - Integer.numberOfTrailingZeros(TABLE_SIZE);
+    private static final long EMPTY = 0L;
+    private static final int DEDUP_SLOTS = 32;
+
+    private static final Action[] ACTIONS = Action.values();
+
+    private final Clock clock;
+    private final int countryCode;
+    private final boolean nationalTrunkZero;
+    private final int[] capacity = new int[ACTIONS.length];
+    private final long[] refillMs = new long[ACTIONS.length];
+    private long dedupWindowMs = DEFAULT_DEDUP_WINDOW_MS;
+
+    // Cubos por destinatario y acción: clave, fichas en milésimas (para
+    // rellenar sin coma flotante), último relleno y último uso
+    private final long[] bucketKeys = new long[TABLE_SIZE];
+    private final long[] milliTokens = new long[TABLE_SIZE];
+    private final long[] updatedAt = new long[TABLE_SIZE];
+    private final long[] usedAt = new long[TABLE_SIZE];
+    private int bucketCount;
+    private long uses;
+
+    // Últimos envíos permitidos: huella del contenido y cuándo
+    private final long[] recentHashes = new long[DEDUP_SLOTS];
+    private final long[] recentTimes = new long[DEDUP_SLOTS];
+    private int recentNext;
+
+    private final long[] allowed = new long[ACTIONS.length];
+    private final long[] limited = new long[ACTIONS.length];
+    private final long[] duplicates = new long[ACTIONS.length];
+
+    public AlertRateLimiter(Clock clock) {
+        this(clock, TrustedNumberIndex.DEFAULT_COUNTRY_CODE, false);
+    }
+
+    /** Con la misma numeración que el {@link TrustedNumberIndex} de los contactos. */
+    public AlertRateLimiter(Clock clock, int countryCode, boolean nationalTrunkZero) {
+        this.clock = clock;
+        this.countryCode = countryCode;
+        this.nationalTrunkZero = nationalTrunkZero;
+        for (Action a : ACTIONS) {
+            capacity[a.ordinal()] = a.defaultCapacity;
+            refillMs[a.ordinal()] = a.defaultRefillMs;
+        }
+        for (int i = 0; i < DEDUP_SLOTS; i++) {
+            recentTimes[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /** Ráfaga máxima y tiempo en recuperar cada ficha. */
+    public synchronized void setLimit(Action action, int capacity, long refillMs) {
+        this.capacity[action.ordinal()] = capacity;
+        this.refillMs[action.ordinal()] = refillMs;
+        clearBuckets();
+    }
+
+    public synchronized void setDedupWindowMs(long dedupWindowMs) {
+        this.dedupWindowMs = dedupWindowMs;
+    }
+
+    /**
+     * Decide si se puede emitir la acción. Solo si devuelve
+     * {@link Decision#ALLOWED} se gasta una ficha y se recuerda el contenido.
+     *
+     * @param content texto del SMS; en las llamadas se ignora
+     */
+    public synchronized Decision tryAcquire(Action action, CharSequence recipient, CharSequence content) {
+        long now = clock.elapsedRealtime();
+        long key = recipientKey(recipient);
+        int a = action.ordinal();
+        boolean dedup = action != Action.CALL;
+        long hash = dedup ? contentHash(action, key, content) : 0;
+        if (dedup) {
+            for (int i = 0; i < DEDUP_SLOTS; i++) {
+                if (recentHashes[i] == hash && recentTimes[i] != Long.MIN_VALUE
+                        && now - recentTimes[i] < dedupWindowMs) {
+                    duplicates[a]++;
+                    return Decision.DUPLICATE;
+                }
+            }
+        }
+        long bucketKey = bucketKey(key, a);
+        int slot = findBucket(bucketKey);
+        if (slot < 0) {
+            slot = insertBucket(bucketKey);
+            milliTokens[slot] = capacity[a] * 1000L;
+            updatedAt[slot] = now;
+        } else {
+            refill(slot, a, now);
+        }
+        usedAt[slot] = ++uses;
+        if (milliTokens[slot] < 1000) {
+            limited[a]++;
+            return Decision.RATE_LIMITED;
+        }
+        milliTokens[slot] -= 1000;
+        if (dedup) {
+            recentHashes[recentNext] = hash;
+            recentTimes[recentNext] = now;
+            recentNext = (recentNext + 1) % DEDUP_SLOTS;
+        }
+        allowed[a]++;
+        return Decision.ALLOWED;
+    }
+
+    /** Milisegundos hasta que haya una ficha para el destinatario, o 0 si ya la hay. */
+    public synchronized long msUntilAvailable(Action action, CharSequence recipient) {
+        int a = action.ordinal();
+        int slot = findBucket(bucketKey(recipientKey(recipient), a));
+        if (slot < 0) {
+            return 0;
+        }
+        refill(slot, a, clock.elapsedRealtime());
+        if (milliTokens[slot] >= 1000) {
+            return 0;
+        }
+        return (1000 - milliTokens[slot]) * refillMs[a] / 1000;
+    }
+
+    public synchronized long getAllowedCount(Action action) {
+        return allowed[action.ordinal()];
+    }
+
+    public synchronized long getLimitedCount(Action action) {
+        return limited[action.ordinal()];
+    }
+
+    public synchronized long getDuplicateCount(Action action) {
+        return duplicates[action.ordinal()];
+    }
+
+    public synchronized void reset() {
+        clearBuckets();
+        for (int i = 0; i < DEDUP_SLOTS; i++) {
+            recentTimes[i] = Long.MIN_VALUE;
+        }
+    }
+
+    private void refill(int slot, int a, long now) {
+        long elapsed = now - updatedAt[slot];
+        if (elapsed <= 0) {
+            return;
+        }
+        long max = capacity[a] * 1000L;
+        long gained = refillMs[a] > 0 ? elapsed * 1000 / refillMs[a] : max;
+        if (gained <= 0) {
+            return;
+        }
+        milliTokens[slot] = Math.min(max, milliTokens[slot] + gained);
+        // Solo se avanza lo que se ha convertido en fichas, para no perder restos
+        updatedAt[slot] = milliTokens[slot] == max ? now
+                : updatedAt[slot] + (refillMs[a] > 0 ? gained * refillMs[a] / 1000 : elapsed);
+    }
+
+    // Nunca 0, que marca hueco libre: las claves de destinatario caben en 62 bits
+    private static long bucketKey(long recipientKey, int action) {
+        return recipientKey * ACTIONS.length + action + 1;
+    }
+
+    // Hash de Fibonacci, como en TrustedNumberIndex
+    private static int home(long bucketKey) {
+        return (int) ((bucketKey * 0x9E3779B97F4A7C15L) >>> TABLE_SHIFT);
+    }
+
+    private int findBucket(long bucketKey) {
+        int slot = home(bucketKey);
+        long k;
+        while ((k = bucketKeys[slot]) != EMPTY) {
+            if (k == bucketKey) {
+                return slot;
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        return -1;
+    }
+
+    private int insertBucket(long bucketKey) {
+        if (bucketCount == MAX_BUCKETS) {
+            removeBucket(leastRecentlyUsed());
+        }
+        int slot = home(bucketKey);
+        while (bucketKeys[slot] != EMPTY) {
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        bucketKeys[slot] = bucketKey;
+        bucketCount++;
+        return slot;
+    }
+
+    // Solo al llenarse la tabla, y son pocos huecos
+    private int leastRecentlyUsed() {
+        int oldest = -1;
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            if (bucketKeys[i] != EMPTY && (oldest < 0 || usedAt[i] < usedAt[oldest])) {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    // Borrado con desplazamiento hacia atrás: las cadenas de sondeo siguen enteras
+    private void removeBucket(int slot) {
+        int hole = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & (TABLE_SIZE - 1);
+            long k = bucketKeys[i];
+            if (k == EMPTY) {
+                break;
+            }
+            // Se mueve si su hueco de origen no está entre el hueco libre y él
+            int h = home(k);
+            boolean stays = hole <= i ? (hole < h && h <= i) : (hole < h || h <= i);
+            if (!stays) {
+                bucketKeys[hole] = k;
+                milliTokens[hole] = milliTokens[i];
+                updatedAt[hole] = updatedAt[i];
+                usedAt[hole] = usedAt[i];
+                hole = i;
+            }
+        }
+        bucketKeys[hole] = EMPTY;
+        bucketCount--;
+    }
+
+    private void clearBuckets() {
+        Arrays.fill(bucketKeys, EMPTY);
+        bucketCount = 0;
+    }
+
+    // Mismo destinatario aunque venga escrito de otra forma; si no es un
+    // número válido se usa una huella del texto
+    private long recipientKey(CharSequence recipient) {
+        long key = TrustedNumberIndex.normalize(recipient, countryCode, nationalTrunkZero);
+        if (key != TrustedNumberIndex.INVALID) {
+            return key;
+        }
+        return fnv1a(0xcbf29ce484222325L, recipient) >>> 2;
+    }
+
+    private static long contentHash(Action action, long recipientKey, CharSequence content) {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ action.ordinal()) * 0x100000001b3L;
+        for (int i = 0; i < 8; i++) {
+            h = (h ^ ((recipientKey >>> (i * 8)) & 0xff)) * 0x100000001b3L;
+        }
+        return fnv1a(h, content);
+    }
+
+    private static long fnv1a(long h, CharSequence text) {
+        if (text == null) {
+            return h;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            h = (h ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+}
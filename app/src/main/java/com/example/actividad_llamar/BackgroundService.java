@@ -1,152 +1,951 @@
 package com.example.actividad_llamar;
 
 import android.Manifest;
+import android.app.Activity;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.media.AudioManager;
+import android.os.BatteryManager;
+import android.os.Binder;
+import android.os.Build;
 import android.os.Bundle;
-import android.os.CountDownTimer;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserManager;
+import android.provider.ContactsContract;
 import android.provider.Settings;
 import android.telephony.PhoneStateListener;
 import android.telephony.SmsManager;
 import android.telephony.TelephonyManager;
+import android.util.Log;
 import android.widget.Toast;
 
+import androidx.annotation.RequiresApi;
+import androidx.core.app.NotificationCompat;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
 public class BackgroundService extends Service implements LocationListener {
+    private static final String TAG = "BackgroundService";
+    private static final String ACTION_SMS_SENT = "com.example.actividad_llamar.SMS_SENT";
+    private static final String ACTION_SMS_DELIVERED = "com.example.actividad_llamar.SMS_DELIVERED";
+    private static final String EXTRA_SMS_ID = "sms_id";
+    static final String EXTRA_NUMBER = "numero_guardado";
+    // Lo pone BootReceiver: elapsedRealtime al recibir el aviso de arranque
+    static final String EXTRA_BOOT_RECEIVED_AT = "arranque_recibido_ms";
+    private static final String CHANNEL_ID = "location_channel";
+    private static final int NOTIFICATION_ID = 1;
+    private static final String[] LEGACY_FILES = {"sms_outbox.journal", "trail.bin"};
+    // La agenda avisa de cualquier cambio, a veces en ráfagas; se relee una vez
+    private static final long CONTACTS_DEBOUNCE_MS = 2000;
+    // Índice de lugares para nombrar la ubicación sin red; viene en los assets
+    private static final String GEOCODER_FILE = "geocoder.idx";
+
+    private final IBinder binder = new LocalBinder();
     private LocationManager locationManager;
-    private TelephonyManager telephonyManager;
-    private PhoneStateListener phoneStateListener;
-    private String incomingPhoneNumber;
-    private CountDownTimer messageTimer;
+    // Almacenamiento protegido por dispositivo: legible antes de desbloquear
+    private File storageDir;
+    private ConfigStore configStore;
+
+    // Telefonía, motor de llamadas, temporizadores y SMS van en un único hilo
+    // de trabajo, que nunca espera; las ubicaciones llegan por otro. Al hilo
+    // principal solo se publican toasts.
+    private HandlerThread workerThread;
+    private HandlerThread locationThread;
+    private Handler workerHandler;
+    private Handler mainHandler;
+    private Looper locationLooper;
+    private Executor workerExecutor;
+    private final AlertMetrics metrics = new AlertMetrics();
+    // Wake locks y sesiones de GPS se piden aquí, con plazo máximo y cupo diario
+    private PowerBudget powerBudget;
+    private PowerBudget.Lease gpsLease;
+    private ProtectionProfiles profiles;
+    private SensorManager sensorManager;
+    // null si el teléfono no tiene sensor de movimiento significativo
+    private Sensor motionSensor;
+
+    // Telefonía, ubicación y SMS del sistema detrás de interfaces; el camino
+    // de la llamada a la alerta es Java puro y se prueba en la JVM
+    private final SystemTelephonySource telephonySource = new SystemTelephonySource();
+    private final SystemLocationSource locationSource = new SystemLocationSource();
+    private AlertPipeline pipeline;
+    private CallStateEngine callEngine;
+    private LocationScheduler locationScheduler;
+    // TimeZone.getDefault() devuelve una copia; se guarda y se renueva al cambiar de zona
+    private volatile TimeZone timeZone = TimeZone.getDefault();
+    private BreadcrumbTrail trail;
+    // Entradas y salidas del servicio, para reproducir incidencias en la JVM
+    private EventJournal journal;
+    // Llamada en curso guardada en cada transición, para retomarla si el proceso muere
+    private CallSessionStore sessionStore;
+    private final CallSessionStore.Snapshot session = new CallSessionStore.Snapshot();
+    private long savedTransitions = -1;
+    private boolean savedAlertQueued;
+    // En direct boot llegan LOCKED_BOOT_COMPLETED y luego BOOT_COMPLETED: solo
+    // cuenta el primero, el segundo mediría desde un aviso más tardío. Una vez
+    // por proceso, aunque el servicio se vuelva a crear; solo en el hilo de trabajo
+    private static boolean bootArmedRecorded;
     private Toast toast;
-    private boolean isCallIncoming;
+
+    // Todos los temporizadores del servicio pasan por la rueda; cada acción
+    // tiene un único temporizador creado de antemano
+    private TimerWheel timers;
+    private TimerWheel.Timer locationCheckTimer;
+    private TimerWheel.Timer contactsTimer;
+    private TimerWheel.Timer powerTimer;
+    private TimerWheel.Timer profileTimer;
+
+    // Configuración guardada; la del motor le añade los contactos del grupo
+    private AlertConfig baseConfig = AlertConfig.EMPTY;
+    private ContactGroupTrust groupTrust;
+    private ContentObserver contactsObserver;
+    private boolean contactsObserverRegistered;
+
+    private final Runnable wheelTick = new Runnable() {
+        @Override
+        public void run() {
+            timers.advance();
+        }
+    };
+
+    // Lleva al hilo de trabajo el último fix recibido; si llegan varios seguidos se agrupan
+    private volatile float lastFixAccuracy;
+    private volatile long lastFixTime;
+    private final Runnable fixToScheduler = new Runnable() {
+        @Override
+        public void run() {
+            locationScheduler.onFix(lastFixAccuracy, lastFixTime, SystemClock.elapsedRealtime());
+            pipeline.onFixAvailable();
+        }
+    };
+
+    public class LocalBinder extends Binder {
+        BackgroundService getService() {
+            return BackgroundService.this;
+        }
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
-        startCallDetection();
-        startLocationUpdates();
+        // Lo primero: tras startForegroundService el sistema da unos segundos
+        startInForeground();
+        storageDir = deviceStorageDir(this);
+        configStore = new ConfigStore(storageDir);
+        mainHandler = new Handler(Looper.getMainLooper());
+        workerThread = new HandlerThread("CallWorker");
+        workerThread.start();
+        workerHandler = new Handler(workerThread.getLooper());
+        locationThread = new HandlerThread("LocationWorker");
+        locationThread.start();
+        locationLooper = locationThread.getLooper();
+        workerExecutor = command -> {
+            long queuedAt = SystemClock.elapsedRealtimeNanos();
+            workerHandler.post(() -> {
+                metrics.recordNanos(AlertMetrics.Stage.CALLBACK_QUEUE, SystemClock.elapsedRealtimeNanos() - queuedAt);
+                command.run();
+            });
+        };
+
+        timers = new TimerWheel(SystemClock::elapsedRealtime, new TimerWheel.Host() {
+            @Override
+            public void scheduleTick(long delayMs) {
+                workerHandler.removeCallbacks(wheelTick);
+                workerHandler.postDelayed(wheelTick, delayMs);
+            }
+
+            @Override
+            public void cancelTick() {
+                workerHandler.removeCallbacks(wheelTick);
+            }
+        });
+        locationCheckTimer = timers.newTimer("location", () -> locationScheduler.onCheck(SystemClock.elapsedRealtime()));
+        contactsTimer = timers.newTimer("contacts", this::refreshTrustedGroup);
+        powerTimer = timers.newTimer("power", () -> powerBudget.onCheck());
+        // Los préstamos se piden también desde la actividad: la rueda solo se toca aquí
+        powerBudget = new PowerBudget(SystemClock::elapsedRealtime, new PowerBudget.Host() {
+            @Override
+            public void scheduleCheck(long delayMs) {
+                workerHandler.post(() -> timers.schedule(powerTimer, delayMs));
+            }
+
+            @Override
+            public void cancelCheck() {
+                workerHandler.post(() -> timers.cancel(powerTimer));
+            }
+        });
+        profileTimer = timers.newTimer("profile", () -> profiles.onCheck());
+        profiles = new ProtectionProfiles(SystemClock::elapsedRealtime, new ProtectionProfiles.Host() {
+            @Override
+            public void onProfileChanged(ProtectionProfiles.Profile profile) {
+                applyProfile(profile);
+            }
+
+            @Override
+            public void scheduleCheck(long delayMs) {
+                timers.schedule(profileTimer, delayMs);
+            }
+        });
+        registerReceiver(timeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED), null, workerHandler);
+        groupTrust = new ContactGroupTrust(this::readGroupNumbers);
+        contactsObserver = new ContentObserver(workerHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                timers.scheduleIfIdle(contactsTimer, CONTACTS_DEBOUNCE_MS);
+            }
+        };
+
+        trail = new BreadcrumbTrail(new File(storageDir, "trail.bin"));
+        journal = new EventJournal(new File(storageDir, "events.bin"), SystemClock::elapsedRealtime);
+        sessionStore = new CallSessionStore(new File(storageDir, "call_session.bin"));
+        pipeline = new AlertPipeline(SystemClock::elapsedRealtime, timers, metrics, journal,
+                telephonySource, locationSource, smsSink,
+                () -> AlertPolicy.minuteOfDay(System.currentTimeMillis(), timeZone), pipelineHost);
+        pipeline.setTrail(trail);
+        callEngine = pipeline.getCallEngine();
+        callEngine.addListener(serviceCallListener);
+        // Difusión persistente: se recibe el estado actual nada más registrarse.
+        // Después del pipeline, que el perfil retoca desde el hilo de trabajo
+        registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED), null, workerHandler);
+        workerHandler.post(() -> {
+            migrateLegacyFiles();
+            openTrail();
+            openJournal();
+            openGeocoder();
+            startSmsOutbox();
+            startLocationUpdates();
+            startMotionSensor();
+            applyProfile(profiles.getProfile());
+            // La llamada retomada se decide con los contactos y reglas guardados,
+            // no con la configuración vacía; onStartCommand la vuelve a aplicar
+            AlertConfig config = loadConfig(this, configStore);
+            if (config.isConfigured()) {
+                applyConfig(config);
+            }
+            // Antes de que llegue el primer estado de la telefonía, que va detrás en la cola
+            restoreSession();
+            pipeline.startCallDetection();
+        });
+        // Aquí y no en el hilo de trabajo, para que onDestroy siempre pueda darlo de baja.
+        // Detrás del arranque en la cola: ningún resultado llega antes de abrir la bandeja
+        registerSmsResultReceiver();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null) {
-            incomingPhoneNumber = intent.getStringExtra("numero_guardado");
-        }
+        // La configuración se lee siempre del fichero, en el hilo de trabajo:
+        // la actividad la guarda antes de arrancar el servicio
+        long bootReceivedAt = intent != null ? intent.getLongExtra(EXTRA_BOOT_RECEIVED_AT, -1) : -1;
+        workerHandler.post(() -> {
+            // Por si el permiso de teléfono se concedió después de onCreate
+            pipeline.startCallDetection();
+            AlertConfig config = loadConfig(this, configStore);
+            if (!config.isConfigured()) {
+                Log.i(TAG, "Sin número de confianza configurado");
+                stopForeground(STOP_FOREGROUND_REMOVE);
+                stopSelf(startId);
+                return;
+            }
+            applyConfig(config);
+            if (bootReceivedAt >= 0) {
+                recordBootToArmed(bootReceivedAt);
+            }
+            // Se reenvía lo que quedó pendiente antes del reinicio
+            if (pipeline.getSmsOutbox() != null) {
+                pipeline.getSmsOutbox().flushPending();
+            }
+        });
         return START_STICKY;
     }
 
+    private void startInForeground() {
+        NotificationManager notificationManager = getSystemService(NotificationManager.class);
+        if (notificationManager != null) {
+            notificationManager.createNotificationChannel(
+                    new NotificationChannel(CHANNEL_ID, "Location", NotificationManager.IMPORTANCE_LOW));
+        }
+        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Aplicación en segundo plano")
+                .setContentText("La aplicación está utilizando la ubicación en segundo plano")
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setOngoing(true)
+                .build();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+    }
+
+    /** Directorio de datos legible también antes del primer desbloqueo. */
+    static File deviceStorageDir(Context context) {
+        return context.createDeviceProtectedStorageContext().getFilesDir();
+    }
+
+    /**
+     * Lee la configuración guardada. Si el número solo está en las
+     * preferencias de versiones anteriores, y ya se pueden leer, se pasa al
+     * fichero. Hace E/S: nunca desde el hilo principal.
+     */
+    static AlertConfig loadConfig(Context context, ConfigStore store) {
+        try {
+            AlertConfig config = store.load();
+            UserManager userManager = context.getSystemService(UserManager.class);
+            if (!config.isConfigured() && userManager != null && userManager.isUserUnlocked()) {
+                String legacy = context.getSharedPreferences("MyPrefs", Context.MODE_PRIVATE)
+                        .getString(EXTRA_NUMBER, "");
+                if (!legacy.isEmpty()) {
+                    store.setTrustedNumber(legacy);
+                    config = store.get();
+                }
+            }
+            return config;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return AlertConfig.EMPTY;
+        }
+    }
+
+    // En el hilo de trabajo. El motor solo guarda la referencia; el resto son
+    // componentes de este mismo hilo
+    private void applyConfig(AlertConfig config) {
+        baseConfig = config;
+        groupTrust.setGroup(config.getTrustedGroup());
+        // Se relee siempre: tras desbloquear la agenda ya se puede consultar
+        groupTrust.refresh();
+        setContactsObserver(!groupTrust.getGroup().isEmpty());
+        publishConfig(groupTrust.merge(config));
+        locationScheduler.setBackgroundCadence(profiles.getProfile().backgroundIntervalMs(config.getBackgroundIntervalMs()),
+                config.getBackgroundSessionMs());
+        locationScheduler.setAccuracyBudget(config.getMaxAccuracyM(), LocationScheduler.DEFAULT_MAX_FIX_AGE_MS);
+    }
+
+    // En el hilo de trabajo, cada vez que cambia el perfil: nada se reinicia,
+    // solo se cambian las cadencias que usarán las siguientes peticiones
+    private void applyProfile(ProtectionProfiles.Profile profile) {
+        pipeline.applyProfile(profile);
+        if (locationScheduler != null && baseConfig != null) {
+            locationScheduler.setBackgroundCadence(profile.backgroundIntervalMs(baseConfig.getBackgroundIntervalMs()),
+                    baseConfig.getBackgroundSessionMs());
+        }
+        StringBuilder sb = new StringBuilder(256);
+        profiles.dump(sb);
+        for (String line : sb.toString().split("\n")) {
+            Log.i(TAG, line);
+        }
+    }
+
+    private void publishConfig(AlertConfig config) {
+        callEngine.setConfig(config);
+        journal.recordConfig(config);
+    }
+
+    // Lo dispara el observador de la agenda; solo se publica si cambian los números
+    private void refreshTrustedGroup() {
+        if (groupTrust.refresh()) {
+            Log.i(TAG, "Grupo de confianza: " + groupTrust.getMembers().size() + " números");
+            publishConfig(groupTrust.merge(baseConfig));
+        }
+    }
+
+    private void setContactsObserver(boolean enabled) {
+        if (enabled == contactsObserverRegistered) {
+            return;
+        }
+        ContentResolver resolver = getContentResolver();
+        if (enabled) {
+            try {
+                resolver.registerContentObserver(ContactsContract.AUTHORITY_URI, true, contactsObserver);
+                contactsObserverRegistered = true;
+            } catch (SecurityException e) {
+                e.printStackTrace();
+            }
+        } else {
+            resolver.unregisterContentObserver(contactsObserver);
+            contactsObserverRegistered = false;
+            timers.cancel(contactsTimer);
+        }
+    }
+
+    // Teléfonos de los miembros de un grupo de la agenda: ids del grupo, sus
+    // contactos y los números de estos. Solo al configurar o si la agenda cambia
+    private boolean readGroupNumbers(String groupTitle, List<AlertConfig.Contact> out) {
+        UserManager userManager = getSystemService(UserManager.class);
+        if (checkSelfPermission(Manifest.permission.READ_CONTACTS) != PackageManager.PERMISSION_GRANTED
+                || userManager == null || !userManager.isUserUnlocked()) {
+            return false;
+        }
+        ContentResolver resolver = getContentResolver();
+        try {
+            StringBuilder groupIds = new StringBuilder();
+            try (Cursor c = resolver.query(ContactsContract.Groups.CONTENT_URI,
+                    new String[]{ContactsContract.Groups._ID},
+                    ContactsContract.Groups.TITLE + "=? AND " + ContactsContract.Groups.DELETED + "=0",
+                    new String[]{groupTitle}, null)) {
+                if (c == null) {
+                    return false;
+                }
+                appendIds(c, groupIds);
+            }
+            if (groupIds.length() == 0) {
+                return true;
+            }
+            StringBuilder contactIds = new StringBuilder();
+            try (Cursor c = resolver.query(ContactsContract.Data.CONTENT_URI,
+                    new String[]{ContactsContract.Data.CONTACT_ID},
+                    ContactsContract.Data.MIMETYPE + "=? AND "
+                            + ContactsContract.CommonDataKinds.GroupMembership.GROUP_ROW_ID + " IN (" + groupIds + ")",
+                    new String[]{ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE}, null)) {
+                if (c == null) {
+                    return false;
+                }
+                appendIds(c, contactIds);
+            }
+            if (contactIds.length() == 0) {
+                return true;
+            }
+            try (Cursor c = resolver.query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                    new String[]{ContactsContract.CommonDataKinds.Phone.NUMBER,
+                            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME},
+                    ContactsContract.CommonDataKinds.Phone.CONTACT_ID + " IN (" + contactIds + ")",
+                    null, null)) {
+                if (c == null) {
+                    return false;
+                }
+                while (c.moveToNext()) {
+                    String number = c.getString(0);
+                    if (number != null && !number.trim().isEmpty()) {
+                        // Del grupo solo se fían las llamadas; la alerta no les llega
+                        out.add(new AlertConfig.Contact(number.trim(), c.getString(1),
+                                AlertConfig.FLAG_REDIAL));
+                    }
+                }
+            }
+            return true;
+        } catch (SecurityException | IllegalStateException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Lista "1,2,3" con la primera columna del cursor; son enteros, no hace falta escapar
+    private static void appendIds(Cursor c, StringBuilder out) {
+        while (c.moveToNext()) {
+            if (out.length() > 0) {
+                out.append(',');
+            }
+            out.append(c.getLong(0));
+        }
+    }
+
+    /** Configuración en uso; se puede leer desde cualquier hilo. */
+    AlertConfig getConfig() {
+        return callEngine.getConfig();
+    }
+
+    // Antes estos ficheros estaban en el almacenamiento de credenciales, que no
+    // se puede leer hasta desbloquear; se mueven la primera vez que se puede
+    private void migrateLegacyFiles() {
+        UserManager userManager = getSystemService(UserManager.class);
+        if (userManager == null || !userManager.isUserUnlocked()) {
+            return;
+        }
+        for (String name : LEGACY_FILES) {
+            File legacy = new File(getFilesDir(), name);
+            File target = new File(storageDir, name);
+            if (legacy.exists() && !target.exists() && !legacy.renameTo(target)) {
+                Log.w(TAG, "No se pudo mover " + legacy);
+            }
+        }
+    }
+
+    // Armado = número de confianza cargado y detección de llamadas registrada
+    private void recordBootToArmed(long bootReceivedAt) {
+        if (bootArmedRecorded) {
+            return;
+        }
+        if (!pipeline.isCallDetectionStarted()) {
+            Log.w(TAG, "Arranque sin permiso de teléfono: no se puede armar");
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        bootArmedRecorded = true;
+        metrics.recordNanos(AlertMetrics.Stage.BOOT_TO_ARMED, now * 1000000L);
+        metrics.recordNanos(AlertMetrics.Stage.BOOT_RECEIVER_TO_ARMED, (now - bootReceivedAt) * 1000000L);
+        Log.i(TAG, "Armado " + now + " ms tras el arranque, " + (now - bootReceivedAt) + " ms desde el aviso");
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        stopCallDetection();
-        stopLocationUpdates();
-        cancelMessageTimer();
+        unregisterReceiver(smsResultReceiver);
+        unregisterReceiver(batteryReceiver);
+        unregisterReceiver(timeZoneReceiver);
+        workerHandler.post(() -> {
+            pipeline.stopCallDetection();
+            stopMotionSensor();
+            stopLocationUpdates();
+            setContactsObserver(false);
+            // Aquí, con todo parado y antes de cerrar la bandeja que también se vuelca
+            dumpMetrics(false);
+            pipeline.closeOutbox();
+            trail.close();
+            journal.close();
+            sessionStore.close();
+            workerHandler.removeCallbacksAndMessages(null);
+        });
+        workerThread.quitSafely();
+        locationThread.quitSafely();
     }
 
-    private void startCallDetection() {
-        telephonyManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
-        phoneStateListener = new PhoneStateListener() {
-            @Override
-            public void onCallStateChanged(int state, String phoneNumber) {
-                switch (state) {
-                    case TelephonyManager.CALL_STATE_RINGING:
-                        // Handle incoming call
-                        if (phoneNumber.equals(incomingPhoneNumber)) {
-                            isCallIncoming = true;
-                            startMessageTimer();
-                        } else {
-                            isCallIncoming = false;
-                            showNumberMismatchNotification();
-                        }
-                        break;
-                    case TelephonyManager.CALL_STATE_OFFHOOK:
-                        // Handle call answered
-                        silenceCall();
-                        cancelMessageTimer();
-                        break;
-                    case TelephonyManager.CALL_STATE_IDLE:
-                        // Handle call ended
-                        cancelMessageTimer();
-                        break;
-                }
+    CallStateEngine getCallEngine() {
+        return callEngine;
+    }
+
+    /** Perfil de vigilancia; la actividad adapta a él sus peticiones de ubicación y reenvíos. */
+    ProtectionProfiles getProfiles() {
+        return profiles;
+    }
+
+    /** Presupuesto de batería; la actividad pide aquí el wake lock de proximidad. */
+    PowerBudget getPowerBudget() {
+        return powerBudget;
+    }
+
+    private final BroadcastReceiver timeZoneReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            timeZone = TimeZone.getDefault();
+        }
+    };
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+            if (level < 0 || scale <= 0) {
+                return;
             }
-        };
-        telephonyManager.listen(phoneStateListener, PhoneStateListener.LISTEN_CALL_STATE);
+            boolean plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            powerBudget.setBattery(level * 100 / scale, plugged);
+            profiles.setBattery(level * 100 / scale, plugged);
+        }
+    };
+
+    // Lo que depende del teléfono; el resto de la llamada lo lleva AlertPipeline
+    private final CallStateEngine.Listener serviceCallListener = new CallStateEngine.Listener() {
+        @Override
+        public void onIncomingCall(String number, boolean trusted) {
+            if (trusted) {
+                // Retardo de esta llamada, que las reglas pueden cambiar respecto al base
+                long alertDelayMs = callEngine.getCallPolicy().getAlertDelayMs(callEngine.getCallDecision());
+                locationScheduler.onTrustedRing(SystemClock.elapsedRealtime(), alertDelayMs + AlertPipeline.ALERT_FIX_WAIT_MS);
+            } else {
+                showNumberMismatchNotification();
+            }
+        }
+
+        @Override
+        public void onAlertDue(String number) {
+            if (callEngine.getCallPolicy().shouldMute(callEngine.getCallDecision())) {
+                muteMicrophone();
+            }
+        }
+
+        @Override
+        public void onCallAnswered(String number, boolean trusted, boolean alertSent) {
+            silenceCall();
+        }
+
+        @Override
+        public void onCallEnded(String number, boolean trusted, boolean answered) {
+        }
+    };
+
+    private final AlertPipeline.Host pipelineHost = new AlertPipeline.Host() {
+        @Override
+        public long elapsedRealtimeNanos() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+
+        @Override
+        public void onFixReceived(float accuracyM, long fixTimeMs) {
+            lastFixAccuracy = accuracyM;
+            lastFixTime = fixTimeMs;
+            workerHandler.removeCallbacks(fixToScheduler);
+            workerHandler.post(fixToScheduler);
+        }
+
+        @Override
+        public void onSessionChanged() {
+            saveSession();
+        }
+
+        @Override
+        public void showMessage(String text) {
+            showToast(text);
+        }
+
+        @Override
+        public void log(String text) {
+            Log.i(TAG, text);
+        }
+    };
+
+    // TelephonyCallback (API 31) no entrega el número entrante, que hace falta
+    // para saber si es de confianza; por eso se usa PhoneStateListener con
+    // Executor desde API 29 y, por debajo, creado en el Looper del hilo de
+    // trabajo. Se arranca y se para desde ese hilo.
+    private final class SystemTelephonySource implements TelephonySource {
+        private TelephonyManager telephonyManager;
+        private PhoneStateListener listener;
+
+        @Override
+        public boolean start(Sink sink) {
+            if (checkSelfPermission(Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
+                return false;
+            }
+            telephonyManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
+            listener = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                    ? new CallStateListener(workerExecutor, sink) : new CallStateListener(sink);
+            telephonyManager.listen(listener, PhoneStateListener.LISTEN_CALL_STATE);
+            return true;
+        }
+
+        @Override
+        public void stop() {
+            if (telephonyManager != null && listener != null) {
+                telephonyManager.listen(listener, PhoneStateListener.LISTEN_NONE);
+                listener = null;
+            }
+        }
+    }
+
+    private static final class CallStateListener extends PhoneStateListener {
+        private final TelephonySource.Sink sink;
+
+        CallStateListener(TelephonySource.Sink sink) {
+            super();
+            this.sink = sink;
+        }
+
+        @RequiresApi(api = Build.VERSION_CODES.Q)
+        CallStateListener(Executor executor, TelephonySource.Sink sink) {
+            super(executor);
+            this.sink = sink;
+        }
+
+        @Override
+        public void onCallStateChanged(int state, String phoneNumber) {
+            sink.onCallStateChanged(state, phoneNumber);
+        }
+    }
+
+    int getPendingTimerCount() {
+        return timers.pendingCount();
     }
 
-    private void stopCallDetection() {
-        if (telephonyManager != null && phoneStateListener != null) {
-            telephonyManager.listen(phoneStateListener, PhoneStateListener.LISTEN_NONE);
+    AlertMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Vuelca las métricas a logcat y, si se pide, a metrics.bin. Se puede
+     * llamar desde cualquier hilo.
+     */
+    void dumpMetrics(boolean toFile) {
+        refreshMetricGauges();
+        StringBuilder sb = new StringBuilder(1024);
+        metrics.dump(sb);
+        powerBudget.dump(sb);
+        profiles.dump(sb);
+        for (String line : sb.toString().split("\n")) {
+            Log.i(TAG, line);
+        }
+        if (toFile) {
+            writeMetricsFile();
         }
     }
 
-    private void startMessageTimer() {
-        cancelMessageTimer();
-        messageTimer = new CountDownTimer(7000, 1000) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-                // No se requiere acción durante el conteo
-            }
+    // adb shell dumpsys activity service com.example.actividad_llamar/.BackgroundService [fichero]
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        refreshMetricGauges();
+        StringBuilder sb = new StringBuilder(1024);
+        metrics.dump(sb);
+        powerBudget.dump(sb);
+        profiles.dump(sb);
+        writer.print(sb);
+        if (args != null && args.length > 0 && "fichero".equals(args[0])) {
+            File file = writeMetricsFile();
+            writer.println(file != null ? "Guardado en " + file : "No se pudo guardar");
+        }
+    }
 
-            @Override
-            public void onFinish() {
-                if (isCallIncoming) {
-                    sendDelayedMessage();
-                }
+    // Valores que ya acumulan otros componentes
+    private void refreshMetricGauges() {
+        pipeline.refreshMetricGauges();
+        if (locationScheduler != null) {
+            metrics.set(AlertMetrics.Counter.GPS_ON_MS, locationScheduler.getGpsOnTimeMs(SystemClock.elapsedRealtime()));
+        }
+        metrics.set(AlertMetrics.Counter.WAKELOCK_MS, powerBudget.getHeldMs(PowerBudget.Reason.PROXIMITY));
+        SmsOutbox smsOutbox = pipeline.getSmsOutbox();
+        if (smsOutbox != null) {
+            metrics.set(AlertMetrics.Counter.SMS_RETRIES, smsOutbox.getRetryCount());
+            metrics.set(AlertMetrics.Counter.SMS_ABANDONED, smsOutbox.getAbandonedCount());
+        }
+    }
+
+    private File writeMetricsFile() {
+        File file = new File(storageDir, "metrics.bin");
+        String label = Build.MANUFACTURER + " " + Build.MODEL + " API " + Build.VERSION.SDK_INT;
+        try {
+            label += " v" + getPackageManager().getPackageInfo(getPackageName(), 0).versionName;
+        } catch (PackageManager.NameNotFoundException ignored) {
+            // El propio paquete siempre existe
+        }
+        try {
+            metrics.writeTo(file, label, System.currentTimeMillis());
+            return file;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    AlertFanout getFanout() {
+        return pipeline.getFanout();
+    }
+
+    /**
+     * Pide permiso para llamar al número (ACTION_CALL). Devuelve false si ya
+     * se le ha llamado demasiadas veces seguidas. Desde cualquier hilo.
+     */
+    boolean allowCall(String phoneNumber) {
+        return pipeline.allowCall(phoneNumber);
+    }
+
+    /**
+     * Deja el SMS en la bandeja de salida persistente; se reintenta hasta
+     * entregarlo. Se puede llamar desde cualquier hilo.
+     */
+    void queueSms(String phoneNumber, String text) {
+        workerHandler.post(() -> pipeline.enqueueSms(phoneNumber, text));
+    }
+
+    // Solo si algo cambió: la telefonía repite estados y eso no se escribe
+    private void saveSession() {
+        long transitions = callEngine.getTransitionCount();
+        boolean alertQueued = pipeline.isAlertQueued();
+        if (transitions == savedTransitions && alertQueued == savedAlertQueued) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        session.state = callEngine.getState();
+        session.number = callEngine.getCallNumber();
+        session.trusted = callEngine.isTrustedCall();
+        session.profile = callEngine.getCallProfile();
+        long remaining = pipeline.getAlertRemainingMs();
+        session.alertDueAt = remaining >= 0 ? now + remaining : -1;
+        session.alertQueued = alertQueued;
+        try {
+            sessionStore.save(session, now, System.currentTimeMillis() - now);
+            savedTransitions = transitions;
+            savedAlertQueued = alertQueued;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void restoreSession() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            if (!sessionStore.open(session)) {
+                return;
             }
-        };
-        messageTimer.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (!session.isCurrent(now, System.currentTimeMillis() - now)) {
+            return;
+        }
+        pipeline.resume(session, now);
+        if (session.trusted && session.state == CallStateEngine.State.RINGING) {
+            long alertInMs = session.alertDueAt < 0 ? 0 : Math.max(0, session.alertDueAt - now);
+            locationScheduler.onTrustedRing(now, alertInMs + AlertPipeline.ALERT_FIX_WAIT_MS);
+        }
+        savedTransitions = callEngine.getTransitionCount();
+        savedAlertQueued = pipeline.isAlertQueued();
+        Log.i(TAG, "Llamada retomada (" + session.state + ") en "
+                + (SystemClock.elapsedRealtimeNanos() - start) / 1000 + " us");
     }
 
-    private void cancelMessageTimer() {
-        if (messageTimer != null) {
-            messageTimer.cancel();
-            messageTimer = null;
+    private void openJournal() {
+        try {
+            journal.open(System.currentTimeMillis());
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
-    private void sendDelayedMessage() {
-        if (checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            Location lastKnownLocation = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-            if (lastKnownLocation != null) {
-                double latitude = lastKnownLocation.getLatitude();
-                double longitude = lastKnownLocation.getLongitude();
-                sendMessageWithCoordinates(incomingPhoneNumber, latitude, longitude);
+    // Los assets van comprimidos dentro del APK y no se pueden proyectar en
+    // memoria: la primera vez se copian al almacenamiento del dispositivo
+    private void openGeocoder() {
+        File file = new File(storageDir, GEOCODER_FILE);
+        try {
+            if (!file.exists()) {
+                File tmp = new File(storageDir, GEOCODER_FILE + ".tmp");
+                try (InputStream in = getAssets().open(GEOCODER_FILE);
+                     FileOutputStream out = new FileOutputStream(tmp)) {
+                    byte[] buf = new byte[16 * 1024];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                    out.getFD().sync();
+                }
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("No se pudo renombrar " + tmp);
+                }
             }
+            OfflineGeocoder geocoder = OfflineGeocoder.open(file);
+            pipeline.setGeocoder(geocoder);
+            Log.i(TAG, "Índice de lugares: " + geocoder.getPlaceCount() + " lugares");
+        } catch (FileNotFoundException e) {
+            Log.i(TAG, "Sin índice de lugares; la alerta lleva solo coordenadas");
+        } catch (IOException e) {
+            e.printStackTrace();
+            // Copia dañada: se vuelve a copiar en el siguiente arranque
+            if (!file.delete()) {
+                Log.w(TAG, "No se pudo borrar " + file);
+            }
+        }
+    }
+
+    private void openTrail() {
+        try {
+            trail.open();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
-    private void sendMessageWithCoordinates(String phoneNumber, double latitude, double longitude) {
-        String message = "Mis coordenadas son: " + latitude + ", " + longitude;
-        String mapUrl = "https://www.google.com/maps?q=" + latitude + "," + longitude;
+    private void registerSmsResultReceiver() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ACTION_SMS_SENT);
+        filter.addAction(ACTION_SMS_DELIVERED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            registerReceiver(smsResultReceiver, filter, null, workerHandler, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            registerReceiver(smsResultReceiver, filter, null, workerHandler);
+        }
+    }
 
+    private void startSmsOutbox() {
         try {
-            String messageWithMapLink = message + "\n" + "Ver en Google Maps: " + mapUrl;
-            SmsManager smsManager = SmsManager.getDefault();
-            smsManager.sendTextMessage(phoneNumber, null, messageWithMapLink, null, null);
-
-            // Envío de mensaje de prueba
-            String testMessage = "Llamada detectada - Número: " + phoneNumber;
-            smsManager.sendTextMessage(phoneNumber, null, testMessage, null, null);
-            showToast("Mensaje de prueba enviado");
-        } catch (Exception e) {
+            pipeline.openOutbox(new File(storageDir, "sms_outbox.journal"));
+        } catch (IOException e) {
             e.printStackTrace();
-            showToast("Error al enviar el mensaje");
         }
     }
 
+    private final SmsSink smsSink = new SmsSink() {
+        @Override
+        public boolean send(long id, String destination, String text) {
+            // Los ids no se repiten y crecen sin límite: se quedan en 31 bits para
+            // que el código no salga negativo. Si al dar la vuelta coincidiera con
+            // un PendingIntent antiguo, FLAG_UPDATE_CURRENT le pone el id nuevo;
+            // el antiguo hace 2^31 envíos que se resolvió
+            int requestCode = (int) (id & 0x7fffffff);
+            Intent sent = new Intent(ACTION_SMS_SENT).setPackage(getPackageName()).putExtra(EXTRA_SMS_ID, id);
+            Intent delivered = new Intent(ACTION_SMS_DELIVERED).setPackage(getPackageName()).putExtra(EXTRA_SMS_ID, id);
+            int piFlags = PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT;
+            try {
+                SmsManager smsManager = SmsManager.getDefault();
+                PendingIntent sentIntent = PendingIntent.getBroadcast(BackgroundService.this, requestCode, sent, piFlags);
+                PendingIntent deliveredIntent = PendingIntent.getBroadcast(BackgroundService.this, requestCode, delivered, piFlags);
+                if (AlertMessageEncoder.segmentCount(text) == 1) {
+                    smsManager.sendTextMessage(destination, null, text, sentIntent, deliveredIntent);
+                } else {
+                    // Solo si no cabe en un segmento; el resultado se sigue por la última parte
+                    ArrayList<String> parts = smsManager.divideMessage(text);
+                    ArrayList<PendingIntent> sentIntents = new ArrayList<>();
+                    ArrayList<PendingIntent> deliveredIntents = new ArrayList<>();
+                    for (int i = 0; i < parts.size(); i++) {
+                        boolean last = i == parts.size() - 1;
+                        sentIntents.add(last ? sentIntent : null);
+                        deliveredIntents.add(last ? deliveredIntent : null);
+                    }
+                    smsManager.sendMultipartTextMessage(destination, null, parts, sentIntents, deliveredIntents);
+                }
+                return true;
+            } catch (Exception e) {
+                e.printStackTrace();
+                // Fuera de la llamada actual para no reentrar en la bandeja
+                workerHandler.post(() -> pipeline.onSmsSent(id, false));
+                return false;
+            }
+        }
+    };
+
+    private final BroadcastReceiver smsResultReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            long id = intent.getLongExtra(EXTRA_SMS_ID, -1);
+            if (ACTION_SMS_SENT.equals(intent.getAction())) {
+                pipeline.onSmsSent(id, getResultCode() == Activity.RESULT_OK);
+            } else if (ACTION_SMS_DELIVERED.equals(intent.getAction())) {
+                pipeline.onSmsDelivered(id);
+            }
+        }
+    };
+
+    SmsOutbox getSmsOutbox() {
+        return pipeline.getSmsOutbox();
+    }
+
     private void silenceCall() {
         AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
         if (audioManager != null) {
@@ -154,22 +953,237 @@ public class BackgroundService extends Service implements LocationListener {
         }
     }
 
+    private void muteMicrophone() {
+        AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        if (audioManager != null) {
+            audioManager.setMicrophoneMute(true);
+        }
+    }
+
+    // El GPS solo se enciende cuando lo pide LocationScheduler; el proveedor
+    // pasivo queda siempre registrado porque no consume batería propia
     private void startLocationUpdates() {
         locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
-        if (locationManager != null && checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 1000, 1, this);
+        locationScheduler = new LocationScheduler(new LocationScheduler.Host() {
+            @Override
+            public boolean startGps(boolean ring, long sessionMs) {
+                if (!locationSource.hasPermission()) {
+                    return false;
+                }
+                PowerBudget.Lease lease = powerBudget.acquire(
+                        ring ? PowerBudget.Reason.GPS_RING : PowerBudget.Reason.GPS_BACKGROUND,
+                        sessionMs, gpsRevoked);
+                if (lease == null) {
+                    Log.i(TAG, "GPS denegado por el presupuesto de batería");
+                    return false;
+                }
+                // Si ya estaba encendido solo se cambia el préstamo
+                if (gpsLease != null) {
+                    gpsLease.release();
+                }
+                gpsLease = lease;
+                return locationSource.startGps();
+            }
+
+            @Override
+            public void stopGps() {
+                releaseGps();
+                Log.d(TAG, "GPS apagado, tiempo encendido acumulado: "
+                        + locationScheduler.getGpsOnTimeMs(SystemClock.elapsedRealtime()) + " ms");
+            }
+
+            @Override
+            public void scheduleCheck(long delayMs) {
+                timers.schedule(locationCheckTimer, delayMs);
+            }
+        });
+        locationSource.start(pipeline);
+        locationScheduler.start(SystemClock.elapsedRealtime());
+    }
+
+    private void releaseGps() {
+        locationSource.stopGps();
+        if (gpsLease != null) {
+            gpsLease.release();
+            gpsLease = null;
         }
     }
 
+    // El presupuesto cortó la sesión; llega en el hilo de trabajo
+    private final Runnable gpsRevoked = new Runnable() {
+        @Override
+        public void run() {
+            Log.i(TAG, "Sesión de GPS cortada por el presupuesto de batería");
+            releaseGps();
+            locationScheduler.onGpsRevoked(SystemClock.elapsedRealtime());
+        }
+    };
+
     private void stopLocationUpdates() {
-        if (locationManager != null) {
-            locationManager.removeUpdates(this);
+        if (locationScheduler != null) {
+            locationScheduler.stop(SystemClock.elapsedRealtime());
+        }
+        locationSource.stop();
+    }
+
+    // El sensor es de un solo disparo y no mantiene despierto al procesador;
+    // la velocidad de los fixes cuenta también como movimiento
+    private void startMotionSensor() {
+        sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
+        motionSensor = sensorManager != null ? sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION) : null;
+        if (motionSensor != null) {
+            sensorManager.requestTriggerSensor(motionListener, motionSensor);
         }
     }
 
+    private void stopMotionSensor() {
+        if (motionSensor != null) {
+            sensorManager.cancelTriggerSensor(motionListener, motionSensor);
+        }
+    }
+
+    private final TriggerEventListener motionListener = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            workerHandler.post(motionSignal);
+            sensorManager.requestTriggerSensor(this, motionSensor);
+        }
+    };
+
+    private final Runnable motionSignal = new Runnable() {
+        @Override
+        public void run() {
+            profiles.onMotion();
+        }
+    };
+
+    /**
+     * El LocationManager detrás de {@link LocationSource}. El GPS usa el
+     * propio servicio como listener; la red y el pasivo, uno cada uno.
+     */
+    private final class SystemLocationSource implements LocationSource {
+        private LocationSource.Sink sink;
+        private boolean gpsOn;
+        private long gpsIntervalMs = ProtectionProfiles.Profile.BALANCED.getGpsIntervalMs();
+        private float gpsMinDistanceM = ProtectionProfiles.Profile.BALANCED.getGpsMinDistanceM();
+
+        final LocationListener networkListener = new LocationListener() {
+            @Override
+            public void onLocationChanged(Location location) {
+                deliver(location);
+            }
+        };
+
+        final LocationListener passiveListener = new LocationListener() {
+            @Override
+            public void onLocationChanged(Location location) {
+                deliver(location);
+            }
+        };
+
+        boolean hasPermission() {
+            return locationManager != null
+                    && checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+        }
+
+        @Override
+        public boolean start(LocationSource.Sink sink) {
+            this.sink = sink;
+            if (!hasPermission()) {
+                return false;
+            }
+            seed();
+            locationManager.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, 0, 0, passiveListener, locationLooper);
+            return true;
+        }
+
+        @Override
+        public void seed() {
+            if (sink == null || !hasPermission()) {
+                return;
+            }
+            for (String provider : new String[]{LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER, LocationManager.PASSIVE_PROVIDER}) {
+                Location last = locationManager.getLastKnownLocation(provider);
+                if (last != null) {
+                    deliver(last);
+                }
+            }
+        }
+
+        @Override
+        public boolean startGps() {
+            if (!hasPermission()) {
+                return false;
+            }
+            // Con el mismo listener se sustituye la petición anterior
+            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, gpsIntervalMs, gpsMinDistanceM,
+                    BackgroundService.this, locationLooper);
+            if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+                locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, gpsIntervalMs, gpsMinDistanceM,
+                        networkListener, locationLooper);
+            }
+            gpsOn = true;
+            return true;
+        }
+
+        @Override
+        public void setGpsCadence(long intervalMs, float minDistanceM) {
+            if (intervalMs == gpsIntervalMs && minDistanceM == gpsMinDistanceM) {
+                return;
+            }
+            gpsIntervalMs = intervalMs;
+            gpsMinDistanceM = minDistanceM;
+            if (gpsOn) {
+                startGps();
+            }
+        }
+
+        @Override
+        public void stopGps() {
+            gpsOn = false;
+            if (locationManager != null) {
+                locationManager.removeUpdates(BackgroundService.this);
+                locationManager.removeUpdates(networkListener);
+            }
+        }
+
+        @Override
+        public void stop() {
+            if (locationManager != null) {
+                locationManager.removeUpdates(passiveListener);
+            }
+        }
+
+        void deliver(Location location) {
+            if (location.hasSpeed() && location.getSpeed() >= ProtectionProfiles.MOVING_SPEED_MPS) {
+                workerHandler.removeCallbacks(motionSignal);
+                workerHandler.post(motionSignal);
+            }
+            LocationSource.Sink s = sink;
+            if (s != null) {
+                s.onFix(LocationFixCache.providerId(location.getProvider()),
+                        location.getLatitude(), location.getLongitude(),
+                        location.hasAccuracy() ? location.getAccuracy() : LocationFixCache.UNKNOWN_ACCURACY_M,
+                        location.getElapsedRealtimeNanos() / 1000000, location.getTime());
+            }
+        }
+    }
+
+    BreadcrumbTrail getTrail() {
+        return trail;
+    }
+
+    LocationFixCache getLocationCache() {
+        return pipeline.getLocationCache();
+    }
+
+    long getGpsOnTimeMs() {
+        return locationScheduler.getGpsOnTimeMs(SystemClock.elapsedRealtime());
+    }
+
     @Override
     public void onLocationChanged(Location location) {
-        // Handle location updates if needed
+        locationSource.deliver(location);
     }
 
     @Override
@@ -192,11 +1206,13 @@ public class BackgroundService extends Service implements LocationListener {
     }
 
     private void showToast(String message) {
-        if (toast != null) {
-            toast.cancel();
-        }
-        toast = Toast.makeText(this, message, Toast.LENGTH_SHORT);
-        toast.show();
+        mainHandler.post(() -> {
+            if (toast != null) {
+                toast.cancel();
+            }
+            toast = Toast.makeText(this, message, Toast.LENGTH_SHORT);
+            toast.show();
+        });
     }
 }
 
@@ -0,0 +1,30 @@
+package com.example.actividad_llamar;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+/**
+ * Arranca BackgroundService al encender el teléfono, ya desde
+ * LOCKED_BOOT_COMPLETED, sin pasar por ninguna actividad. No hace E/S: la
+ * configuración la lee el servicio en su hilo de trabajo.
+ */
+public class BootReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        boolean boot = Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action)
+                || Intent.ACTION_BOOT_COMPLETED.equals(action);
+        if (!boot && !Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            return;
+        }
+        Intent service = new Intent(context, BackgroundService.class);
+        if (boot) {
+            // elapsedRealtime cuenta desde el arranque: es la latencia hasta aquí
+            service.putExtra(BackgroundService.EXTRA_BOOT_RECEIVED_AT, SystemClock.elapsedRealtime());
+        }
+        context.startForegroundService(service);
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.actividad_llamar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Rastro de las últimas posiciones en un fichero circular proyectado en
+ * memoria. El tamaño es fijo, no se crean objetos por posición y el rastro
+ * sobrevive a la muerte del proceso.
+ *
+ * El fichero se divide en huecos de 8 bytes cuyo primer byte indica el tipo.
+ * Cada posición es un delta (2 bytes de latitud, 2 de longitud en 1e-6 grados
+ * y 2 de segundos) respecto a la anterior; cada {@link #KEYFRAME_INTERVAL}
+ * posiciones, o si el delta no cabe, se escribe una posición completa en tres
+ * huecos. Al leer se empieza por la primera completa que quede en el anillo.
+ *
+ * Los tiempos son de reloj de pared (UTC, ms) para que sigan valiendo tras
+ * reiniciar el teléfono.
+ */
+public final class BreadcrumbTrail {
+
+    public interface Visitor {
+        void onPoint(double latitude, double longitude, int accuracyM, long timeMs);
+    }
+
+    public static final int DEFAULT_SLOTS = 4096;
+    public static final int KEYFRAME_INTERVAL = 32;
+    public static final int MAX_SUMMARY_POINTS = 32;
+    // 1e-4 grados, unos 11 m
+    public static final int SUMMARY_UNIT_E6 = 100;
+
+    private static final int MAGIC = 0x42435431; // "BCT1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 8;
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_SLOTS = 8;
+    private static final int OFF_HEAD = 12;
+    private static final int OFF_USED = 16;
+    private static final int OFF_EPOCH = 24;
+
+    private static final byte SLOT_EMPTY = 0;
+    private static final byte SLOT_KEY = 1;
+    private static final byte SLOT_CONT = 2;
+    private static final byte SLOT_DELTA = 3;
+    private static final byte SLOT_PAD = 4;
+
+    private static final int UNKNOWN_ACCURACY = 0xFF;
+
+    private final File file;
+    private final int slotCount;
+    private RandomAccessFile raf;
+    private MappedByteBuffer buf;
+
+    private int head;
+    private int used;
+    private long epochSec;
+
+    // Última posición escrita, en punto fijo, para calcular el siguiente delta
+    private boolean haveLast;
+    private int lastLatE6;
+    private int lastLonE6;
+    private long lastSec;
+    private int sinceKey;
+    private long appended;
+
+    // Resumen: anillo con los últimos puntos retenidos, reutilizado en cada lectura
+    private final int[] summaryLat = new int[MAX_SUMMARY_POINTS];
+    private final int[] summaryLon = new int[MAX_SUMMARY_POINTS];
+    private int summaryCount;
+    private int summaryMinStepE6;
+    private final Visitor summaryCollector = (latitude, longitude, accuracyM, timeMs) -> collect(latitude, longitude);
+
+    public BreadcrumbTrail(File file) {
+        this(file, DEFAULT_SLOTS);
+    }
+
+    public BreadcrumbTrail(File file, int slotCount) {
+        if (slotCount < KEYFRAME_INTERVAL) {
+            throw new IllegalArgumentException("slotCount demasiado pequeño");
+        }
+        this.file = file;
+        this.slotCount = slotCount;
+    }
+
+    /** Proyecta el fichero; si no existe o no es válido se empieza uno vacío. */
+    public synchronized void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        long size = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+        boolean fresh = raf.length() != size;
+        raf.setLength(size);
+        buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (!fresh && buf.getInt(OFF_MAGIC) == MAGIC && buf.getInt(OFF_VERSION) == VERSION
+                && buf.getInt(OFF_SLOTS) == slotCount) {
+            head = buf.getInt(OFF_HEAD);
+            used = buf.getInt(OFF_USED);
+            epochSec = buf.getLong(OFF_EPOCH);
+            if (head >= 0 && head < slotCount && used >= 0 && used <= slotCount) {
+                // Sin la última posición en memoria, la siguiente va completa
+                haveLast = false;
+                return;
+            }
+        }
+        reset();
+    }
+
+    public synchronized void close() {
+        if (buf != null) {
+            buf.force();
+            buf = null;
+        }
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            raf = null;
+        }
+    }
+
+    /** Vuelca a disco lo escrito; el proceso puede morir sin esto, el teléfono no. */
+    public synchronized void flush() {
+        if (buf != null) {
+            buf.force();
+        }
+    }
+
+    public synchronized void clear() {
+        if (buf != null) {
+            reset();
+        }
+    }
+
+    /** Añade una posición. Se ignoran las que no son más nuevas que la última. */
+    public synchronized void append(double latitude, double longitude, float accuracyM, long timeMs) {
+        if (buf == null) {
+            return;
+        }
+        int latE6 = (int) Math.round(latitude * 1e6);
+        int lonE6 = (int) Math.round(longitude * 1e6);
+        int acc = accuracyM <= 0 ? UNKNOWN_ACCURACY : Math.min(UNKNOWN_ACCURACY - 1, Math.round(accuracyM));
+        if (used == 0 && !haveLast) {
+            epochSec = timeMs / 1000;
+            buf.putLong(OFF_EPOCH, epochSec);
+        }
+        long sec = timeMs / 1000 - epochSec;
+        if (sec < 0 || sec > Integer.MAX_VALUE) {
+            return;
+        }
+        if (haveLast) {
+            long dt = sec - lastSec;
+            int dLat = latE6 - lastLatE6;
+            int dLon = lonE6 - lastLonE6;
+            if (dt <= 0) {
+                return;
+            }
+            if (sinceKey < KEYFRAME_INTERVAL && dt <= 0xFFFF
+                    && dLat >= Short.MIN_VALUE && dLat <= Short.MAX_VALUE
+                    && dLon >= Short.MIN_VALUE && dLon <= Short.MAX_VALUE) {
+                int pos = position(reserve(1));
+                buf.put(pos, SLOT_DELTA);
+                buf.put(pos + 1, (byte) acc);
+                buf.putShort(pos + 2, (short) dLat);
+                buf.putShort(pos + 4, (short) dLon);
+                buf.putShort(pos + 6, (short) dt);
+                commit(1);
+                remember(latE6, lonE6, sec);
+                sinceKey++;
+                return;
+            }
+        }
+        int first = reserve(3);
+        int pos = position(first);
+        buf.put(pos, SLOT_KEY);
+        buf.put(pos + 1, (byte) acc);
+        buf.putShort(pos + 2, (short) 0);
+        buf.putInt(pos + 4, (int) sec);
+        buf.put(pos + SLOT_SIZE, SLOT_CONT);
+        buf.putInt(pos + SLOT_SIZE + 4, latE6);
+        buf.put(pos + 2 * SLOT_SIZE, SLOT_CONT);
+        buf.putInt(pos + 2 * SLOT_SIZE + 4, lonE6);
+        commit(3);
+        remember(latE6, lonE6, sec);
+        sinceKey = 0;
+    }
+
+    /**
+     * Recorre en una pasada, de la más antigua a la más reciente, las
+     * posiciones con tiempo igual o posterior a {@code sinceMs}. Devuelve
+     * cuántas se visitaron.
+     */
+    public synchronized int read(long sinceMs, Visitor visitor) {
+        if (buf == null || used == 0) {
+            return 0;
+        }
+        int start = head - used;
+        if (start < 0) {
+            start += slotCount;
+        }
+        boolean haveBase = false;
+        int latE6 = 0;
+        int lonE6 = 0;
+        long sec = 0;
+        int visited = 0;
+        for (int i = 0; i < used; i++) {
+            int slot = start + i;
+            if (slot >= slotCount) {
+                slot -= slotCount;
+            }
+            int pos = position(slot);
+            byte kind = buf.get(pos);
+            int acc = buf.get(pos + 1) & 0xFF;
+            if (kind == SLOT_KEY) {
+                // Las completas nunca se parten al dar la vuelta
+                if (i + 2 >= used || slot + 2 >= slotCount
+                        || buf.get(pos + SLOT_SIZE) != SLOT_CONT || buf.get(pos + 2 * SLOT_SIZE) != SLOT_CONT) {
+                    continue;
+                }
+                sec = buf.getInt(pos + 4);
+                latE6 = buf.getInt(pos + SLOT_SIZE + 4);
+                lonE6 = buf.getInt(pos + 2 * SLOT_SIZE + 4);
+                haveBase = true;
+                i += 2;
+            } else if (kind == SLOT_DELTA && haveBase) {
+                latE6 += buf.getShort(pos + 2);
+                lonE6 += buf.getShort(pos + 4);
+                sec += buf.getShort(pos + 6) & 0xFFFF;
+            } else {
+                // Relleno, resto de una completa ya pisada o delta sin base
+                continue;
+            }
+            long timeMs = (epochSec + sec) * 1000;
+            if (timeMs >= sinceMs) {
+                visitor.onPoint(latE6 / 1e6, lonE6 / 1e6, acc == UNKNOWN_ACCURACY ? -1 : acc, timeMs);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Resumen compacto del rastro desde {@code sinceMs} para adjuntarlo a la
+     * alerta. Se quedan los puntos separados al menos {@code minStepUnits}
+     * unidades de 1e-4 grados y, de ellos, los más recientes. En {@code out}
+     * se dejan pares (dLat, dLon) en esas unidades: el primero respecto a
+     * {@code originLat}/{@code originLon} y cada uno de los siguientes
+     * respecto al anterior, yendo hacia atrás en el tiempo. Devuelve el
+     * número de pares.
+     */
+    public synchronized int summarize(long sinceMs, double originLat, double originLon,
+                                      int minStepUnits, int[] out) {
+        summaryCount = 0;
+        summaryMinStepE6 = Math.max(1, minStepUnits) * SUMMARY_UNIT_E6;
+        read(sinceMs, summaryCollector);
+        int kept = Math.min(summaryCount, Math.min(MAX_SUMMARY_POINTS, out.length / 2));
+        int prevLat = (int) Math.round(originLat * 1e6) / SUMMARY_UNIT_E6;
+        int prevLon = (int) Math.round(originLon * 1e6) / SUMMARY_UNIT_E6;
+        int pairs = 0;
+        for (int n = 0; n < kept; n++) {
+            int idx = (summaryCount - 1 - n) % MAX_SUMMARY_POINTS;
+            int lat = summaryLat[idx] / SUMMARY_UNIT_E6;
+            int lon = summaryLon[idx] / SUMMARY_UNIT_E6;
+            if (lat == prevLat && lon == prevLon) {
+                continue;
+            }
+            out[2 * pairs] = lat - prevLat;
+            out[2 * pairs + 1] = lon - prevLon;
+            pairs++;
+            prevLat = lat;
+            prevLon = lon;
+        }
+        return pairs;
+    }
+
+    public synchronized int getUsedSlots() {
+        return used;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public synchronized long getAppendedCount() {
+        return appended;
+    }
+
+    private void collect(double latitude, double longitude) {
+        int latE6 = (int) Math.round(latitude * 1e6);
+        int lonE6 = (int) Math.round(longitude * 1e6);
+        if (summaryCount > 0) {
+            int last = (summaryCount - 1) % MAX_SUMMARY_POINTS;
+            if (Math.abs(latE6 - summaryLat[last]) < summaryMinStepE6
+                    && Math.abs(lonE6 - summaryLon[last]) < summaryMinStepE6) {
+                return;
+            }
+        }
+        int idx = summaryCount % MAX_SUMMARY_POINTS;
+        summaryLat[idx] = latE6;
+        summaryLon[idx] = lonE6;
+        summaryCount++;
+    }
+
+    // Devuelve el primer hueco para n huecos contiguos; si no caben antes del
+    // final se rellena y se vuelve al principio
+    private int reserve(int n) {
+        if (head + n > slotCount) {
+            while (head < slotCount) {
+                buf.put(position(head), SLOT_PAD);
+                head++;
+                used = Math.min(slotCount, used + 1);
+            }
+            head = 0;
+        }
+        return head;
+    }
+
+    // El contenido se escribe antes que la cabecera: si el proceso muere en
+    // medio, el hueco a medias simplemente no cuenta
+    private void commit(int n) {
+        head += n;
+        if (head == slotCount) {
+            head = 0;
+        }
+        used = Math.min(slotCount, used + n);
+        buf.putInt(OFF_HEAD, head);
+        buf.putInt(OFF_USED, used);
+        appended++;
+    }
+
+    private void remember(int latE6, int lonE6, long sec) {
+        haveLast = true;
+        lastLatE6 = latE6;
+        lastLonE6 = lonE6;
+        lastSec = sec;
+    }
+
+    private void reset() {
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            buf.put(i, (byte) 0);
+        }
+        buf.putInt(OFF_MAGIC, MAGIC);
+        buf.putInt(OFF_VERSION, VERSION);
+        buf.putInt(OFF_SLOTS, slotCount);
+        buf.put(position(0), SLOT_EMPTY);
+        head = 0;
+        used = 0;
+        epochSec = 0;
+        haveLast = false;
+        sinceKey = 0;
+    }
+
+    private static int position(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
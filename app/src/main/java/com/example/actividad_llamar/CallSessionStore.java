@@ -0,0 +1,202 @@
+package com.example.actividad_llamar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Instantánea de la llamada en curso, para retomarla si Android mata el
+ * proceso a mitad de llamada. Se escribe en cada transición: dos huecos
+ * fijos que se alternan, cada uno con número de secuencia y CRC, así que una
+ * escritura a medias deja intacta la anterior. Es una sola escritura
+ * posicional sin fsync: la caché de páginas sobrevive a la muerte del
+ * proceso, y un apagón termina también la llamada.
+ *
+ * Los tiempos son de elapsedRealtime; junto a ellos se guarda la hora de
+ * arranque del sistema para descartar instantáneas de antes de reiniciar.
+ */
+public final class CallSessionStore {
+
+    /** Estado guardado; se reutiliza para no crear objetos en cada transición. */
+    public static final class Snapshot {
+        public CallStateEngine.State state = CallStateEngine.State.IDLE;
+        public String number;
+        public boolean trusted;
+        public int profile = TrustedNumberIndex.NO_PROFILE;
+        // Cuándo vence la alerta armada, o -1 si no hay ninguna
+        public long alertDueAt = -1;
+        // El SMS de alerta ya se repartió: no hay que repetirlo
+        public boolean alertQueued;
+        long savedAt;
+        long bootWallTime;
+
+        /**
+         * Si la instantánea es de este arranque y lo bastante reciente como
+         * para que la llamada pueda seguir en curso.
+         */
+        public boolean isCurrent(long now, long bootWallTime) {
+            return state != CallStateEngine.State.IDLE
+                    && savedAt <= now && now - savedAt <= MAX_AGE_MS
+                    && Math.abs(bootWallTime - this.bootWallTime) <= BOOT_TOLERANCE_MS;
+        }
+
+        void clear() {
+            state = CallStateEngine.State.IDLE;
+            number = null;
+            trusted = false;
+            profile = TrustedNumberIndex.NO_PROFILE;
+            alertDueAt = -1;
+            alertQueued = false;
+        }
+    }
+
+    static final long MAX_AGE_MS = 2 * 60 * 60 * 1000;
+    // El reloj de pared puede corregirse un poco entre una escritura y otra
+    static final long BOOT_TOLERANCE_MS = 60000;
+
+    private static final int MAGIC = 0x43535331; // "CSS1"
+    private static final int VERSION = 1;
+    private static final int SLOT_BYTES = 128;
+    private static final int MAX_NUMBER_BYTES = 64;
+    private static final int CRC_AT = SLOT_BYTES - 4;
+    private static final int FLAG_TRUSTED = 1;
+    private static final int FLAG_ALERT_QUEUED = 2;
+    private static final CallStateEngine.State[] STATES = CallStateEngine.State.values();
+
+    private final File file;
+    private final ByteBuffer slot = ByteBuffer.allocateDirect(SLOT_BYTES);
+    private final byte[] bytes = new byte[SLOT_BYTES];
+    private final CRC32 crc = new CRC32();
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long seq;
+
+    public CallSessionStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Abre el fichero y deja en {@code out} la instantánea válida más
+     * reciente. Devuelve false si no hay ninguna.
+     */
+    public synchronized boolean open(Snapshot out) throws IOException {
+        if (channel == null) {
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+        }
+        out.clear();
+        long best = -1;
+        int bestSlot = -1;
+        for (int i = 0; i < 2; i++) {
+            long s = readSlot(i);
+            if (s > best) {
+                best = s;
+                bestSlot = i;
+            }
+        }
+        if (bestSlot < 0) {
+            seq = 0;
+            return false;
+        }
+        seq = best;
+        readSlot(bestSlot);
+        decode(out);
+        return true;
+    }
+
+    /** Guarda la instantánea en el hueco que no tiene la última. */
+    public synchronized void save(Snapshot s, long now, long bootWallTime) throws IOException {
+        if (channel == null) {
+            throw new IOException("Instantánea de llamada sin abrir");
+        }
+        s.savedAt = now;
+        s.bootWallTime = bootWallTime;
+        seq++;
+        byte[] number = s.number == null ? new byte[0] : s.number.getBytes(StandardCharsets.UTF_8);
+        int numberLength = Math.min(number.length, MAX_NUMBER_BYTES);
+        slot.clear();
+        slot.putInt(MAGIC);
+        slot.putInt(VERSION);
+        slot.putLong(seq);
+        slot.putLong(now);
+        slot.putLong(bootWallTime);
+        slot.put((byte) s.state.ordinal());
+        slot.put((byte) ((s.trusted ? FLAG_TRUSTED : 0) | (s.alertQueued ? FLAG_ALERT_QUEUED : 0)));
+        slot.putShort((short) s.profile);
+        slot.putLong(s.alertDueAt);
+        slot.put((byte) numberLength);
+        slot.put(number, 0, numberLength);
+        while (slot.position() < CRC_AT) {
+            slot.put((byte) 0);
+        }
+        crc.reset();
+        for (int i = 0; i < CRC_AT; i++) {
+            crc.update(slot.get(i));
+        }
+        slot.putInt((int) crc.getValue());
+        slot.flip();
+        long position = (seq & 1) * SLOT_BYTES;
+        while (slot.hasRemaining()) {
+            position += channel.write(slot, position);
+        }
+    }
+
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            raf.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        raf = null;
+        channel = null;
+    }
+
+    // Deja el hueco en bytes y devuelve su secuencia, o -1 si no es válido
+    private long readSlot(int index) throws IOException {
+        slot.clear();
+        long position = (long) index * SLOT_BYTES;
+        while (slot.hasRemaining()) {
+            int n = channel.read(slot, position + slot.position());
+            if (n < 0) {
+                return -1;
+            }
+        }
+        slot.flip();
+        slot.get(bytes);
+        crc.reset();
+        crc.update(bytes, 0, CRC_AT);
+        ByteBuffer b = ByteBuffer.wrap(bytes);
+        if (b.getInt(0) != MAGIC || b.getInt(4) != VERSION || b.getInt(CRC_AT) != (int) crc.getValue()) {
+            return -1;
+        }
+        return b.getLong(8);
+    }
+
+    private void decode(Snapshot out) {
+        ByteBuffer b = ByteBuffer.wrap(bytes);
+        b.position(16);
+        out.savedAt = b.getLong();
+        out.bootWallTime = b.getLong();
+        int state = b.get() & 0xFF;
+        int flags = b.get() & 0xFF;
+        out.profile = b.getShort();
+        out.alertDueAt = b.getLong();
+        int numberLength = b.get() & 0xFF;
+        out.state = state < STATES.length ? STATES[state] : CallStateEngine.State.IDLE;
+        out.trusted = (flags & FLAG_TRUSTED) != 0;
+        out.alertQueued = (flags & FLAG_ALERT_QUEUED) != 0;
+        out.number = numberLength == 0 ? null
+                : new String(bytes, b.position(), Math.min(numberLength, MAX_NUMBER_BYTES), StandardCharsets.UTF_8);
+    }
+}
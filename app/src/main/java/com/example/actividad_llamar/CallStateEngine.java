@@ -0,0 +1,276 @@
+package com.example.actividad_llamar;
+
+/**
+ * Máquina de estados única para las llamadas entrantes. La alimenta un solo
+ * listener de telefonía (el de {@link BackgroundService}) y el resto de
+ * componentes solo se suscriben a sus eventos.
+ *
+ * No depende de clases de Android para poder probarse en la JVM y no reserva
+ * memoria en las transiciones. Debe usarse siempre desde el mismo hilo; los
+ * listeners se pueden añadir o quitar desde cualquiera y se les avisa en ese hilo.
+ */
+public final class CallStateEngine {
+
+    // Mismos valores que TelephonyManager.CALL_STATE_*
+    public static final int CALL_STATE_IDLE = 0;
+    public static final int CALL_STATE_RINGING = 1;
+    public static final int CALL_STATE_OFFHOOK = 2;
+
+    public static final long DEFAULT_ALERT_DELAY_MS = 7000;
+
+    public enum State {
+        IDLE,
+        RINGING,
+        ALERTED,
+        ANSWERED,
+        OUTGOING
+    }
+
+    public interface Listener {
+        /**
+         * Puede llegar dos veces en la misma llamada: la telefonía de API 29+
+         * avisa primero sin número y luego con él; si con el número la
+         * llamada pasa a ser de confianza, se repite con {@code trusted}.
+         */
+        void onIncomingCall(String number, boolean trusted);
+
+        void onAlertDue(String number);
+
+        void onCallAnswered(String number, boolean trusted, boolean alertSent);
+
+        void onCallEnded(String number, boolean trusted, boolean answered);
+    }
+
+    /** Temporizador de un solo disparo que llama a {@link #onAlertTimerExpired()}. */
+    public interface AlertTimer {
+        void arm(long delayMs);
+
+        void disarm();
+    }
+
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
+    private final AlertTimer alertTimer;
+    private final AlertPolicy.DayClock dayClock;
+    private volatile Listener[] listeners = NO_LISTENERS;
+
+    // Se publica por referencia desde cualquier hilo; cada timbre lee una sola vez
+    private volatile AlertConfig config = AlertConfig.EMPTY;
+
+    private State state = State.IDLE;
+    private String callNumber;
+    private boolean trusted;
+    private int callProfile = TrustedNumberIndex.NO_PROFILE;
+    private AlertPolicy callPolicy = AlertConfig.EMPTY.getPolicy();
+    private int callDecision = -1;
+    private long transitions;
+
+    /** Sin reloj de pared: solo se aplican las reglas de todo el día. */
+    public CallStateEngine(AlertTimer alertTimer) {
+        this(alertTimer, AlertPolicy.NO_DAY_CLOCK);
+    }
+
+    public CallStateEngine(AlertTimer alertTimer, AlertPolicy.DayClock dayClock) {
+        this.alertTimer = alertTimer;
+        this.dayClock = dayClock;
+    }
+
+    /** Sustituye la configuración; se puede llamar desde cualquier hilo. La llamada en curso no cambia. */
+    public void setConfig(AlertConfig config) {
+        this.config = config;
+    }
+
+    public AlertConfig getConfig() {
+        return config;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getCallNumber() {
+        return callNumber;
+    }
+
+    public boolean isTrustedCall() {
+        return trusted;
+    }
+
+    /** Perfil del llamante en curso, o {@link TrustedNumberIndex#NO_PROFILE}. */
+    public int getCallProfile() {
+        return callProfile;
+    }
+
+    /**
+     * Reglas vigentes cuando empezó la llamada en curso; junto con
+     * {@link #getCallDecision()} dicen el retardo, si silenciar y si volver a llamar.
+     */
+    public AlertPolicy getCallPolicy() {
+        return callPolicy;
+    }
+
+    /** Decisión de {@link #getCallPolicy()} para la llamada en curso, o -1 si no hay. */
+    public int getCallDecision() {
+        return callDecision;
+    }
+
+    public long getTransitionCount() {
+        return transitions;
+    }
+
+    public synchronized void addListener(Listener listener) {
+        for (Listener l : listeners) {
+            if (l == listener) {
+                return;
+            }
+        }
+        Listener[] copy = new Listener[listeners.length + 1];
+        System.arraycopy(listeners, 0, copy, 0, listeners.length);
+        copy[listeners.length] = listener;
+        listeners = copy;
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                if (listeners.length == 1) {
+                    listeners = NO_LISTENERS;
+                } else {
+                    Listener[] copy = new Listener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, copy, 0, i);
+                    System.arraycopy(listeners, i + 1, copy, i, listeners.length - i - 1);
+                    listeners = copy;
+                }
+                return;
+            }
+        }
+    }
+
+    /** Entrada desde el listener de telefonía. */
+    public void onCallStateChanged(int callState, String phoneNumber) {
+        switch (callState) {
+            case CALL_STATE_RINGING:
+                if (state == State.IDLE) {
+                    startIncomingCall(phoneNumber);
+                } else if (state == State.RINGING && !trusted
+                        && phoneNumber != null && !phoneNumber.isEmpty()) {
+                    identifyCaller(phoneNumber);
+                }
+                break;
+            case CALL_STATE_OFFHOOK:
+                if (state == State.RINGING || state == State.ALERTED) {
+                    boolean alertSent = state == State.ALERTED;
+                    alertTimer.disarm();
+                    moveTo(State.ANSWERED);
+                    Listener[] ls = listeners;
+                    for (Listener l : ls) {
+                        l.onCallAnswered(callNumber, trusted, alertSent);
+                    }
+                } else if (state == State.IDLE) {
+                    moveTo(State.OUTGOING);
+                }
+                break;
+            case CALL_STATE_IDLE:
+                endCall();
+                break;
+        }
+    }
+
+    /**
+     * Retoma una llamada guardada antes de que muriera el proceso, sin volver
+     * a avisar del timbre. Solo desde IDLE. Si la alerta estaba armada se
+     * vuelve a armar con lo que le quedaba (o ya, si venció mientras tanto);
+     * si ya se había disparado no se repite.
+     *
+     * @param alertInMs lo que le quedaba a la alerta, o negativo si no estaba armada
+     */
+    public void restore(State saved, String number, boolean trusted, int profile, long alertInMs) {
+        if (state != State.IDLE || saved == State.IDLE) {
+            return;
+        }
+        callNumber = number;
+        this.trusted = trusted;
+        callProfile = profile;
+        decide(config);
+        moveTo(saved);
+        if (saved == State.RINGING && trusted && alertInMs >= 0) {
+            alertTimer.arm(alertInMs);
+        }
+    }
+
+    /** Lo invoca el {@link AlertTimer} cuando vence el plazo de alerta. */
+    public void onAlertTimerExpired() {
+        if (state != State.RINGING || !trusted) {
+            return;
+        }
+        moveTo(State.ALERTED);
+        Listener[] ls = listeners;
+        for (Listener l : ls) {
+            l.onAlertDue(callNumber);
+        }
+    }
+
+    private void startIncomingCall(String phoneNumber) {
+        AlertConfig c = config;
+        callNumber = phoneNumber;
+        callProfile = c.getTrustedNumbers().profileOf(phoneNumber);
+        trusted = callProfile != TrustedNumberIndex.NO_PROFILE;
+        decide(c);
+        moveTo(State.RINGING);
+        if (trusted) {
+            alertTimer.arm(callPolicy.getAlertDelayMs(callDecision));
+        }
+        Listener[] ls = listeners;
+        for (Listener l : ls) {
+            l.onIncomingCall(phoneNumber, trusted);
+        }
+    }
+
+    // Segundo RINGING con el número que faltaba en el primero
+    private void identifyCaller(String phoneNumber) {
+        AlertConfig c = config;
+        int profile = c.getTrustedNumbers().profileOf(phoneNumber);
+        callNumber = phoneNumber;
+        if (profile == TrustedNumberIndex.NO_PROFILE) {
+            return;
+        }
+        callProfile = profile;
+        trusted = true;
+        decide(c);
+        alertTimer.arm(callPolicy.getAlertDelayMs(callDecision));
+        Listener[] ls = listeners;
+        for (Listener l : ls) {
+            l.onIncomingCall(phoneNumber, true);
+        }
+    }
+
+    private void endCall() {
+        State previous = state;
+        if (previous == State.IDLE) {
+            return;
+        }
+        alertTimer.disarm();
+        moveTo(State.IDLE);
+        if (previous != State.OUTGOING) {
+            boolean answered = previous == State.ANSWERED;
+            Listener[] ls = listeners;
+            for (Listener l : ls) {
+                l.onCallEnded(callNumber, trusted, answered);
+            }
+        }
+        callNumber = null;
+        trusted = false;
+        callProfile = TrustedNumberIndex.NO_PROFILE;
+        callDecision = -1;
+    }
+
+    private void decide(AlertConfig c) {
+        callPolicy = c.getPolicy();
+        callDecision = callPolicy.decide(callProfile, dayClock.minuteOfDay());
+    }
+
+    private void moveTo(State next) {
+        state = next;
+        transitions++;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.actividad_llamar;
+
+/**
+ * Reloj monotónico en milisegundos. En el dispositivo es
+ * {@code SystemClock::elapsedRealtime}; en las pruebas, un reloj manual.
+ */
+public interface Clock {
+    long elapsedRealtime();
+}
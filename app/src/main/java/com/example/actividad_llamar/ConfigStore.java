@@ -0,0 +1,174 @@
+package com.example.actividad_llamar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Configuración del teléfono en un fichero binario pequeño y versionado:
+ * contactos, plazos, textos y política de energía. Se lee de una vez a una
+ * {@link AlertConfig} inmutable que {@link #get()} devuelve sin bloqueos; en
+ * Android vive en el almacenamiento protegido por dispositivo para poder
+ * leerla antes de desbloquear.
+ *
+ * Se escribe aparte y se renombra, así que nunca queda a medias. Un fichero
+ * de otra versión se trata como vacío; el número que guardaban las
+ * preferencias antiguas lo migra quien carga la configuración.
+ */
+public final class ConfigStore {
+
+    public static final String FILE_NAME = "config.bin";
+
+    private static final int MAGIC = 0x43464731; // "CFG1"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private volatile AlertConfig snapshot = AlertConfig.EMPTY;
+    private boolean loaded;
+
+    public ConfigStore(File dir) {
+        this.file = new File(dir, FILE_NAME);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Última configuración cargada o guardada; vacía hasta el primer {@link #load()}. */
+    public AlertConfig get() {
+        return snapshot;
+    }
+
+    /** Lee el fichero; si no existe o no es válido la configuración queda vacía. */
+    public synchronized AlertConfig load() throws IOException {
+        AlertConfig config = AlertConfig.EMPTY;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                config = read(in);
+            } catch (EOFException e) {
+                // Fichero truncado: se trata como vacío
+                config = AlertConfig.EMPTY;
+            }
+        }
+        snapshot = config;
+        loaded = true;
+        return config;
+    }
+
+    /** Como {@link #get()}, pero carga el fichero la primera vez. */
+    public synchronized AlertConfig getLoaded() throws IOException {
+        return loaded ? snapshot : load();
+    }
+
+    public synchronized void save(AlertConfig config) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            write(config, out);
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("No se pudo renombrar " + tmp);
+        }
+        snapshot = config;
+        loaded = true;
+    }
+
+    /** Número de confianza principal, o null. Carga el fichero la primera vez. */
+    public synchronized String getTrustedNumber() throws IOException {
+        return getLoaded().getPrimaryNumber();
+    }
+
+    public synchronized boolean isConfigured() throws IOException {
+        return getLoaded().isConfigured();
+    }
+
+    /** Cambia solo el contacto principal; el resto de la configuración se conserva. */
+    public synchronized void setTrustedNumber(String number) throws IOException {
+        save(getLoaded().toBuilder().setPrimaryNumber(number).build());
+    }
+
+    private static AlertConfig read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            return AlertConfig.EMPTY;
+        }
+        if (in.readInt() != VERSION) {
+            return AlertConfig.EMPTY;
+        }
+        AlertConfig.Builder b = new AlertConfig.Builder()
+                .setAlertDelayMs(in.readLong())
+                .setAlertPrefix(in.readUTF())
+                .setResendPrefix(in.readUTF())
+                .setResendDelayMs(in.readLong())
+                .setMinDisplacementM(in.readFloat())
+                .setTrailWindowMs(in.readLong());
+        long interval = in.readLong();
+        b.setBackgroundCadence(interval, in.readLong());
+        b.setMaxAccuracyM(in.readFloat());
+        b.setTrustedGroup(in.readUTF());
+        String rules = in.readUTF();
+        try {
+            b.setPolicyRules(rules);
+        } catch (IllegalArgumentException e) {
+            // Reglas que ya no se entienden: se usan los valores por defecto
+            e.printStackTrace();
+        }
+        int count = in.readUnsignedShort();
+        if (count > AlertConfig.MAX_CONTACTS) {
+            return AlertConfig.EMPTY;
+        }
+        for (int i = 0; i < count; i++) {
+            String number = in.readUTF();
+            String name = in.readUTF();
+            int flags = in.readUnsignedByte();
+            if (!number.isEmpty()) {
+                b.addContact(number, name, flags);
+            }
+        }
+        return b.build();
+    }
+
+    private static void write(AlertConfig config, DataOutputStream out) throws IOException {
+        List<AlertConfig.Contact> contacts = config.getContacts();
+        int count = 0;
+        for (AlertConfig.Contact c : contacts) {
+            if (!c.has(AlertConfig.FLAG_FROM_GROUP)) {
+                count++;
+            }
+        }
+        if (count > AlertConfig.MAX_CONTACTS) {
+            throw new IOException("Demasiados contactos: " + count + ", como mucho " + AlertConfig.MAX_CONTACTS);
+        }
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(config.getAlertDelayMs());
+        out.writeUTF(config.getAlertPrefix());
+        out.writeUTF(config.getResendPrefix());
+        out.writeLong(config.getResendDelayMs());
+        out.writeFloat(config.getMinDisplacementM());
+        out.writeLong(config.getTrailWindowMs());
+        out.writeLong(config.getBackgroundIntervalMs());
+        out.writeLong(config.getBackgroundSessionMs());
+        out.writeFloat(config.getMaxAccuracyM());
+        out.writeUTF(config.getTrustedGroup());
+        out.writeUTF(config.getPolicyRules());
+        out.writeShort(count);
+        for (AlertConfig.Contact c : contacts) {
+            // Los del grupo se vuelven a leer de la agenda
+            if (c.has(AlertConfig.FLAG_FROM_GROUP)) {
+                continue;
+            }
+            out.writeUTF(c.getNumber());
+            out.writeUTF(c.getName());
+            out.writeByte(c.getFlags());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.actividad_llamar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Contactos de confianza tomados de un grupo de la agenda ("Emergencia").
+ * La agenda se lee solo al aplicar la configuración y cuando avisa de un
+ * cambio; si los números del grupo no han cambiado no se publica nada. El
+ * resultado se mezcla con la configuración guardada en una
+ * {@link AlertConfig} nueva, así que en el timbre la consulta sigue siendo
+ * la del índice en memoria.
+ *
+ * No es seguro entre hilos: se usa desde el hilo de trabajo del servicio.
+ */
+public final class ContactGroupTrust {
+
+    public interface Host {
+        /**
+         * Añade a {@code out} los teléfonos de los miembros del grupo. Devuelve
+         * false si la agenda no se pudo leer (sin permiso o sin desbloquear).
+         */
+        boolean readGroupNumbers(String groupTitle, List<AlertConfig.Contact> out);
+    }
+
+    private static final long[] NO_KEYS = new long[0];
+
+    private final Host host;
+    private final List<AlertConfig.Contact> scratch = new ArrayList<>();
+    private String groupTitle = "";
+    private List<AlertConfig.Contact> members = Collections.emptyList();
+    // Números normalizados y ordenados del grupo, para detectar cambios
+    private long[] keys = NO_KEYS;
+    private int reads;
+
+    public ContactGroupTrust(Host host) {
+        this.host = host;
+    }
+
+    /** Cambia el grupo; los miembros se leen en el siguiente {@link #refresh()}. */
+    public void setGroup(String title) {
+        String value = title == null ? "" : title.trim();
+        if (!value.equals(groupTitle)) {
+            groupTitle = value;
+            members = Collections.emptyList();
+            keys = NO_KEYS;
+        }
+    }
+
+    public String getGroup() {
+        return groupTitle;
+    }
+
+    /**
+     * Vuelve a leer el grupo y devuelve true si cambió la lista de números.
+     * Si la agenda no se puede leer se conservan los miembros anteriores.
+     */
+    public boolean refresh() {
+        if (groupTitle.isEmpty()) {
+            return false;
+        }
+        scratch.clear();
+        reads++;
+        if (!host.readGroupNumbers(groupTitle, scratch)) {
+            return false;
+        }
+        long[] newKeys = keysOf(scratch);
+        if (Arrays.equals(newKeys, keys)) {
+            return false;
+        }
+        List<AlertConfig.Contact> copy = new ArrayList<>(scratch.size());
+        for (AlertConfig.Contact c : scratch) {
+            copy.add(new AlertConfig.Contact(c.getNumber(), c.getName(),
+                    c.getFlags() | AlertConfig.FLAG_FROM_GROUP));
+        }
+        members = Collections.unmodifiableList(copy);
+        keys = newKeys;
+        return true;
+    }
+
+    public List<AlertConfig.Contact> getMembers() {
+        return members;
+    }
+
+    /** Lecturas de la agenda hechas, para métricas y pruebas. */
+    public int getReadCount() {
+        return reads;
+    }
+
+    /**
+     * Configuración guardada más los miembros del grupo que no estén ya. Los
+     * contactos propios conservan su posición, y por tanto su perfil.
+     */
+    public AlertConfig merge(AlertConfig base) {
+        if (members.isEmpty()) {
+            return base;
+        }
+        AlertConfig.Builder b = base.toBuilder();
+        TrustedNumberIndex own = base.getTrustedNumbers();
+        TrustedNumberIndex added = new TrustedNumberIndex();
+        for (AlertConfig.Contact c : members) {
+            if (!own.isTrusted(c.getNumber()) && !added.isTrusted(c.getNumber())) {
+                added.add(c.getNumber(), TrustedNumberIndex.DEFAULT_PROFILE);
+                b.addContact(c.getNumber(), c.getName(), c.getFlags());
+            }
+        }
+        return b.build();
+    }
+
+    private static long[] keysOf(List<AlertConfig.Contact> contacts) {
+        long[] out = new long[contacts.size()];
+        int n = 0;
+        for (AlertConfig.Contact c : contacts) {
+            long key = TrustedNumberIndex.normalize(c.getNumber(),
+                    TrustedNumberIndex.DEFAULT_COUNTRY_CODE, false);
+            if (key != TrustedNumberIndex.INVALID) {
+                out[n++] = key;
+            }
+        }
+        long[] keys = Arrays.copyOf(out, n);
+        Arrays.sort(keys);
+        return keys;
+    }
+}
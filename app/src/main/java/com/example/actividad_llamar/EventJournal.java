@@ -0,0 +1,388 @@
+package com.example.actividad_llamar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Diario binario de lo que entra y sale del servicio: cambios de estado de
+ * la llamada, fixes, alertas, SMS y llamadas emitidos (o frenados) y la
+ * configuración en uso. Sirve para reproducir en la JVM, con
+ * {@link JournalReplay}, lo que pasó en un teléfono real.
+ *
+ * Cada registro lleva un byte de tipo y los milisegundos desde el anterior
+ * en un entero variable; al abrir se escribe una marca con el reloj absoluto,
+ * porque elapsedRealtime vuelve a cero al reiniciar. Cuando el fichero pasa
+ * del tamaño máximo se guarda como {@code .1} y se empieza otro. Se puede
+ * escribir desde cualquier hilo.
+ */
+public final class EventJournal {
+
+    public interface Visitor {
+        /** Arranque del proceso: el tiempo vuelve a empezar en {@code elapsedMs}. */
+        void onStart(long elapsedMs, long wallTimeMs);
+
+        void onConfig(long timeMs, long alertDelayMs, String[] trustedNumbers);
+
+        void onCallState(long timeMs, int callState, String number);
+
+        void onFix(long timeMs, int provider, double latitude, double longitude, float accuracyM, long fixTimeMs);
+
+        void onAlert(long timeMs, String number);
+
+        void onSms(long timeMs, String recipient, int length, AlertRateLimiter.Decision decision);
+
+        void onCall(long timeMs, String recipient, AlertRateLimiter.Decision decision);
+    }
+
+    public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private static final int MAGIC = 0x45564A31; // "EVJ1"
+    private static final int VERSION = 1;
+
+    private static final int REC_START = 1;
+    private static final int REC_CONFIG = 2;
+    private static final int REC_CALL_STATE = 3;
+    private static final int REC_FIX = 4;
+    private static final int REC_ALERT = 5;
+    private static final int REC_SMS = 6;
+    private static final int REC_CALL = 7;
+
+    private static final AlertRateLimiter.Decision[] DECISIONS = AlertRateLimiter.Decision.values();
+    private static final String[] NO_NUMBERS = new String[0];
+
+    private final File file;
+    private final Clock clock;
+    private final long maxBytes;
+    private FileOutputStream fos;
+    private DataOutputStream out;
+    private long lastTimeMs;
+    // Se repite al principio de cada fichero para que se pueda reproducir solo
+    private long configDelayMs = -1;
+    private String[] configNumbers = NO_NUMBERS;
+
+    public EventJournal(File file, Clock clock) {
+        this(file, clock, DEFAULT_MAX_BYTES);
+    }
+
+    public EventJournal(File file, Clock clock, long maxBytes) {
+        this.file = file;
+        this.clock = clock;
+        this.maxBytes = maxBytes;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Fichero anterior, el que se guardó al superar el tamaño máximo. */
+    public File getPreviousFile() {
+        return new File(file.getPath() + ".1");
+    }
+
+    public synchronized void open(long wallTimeMs) throws IOException {
+        if (out != null) {
+            return;
+        }
+        boolean fresh = !file.exists() || file.length() == 0;
+        fos = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fos, 4096));
+        if (fresh) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+        lastTimeMs = clock.elapsedRealtime();
+        out.writeByte(REC_START);
+        writeVarLong(lastTimeMs);
+        out.writeLong(wallTimeMs);
+        if (configDelayMs >= 0) {
+            writeConfig();
+        }
+        out.flush();
+    }
+
+    public synchronized void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+            fos.getFD().sync();
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        out = null;
+        fos = null;
+    }
+
+    public synchronized void recordConfig(AlertConfig config) {
+        configDelayMs = config.getAlertDelayMs();
+        configNumbers = new String[config.getContacts().size()];
+        for (int i = 0; i < configNumbers.length; i++) {
+            configNumbers[i] = config.getContacts().get(i).getNumber();
+        }
+        if (begin(REC_CONFIG)) {
+            try {
+                writeConfigBody();
+            } catch (IOException e) {
+                fail(e);
+            }
+            end(true);
+        }
+    }
+
+    public synchronized void recordCallState(int callState, String number) {
+        if (begin(REC_CALL_STATE)) {
+            try {
+                out.writeByte(callState);
+                out.writeUTF(number == null ? "" : number);
+            } catch (IOException e) {
+                fail(e);
+            }
+            // Son pocos y son lo que más interesa: se vuelcan ya
+            end(true);
+        }
+    }
+
+    public synchronized void recordFix(int provider, double latitude, double longitude, float accuracyM, long fixTimeMs) {
+        if (begin(REC_FIX)) {
+            try {
+                out.writeByte(provider);
+                out.writeInt((int) Math.round(latitude * 1e7));
+                out.writeInt((int) Math.round(longitude * 1e7));
+                // Precisión en decímetros y antigüedad del fix respecto al registro
+                writeVarLong(Math.max(0, Math.round(accuracyM * 10)));
+                writeVarLong(Math.max(0, lastTimeMs - fixTimeMs));
+            } catch (IOException e) {
+                fail(e);
+            }
+            end(false);
+        }
+    }
+
+    public synchronized void recordAlert(String number) {
+        if (begin(REC_ALERT)) {
+            try {
+                out.writeUTF(number == null ? "" : number);
+            } catch (IOException e) {
+                fail(e);
+            }
+            end(true);
+        }
+    }
+
+    public synchronized void recordSms(String recipient, int length, AlertRateLimiter.Decision decision) {
+        if (begin(REC_SMS)) {
+            try {
+                out.writeByte(decision.ordinal());
+                out.writeUTF(recipient == null ? "" : recipient);
+                writeVarLong(length);
+            } catch (IOException e) {
+                fail(e);
+            }
+            end(true);
+        }
+    }
+
+    public synchronized void recordCall(String recipient, AlertRateLimiter.Decision decision) {
+        if (begin(REC_CALL)) {
+            try {
+                out.writeByte(decision.ordinal());
+                out.writeUTF(recipient == null ? "" : recipient);
+            } catch (IOException e) {
+                fail(e);
+            }
+            end(true);
+        }
+    }
+
+    /** Lee un diario de principio a fin. Un final truncado se ignora. */
+    public static int read(File file, Visitor visitor) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in, visitor);
+        }
+    }
+
+    /** Devuelve el número de registros leídos. */
+    public static int read(InputStream stream, Visitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        int records = 0;
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("No es un diario de eventos");
+            }
+            long time = 0;
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                if (type == REC_START) {
+                    time = readVarLong(in);
+                    visitor.onStart(time, in.readLong());
+                    records++;
+                    continue;
+                }
+                time += readVarLong(in);
+                switch (type) {
+                    case REC_CONFIG: {
+                        long delay = readVarLong(in);
+                        String[] numbers = new String[in.readUnsignedShort()];
+                        for (int i = 0; i < numbers.length; i++) {
+                            numbers[i] = in.readUTF();
+                        }
+                        visitor.onConfig(time, delay, numbers);
+                        break;
+                    }
+                    case REC_CALL_STATE: {
+                        int state = in.readUnsignedByte();
+                        visitor.onCallState(time, state, in.readUTF());
+                        break;
+                    }
+                    case REC_FIX: {
+                        int provider = in.readUnsignedByte();
+                        double lat = in.readInt() / 1e7;
+                        double lon = in.readInt() / 1e7;
+                        float accuracy = readVarLong(in) / 10f;
+                        long fixTime = time - readVarLong(in);
+                        visitor.onFix(time, provider, lat, lon, accuracy, fixTime);
+                        break;
+                    }
+                    case REC_ALERT:
+                        visitor.onAlert(time, in.readUTF());
+                        break;
+                    case REC_SMS: {
+                        AlertRateLimiter.Decision decision = DECISIONS[in.readUnsignedByte()];
+                        String recipient = in.readUTF();
+                        visitor.onSms(time, recipient, (int) readVarLong(in), decision);
+                        break;
+                    }
+                    case REC_CALL: {
+                        AlertRateLimiter.Decision decision = DECISIONS[in.readUnsignedByte()];
+                        visitor.onCall(time, in.readUTF(), decision);
+                        break;
+                    }
+                    default:
+                        throw new IOException("Registro desconocido " + type);
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            // El proceso murió a mitad de un registro
+        }
+        return records;
+    }
+
+    // Cabecera común; false si el diario no está abierto
+    private boolean begin(int type) {
+        if (out == null) {
+            return false;
+        }
+        long now = clock.elapsedRealtime();
+        try {
+            out.writeByte(type);
+            writeVarLong(Math.max(0, now - lastTimeMs));
+        } catch (IOException e) {
+            fail(e);
+            return false;
+        }
+        lastTimeMs = Math.max(lastTimeMs, now);
+        return true;
+    }
+
+    private void end(boolean flush) {
+        if (out == null) {
+            return;
+        }
+        try {
+            if (flush) {
+                out.flush();
+            }
+            // Lo que aún está en el búfer no cuenta: se deja ese margen
+            if (fos.getChannel().position() + 4096 > maxBytes) {
+                rotate();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        out.flush();
+        out.close();
+        out = null;
+        File previous = getPreviousFile();
+        if (previous.exists() && !previous.delete()) {
+            throw new IOException("No se pudo borrar " + previous);
+        }
+        if (!file.renameTo(previous)) {
+            throw new IOException("No se pudo renombrar " + file);
+        }
+        open(System.currentTimeMillis());
+    }
+
+    private void writeConfig() throws IOException {
+        out.writeByte(REC_CONFIG);
+        writeVarLong(0);
+        writeConfigBody();
+    }
+
+    private void writeConfigBody() throws IOException {
+        writeVarLong(configDelayMs);
+        int count = Math.min(configNumbers.length, 0xffff);
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            out.writeUTF(configNumbers[i]);
+        }
+    }
+
+    // Si el disco falla se deja de escribir; el servicio sigue funcionando
+    private void fail(IOException e) {
+        e.printStackTrace();
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+        fos = null;
+    }
+
+    private void writeVarLong(long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("Entero variable demasiado largo");
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.actividad_llamar;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reproduce un {@link EventJournal} en la JVM con un reloj virtual: los
+ * estados de llamada y los fixes grabados alimentan un
+ * {@link CallStateEngine}, una {@link TimerWheel} y un
+ * {@link AlertRateLimiter} nuevos, y el reloj salta de evento en evento (o
+ * al siguiente tick de la rueda) sin esperar. Al final se comparan las
+ * alertas y las decisiones del freno con las grabadas, de modo que un
+ * cambio de lógica que altere el resultado salta a la vista.
+ *
+ * Cada marca de arranque del diario empieza una ejecución con componentes
+ * nuevos, como en el teléfono. No es seguro entre hilos.
+ */
+public final class JournalReplay implements EventJournal.Visitor {
+
+    /** Lo que salió de la reproducción frente a lo grabado. */
+    public static final class Result {
+        public int runs;
+        public int records;
+        public int rings;
+        public int trustedRings;
+        public int fixes;
+        public int alerts;
+        public int recordedAlerts;
+        // Alertas grabadas sin equivalente al reproducir, y al revés
+        public int missingAlerts;
+        public int extraAlerts;
+        public int actions;
+        public int decisionMismatches;
+        public long virtualMs;
+        public long elapsedNanos;
+
+        public boolean matches() {
+            return missingAlerts == 0 && extraAlerts == 0 && decisionMismatches == 0;
+        }
+
+        public long nanosPerRecord() {
+            return records == 0 ? 0 : elapsedNanos / records;
+        }
+
+        /** Una línea para logcat o la consola. */
+        public void appendSummary(StringBuilder out) {
+            out.append("ejecuciones=").append(runs)
+                    .append(" registros=").append(records)
+                    .append(" timbres=").append(rings)
+                    .append(" confianza=").append(trustedRings)
+                    .append(" alertas=").append(alerts).append('/').append(recordedAlerts)
+                    .append(" faltan=").append(missingAlerts)
+                    .append(" sobran=").append(extraAlerts)
+                    .append(" decisiones_distintas=").append(decisionMismatches)
+                    .append(" tiempo_virtual=").append(virtualMs).append("ms")
+                    .append(" ns_registro=").append(nanosPerRecord());
+        }
+    }
+
+    private static final long NO_TICK = Long.MAX_VALUE;
+    // La rueda redondea al tick, así que la alerta reproducida puede caer
+    // algo después de la grabada
+    private static final long ALERT_TOLERANCE_MS = 5 * TimerWheel.DEFAULT_TICK_MS;
+
+    private Result result = new Result();
+    private long now;
+    private long startedAt;
+    private final Clock clock = () -> now;
+
+    private CallStateEngine engine;
+    private TimerWheel wheel;
+    private TimerWheel.Timer alertTimer;
+    private LocationFixCache locationCache;
+    private AlertRateLimiter limiter;
+    private long nextTickAt = NO_TICK;
+    // Alertas reproducidas que aún no se han emparejado con una grabada, y al revés
+    private int pendingAlerts;
+    private int waitingRecorded;
+    private long lastRecordedAt;
+
+    private final CallStateEngine.Listener listener = new CallStateEngine.Listener() {
+        @Override
+        public void onIncomingCall(String number, boolean trusted) {
+            result.rings++;
+            if (trusted) {
+                result.trustedRings++;
+                locationCache.markRing();
+            }
+        }
+
+        @Override
+        public void onAlertDue(String number) {
+            result.alerts++;
+            if (waitingRecorded > 0 && now - lastRecordedAt <= ALERT_TOLERANCE_MS) {
+                waitingRecorded--;
+            } else {
+                pendingAlerts++;
+            }
+        }
+
+        @Override
+        public void onCallAnswered(String number, boolean trusted, boolean alertSent) {
+        }
+
+        @Override
+        public void onCallEnded(String number, boolean trusted, boolean answered) {
+        }
+    };
+
+    public static Result replay(File journal) throws IOException {
+        JournalReplay replay = new JournalReplay();
+        long start = System.nanoTime();
+        replay.result.records = EventJournal.read(journal, replay);
+        replay.finishRun();
+        replay.result.elapsedNanos = System.nanoTime() - start;
+        return replay.result;
+    }
+
+    /** Para reproducir muchas sesiones ya cargadas en memoria. */
+    public static Result replay(byte[] journal) throws IOException {
+        JournalReplay replay = new JournalReplay();
+        long start = System.nanoTime();
+        replay.result.records = EventJournal.read(new ByteArrayInputStream(journal), replay);
+        replay.finishRun();
+        replay.result.elapsedNanos = System.nanoTime() - start;
+        return replay.result;
+    }
+
+    @Override
+    public void onStart(long elapsedMs, long wallTimeMs) {
+        finishRun();
+        result.runs++;
+        now = elapsedMs;
+        startedAt = elapsedMs;
+        nextTickAt = NO_TICK;
+        wheel = new TimerWheel(clock, new TimerWheel.Host() {
+            @Override
+            public void scheduleTick(long delayMs) {
+                nextTickAt = now + delayMs;
+            }
+
+            @Override
+            public void cancelTick() {
+                nextTickAt = NO_TICK;
+            }
+        });
+        engine = new CallStateEngine(new CallStateEngine.AlertTimer() {
+            @Override
+            public void arm(long delayMs) {
+                wheel.schedule(alertTimer, delayMs);
+            }
+
+            @Override
+            public void disarm() {
+                wheel.cancel(alertTimer);
+            }
+        });
+        alertTimer = wheel.newTimer("alert", engine::onAlertTimerExpired);
+        engine.addListener(listener);
+        locationCache = new LocationFixCache(clock);
+        limiter = new AlertRateLimiter(clock);
+    }
+
+    @Override
+    public void onConfig(long timeMs, long alertDelayMs, String[] trustedNumbers) {
+        advanceTo(timeMs);
+        AlertConfig.Builder b = new AlertConfig.Builder().setAlertDelayMs(alertDelayMs);
+        for (int i = 0; i < trustedNumbers.length; i++) {
+            // Los propios van delante y no pasan del máximo; lo que sigue vino del grupo
+            int flags = i < AlertConfig.MAX_CONTACTS
+                    ? AlertConfig.DEFAULT_CONTACT_FLAGS : AlertConfig.FLAG_REDIAL | AlertConfig.FLAG_FROM_GROUP;
+            b.addContact(trustedNumbers[i], "", flags);
+        }
+        engine.setConfig(b.build());
+    }
+
+    @Override
+    public void onCallState(long timeMs, int callState, String number) {
+        advanceTo(timeMs);
+        engine.onCallStateChanged(callState, number);
+    }
+
+    @Override
+    public void onFix(long timeMs, int provider, double latitude, double longitude, float accuracyM, long fixTimeMs) {
+        advanceTo(timeMs);
+        result.fixes++;
+        locationCache.put(provider, latitude, longitude, accuracyM, fixTimeMs);
+    }
+
+    @Override
+    public void onAlert(long timeMs, String number) {
+        advanceTo(timeMs);
+        result.recordedAlerts++;
+        if (pendingAlerts > 0) {
+            pendingAlerts--;
+        } else {
+            waitingRecorded++;
+            lastRecordedAt = timeMs;
+        }
+    }
+
+    @Override
+    public void onSms(long timeMs, String recipient, int length, AlertRateLimiter.Decision decision) {
+        advanceTo(timeMs);
+        replayAction(AlertRateLimiter.Action.SMS, recipient, decision);
+    }
+
+    @Override
+    public void onCall(long timeMs, String recipient, AlertRateLimiter.Decision decision) {
+        advanceTo(timeMs);
+        replayAction(AlertRateLimiter.Action.CALL, recipient, decision);
+    }
+
+    // El texto no se graba, así que los duplicados no se pueden volver a
+    // detectar: se respetan los grabados (no gastaron ficha) y en el resto se
+    // compara solo el cubo, con un contenido distinto cada vez
+    private void replayAction(AlertRateLimiter.Action action, String recipient, AlertRateLimiter.Decision recorded) {
+        result.actions++;
+        if (recorded == AlertRateLimiter.Decision.DUPLICATE) {
+            return;
+        }
+        AlertRateLimiter.Decision replayed = limiter.tryAcquire(action, recipient, Integer.toString(result.actions));
+        if (replayed != recorded) {
+            result.decisionMismatches++;
+        }
+    }
+
+    // Ejecuta los ticks de la rueda que vencen antes del evento
+    private void advanceTo(long timeMs) {
+        if (wheel == null) {
+            throw new IllegalStateException("Diario sin marca de arranque");
+        }
+        while (nextTickAt <= timeMs) {
+            now = Math.max(now, nextTickAt);
+            nextTickAt = NO_TICK;
+            wheel.advance();
+        }
+        now = Math.max(now, timeMs);
+        if (waitingRecorded > 0 && now - lastRecordedAt > ALERT_TOLERANCE_MS) {
+            result.missingAlerts += waitingRecorded;
+            waitingRecorded = 0;
+        }
+    }
+
+    private void finishRun() {
+        if (wheel == null) {
+            return;
+        }
+        // Lo que quedara programado al morir el proceso no llegó a ocurrir
+        result.extraAlerts += pendingAlerts;
+        result.missingAlerts += waitingRecorded;
+        pendingAlerts = 0;
+        waitingRecorded = 0;
+        result.virtualMs += now - startedAt;
+        wheel = null;
+    }
+}
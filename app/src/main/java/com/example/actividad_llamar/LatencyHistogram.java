@@ -0,0 +1,170 @@
+package com.example.actividad_llamar;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Histograma de latencias en microsegundos con cubetas log-lineales, al
+ * estilo de HdrHistogram: valores exactos hasta 16 us y, por encima, 16
+ * cubetas por potencia de 2 (error relativo por debajo del 6,25%). Registrar
+ * no crea objetos. Se puede usar desde cualquier hilo.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // Hasta 2^36 us (unas 19 horas); lo que pase de ahí va a la última cubeta
+    private static final int MAX_MAGNITUDE = 36;
+    public static final long MAX_TRACKABLE_US = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BITS + 2) * SUB_COUNT;
+
+    private final String name;
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    public synchronized void record(long micros) {
+        long v = Math.max(0, Math.min(micros, MAX_TRACKABLE_US));
+        buckets[indexOf(v)]++;
+        count++;
+        sum += v;
+        if (v < min) {
+            min = v;
+        }
+        if (v > max) {
+            max = v;
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /** Valor por debajo del cual queda el {@code percentile}% de las muestras (cota superior de su cubeta). */
+    public synchronized long valueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalent(i), max);
+            }
+        }
+        return max;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /** Una línea: n, media, p50, p90, p99 y máximo, en milisegundos con un decimal. */
+    public synchronized void appendSummary(StringBuilder out) {
+        out.append(name).append(": n=").append(count);
+        if (count > 0) {
+            appendMs(out.append(" media="), getMean());
+            appendMs(out.append(" p50="), valueAtPercentile(50));
+            appendMs(out.append(" p90="), valueAtPercentile(90));
+            appendMs(out.append(" p99="), valueAtPercentile(99));
+            appendMs(out.append(" max="), max);
+        }
+    }
+
+    /** Formato compacto: solo las cubetas no vacías. */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(name);
+        out.writeLong(count);
+        out.writeLong(sum);
+        out.writeLong(getMin());
+        out.writeLong(max);
+        int used = 0;
+        for (long b : buckets) {
+            if (b != 0) {
+                used++;
+            }
+        }
+        out.writeShort(used);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (buckets[i] != 0) {
+                out.writeShort(i);
+                out.writeLong(buckets[i]);
+            }
+        }
+    }
+
+    /** Lee lo escrito por {@link #writeTo}; para comparar volcados fuera del teléfono. */
+    public static LatencyHistogram readFrom(DataInputStream in) throws IOException {
+        LatencyHistogram h = new LatencyHistogram(in.readUTF());
+        h.count = in.readLong();
+        h.sum = in.readLong();
+        h.min = in.readLong();
+        h.max = in.readLong();
+        if (h.count == 0) {
+            h.min = Long.MAX_VALUE;
+        }
+        int used = in.readUnsignedShort();
+        for (int n = 0; n < used; n++) {
+            int i = in.readUnsignedShort();
+            long c = in.readLong();
+            if (i < BUCKET_COUNT) {
+                h.buckets[i] = c;
+            }
+        }
+        return h;
+    }
+
+    static int indexOf(long v) {
+        if (v < SUB_COUNT) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) (v >>> shift) - SUB_COUNT;
+    }
+
+    static long highestEquivalent(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long top = index % SUB_COUNT + SUB_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+
+    private static void appendMs(StringBuilder out, long micros) {
+        out.append(micros / 1000).append('.').append((micros % 1000) / 100).append("ms");
+    }
+}
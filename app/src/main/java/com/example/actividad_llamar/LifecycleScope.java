@@ -0,0 +1,158 @@
+package com.example.actividad_llamar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registro de todo lo que una actividad deja apuntando a sí misma fuera de
+ * ella: listeners de ubicación y de llamadas, mensajes del Handler,
+ * temporizadores y wake locks. Cada recurso se guarda con una clave y el
+ * momento del ciclo de vida en que se suelta. Una clave solo puede estar
+ * una vez: se apunta antes de registrar fuera, y si ya estaba no se
+ * registra otra vez.
+ *
+ * Se libera en orden inverso al de registro, de forma determinista, y tras
+ * {@link #onDestroy()} no se admite nada más: lo que llegue tarde (un
+ * permiso concedido, un servicio que conecta) no llega a registrarse.
+ *
+ * No depende de Android para poder probarse en la JVM. Se usa desde el
+ * hilo principal; los métodos están sincronizados por si un callback llega
+ * de otro hilo.
+ */
+public final class LifecycleScope {
+
+    /** Hasta cuándo vive un recurso. */
+    public enum Until {
+        PAUSE,
+        STOP,
+        DESTROY
+    }
+
+    public interface Resource {
+        void release();
+    }
+
+    private static final class Entry {
+        final String key;
+        final Until until;
+        final Resource resource;
+
+        Entry(String key, Until until, Resource resource) {
+            this.key = key;
+            this.until = until;
+            this.resource = resource;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private boolean destroyed;
+    private long refused;
+    private long released;
+
+    /**
+     * Apunta {@code resource} bajo {@code key}. Devuelve false si esa clave
+     * ya está o si el ámbito está destruido; entonces no hay que registrar nada.
+     */
+    public synchronized boolean hold(String key, Until until, Resource resource) {
+        if (destroyed || isHeld(key)) {
+            refused++;
+            return false;
+        }
+        entries.add(new Entry(key, until, resource));
+        return true;
+    }
+
+    public synchronized boolean isHeld(String key) {
+        for (Entry e : entries) {
+            if (e.key.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Suelta el recurso de esa clave, si lo hay. */
+    public void release(String key) {
+        Entry e;
+        synchronized (this) {
+            e = remove(key);
+        }
+        if (e != null) {
+            release(e);
+        }
+    }
+
+    public void onPause() {
+        releaseUntil(Until.PAUSE);
+    }
+
+    public void onStop() {
+        releaseUntil(Until.STOP);
+    }
+
+    public void onDestroy() {
+        synchronized (this) {
+            destroyed = true;
+        }
+        releaseUntil(Until.DESTROY);
+    }
+
+    public synchronized boolean isDestroyed() {
+        return destroyed;
+    }
+
+    public synchronized int getHeldCount() {
+        return entries.size();
+    }
+
+    /** Registros rechazados por repetidos o tardíos. */
+    public synchronized long getRefusedCount() {
+        return refused;
+    }
+
+    public synchronized long getReleasedCount() {
+        return released;
+    }
+
+    public synchronized void dump(StringBuilder sb) {
+        sb.append("recursos ").append(entries.size())
+                .append(" rechazados=").append(refused)
+                .append(" liberados=").append(released).append('\n');
+        for (Entry e : entries) {
+            sb.append("  ").append(e.key).append(" hasta ").append(e.until).append('\n');
+        }
+    }
+
+    // Los recursos se sueltan fuera del cerrojo: pueden llamar a otros componentes
+    private void releaseUntil(Until event) {
+        List<Entry> due = new ArrayList<>();
+        synchronized (this) {
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                Entry e = entries.get(i);
+                if (e.until.ordinal() <= event.ordinal()) {
+                    due.add(e);
+                    entries.remove(i);
+                }
+            }
+        }
+        for (Entry e : due) {
+            release(e);
+        }
+    }
+
+    private Entry remove(String key) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).key.equals(key)) {
+                return entries.remove(i);
+            }
+        }
+        return null;
+    }
+
+    private void release(Entry e) {
+        synchronized (this) {
+            released++;
+        }
+        e.resource.release();
+    }
+}
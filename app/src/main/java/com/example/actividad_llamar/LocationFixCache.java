@@ -0,0 +1,193 @@
+package com.example.actividad_llamar;
+
+/**
+ * Caché en memoria con el último fix de cada proveedor (GPS, red y pasivo).
+ * Cada fix se puntúa por precisión y antigüedad: el error estimado es la
+ * precisión declarada más la distancia que se puede haber recorrido desde
+ * entonces. Elegir el mejor es O(1) porque solo hay un hueco por proveedor.
+ *
+ * Se puede escribir desde los listeners de ubicación y leer desde el camino de
+ * la alerta; los accesos van sincronizados.
+ */
+public final class LocationFixCache {
+
+    public static final int PROVIDER_GPS = 0;
+    public static final int PROVIDER_NETWORK = 1;
+    public static final int PROVIDER_PASSIVE = 2;
+    private static final int PROVIDERS = 3;
+
+    public static final float DEFAULT_USABLE_ERROR_M = 50f;
+    public static final float DEFAULT_DRIFT_M_PER_S = 1.5f;
+    public static final long DEFAULT_STALE_AFTER_MS = 10 * 60 * 1000;
+    // Precisión de un fix que no la declara: nunca utilizable y detrás de
+    // cualquier otro, pero mejor que nada si es el único
+    public static final float UNKNOWN_ACCURACY_M = 10000f;
+
+    /** Copia de un fix; el que llama la reutiliza para no reservar memoria. */
+    public static final class Fix {
+        public double latitude;
+        public double longitude;
+        public float accuracyM;
+        public long timeMs;
+        public int provider;
+
+        public long ageMs(long now) {
+            return now - timeMs;
+        }
+
+        void set(Fix other) {
+            latitude = other.latitude;
+            longitude = other.longitude;
+            accuracyM = other.accuracyM;
+            timeMs = other.timeMs;
+            provider = other.provider;
+        }
+    }
+
+    private final Clock clock;
+    private final Fix[] slots = new Fix[PROVIDERS];
+    private final boolean[] present = new boolean[PROVIDERS];
+
+    private float usableErrorM = DEFAULT_USABLE_ERROR_M;
+    private float driftMPerS = DEFAULT_DRIFT_M_PER_S;
+    private long staleAfterMs = DEFAULT_STALE_AFTER_MS;
+
+    // Métrica: tiempo desde el timbre hasta el primer fix utilizable
+    private long ringAt = -1;
+    private long lastTimeToFixMs = -1;
+    private long maxTimeToFixMs;
+    private long sumTimeToFixMs;
+    private int timeToFixCount;
+    private int ringsWithoutFix;
+
+    public LocationFixCache(Clock clock) {
+        this.clock = clock;
+        for (int i = 0; i < PROVIDERS; i++) {
+            slots[i] = new Fix();
+        }
+    }
+
+    public synchronized void setScoring(float usableErrorM, float driftMPerS, long staleAfterMs) {
+        this.usableErrorM = usableErrorM;
+        this.driftMPerS = driftMPerS;
+        this.staleAfterMs = staleAfterMs;
+    }
+
+    public static int providerId(String provider) {
+        if ("gps".equals(provider)) {
+            return PROVIDER_GPS;
+        } else if ("network".equals(provider)) {
+            return PROVIDER_NETWORK;
+        }
+        return PROVIDER_PASSIVE;
+    }
+
+    public synchronized void put(int provider, double latitude, double longitude, float accuracyM, long timeMs) {
+        Fix slot = slots[provider];
+        if (present[provider] && slot.timeMs >= timeMs) {
+            return;
+        }
+        if (!(accuracyM > 0)) {
+            accuracyM = UNKNOWN_ACCURACY_M;
+        }
+        slot.latitude = latitude;
+        slot.longitude = longitude;
+        slot.accuracyM = accuracyM;
+        slot.timeMs = timeMs;
+        slot.provider = provider;
+        present[provider] = true;
+
+        long now = clock.elapsedRealtime();
+        if (ringAt >= 0 && estimatedError(slot, now) <= usableErrorM) {
+            lastTimeToFixMs = now - ringAt;
+            sumTimeToFixMs += lastTimeToFixMs;
+            timeToFixCount++;
+            if (lastTimeToFixMs > maxTimeToFixMs) {
+                maxTimeToFixMs = lastTimeToFixMs;
+            }
+            ringAt = -1;
+        }
+    }
+
+    /**
+     * Copia en {@code out} el mejor fix disponible, por antiguo que sea; false
+     * si no hay ninguno. Usar {@link #isStale(Fix)} para avisar al destinatario.
+     */
+    public synchronized boolean best(Fix out) {
+        int best = bestSlot(clock.elapsedRealtime());
+        if (best < 0) {
+            return false;
+        }
+        out.set(slots[best]);
+        return true;
+    }
+
+    public synchronized boolean hasUsableFix() {
+        return hasUsableFixLocked(clock.elapsedRealtime());
+    }
+
+    public synchronized boolean isUsable(Fix fix) {
+        return estimatedError(fix, clock.elapsedRealtime()) <= usableErrorM;
+    }
+
+    public synchronized boolean isStale(Fix fix) {
+        return clock.elapsedRealtime() - fix.timeMs > staleAfterMs;
+    }
+
+    public float estimatedError(Fix fix, long now) {
+        long age = Math.max(0, now - fix.timeMs);
+        return fix.accuracyM + driftMPerS * (age / 1000f);
+    }
+
+    /** Marca el inicio de una llamada de confianza para medir el tiempo hasta el fix. */
+    public synchronized void markRing() {
+        if (ringAt >= 0) {
+            ringsWithoutFix++;
+        }
+        long now = clock.elapsedRealtime();
+        if (hasUsableFixLocked(now)) {
+            lastTimeToFixMs = 0;
+            timeToFixCount++;
+            ringAt = -1;
+        } else {
+            ringAt = now;
+        }
+    }
+
+    public synchronized long getLastTimeToFixMs() {
+        return lastTimeToFixMs;
+    }
+
+    public synchronized long getMaxTimeToFixMs() {
+        return maxTimeToFixMs;
+    }
+
+    public synchronized long getMeanTimeToFixMs() {
+        return timeToFixCount == 0 ? -1 : sumTimeToFixMs / timeToFixCount;
+    }
+
+    public synchronized int getRingsWithoutFix() {
+        return ringsWithoutFix;
+    }
+
+    private boolean hasUsableFixLocked(long now) {
+        int best = bestSlot(now);
+        return best >= 0 && estimatedError(slots[best], now) <= usableErrorM;
+    }
+
+    private int bestSlot(long now) {
+        int best = -1;
+        float bestError = Float.MAX_VALUE;
+        for (int i = 0; i < PROVIDERS; i++) {
+            if (!present[i]) {
+                continue;
+            }
+            float error = estimatedError(slots[i], now);
+            if (error < bestError) {
+                bestError = error;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
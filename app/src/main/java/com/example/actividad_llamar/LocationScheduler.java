@@ -0,0 +1,196 @@
+package com.example.actividad_llamar;
+
+/**
+ * Decide cuándo se enciende el GPS. En reposo está apagado; se enciende cuando
+ * suena un número de confianza o, con poca frecuencia, para refrescar la
+ * posición, y se apaga en cuanto llega un fix con la precisión y antigüedad
+ * pedidas o vence el plazo de la sesión.
+ *
+ * Los tiempos se pasan en milisegundos de reloj monotónico (elapsedRealtime).
+ */
+public final class LocationScheduler {
+
+    public interface Host {
+        /**
+         * Devuelve false si no se pudo encender (p. ej. sin permiso o sin
+         * presupuesto de batería).
+         *
+         * @param ring      true si es por un timbre de confianza, false si es la lectura periódica
+         * @param sessionMs duración prevista de la sesión
+         */
+        boolean startGps(boolean ring, long sessionMs);
+
+        void stopGps();
+
+        /** Programa una única llamada a {@link #onCheck(long)}, sustituyendo la anterior. */
+        void scheduleCheck(long delayMs);
+    }
+
+    public static final float DEFAULT_MAX_ACCURACY_M = 50f;
+    public static final long DEFAULT_MAX_FIX_AGE_MS = 30000;
+    public static final long DEFAULT_BACKGROUND_INTERVAL_MS = 15 * 60 * 1000;
+    public static final long DEFAULT_BACKGROUND_SESSION_MS = 30000;
+
+    private final Host host;
+
+    private float maxAccuracyM = DEFAULT_MAX_ACCURACY_M;
+    private long maxFixAgeMs = DEFAULT_MAX_FIX_AGE_MS;
+    private long backgroundIntervalMs = DEFAULT_BACKGROUND_INTERVAL_MS;
+    private long backgroundSessionMs = DEFAULT_BACKGROUND_SESSION_MS;
+
+    private boolean running;
+    private boolean gpsOn;
+    private boolean ringSession;
+    private long gpsOnSince;
+    private long sessionDeadline;
+    private long nextBackgroundAt;
+    private long lastGoodFixAt = Long.MIN_VALUE;
+
+    private long gpsOnTimeMs;
+    private int sessions;
+    private int sessionsWithFix;
+
+    public LocationScheduler(Host host) {
+        this.host = host;
+    }
+
+    public void setAccuracyBudget(float maxAccuracyM, long maxFixAgeMs) {
+        this.maxAccuracyM = maxAccuracyM;
+        this.maxFixAgeMs = maxFixAgeMs;
+    }
+
+    public void setBackgroundCadence(long intervalMs, long sessionMs) {
+        this.backgroundIntervalMs = intervalMs;
+        this.backgroundSessionMs = sessionMs;
+    }
+
+    public void start(long now) {
+        if (running) {
+            return;
+        }
+        running = true;
+        nextBackgroundAt = now;
+        onCheck(now);
+    }
+
+    public void stop(long now) {
+        running = false;
+        turnOff(now);
+    }
+
+    /**
+     * @param windowMs hasta cuándo hace falta el GPS: el retardo de la alerta
+     *                 de esta llamada más la espera del fix al dispararse
+     */
+    public void onTrustedRing(long now, long windowMs) {
+        if (!running || hasUsableFix(now)) {
+            return;
+        }
+        turnOn(now, now + windowMs, true);
+        reschedule(now);
+    }
+
+    public void onFix(float accuracyM, long fixTime, long now) {
+        if (accuracyM <= maxAccuracyM && now - fixTime <= maxFixAgeMs) {
+            if (fixTime > lastGoodFixAt) {
+                lastGoodFixAt = fixTime;
+            }
+            if (gpsOn) {
+                sessionsWithFix++;
+                turnOff(now);
+                reschedule(now);
+            }
+        }
+    }
+
+    /** Vencimiento de la sesión en curso o de la siguiente lectura en segundo plano. */
+    public void onCheck(long now) {
+        if (!running) {
+            return;
+        }
+        if (gpsOn && now >= sessionDeadline) {
+            turnOff(now);
+        }
+        if (!gpsOn && now >= nextBackgroundAt) {
+            nextBackgroundAt = now + backgroundIntervalMs;
+            if (!hasUsableFix(now)) {
+                turnOn(now, now + backgroundSessionMs, false);
+            }
+        }
+        reschedule(now);
+    }
+
+    /**
+     * El GPS se apagó por fuera (el presupuesto de batería cortó la sesión):
+     * se da la sesión por terminada sin volver a pedir que se apague.
+     */
+    public void onGpsRevoked(long now) {
+        if (!gpsOn) {
+            return;
+        }
+        gpsOn = false;
+        gpsOnTimeMs += now - gpsOnSince;
+        reschedule(now);
+    }
+
+    public boolean isGpsOn() {
+        return gpsOn;
+    }
+
+    public boolean hasUsableFix(long now) {
+        return lastGoodFixAt != Long.MIN_VALUE && now - lastGoodFixAt <= maxFixAgeMs;
+    }
+
+    /** Tiempo total con el GPS encendido, incluida la sesión en curso. */
+    public long getGpsOnTimeMs(long now) {
+        return gpsOn ? gpsOnTimeMs + (now - gpsOnSince) : gpsOnTimeMs;
+    }
+
+    public int getSessionCount() {
+        return sessions;
+    }
+
+    public int getSessionsWithFix() {
+        return sessionsWithFix;
+    }
+
+    private void turnOn(long now, long deadline, boolean ring) {
+        if (gpsOn) {
+            if (deadline > sessionDeadline) {
+                sessionDeadline = deadline;
+            }
+            // Una lectura periódica en curso pasa a ser por timbre
+            if (ring && !ringSession && host.startGps(true, sessionDeadline - now)) {
+                ringSession = true;
+            }
+            return;
+        }
+        if (!host.startGps(ring, deadline - now)) {
+            return;
+        }
+        gpsOn = true;
+        ringSession = ring;
+        gpsOnSince = now;
+        sessionDeadline = deadline;
+        // Cualquier sesión cuenta como refresco de la lectura periódica
+        nextBackgroundAt = now + backgroundIntervalMs;
+        sessions++;
+    }
+
+    private void turnOff(long now) {
+        if (!gpsOn) {
+            return;
+        }
+        host.stopGps();
+        gpsOn = false;
+        gpsOnTimeMs += now - gpsOnSince;
+    }
+
+    private void reschedule(long now) {
+        if (!running) {
+            return;
+        }
+        long next = gpsOn ? sessionDeadline : nextBackgroundAt;
+        host.scheduleCheck(Math.max(0, next - now));
+    }
+}
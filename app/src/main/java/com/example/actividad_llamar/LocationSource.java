@@ -0,0 +1,36 @@
+package com.example.actividad_llamar;
+
+/**
+ * Origen de las posiciones. En el teléfono es el LocationManager; en las
+ * pruebas, uno falso que entrega una secuencia de fixes.
+ */
+public interface LocationSource {
+
+    interface Sink {
+        /**
+         * Puede llegar desde cualquier hilo.
+         *
+         * @param provider  uno de los {@code LocationFixCache.PROVIDER_*}
+         * @param accuracyM {@code LocationFixCache.UNKNOWN_ACCURACY_M} si el fix no la trae
+         * @param fixTimeMs elapsedRealtime del fix
+         * @param wallTimeMs hora de pared del fix, para el rastro
+         */
+        void onFix(int provider, double latitude, double longitude, float accuracyM, long fixTimeMs, long wallTimeMs);
+    }
+
+    /** Escucha pasiva, sin encender nada. Devuelve false si falta el permiso. */
+    boolean start(Sink sink);
+
+    /** Entrega al momento las últimas posiciones conocidas, si las hay. */
+    void seed();
+
+    /** Enciende el GPS; las posiciones llegan al mismo {@link Sink}. */
+    boolean startGps();
+
+    void stopGps();
+
+    /** Cadencia de las peticiones de GPS; si está encendido se aplica ya. */
+    void setGpsCadence(long intervalMs, float minDistanceM);
+
+    void stop();
+}
@@ -1,9 +1,11 @@
 package com.example.actividad_llamar;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.app.ActivityCompat;
 
+import android.Manifest;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.view.View;
@@ -11,11 +13,18 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class MainActivity extends AppCompatActivity {
 
     EditText numero;
+    EditText grupo;
     Button guardar;
-    private SharedPreferences sharedPreferences;
+    private ConfigStore configStore;
+    // Lectura y escritura de la configuración, fuera del hilo principal
+    private final ExecutorService configExecutor = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -23,46 +32,99 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         numero = findViewById(R.id.numero);
+        grupo = findViewById(R.id.grupo);
         guardar = findViewById(R.id.guardar);
 
-        // Inicializa las preferencias compartidas
-        sharedPreferences = getSharedPreferences("MyPrefs", MODE_PRIVATE);
-
-        // Verificar si hay un dato guardado en las preferencias
-        if (sharedPreferences.contains("numero_guardado")) {
-            String numeroGuardado = sharedPreferences.getString("numero_guardado", "");
-            if (!numeroGuardado.isEmpty()) {
-                Intent intent = new Intent(MainActivity.this, MainActivity2.class);
-                intent.putExtra("numero_guardado", numeroGuardado);
-                startActivity(intent);
-                finish(); // Finalizar la actividad actual para que no se pueda volver a ella con el botón "Atrás"
+        // La misma configuración que lee el servicio al arrancar el teléfono
+        configStore = new ConfigStore(BackgroundService.deviceStorageDir(this));
+
+        // Verificar si hay un número guardado
+        configExecutor.execute(() -> {
+            String numeroGuardado = BackgroundService.loadConfig(this, configStore).getPrimaryNumber();
+            if (numeroGuardado != null) {
+                runOnUiThread(() -> {
+                    if (isFinishing() || isDestroyed()) {
+                        return;
+                    }
+                    Intent intent = new Intent(MainActivity.this, MainActivity2.class);
+                    intent.putExtra(BackgroundService.EXTRA_NUMBER, numeroGuardado);
+                    startActivity(intent);
+                    finish(); // Finalizar la actividad actual para que no se pueda volver a ella con el botón "Atrás"
+                });
             }
-        }
+        });
 
         guardar.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 String numeroTexto = numero.getText().toString();
-                SharedPreferences.Editor editor = sharedPreferences.edit();
-                editor.putString("numero_guardado", numeroTexto);
-                editor.apply();
-                Toast.makeText(MainActivity.this, "Número guardado en preferencias", Toast.LENGTH_SHORT).show();
-
-                // Iniciar el servicio BackgroundService
-                Intent intent = new Intent(MainActivity.this, BackgroundService.class);
-                intent.putExtra("numero_guardado", numeroTexto);
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    startForegroundService(intent);
-                } else {
-                    startService(intent);
-                }
-
-                // Iniciar la actividad MainActivity2
-                Intent intent2 = new Intent(MainActivity.this, MainActivity2.class);
-                intent2.putExtra("numero_guardado", numeroTexto);
-                startActivity(intent2);
+                // Sus miembros también serán de confianza
+                String grupoTexto = grupo.getText().toString();
+                guardar.setEnabled(false);
+                configExecutor.execute(() -> {
+                    String error;
+                    try {
+                        configStore.save(configStore.getLoaded().toBuilder()
+                                .setPrimaryNumber(numeroTexto)
+                                .setTrustedGroup(grupoTexto)
+                                .build());
+                        error = null;
+                    } catch (IOException | IllegalArgumentException e) {
+                        // Se enseña tal cual: dice qué límite o regla falla
+                        e.printStackTrace();
+                        error = e.getMessage();
+                    }
+                    String failure = error;
+                    runOnUiThread(() -> onNumberSaved(numeroTexto, failure));
+                });
             }
         });
 
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        configExecutor.shutdown();
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            // Con permiso ya se puede leer el grupo: el servicio vuelve a aplicar la configuración
+            startService(new Intent(this, BackgroundService.class));
+        }
+    }
+
+    // El servicio lee el fichero al arrancar, así que solo se arranca tras guardarlo
+    // error es null si se guardó
+    private void onNumberSaved(String numeroTexto, String error) {
+        if (isDestroyed()) {
+            return;
+        }
+        guardar.setEnabled(true);
+        if (error != null) {
+            Toast.makeText(this, "No se pudo guardar el número: " + error, Toast.LENGTH_LONG).show();
+            return;
+        }
+        Toast.makeText(this, "Número guardado en preferencias", Toast.LENGTH_SHORT).show();
+        if (!grupo.getText().toString().trim().isEmpty()
+                && ActivityCompat.checkSelfPermission(this, Manifest.permission.READ_CONTACTS) != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.READ_CONTACTS}, 1);
+        }
+
+        // Iniciar el servicio BackgroundService
+        Intent intent = new Intent(MainActivity.this, BackgroundService.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            startForegroundService(intent);
+        } else {
+            startService(intent);
+        }
+
+        // Iniciar la actividad MainActivity2
+        Intent intent2 = new Intent(MainActivity.this, MainActivity2.class);
+        intent2.putExtra(BackgroundService.EXTRA_NUMBER, numeroTexto.trim());
+        startActivity(intent2);
+    }
 }
\ No newline at end of file
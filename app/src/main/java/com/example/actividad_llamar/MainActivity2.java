@@ -1,51 +1,64 @@
 package com.example.actividad_llamar;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
-import androidx.core.app.NotificationCompat;
 import android.os.PowerManager;
 import android.media.AudioManager;
 import android.Manifest;
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
+import android.content.ComponentName;
 import android.content.Context;
+import android.content.ActivityNotFoundException;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.Settings;
-import android.telephony.PhoneStateListener;
-import android.telephony.SmsManager;
-import android.telephony.TelephonyManager;
 import android.widget.TextView;
 import android.widget.Toast;
 
-public class MainActivity2 extends AppCompatActivity implements LocationListener {
-
-    private boolean callCancelled = false;
-
-    private boolean callEnded = false;
+public class MainActivity2 extends AppCompatActivity implements LocationListener, CallStateEngine.Listener {
 
     private TextView numeroGuardadoTextView;
     private TextView coordenadasTextView;
     private LocationManager locationManager;
-    private TelephonyManager telephonyManager;
-    private PhoneStateListener phoneStateListener;
     private Handler handler;
+    // Todo lo que fuera de la actividad apunta a ella se registra aquí y se
+    // suelta en onPause, onStop u onDestroy
+    private final LifecycleScope scope = new LifecycleScope();
+
+    // Reenvío y rellamada con un solo temporizador cada uno
+    private static final long REDIAL_DELAY_MS = 0;
+    private TimerWheel timers;
+    private TimerWheel.Timer resendTimer;
+    private TimerWheel.Timer redialTimer;
+    private String redialNumber;
+    // Solo se reenvía si hay desplazamiento real, no por el ruido del GPS
+    private final MovementFilter movementFilter = new MovementFilter();
+    // Se toma de la configuración del servicio al conectar y de las reglas en cada llamada
+    private long resendDelayMs = AlertConfig.DEFAULT_RESEND_DELAY_MS;
+    private final Runnable wheelTick = () -> timers.advance();
     private boolean callAnswered = false;
     private String incomingPhoneNumber;
 
-    private boolean callLost = false;
+    // Las llamadas las detecta solo el servicio; aquí únicamente nos suscribimos
+    private BackgroundService backgroundService;
+    private CallStateEngine callEngine;
+    private boolean serviceBound = false;
 
-    private boolean callStarted = false;
-    private boolean messageSent = false;
+    private final AlertMessageEncoder messageEncoder = new AlertMessageEncoder();
 
+    // Pantalla apagada durante la llamada: préstamo del presupuesto del servicio,
+    // con el mismo plazo como tope del propio wake lock
+    private static final long PROXIMITY_LEASE_MS = 10 * 60 * 1000;
     private PowerManager.WakeLock wakeLock;
+    private PowerBudget.Lease proximityLease;
     private PowerManager powerManager;
 
     @Override
@@ -56,31 +69,116 @@ public class MainActivity2 extends AppCompatActivity implements LocationListener
         powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
         if (powerManager != null) {
             wakeLock = powerManager.newWakeLock(PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK, "MainActivity2:ProximityWakeLock");
+            wakeLock.setReferenceCounted(false);
         }
 
-        startCallDetection();
-
         numeroGuardadoTextView = findViewById(R.id.numero_guardado);
         coordenadasTextView = findViewById(R.id.coordenadasTextView);
+        // Pulsación larga: volcado de métricas a logcat y a fichero
+        coordenadasTextView.setOnLongClickListener(v -> {
+            if (backgroundService != null) {
+                backgroundService.dumpMetrics(true);
+                Toast.makeText(this, "Métricas guardadas", Toast.LENGTH_SHORT).show();
+            }
+            return true;
+        });
 
         Intent intent = getIntent();
         if (intent != null) {
-            incomingPhoneNumber = intent.getStringExtra("numero_guardado");
+            incomingPhoneNumber = intent.getStringExtra(BackgroundService.EXTRA_NUMBER);
             numeroGuardadoTextView.setText(incomingPhoneNumber);
         }
 
-        handler = new Handler();
+        handler = new Handler(Looper.getMainLooper());
+        scope.hold("handler", LifecycleScope.Until.DESTROY, () -> handler.removeCallbacksAndMessages(null));
+        timers = new TimerWheel(SystemClock::elapsedRealtime, new TimerWheel.Host() {
+            @Override
+            public void scheduleTick(long delayMs) {
+                handler.removeCallbacks(wheelTick);
+                handler.postDelayed(wheelTick, delayMs);
+            }
 
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            startLocationUpdates();
-        } else {
+            @Override
+            public void cancelTick() {
+                handler.removeCallbacks(wheelTick);
+            }
+        });
+        resendTimer = timers.newTimer("resend", this::resendIfMoved);
+        redialTimer = timers.newTimer("redial", this::redial);
+        scope.hold("temporizadores", LifecycleScope.Until.DESTROY, () -> {
+            timers.cancel(resendTimer);
+            timers.cancel(redialTimer);
+        });
+        messageEncoder.setPrefix(AlertConfig.DEFAULT_RESEND_PREFIX);
+
+        // Las actualizaciones de ubicación se piden en onResume, que llega también tras conceder el permiso
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.ACCESS_FINE_LOCATION}, 1);
         }
 
-        createForegroundNotification();
+        // La notificación en primer plano la pone el propio servicio
         startService();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (scope.hold("servicio", LifecycleScope.Until.STOP, this::unbindBackgroundService)) {
+            bindService(new Intent(this, BackgroundService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+            serviceBound = true;
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        scope.onStop();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        scope.onDestroy();
+    }
+
+    private void unbindBackgroundService() {
+        backgroundService = null;
+        callEngine = null;
+        if (serviceBound) {
+            unbindService(serviceConnection);
+            serviceBound = false;
+        }
+    }
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            backgroundService = ((BackgroundService.LocalBinder) service).getService();
+            CallStateEngine engine = backgroundService.getCallEngine();
+            callEngine = engine;
+            // Se suelta antes que el enlace, que se registró primero
+            if (scope.hold("llamadas", LifecycleScope.Until.STOP, () -> engine.removeListener(MainActivity2.this))) {
+                engine.addListener(MainActivity2.this);
+            }
+            // Instantánea inmutable: leerla aquí no toca disco
+            AlertConfig config = backgroundService.getConfig();
+            resendDelayMs = currentProfile().resendDelayMs(config.getResendDelayMs());
+            movementFilter.setMinDisplacement(config.getMinDisplacementM());
+            messageEncoder.setPrefix(config.getResendPrefix());
+            // Si la ubicación se pidió antes de enlazar, se ajusta ya al perfil
+            if (scope.isHeld("ubicacion")) {
+                requestActivityLocation();
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            scope.release("llamadas");
+            backgroundService = null;
+            callEngine = null;
+        }
+    };
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -88,37 +186,49 @@ public class MainActivity2 extends AppCompatActivity implements LocationListener
             Intent intent = new Intent(Settings.ACTION_LOCATION_SOURCE_SETTINGS);
             startActivity(intent);
         }
+        startLocationUpdates();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        stopLocationUpdates();
-        stopCallDetection();
+        // Ubicación y WakeLock de proximidad
+        scope.onPause();
+    }
 
-        // Liberar el WakeLock al pausar la actividad
+    // Solo desde el ámbito; el tiempo lo cuenta el servicio
+    private void releaseProximityLock() {
         if (wakeLock != null && wakeLock.isHeld()) {
             wakeLock.release();
         }
+        if (proximityLease != null) {
+            proximityLease.release();
+            proximityLease = null;
+        }
     }
 
     private void startService() {
-        Intent serviceIntent = new Intent(this, BackgroundService.class);
-        serviceIntent.putExtra("numero_guardado", incomingPhoneNumber);
-        startService(serviceIntent);
+        startService(new Intent(this, BackgroundService.class));
     }
 
     private void startLocationUpdates() {
         locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
-        if (locationManager != null && ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 60000, 10, this);
+        if (locationManager != null && ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED
+                && scope.hold("ubicacion", LifecycleScope.Until.PAUSE, () -> locationManager.removeUpdates(this))) {
+            requestActivityLocation();
         }
     }
 
-    private void stopLocationUpdates() {
-        if (locationManager != null) {
-            locationManager.removeUpdates(this);
-        }
+    // Con el mismo listener, una petición nueva sustituye a la anterior
+    private void requestActivityLocation() {
+        ProtectionProfiles.Profile profile = currentProfile();
+        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,
+                profile.getActivityIntervalMs(), profile.getActivityMinDistanceM(), this);
+    }
+
+    // Sin servicio enlazado todavía, lo equilibrado
+    private ProtectionProfiles.Profile currentProfile() {
+        return backgroundService != null ? backgroundService.getProfiles().getProfile() : ProtectionProfiles.Profile.BALANCED;
     }
 
     private boolean isGPSEnabled() {
@@ -126,12 +236,6 @@ public class MainActivity2 extends AppCompatActivity implements LocationListener
         return locationManager != null && locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER);
     }
 
-    private void stopCallDetection() {
-        if (telephonyManager != null && phoneStateListener != null) {
-            telephonyManager.listen(phoneStateListener, PhoneStateListener.LISTEN_NONE);
-        }
-    }
-
     @Override
     public void onStatusChanged(String provider, int status, Bundle extras) {
     }
@@ -144,41 +248,24 @@ public class MainActivity2 extends AppCompatActivity implements LocationListener
     public void onProviderDisabled(String provider) {
     }
 
-    private void sendMessageWithCoordinates(double latitude, double longitude) {
-        String message = "Mis coordenadas son: " + latitude + ", " + longitude;
-
-        // Obtener la URL del mapa de Google Maps con las coordenadas
-        String mapUrl = "https://www.google.com/maps?q=" + latitude + "," + longitude;
+    private void sendMessageWithCoordinates(double latitude, double longitude, float accuracyM) {
+        // Coordenadas y enlace corto en un solo segmento
+        String message = messageEncoder.encodeAlert(latitude, longitude, accuracyM, 0);
 
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.SEND_SMS}, 3);
         } else {
-            sendSMSWithMapLink(incomingPhoneNumber, message, mapUrl);
+            sendSMS(incomingPhoneNumber, message);
         }
     }
 
-    private void sendSMSWithMapLink(String phoneNumber, String message, String mapUrl) {
-        try {
-            // Agregar el enlace al mapa al mensaje
-            String messageWithMapLink = message + "\n" + "Ver en Google Maps: " + mapUrl;
-
-            SmsManager smsManager = SmsManager.getDefault();
-            smsManager.sendTextMessage(phoneNumber, null, messageWithMapLink, null, null);
-        } catch (Exception e) {
-            e.printStackTrace();
-            Toast.makeText(this, "Error al enviar el mensaje", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-
+    // Los SMS pasan por la bandeja de salida del servicio, que los reintenta
     private void sendSMS(String phoneNumber, String message) {
-        try {
-            SmsManager smsManager = SmsManager.getDefault();
-            smsManager.sendTextMessage(phoneNumber, null, message, null, null);
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (backgroundService == null) {
             Toast.makeText(this, "Error al enviar el mensaje", Toast.LENGTH_SHORT).show();
+            return;
         }
+        backgroundService.queueSms(phoneNumber, message);
     }
 
     @Override
@@ -187,98 +274,99 @@ public class MainActivity2 extends AppCompatActivity implements LocationListener
         double longitude = location.getLongitude();
         coordenadasTextView.setText("Latitud: " + latitude + ", Longitud: " + longitude);
 
-        if (!callAnswered) {
-            handler.postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    if (!callAnswered) {
-                        double currentLatitude = location.getLatitude();
-                        double currentLongitude = location.getLongitude();
-
-                        if (latitude != currentLatitude || longitude != currentLongitude) {
-                            sendMessageWithCoordinates(currentLatitude, currentLongitude);
-                        }
-                    }
-                }
-            }, 10000);
+        long fixTime = location.getElapsedRealtimeNanos() / 1000000;
+        boolean moved = movementFilter.onFix(latitude, longitude, location.getAccuracy(), fixTime);
+        if (moved && !callAnswered) {
+            timers.scheduleIfIdle(resendTimer, resendDelayMs);
         }
     }
 
-    private void startCallDetection() {
-        telephonyManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
-        phoneStateListener = new PhoneStateListener() {
-            @Override
-            public void onCallStateChanged(int state, String phoneNumber) {
-                switch (state) {
-                    case TelephonyManager.CALL_STATE_RINGING:
-                        if (!callStarted) {
-                            Toast.makeText(MainActivity2.this, "Llamada entrante: " + phoneNumber, Toast.LENGTH_SHORT).show();
-                            callStarted = true;
-                            callEnded = false;
-                            callCancelled = false;
-                            String numeroGuardado = numeroGuardadoTextView.getText().toString();
-                            if (phoneNumber.equals(numeroGuardado)) {
-                                handler.postDelayed(() -> {
-                                    if (!callEnded && !callCancelled) {
-                                        if (ActivityCompat.checkSelfPermission(MainActivity2.this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-                                            Location lastKnownLocation = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-                                            if (lastKnownLocation != null) {
-                                                double currentLatitude = lastKnownLocation.getLatitude();
-                                                double currentLongitude = lastKnownLocation.getLongitude();
-                                                sendMessageWithCoordinates(currentLatitude, currentLongitude);
-                                                messageSent = true;
-                                            }
-                                        }
-                                        AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-                                        if (audioManager != null) {
-                                            audioManager.setMicrophoneMute(true);
-                                        }
-                                    }
-                                }, 7000);
-                            } else {
-                                showNumberMismatchNotification();
-                            }
-                        }
-                        break;
-
-                    case TelephonyManager.CALL_STATE_OFFHOOK:
-                        if (callStarted) {
-                            Toast.makeText(MainActivity2.this, "Llamada saliente: " + phoneNumber, Toast.LENGTH_SHORT).show();
-                            if (!messageSent) {
-                                silenceCall();
-                            }
-                        }
-                        break;
-
-                    case TelephonyManager.CALL_STATE_IDLE:
-                        if (callStarted && !callEnded && !callCancelled) {
-                            Toast.makeText(MainActivity2.this, "Llamada finalizada", Toast.LENGTH_SHORT).show();
-                            callEnded = true;
-                            handler.removeCallbacksAndMessages(null);
-
-                            String numeroGuardado = numeroGuardadoTextView.getText().toString();
-                            if (phoneNumber.equals(numeroGuardado)) {
-                                Toast.makeText(MainActivity2.this, "Llamada perdida. Llamando de nuevo...", Toast.LENGTH_SHORT).show();
-                                makeCall(numeroGuardado);
-                            } else {
-                                showNumberMismatchNotification();
-                            }
-                        }
-
-                        callStarted = false;
-                        messageSent = false;
-                        callEnded = false;
-                        break;
-                }
+    private void resendIfMoved() {
+        if (!callAnswered && movementFilter.hasMoved()) {
+            sendMessageWithCoordinates(movementFilter.getLatitude(), movementFilter.getLongitude(),
+                    (float) movementFilter.getAccuracyM());
+            movementFilter.markSent(SystemClock.elapsedRealtime());
+            countEvent(AlertMetrics.Counter.RESENDS);
+        }
+    }
+
+    private void redial() {
+        countEvent(AlertMetrics.Counter.REDIALS);
+        makeCall(redialNumber);
+    }
+
+    private void countEvent(AlertMetrics.Counter counter) {
+        if (backgroundService != null) {
+            backgroundService.getMetrics().increment(counter);
+        }
+    }
+
+    // El motor avisa desde el hilo de trabajo del servicio; aquí solo se actualiza la interfaz
+    @Override
+    public void onIncomingCall(String number, boolean trusted) {
+        // La decisión se lee aquí, en el hilo del motor; onStop puede haber soltado ya la referencia
+        CallStateEngine engine = callEngine;
+        AlertPolicy policy = engine != null ? engine.getCallPolicy() : null;
+        int decision = engine != null ? engine.getCallDecision() : -1;
+        runOnUiThread(() -> {
+            if (policy != null && decision >= 0) {
+                resendDelayMs = currentProfile().resendDelayMs(policy.getResendDelayMs(decision));
+                messageEncoder.setPrefix(policy.getResendPrefix(decision));
+            }
+            // El perfil puede haber cambiado desde que se pidió la ubicación
+            if (scope.isHeld("ubicacion")) {
+                requestActivityLocation();
+            }
+            Toast.makeText(this, "Llamada entrante: " + number, Toast.LENGTH_SHORT).show();
+            if (!trusted) {
+                showNumberMismatchNotification();
+            }
+        });
+    }
+
+    @Override
+    public void onAlertDue(String number) {
+        // El SMS con la ubicación lo envía BackgroundService
+    }
+
+    @Override
+    public void onCallAnswered(String number, boolean trusted, boolean alertSent) {
+        runOnUiThread(() -> {
+            Toast.makeText(this, "Llamada saliente: " + number, Toast.LENGTH_SHORT).show();
+            if (!alertSent) {
+                silenceCall();
+            }
+        });
+    }
+
+    @Override
+    public void onCallEnded(String number, boolean trusted, boolean answered) {
+        CallStateEngine engine = callEngine;
+        boolean redial = trusted && engine != null && engine.getCallPolicy().shouldRedial(engine.getCallDecision());
+        runOnUiThread(() -> {
+            Toast.makeText(this, "Llamada finalizada", Toast.LENGTH_SHORT).show();
+            timers.cancel(resendTimer);
+            movementFilter.reset();
+            if (redial) {
+                // El aviso de la rellamada lo da makeCall cuando de verdad se hace
+                redialNumber = number;
+                timers.schedule(redialTimer, REDIAL_DELAY_MS);
+            } else if (!trusted) {
+                showNumberMismatchNotification();
             }
-        };
-        telephonyManager.listen(phoneStateListener, PhoneStateListener.LISTEN_CALL_STATE);
+        });
     }
 
     private void silenceCall() {
-        if (powerManager != null && wakeLock == null) {
-            wakeLock = powerManager.newWakeLock(PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK, "MainActivity2:ProximityWakeLock");
-            wakeLock.acquire();
+        if (wakeLock != null && backgroundService != null
+                && scope.hold("proximidad", LifecycleScope.Until.PAUSE, this::releaseProximityLock)) {
+            proximityLease = backgroundService.getPowerBudget().acquire(PowerBudget.Reason.PROXIMITY,
+                    PROXIMITY_LEASE_MS, () -> runOnUiThread(() -> scope.release("proximidad")));
+            if (proximityLease != null) {
+                wakeLock.acquire(proximityLease.getDurationMs());
+            } else {
+                scope.release("proximidad");
+            }
         }
 
         AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
@@ -292,7 +380,22 @@ public class MainActivity2 extends AppCompatActivity implements LocationListener
         Intent callIntent = new Intent(Intent.ACTION_CALL);
         callIntent.setData(Uri.parse("tel:" + phoneNumber));
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CALL_PHONE) == PackageManager.PERMISSION_GRANTED) {
-            startActivity(callIntent);
+            if (backgroundService == null) {
+                Toast.makeText(this, "Error al llamar: servicio no disponible", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            // Si el contacto llama y cuelga en bucle, no se le devuelve cada llamada
+            if (!backgroundService.allowCall(phoneNumber)) {
+                Toast.makeText(this, "Demasiadas llamadas seguidas", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            try {
+                startActivity(callIntent);
+            } catch (ActivityNotFoundException e) {
+                Toast.makeText(this, "Error al llamar", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            Toast.makeText(this, "Llamada perdida. Llamando de nuevo...", Toast.LENGTH_SHORT).show();
         } else {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CALL_PHONE}, 4);
         }
@@ -302,38 +405,12 @@ public class MainActivity2 extends AppCompatActivity implements LocationListener
         Toast.makeText(MainActivity2.this, "El número no coincide", Toast.LENGTH_SHORT).show();
     }
 
-    private void createForegroundNotification() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-            String channelId = "location_channel";
-            CharSequence channelName = "Location";
-            int importance = NotificationManager.IMPORTANCE_LOW;
-            NotificationChannel notificationChannel = new NotificationChannel(channelId, channelName, importance);
-            notificationManager.createNotificationChannel(notificationChannel);
-
-            NotificationCompat.Builder builder = new NotificationCompat.Builder(this, channelId)
-                    .setContentTitle("Aplicación en segundo plano")
-                    .setContentText("La aplicación está utilizando la ubicación en segundo plano")
-                    .setSmallIcon(R.mipmap.ic_launcher)
-                    .setPriority(NotificationCompat.PRIORITY_LOW);
-
-            Notification notification = builder.build();
-            startForeground(1, notification);
-        }
-    }
-
-    private void startForeground(int notificationId, Notification notification) {
-        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        if (notificationManager != null) {
-            notificationManager.notify(notificationId, notification);
-        }
-    }
-
     @Override
     public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == 2 && grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-            startCallDetection();
+            // El servicio registra el listener de llamadas al recibir el comando
+            startService();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,180 @@
+package com.example.actividad_llamar;
+
+/**
+ * Decide si la persona se ha movido de verdad desde la última posición
+ * enviada. Suaviza las posiciones (EMA o un Kalman sencillo ponderado por la
+ * precisión), estima la velocidad y pide reenvío solo cuando el
+ * desplazamiento supera el umbral, el ruido de la posición y lo que se avanza
+ * a esa velocidad en un intervalo mínimo.
+ *
+ * No crea objetos por posición. Debe usarse desde un solo hilo.
+ */
+public final class MovementFilter {
+
+    public enum Smoothing {
+        NONE,
+        EMA,
+        KALMAN
+    }
+
+    public static final double EARTH_RADIUS_M = 6371008.8;
+    public static final double DEFAULT_MIN_DISPLACEMENT_M = 50;
+    public static final long DEFAULT_MIN_INTERVAL_MS = 10000;
+    public static final double DEFAULT_EMA_ALPHA = 0.3;
+    // Ruido de proceso del Kalman: cuánto puede moverse alguien andando
+    public static final double DEFAULT_KALMAN_Q_MPS = 3;
+    private static final double SPEED_ALPHA = 0.5;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_M;
+
+    private double minDisplacementM = DEFAULT_MIN_DISPLACEMENT_M;
+    private long minIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+    private Smoothing smoothing = Smoothing.KALMAN;
+    private double emaAlpha = DEFAULT_EMA_ALPHA;
+    private double kalmanQ = DEFAULT_KALMAN_Q_MPS;
+
+    private boolean hasFix;
+    private double latitude;
+    private double longitude;
+    private double variance;
+    private double accuracyM;
+    private long timeMs;
+    private double speedMps;
+
+    private boolean hasSent;
+    private double sentLatitude;
+    private double sentLongitude;
+    private long sentTimeMs;
+
+    public void setMinDisplacement(double meters) {
+        this.minDisplacementM = meters;
+    }
+
+    public void setMinInterval(long ms) {
+        this.minIntervalMs = ms;
+    }
+
+    /** {@code param} es alfa para EMA y el ruido de proceso (m/s) para Kalman. */
+    public void setSmoothing(Smoothing smoothing, double param) {
+        this.smoothing = smoothing;
+        if (smoothing == Smoothing.EMA) {
+            emaAlpha = param;
+        } else if (smoothing == Smoothing.KALMAN) {
+            kalmanQ = param;
+        }
+    }
+
+    /**
+     * Incorpora una posición ({@code timeMs} en reloj monótono). Devuelve true
+     * si con ella hay movimiento suficiente para reenviar.
+     */
+    public boolean onFix(double lat, double lon, float accuracy, long timeMs) {
+        double acc = accuracy > 0 ? accuracy : minDisplacementM;
+        if (!hasFix) {
+            hasFix = true;
+            latitude = lat;
+            longitude = lon;
+            variance = acc * acc;
+            accuracyM = acc;
+            this.timeMs = timeMs;
+            speedMps = 0;
+            if (!hasSent) {
+                // La primera posición es la referencia: ya se envió con la alerta
+                markSent(timeMs);
+            }
+            return false;
+        }
+        long dtMs = timeMs - this.timeMs;
+        if (dtMs <= 0) {
+            return false;
+        }
+        double prevLat = latitude;
+        double prevLon = longitude;
+        switch (smoothing) {
+            case EMA:
+                latitude += emaAlpha * (lat - latitude);
+                longitude += emaAlpha * (lon - longitude);
+                accuracyM += emaAlpha * (acc - accuracyM);
+                break;
+            case KALMAN:
+                variance += dtMs / 1000.0 * kalmanQ * kalmanQ;
+                double k = variance / (variance + acc * acc);
+                latitude += k * (lat - latitude);
+                longitude += k * (lon - longitude);
+                variance *= 1 - k;
+                accuracyM = Math.sqrt(variance);
+                break;
+            default:
+                latitude = lat;
+                longitude = lon;
+                accuracyM = acc;
+                break;
+        }
+        double step = distanceM(prevLat, prevLon, latitude, longitude);
+        speedMps += SPEED_ALPHA * (step * 1000.0 / dtMs - speedMps);
+        this.timeMs = timeMs;
+        return hasMoved();
+    }
+
+    /** True si la posición suavizada está lo bastante lejos de la última enviada. */
+    public boolean hasMoved() {
+        if (!hasFix || !hasSent) {
+            return hasFix;
+        }
+        if (timeMs - sentTimeMs < minIntervalMs) {
+            return false;
+        }
+        return distanceM(sentLatitude, sentLongitude, latitude, longitude) >= getThresholdM();
+    }
+
+    /** Umbral actual: el mínimo, el ruido de la posición o lo recorrido en un intervalo. */
+    public double getThresholdM() {
+        return Math.max(minDisplacementM, Math.max(accuracyM, speedMps * minIntervalMs / 1000.0));
+    }
+
+    /** Toma la posición suavizada actual como la última enviada. */
+    public void markSent(long timeMs) {
+        hasSent = true;
+        sentLatitude = latitude;
+        sentLongitude = longitude;
+        sentTimeMs = timeMs;
+    }
+
+    public void reset() {
+        hasFix = false;
+        hasSent = false;
+        speedMps = 0;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getAccuracyM() {
+        return accuracyM;
+    }
+
+    public double getSpeedMps() {
+        return speedMps;
+    }
+
+    /** Distancia equirectangular; de sobra para los tramos cortos entre posiciones. */
+    public static double distanceM(double lat1, double lon1, double lat2, double lon2) {
+        double x = (lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) * 0.5));
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+    }
+
+    /** Distancia de gran círculo para tramos largos. */
+    public static double haversineM(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.actividad_llamar;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Geocodificación inversa sin red: de un fix al nombre de la calle o lugar
+ * más cercano, para que la alerta se entienda sin abrir el enlace. Los
+ * lugares vienen en un índice precalculado que se proyecta en memoria: solo
+ * se cargan las páginas que se consultan y una búsqueda son unas pocas
+ * búsquedas binarias, sin crear objetos salvo el nombre encontrado.
+ *
+ * Formato: cabecera, tabla de celdas geohash ordenada (celda y primer
+ * lugar), lugares ordenados por celda (lat/lon en 1e-6 grados y posición del
+ * nombre) y nombres en UTF-8 con su longitud delante. El índice se genera
+ * con {@link #write(File, List, int)}. Se puede consultar desde cualquier hilo.
+ */
+public final class OfflineGeocoder {
+
+    /** Un lugar para generar el índice. */
+    public static final class Place {
+        final String name;
+        final int latE6;
+        final int lonE6;
+
+        public Place(String name, double latitude, double longitude) {
+            this.name = name;
+            this.latE6 = (int) Math.round(latitude * 1e6);
+            this.lonE6 = (int) Math.round(longitude * 1e6);
+        }
+    }
+
+    /** Resultado reutilizable de {@link #lookup}. */
+    public static final class Match {
+        public String name;
+        public float distanceM;
+        public double latitude;
+        public double longitude;
+    }
+
+    // 30 bits (6 caracteres geohash): celdas de unos 1,2 km x 0,6 km
+    public static final int DEFAULT_PRECISION_BITS = 30;
+    public static final float DEFAULT_MAX_DISTANCE_M = 500f;
+
+    private static final int MAGIC = 0x47454F31; // "GEO1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int CELL_BYTES = 8;
+    private static final int PLACE_BYTES = 12;
+    private static final double METERS_PER_E6 = 0.111195;
+    // Orden de búsqueda: la celda del fix y después las ocho de alrededor
+    private static final int[] NEIGHBOUR_LAT = {0, -1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_LON = {0, 0, 0, -1, 1, -1, 1, -1, 1};
+
+    private final ByteBuffer buffer;
+    private final int lonBits;
+    private final int latBits;
+    private final int cellCount;
+    private final int placeCount;
+    private final int placesAt;
+    private final int namesAt;
+    private float maxDistanceM = DEFAULT_MAX_DISTANCE_M;
+
+    private OfflineGeocoder(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("No es un índice de lugares");
+        }
+        int bits = buffer.getInt(8);
+        cellCount = buffer.getInt(12);
+        placeCount = buffer.getInt(16);
+        namesAt = buffer.getInt(20);
+        if (bits < 2 || bits > 32 || cellCount < 0 || placeCount < 0) {
+            throw new IOException("Cabecera del índice no válida");
+        }
+        lonBits = (bits + 1) / 2;
+        latBits = bits / 2;
+        // Tras la tabla de celdas va un centinela con el total de lugares
+        placesAt = HEADER_BYTES + (cellCount + 1) * CELL_BYTES;
+        if ((long) placesAt + (long) placeCount * PLACE_BYTES > namesAt || namesAt > buffer.capacity()) {
+            throw new IOException("Índice truncado");
+        }
+    }
+
+    /** Proyecta el fichero en memoria; el descriptor se cierra enseguida. */
+    public static OfflineGeocoder open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new OfflineGeocoder(map);
+        }
+    }
+
+    /** Para pruebas y para índices ya cargados. */
+    public static OfflineGeocoder wrap(ByteBuffer buffer) throws IOException {
+        return new OfflineGeocoder(buffer.duplicate());
+    }
+
+    public void setMaxDistanceM(float maxDistanceM) {
+        this.maxDistanceM = maxDistanceM;
+    }
+
+    public int getPlaceCount() {
+        return placeCount;
+    }
+
+    /**
+     * Busca el lugar más cercano en la celda del fix y sus ocho vecinas.
+     * Devuelve false si no hay ninguno a menos de la distancia máxima.
+     */
+    public boolean lookup(double latitude, double longitude, Match out) {
+        int latE6 = (int) Math.round(latitude * 1e6);
+        int lonE6 = (int) Math.round(longitude * 1e6);
+        // Un grado de longitud mide menos según se sube de latitud
+        double lonScale = Math.cos(Math.toRadians(latitude));
+        int latCell = latIndex(latE6);
+        int lonCell = lonIndex(lonE6);
+        int lonCells = 1 << lonBits;
+        // Distancias al borde de la propia celda, para saltarse las vecinas lejanas
+        double south = latE6 - cellStart(latCell, latBits, 90000000L, 180000001L);
+        double north = cellStart(latCell + 1, latBits, 90000000L, 180000001L) - latE6;
+        double west = (lonE6 - cellStart(lonCell, lonBits, 180000000L, 360000001L)) * lonScale;
+        double east = (cellStart(lonCell + 1, lonBits, 180000000L, 360000001L) - lonE6) * lonScale;
+        double max = maxDistanceM / METERS_PER_E6;
+        int best = -1;
+        double bestSq = max * max;
+        // Primero la propia celda: casi siempre basta con ella
+        for (int n = 0; n < 9; n++) {
+            int dLat = NEIGHBOUR_LAT[n];
+            int dLon = NEIGHBOUR_LON[n];
+            double dy = dLat < 0 ? south : dLat > 0 ? north : 0;
+            double dx = dLon < 0 ? west : dLon > 0 ? east : 0;
+            if (dx * dx + dy * dy > bestSq) {
+                continue;
+            }
+            int la = latCell + dLat;
+            if (la < 0 || la >= (1 << latBits)) {
+                continue;
+            }
+            int lo = (lonCell + dLon + lonCells) & (lonCells - 1);
+            int slot = findCell(interleave(lo, la));
+            if (slot < 0) {
+                continue;
+            }
+            int end = buffer.getInt(HEADER_BYTES + (slot + 1) * CELL_BYTES + 4);
+            for (int p = buffer.getInt(HEADER_BYTES + slot * CELL_BYTES + 4); p < end; p++) {
+                int at = placesAt + p * PLACE_BYTES;
+                double py = buffer.getInt(at) - latE6;
+                double px = wrapLon(buffer.getInt(at + 4) - lonE6) * lonScale;
+                double sq = px * px + py * py;
+                if (sq <= bestSq) {
+                    bestSq = sq;
+                    best = p;
+                }
+            }
+        }
+        if (best < 0) {
+            return false;
+        }
+        float distance = (float) (Math.sqrt(bestSq) * METERS_PER_E6);
+        int at = placesAt + best * PLACE_BYTES;
+        out.latitude = buffer.getInt(at) / 1e6;
+        out.longitude = buffer.getInt(at + 4) / 1e6;
+        out.distanceM = distance;
+        out.name = readName(namesAt + buffer.getInt(at + 8));
+        return true;
+    }
+
+    /**
+     * Genera un índice con los lugares dados. Se escribe aparte y se
+     * renombra, como el resto de ficheros de la aplicación.
+     */
+    public static void write(File file, List<Place> places, int precisionBits) throws IOException {
+        if (precisionBits < 2 || precisionBits > 32) {
+            throw new IllegalArgumentException("Precisión fuera de rango: " + precisionBits);
+        }
+        int lonBits = (precisionBits + 1) / 2;
+        int latBits = precisionBits / 2;
+        List<long[]> keyed = new ArrayList<>(places.size());
+        for (int i = 0; i < places.size(); i++) {
+            Place p = places.get(i);
+            long cell = interleave(lonIndex(p.lonE6, lonBits), latIndex(p.latE6, latBits)) & 0xFFFFFFFFL;
+            keyed.add(new long[]{cell, i});
+        }
+        Collections.sort(keyed, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        List<Integer> cells = new ArrayList<>();
+        List<Integer> firsts = new ArrayList<>();
+        for (int i = 0; i < keyed.size(); i++) {
+            if (i == 0 || keyed.get(i)[0] != keyed.get(i - 1)[0]) {
+                cells.add((int) keyed.get(i)[0]);
+                firsts.add(i);
+            }
+        }
+        byte[][] names = new byte[keyed.size()][];
+        int namesLength = 0;
+        for (int i = 0; i < keyed.size(); i++) {
+            byte[] utf8 = places.get((int) keyed.get(i)[1]).name.getBytes(StandardCharsets.UTF_8);
+            if (utf8.length > 0xFFFF) {
+                throw new IllegalArgumentException("Nombre demasiado largo");
+            }
+            names[i] = utf8;
+            namesLength += 2 + utf8.length;
+        }
+        int namesAt = HEADER_BYTES + (cells.size() + 1) * CELL_BYTES + keyed.size() * PLACE_BYTES;
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 8192))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(precisionBits);
+            out.writeInt(cells.size());
+            out.writeInt(keyed.size());
+            out.writeInt(namesAt);
+            for (int i = 0; i < cells.size(); i++) {
+                out.writeInt(cells.get(i));
+                out.writeInt(firsts.get(i));
+            }
+            out.writeInt(0);
+            out.writeInt(keyed.size());
+            int nameOffset = 0;
+            for (int i = 0; i < keyed.size(); i++) {
+                Place p = places.get((int) keyed.get(i)[1]);
+                out.writeInt(p.latE6);
+                out.writeInt(p.lonE6);
+                out.writeInt(nameOffset);
+                nameOffset += 2 + names[i].length;
+            }
+            for (byte[] name : names) {
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            out.flush();
+            fos.getFD().sync();
+            if (out.size() != namesAt + namesLength) {
+                throw new IOException("Tamaño inesperado del índice");
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("No se pudo renombrar " + tmp);
+        }
+    }
+
+    // Búsqueda binaria en la tabla de celdas, comparando sin signo
+    private int findCell(int cell) {
+        int lo = 0;
+        int hi = cellCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Integer.compareUnsigned(buffer.getInt(HEADER_BYTES + mid * CELL_BYTES), cell);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private String readName(int at) {
+        int length = buffer.getShort(at) & 0xFFFF;
+        byte[] utf8 = new byte[length];
+        for (int i = 0; i < length; i++) {
+            utf8[i] = buffer.get(at + 2 + i);
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private int latIndex(int latE6) {
+        return latIndex(latE6, latBits);
+    }
+
+    private int lonIndex(int lonE6) {
+        return lonIndex(lonE6, lonBits);
+    }
+
+    private static int latIndex(int latE6, int bits) {
+        long cells = 1L << bits;
+        long i = (latE6 + 90000000L) * cells / 180000001L;
+        return (int) Math.max(0, Math.min(cells - 1, i));
+    }
+
+    private static int lonIndex(int lonE6, int bits) {
+        long cells = 1L << bits;
+        long i = (lonE6 + 180000000L) * cells / 360000001L;
+        return (int) Math.max(0, Math.min(cells - 1, i));
+    }
+
+    // Inicio de la celda {@code index} en 1e-6 grados
+    private static long cellStart(int index, int bits, long offset, long span) {
+        return index * span / (1L << bits) - offset;
+    }
+
+    private static double wrapLon(int dLonE6) {
+        if (dLonE6 > 180000000) {
+            return dLonE6 - 360000000.0;
+        }
+        if (dLonE6 < -180000000) {
+            return dLonE6 + 360000000.0;
+        }
+        return dLonE6;
+    }
+
+    // Bits alternos empezando por la longitud, como en geohash
+    private static int interleave(int lon, int lat) {
+        long cell = 0;
+        for (int i = 15; i >= 0; i--) {
+            cell = (cell << 2) | (((lon >>> i) & 1L) << 1) | ((lat >>> i) & 1L);
+        }
+        return (int) cell;
+    }
+}
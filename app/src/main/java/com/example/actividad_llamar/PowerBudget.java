@@ -0,0 +1,330 @@
+package com.example.actividad_llamar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reparte lo que gasta batería (wake lock de proximidad, sesiones de GPS)
+ * como préstamos con plazo máximo: quien pide un {@link Lease} debe
+ * devolverlo, y si no lo hace a tiempo el presupuesto lo corta y le avisa.
+ * Lleva la cuenta del tiempo concedido por motivo, en total y en el día, y
+ * endurece los plazos con batería baja o cuando se agota el cupo diario.
+ *
+ * Los motivos esenciales (GPS al sonar un contacto) nunca se deniegan, solo
+ * se acortan. El día se cuenta con el reloj monotónico, así que al
+ * reiniciar el proceso empieza otro. Se puede usar desde cualquier hilo; los
+ * avisos de corte se hacen fuera del cerrojo.
+ */
+public final class PowerBudget {
+
+    public interface Host {
+        /** Programa una única llamada a {@link #onCheck()}, sustituyendo la anterior. */
+        void scheduleCheck(long delayMs);
+
+        void cancelCheck();
+    }
+
+    public enum Reason {
+        PROXIMITY("proximidad", 15 * 60 * 1000, 2 * 60 * 60 * 1000, false),
+        GPS_RING("gps_timbre", 2 * 60 * 1000, 30 * 60 * 1000, true),
+        GPS_BACKGROUND("gps_fondo", 60 * 1000, 20 * 60 * 1000, false);
+
+        final String label;
+        final long maxLeaseMs;
+        final long defaultDailyMs;
+        final boolean essential;
+
+        Reason(String label, long maxLeaseMs, long defaultDailyMs, boolean essential) {
+            this.label = label;
+            this.maxLeaseMs = maxLeaseMs;
+            this.defaultDailyMs = defaultDailyMs;
+            this.essential = essential;
+        }
+    }
+
+    public enum Policy {
+        NORMAL,
+        // Batería baja: solo lo esencial, con la mitad de plazo
+        SAVER,
+        // Casi sin batería: lo esencial con un cuarto de plazo
+        CRITICAL
+    }
+
+    public static final int LOW_BATTERY_PERCENT = 15;
+    public static final int CRITICAL_BATTERY_PERCENT = 5;
+    static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private static final Reason[] REASONS = Reason.values();
+
+    /** Un préstamo concedido. Devolverlo más de una vez no hace nada. */
+    public final class Lease {
+        final Reason reason;
+        final long grantedAt;
+        long expiresAt;
+        final Runnable onRevoked;
+        boolean active = true;
+
+        Lease(Reason reason, long grantedAt, long expiresAt, Runnable onRevoked) {
+            this.reason = reason;
+            this.grantedAt = grantedAt;
+            this.expiresAt = expiresAt;
+            this.onRevoked = onRevoked;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        /** Plazo concedido desde que se pidió; sirve de tope para el propio wake lock. */
+        public long getDurationMs() {
+            synchronized (PowerBudget.this) {
+                return expiresAt - grantedAt;
+            }
+        }
+
+        public boolean isActive() {
+            synchronized (PowerBudget.this) {
+                return active;
+            }
+        }
+
+        public void release() {
+            synchronized (PowerBudget.this) {
+                if (active) {
+                    end(this, clock.elapsedRealtime());
+                    reschedule(clock.elapsedRealtime());
+                }
+            }
+        }
+    }
+
+    private final Clock clock;
+    private final Host host;
+    private final List<Lease> leases = new ArrayList<>();
+
+    private final long[] dailyBudgetMs = new long[REASONS.length];
+    private final long[] heldMs = new long[REASONS.length];
+    private final long[] todayMs = new long[REASONS.length];
+    private final int[] granted = new int[REASONS.length];
+    private final int[] denied = new int[REASONS.length];
+    private final int[] revoked = new int[REASONS.length];
+    private long dayStart;
+
+    private int batteryPercent = 100;
+    private boolean charging;
+    private Policy policy = Policy.NORMAL;
+
+    public PowerBudget(Clock clock, Host host) {
+        this.clock = clock;
+        this.host = host;
+        for (Reason r : REASONS) {
+            dailyBudgetMs[r.ordinal()] = r.defaultDailyMs;
+        }
+        dayStart = clock.elapsedRealtime();
+    }
+
+    public synchronized void setDailyBudgetMs(Reason reason, long ms) {
+        dailyBudgetMs[reason.ordinal()] = ms;
+    }
+
+    /**
+     * Pide un préstamo de hasta {@code requestedMs}. Devuelve null si se
+     * deniega; si se concede, el plazo puede ser menor que el pedido.
+     *
+     * @param onRevoked se llama, desde cualquier hilo, si el presupuesto corta
+     *                  el préstamo antes de que se devuelva
+     */
+    public Lease acquire(Reason reason, long requestedMs, Runnable onRevoked) {
+        synchronized (this) {
+            long now = clock.elapsedRealtime();
+            rollDay(now);
+            long limit = Math.min(requestedMs, allowedMs(reason));
+            if (limit <= 0) {
+                denied[reason.ordinal()]++;
+                return null;
+            }
+            Lease lease = new Lease(reason, now, now + limit, onRevoked);
+            leases.add(lease);
+            granted[reason.ordinal()]++;
+            reschedule(now);
+            return lease;
+        }
+    }
+
+    /** Vencimiento del préstamo más próximo. */
+    public void onCheck() {
+        List<Lease> cut;
+        synchronized (this) {
+            long now = clock.elapsedRealtime();
+            rollDay(now);
+            cut = collectExpired(now);
+            reschedule(now);
+        }
+        notifyRevoked(cut);
+    }
+
+    /** Estado de la batería; con poca carga se acortan o cortan los préstamos en curso. */
+    public void setBattery(int percent, boolean charging) {
+        List<Lease> cut;
+        synchronized (this) {
+            this.batteryPercent = percent;
+            this.charging = charging;
+            Policy next = charging || percent > LOW_BATTERY_PERCENT ? Policy.NORMAL
+                    : percent > CRITICAL_BATTERY_PERCENT ? Policy.SAVER : Policy.CRITICAL;
+            if (next == policy) {
+                return;
+            }
+            policy = next;
+            long now = clock.elapsedRealtime();
+            for (Lease lease : leases) {
+                lease.expiresAt = Math.min(lease.expiresAt, lease.grantedAt + allowedMs(lease.reason));
+            }
+            cut = collectExpired(now);
+            reschedule(now);
+        }
+        notifyRevoked(cut);
+    }
+
+    public synchronized Policy getPolicy() {
+        return policy;
+    }
+
+    public synchronized int getBatteryPercent() {
+        return batteryPercent;
+    }
+
+    public synchronized int getActiveCount() {
+        return leases.size();
+    }
+
+    /** Tiempo concedido por el motivo desde que se creó, incluidos los préstamos en curso. */
+    public synchronized long getHeldMs(Reason reason) {
+        return heldMs[reason.ordinal()] + activeMs(reason, clock.elapsedRealtime());
+    }
+
+    /** Lo mismo, solo en el día en curso. */
+    public synchronized long getTodayMs(Reason reason) {
+        long now = clock.elapsedRealtime();
+        rollDay(now);
+        return todayMs[reason.ordinal()] + activeMs(reason, now);
+    }
+
+    public synchronized int getGrantedCount(Reason reason) {
+        return granted[reason.ordinal()];
+    }
+
+    public synchronized int getDeniedCount(Reason reason) {
+        return denied[reason.ordinal()];
+    }
+
+    public synchronized int getRevokedCount(Reason reason) {
+        return revoked[reason.ordinal()];
+    }
+
+    /** Una línea por motivo, para logcat y dumpsys. */
+    public synchronized void dump(StringBuilder out) {
+        long now = clock.elapsedRealtime();
+        rollDay(now);
+        out.append("energia politica=").append(policy)
+                .append(" bateria=").append(batteryPercent).append('%')
+                .append(charging ? " cargando" : "")
+                .append(" activos=").append(leases.size()).append('\n');
+        for (Reason r : REASONS) {
+            int i = r.ordinal();
+            long active = activeMs(r, now);
+            out.append("energia ").append(r.label)
+                    .append(" total=").append(heldMs[i] + active).append("ms")
+                    .append(" hoy=").append(todayMs[i] + active).append('/').append(dailyBudgetMs[i]).append("ms")
+                    .append(" concedidos=").append(granted[i])
+                    .append(" denegados=").append(denied[i])
+                    .append(" cortados=").append(revoked[i]).append('\n');
+        }
+    }
+
+    // Plazo máximo que se concedería ahora mismo al motivo; 0 si se deniega
+    private long allowedMs(Reason reason) {
+        boolean overBudget = todayMs[reason.ordinal()] >= dailyBudgetMs[reason.ordinal()];
+        if (charging) {
+            return reason.maxLeaseMs;
+        }
+        if (!reason.essential) {
+            return policy == Policy.NORMAL && !overBudget ? reason.maxLeaseMs : 0;
+        }
+        long ms = reason.maxLeaseMs;
+        if (overBudget || policy == Policy.SAVER) {
+            ms /= 2;
+        }
+        if (policy == Policy.CRITICAL) {
+            ms /= 4;
+        }
+        return ms;
+    }
+
+    private List<Lease> collectExpired(long now) {
+        List<Lease> cut = null;
+        for (int i = leases.size() - 1; i >= 0; i--) {
+            Lease lease = leases.get(i);
+            if (now >= lease.expiresAt) {
+                if (cut == null) {
+                    cut = new ArrayList<>();
+                }
+                cut.add(lease);
+                revoked[lease.reason.ordinal()]++;
+                end(lease, Math.min(now, lease.expiresAt));
+            }
+        }
+        return cut;
+    }
+
+    private void notifyRevoked(List<Lease> cut) {
+        if (cut == null) {
+            return;
+        }
+        for (Lease lease : cut) {
+            if (lease.onRevoked != null) {
+                lease.onRevoked.run();
+            }
+        }
+    }
+
+    private void end(Lease lease, long now) {
+        lease.active = false;
+        leases.remove(lease);
+        long held = Math.max(0, now - lease.grantedAt);
+        heldMs[lease.reason.ordinal()] += held;
+        // Lo que empezó ayer cuenta entero para hoy; la diferencia es pequeña
+        todayMs[lease.reason.ordinal()] += held;
+    }
+
+    private long activeMs(Reason reason, long now) {
+        long ms = 0;
+        for (Lease lease : leases) {
+            if (lease.reason == reason) {
+                ms += now - lease.grantedAt;
+            }
+        }
+        return ms;
+    }
+
+    private void rollDay(long now) {
+        if (now - dayStart < DAY_MS) {
+            return;
+        }
+        dayStart += (now - dayStart) / DAY_MS * DAY_MS;
+        for (int i = 0; i < todayMs.length; i++) {
+            todayMs[i] = 0;
+        }
+    }
+
+    private void reschedule(long now) {
+        if (leases.isEmpty()) {
+            host.cancelCheck();
+            return;
+        }
+        long next = Long.MAX_VALUE;
+        for (Lease lease : leases) {
+            next = Math.min(next, lease.expiresAt);
+        }
+        host.scheduleCheck(Math.max(0, next - now));
+    }
+}
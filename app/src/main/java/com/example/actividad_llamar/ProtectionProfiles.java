@@ -0,0 +1,237 @@
+package com.example.actividad_llamar;
+
+/**
+ * Elige cuánto vigilar según la batería y el movimiento. Con el cargador
+ * puesto o en marcha con carga de sobra se vigila de más; con poca batería
+ * se pasa a supervivencia y todo se espacia; el resto del tiempo, lo
+ * equilibrado. Cada {@link Profile} fija las cadencias del GPS, de la lectura
+ * de fondo, de los reenvíos y del rastro; quien las usa las vuelve a
+ * aplicar en {@link Host#onProfileChanged}.
+ *
+ * Mide además lo que gasta cada perfil: tiempo sin cargador y puntos de
+ * batería perdidos mientras estaba activo.
+ *
+ * No depende de Android para poder probarse en la JVM. Las entradas llegan
+ * por el hilo de trabajo y ahí se avisa al {@link Host}; las lecturas y el
+ * volcado se pueden hacer desde cualquier hilo.
+ */
+public final class ProtectionProfiles {
+
+    public interface Host {
+        void onProfileChanged(Profile profile);
+
+        /** Programa una única llamada a {@link #onCheck()}, sustituyendo la anterior. */
+        void scheduleCheck(long delayMs);
+    }
+
+    public enum Profile {
+        // GPS ms/m, fondo y reenvío en % del configurado, rastro ms, actividad ms/m
+        AGGRESSIVE("agresivo", 1000, 0, 50, 100, 1000, 30000, 5),
+        BALANCED("equilibrado", 2000, 5, 100, 100, 5000, 60000, 10),
+        SURVIVAL("supervivencia", 5000, 25, 400, 300, 30000, 3 * 60000, 50);
+
+        final String label;
+        final long gpsIntervalMs;
+        final float gpsMinDistanceM;
+        final int backgroundPercent;
+        final int resendPercent;
+        final long trailMinIntervalMs;
+        final long activityIntervalMs;
+        final float activityMinDistanceM;
+
+        Profile(String label, long gpsIntervalMs, float gpsMinDistanceM, int backgroundPercent, int resendPercent,
+                long trailMinIntervalMs, long activityIntervalMs, float activityMinDistanceM) {
+            this.label = label;
+            this.gpsIntervalMs = gpsIntervalMs;
+            this.gpsMinDistanceM = gpsMinDistanceM;
+            this.backgroundPercent = backgroundPercent;
+            this.resendPercent = resendPercent;
+            this.trailMinIntervalMs = trailMinIntervalMs;
+            this.activityIntervalMs = activityIntervalMs;
+            this.activityMinDistanceM = activityMinDistanceM;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /** Intervalo de las peticiones de GPS del servicio. */
+        public long getGpsIntervalMs() {
+            return gpsIntervalMs;
+        }
+
+        public float getGpsMinDistanceM() {
+            return gpsMinDistanceM;
+        }
+
+        /** Separación mínima entre dos puntos del rastro. */
+        public long getTrailMinIntervalMs() {
+            return trailMinIntervalMs;
+        }
+
+        /** Peticiones de ubicación de la pantalla de llamada. */
+        public long getActivityIntervalMs() {
+            return activityIntervalMs;
+        }
+
+        public float getActivityMinDistanceM() {
+            return activityMinDistanceM;
+        }
+
+        /** Intervalo de la lectura de fondo a partir del configurado. */
+        public long backgroundIntervalMs(long configuredMs) {
+            return configuredMs * backgroundPercent / 100;
+        }
+
+        /** Espera del reenvío a partir de la que dicen las reglas. */
+        public long resendDelayMs(long ruleMs) {
+            return ruleMs * resendPercent / 100;
+        }
+    }
+
+    // Por debajo se pasa a supervivencia; para salir hace falta algo más de carga
+    public static final int SURVIVAL_PERCENT = 20;
+    public static final int SURVIVAL_EXIT_PERCENT = 25;
+    // En marcha solo se vigila de más si queda al menos esto
+    public static final int AGGRESSIVE_MIN_PERCENT = 50;
+    // Sin señales de movimiento durante este tiempo se da por quieto
+    public static final long STILL_AFTER_MS = 5 * 60 * 1000;
+    // A partir de esta velocidad un fix cuenta como movimiento
+    public static final float MOVING_SPEED_MPS = 1.5f;
+
+    private static final Profile[] PROFILES = Profile.values();
+
+    private final Clock clock;
+    private final Host host;
+
+    private volatile Profile profile = Profile.BALANCED;
+    private int batteryPercent = 100;
+    private boolean charging;
+    private boolean batteryKnown;
+    private long lastMotionAt = Long.MIN_VALUE;
+    private long changes;
+
+    // Medida del gasto: desde la última lectura, a cuenta del perfil activo
+    private long accountedAt;
+    private final long[] onBatteryMs = new long[PROFILES.length];
+    private final int[] drainedPercent = new int[PROFILES.length];
+
+    public ProtectionProfiles(Clock clock, Host host) {
+        this.clock = clock;
+        this.host = host;
+        accountedAt = clock.elapsedRealtime();
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public synchronized long getChangeCount() {
+        return changes;
+    }
+
+    public synchronized boolean isMoving() {
+        return lastMotionAt != Long.MIN_VALUE && clock.elapsedRealtime() - lastMotionAt < STILL_AFTER_MS;
+    }
+
+    /** Nivel de batería; la bajada desde la lectura anterior se apunta al perfil activo. */
+    public synchronized void setBattery(int percent, boolean charging) {
+        long now = clock.elapsedRealtime();
+        account(now);
+        if (batteryKnown && !this.charging && percent < batteryPercent) {
+            drainedPercent[profile.ordinal()] += batteryPercent - percent;
+        }
+        batteryPercent = percent;
+        this.charging = charging;
+        batteryKnown = true;
+        select(now);
+    }
+
+    /** Sensor de movimiento significativo o un fix con velocidad. */
+    public synchronized void onMotion() {
+        long now = clock.elapsedRealtime();
+        boolean wasMoving = isMoving();
+        lastMotionAt = now;
+        if (!wasMoving) {
+            select(now);
+        }
+        host.scheduleCheck(STILL_AFTER_MS);
+    }
+
+    /** Vence el plazo sin movimiento. */
+    public synchronized void onCheck() {
+        long now = clock.elapsedRealtime();
+        if (isMoving()) {
+            host.scheduleCheck(lastMotionAt + STILL_AFTER_MS - now);
+            return;
+        }
+        select(now);
+    }
+
+    /** Tiempo sin cargador con el perfil activo. */
+    public synchronized long getOnBatteryMs(Profile p) {
+        long ms = onBatteryMs[p.ordinal()];
+        if (p == profile && batteryKnown && !charging) {
+            ms += clock.elapsedRealtime() - accountedAt;
+        }
+        return ms;
+    }
+
+    public synchronized int getDrainedPercent(Profile p) {
+        return drainedPercent[p.ordinal()];
+    }
+
+    /** Puntos de batería por hora con ese perfil, o -1 si aún no hay bastante medida. */
+    public synchronized float getDrainPercentPerHour(Profile p) {
+        long ms = getOnBatteryMs(p);
+        if (ms < 60 * 1000 || drainedPercent[p.ordinal()] == 0) {
+            return -1;
+        }
+        return drainedPercent[p.ordinal()] * 3600000f / ms;
+    }
+
+    /** Perfil actual y gasto medido de cada uno, para logcat y dumpsys. */
+    public synchronized void dump(StringBuilder out) {
+        out.append("perfil ").append(profile.label)
+                .append(" bateria=").append(batteryPercent).append('%')
+                .append(charging ? " cargando" : "")
+                .append(isMoving() ? " en_marcha" : " quieto")
+                .append(" cambios=").append(changes).append('\n');
+        for (Profile p : PROFILES) {
+            float perHour = getDrainPercentPerHour(p);
+            out.append("perfil ").append(p.label)
+                    .append(" sin_cargador=").append(getOnBatteryMs(p)).append("ms")
+                    .append(" gastado=").append(drainedPercent[p.ordinal()]).append('%')
+                    .append(" por_hora=").append(perHour < 0 ? "-" : Math.round(perHour * 100) / 100f + "%")
+                    .append('\n');
+        }
+    }
+
+    private void select(long now) {
+        Profile next;
+        if (charging) {
+            next = Profile.AGGRESSIVE;
+        } else if (batteryPercent <= SURVIVAL_PERCENT
+                || (profile == Profile.SURVIVAL && batteryPercent <= SURVIVAL_EXIT_PERCENT)) {
+            next = Profile.SURVIVAL;
+        } else if (isMoving() && batteryPercent >= AGGRESSIVE_MIN_PERCENT) {
+            next = Profile.AGGRESSIVE;
+        } else {
+            next = Profile.BALANCED;
+        }
+        if (next == profile) {
+            return;
+        }
+        account(now);
+        profile = next;
+        changes++;
+        host.onProfileChanged(next);
+    }
+
+    private void account(long now) {
+        if (batteryKnown && !charging) {
+            onBatteryMs[profile.ordinal()] += now - accountedAt;
+        }
+        accountedAt = now;
+    }
+}
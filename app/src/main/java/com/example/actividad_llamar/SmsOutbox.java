@@ -0,0 +1,340 @@
+package com.example.actividad_llamar;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bandeja de salida de SMS persistente. Cada cambio se añade a un diario en
+ * disco (solo anexar), de modo que si el proceso muere los mensajes pendientes
+ * se vuelven a enviar al reiniciar el servicio. Los envíos fallidos se
+ * reintentan con espera exponencial.
+ */
+public final class SmsOutbox {
+
+    public interface Host {
+        /** Envía el mensaje; el resultado llega por {@link #onSent} y {@link #onDelivered}. */
+        void send(long id, String destination, String text);
+
+        /** Programa una única llamada a {@link #onRetryTimer()}, sustituyendo la anterior. */
+        void scheduleRetry(long delayMs);
+    }
+
+    public static final long DEFAULT_BASE_BACKOFF_MS = 5000;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+    // Si no llega el resultado del envío en este plazo se da por fallido
+    public static final long SEND_TIMEOUT_MS = 60000;
+
+    private static final byte REC_ENQUEUED = 1;
+    private static final byte REC_SENT = 2;
+    private static final byte REC_DELIVERED = 3;
+    private static final byte REC_FAILED = 4;
+    private static final byte REC_ABANDONED = 5;
+    // Id más alto ya usado; lo escribe la compactación para no repetir ids
+    // tras un reinicio, que un acuse tardío confundiría con otro mensaje
+    private static final byte REC_HIGH_WATER = 6;
+
+    private static final int COMPACT_AFTER_RECORDS = 512;
+
+    private static final class Entry {
+        final long id;
+        final String destination;
+        final String text;
+        int attempts;
+        boolean sent;
+        boolean inFlight;
+        long dueAt;
+
+        Entry(long id, String destination, String text) {
+            this.id = id;
+            this.destination = destination;
+            this.text = text;
+        }
+    }
+
+    private final File journal;
+    private final Clock clock;
+    private final Host host;
+    private final Map<Long, Entry> entries = new LinkedHashMap<>();
+
+    private long baseBackoffMs = DEFAULT_BASE_BACKOFF_MS;
+    private long maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private DataOutputStream out;
+    private FileOutputStream outFile;
+    private long nextId = 1;
+    private int records;
+
+    private int sentCount;
+    private int deliveredCount;
+    private int retryCount;
+    private int abandonedCount;
+
+    public SmsOutbox(File journal, Clock clock, Host host) {
+        this.journal = journal;
+        this.clock = clock;
+        this.host = host;
+    }
+
+    public synchronized void setRetryPolicy(long baseBackoffMs, long maxBackoffMs, int maxAttempts) {
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Lee el diario y deja pendientes los mensajes sin confirmar. Los que
+     * estaban en vuelo cuando murió el proceso se consideran no enviados.
+     */
+    public synchronized void load() throws IOException {
+        entries.clear();
+        records = 0;
+        if (journal.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+                while (true) {
+                    byte type = in.readByte();
+                    long id = in.readLong();
+                    if (type == REC_ENQUEUED) {
+                        String destination = in.readUTF();
+                        String text = in.readUTF();
+                        entries.put(id, new Entry(id, destination, text));
+                    } else if (type == REC_HIGH_WATER) {
+                        // Solo cuenta para nextId
+                    } else {
+                        Entry e = entries.get(id);
+                        int attempts = type == REC_FAILED ? in.readInt() : 0;
+                        if (e != null) {
+                            if (type == REC_SENT) {
+                                e.sent = true;
+                            } else if (type == REC_FAILED) {
+                                e.attempts = attempts;
+                            } else {
+                                entries.remove(id);
+                            }
+                        }
+                    }
+                    nextId = Math.max(nextId, id + 1);
+                    records++;
+                }
+            } catch (EOFException ignored) {
+                // Fin del diario o último registro a medias por un cierre brusco
+            }
+        }
+        // Los ya enviados no se siguen tras un reinicio: su acuse se habrá perdido
+        entries.values().removeIf(e -> e.sent);
+        compact();
+    }
+
+    public synchronized long enqueue(String destination, String text) throws IOException {
+        long id = nextId++;
+        Entry e = new Entry(id, destination, text);
+        ensureOpen();
+        out.writeByte(REC_ENQUEUED);
+        out.writeLong(id);
+        out.writeUTF(destination);
+        out.writeUTF(text);
+        sync();
+        records++;
+        entries.put(id, e);
+        flushPending();
+        return id;
+    }
+
+    /** Reenvía todo lo pendiente que ya haya vencido; útil tras un reinicio. */
+    public synchronized void flushPending() {
+        long now = clock.elapsedRealtime();
+        long nextDue = Long.MAX_VALUE;
+        for (Entry e : new ArrayList<>(entries.values())) {
+            if (e.sent) {
+                continue;
+            }
+            if (e.inFlight && now - e.dueAt >= SEND_TIMEOUT_MS) {
+                // Sin respuesta de la radio: se trata como un fallo
+                e.inFlight = false;
+                fail(e, now);
+            }
+            if (!e.inFlight && e.dueAt <= now && entries.containsKey(e.id)) {
+                dispatch(e);
+            }
+            if (!e.sent && entries.containsKey(e.id)) {
+                nextDue = Math.min(nextDue, e.inFlight ? e.dueAt + SEND_TIMEOUT_MS : e.dueAt);
+            }
+        }
+        if (nextDue != Long.MAX_VALUE) {
+            host.scheduleRetry(Math.max(0, nextDue - now));
+        }
+    }
+
+    public void onRetryTimer() {
+        flushPending();
+    }
+
+    public synchronized void onSent(long id, boolean success) {
+        Entry e = entries.get(id);
+        if (e == null || e.sent) {
+            return;
+        }
+        e.inFlight = false;
+        if (success) {
+            e.sent = true;
+            sentCount++;
+            append(REC_SENT, id);
+        } else {
+            fail(e, clock.elapsedRealtime());
+            flushPending();
+        }
+    }
+
+    public synchronized void onDelivered(long id) {
+        Entry e = entries.get(id);
+        // Un acuse de entrega sin envío confirmado no es de este mensaje
+        if (e != null && e.sent) {
+            entries.remove(id);
+            deliveredCount++;
+            append(REC_DELIVERED, id);
+        }
+    }
+
+    public synchronized int pendingCount() {
+        int pending = 0;
+        for (Entry e : entries.values()) {
+            if (!e.sent) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    public synchronized int getSentCount() {
+        return sentCount;
+    }
+
+    public synchronized int getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    public synchronized int getRetryCount() {
+        return retryCount;
+    }
+
+    public synchronized int getAbandonedCount() {
+        return abandonedCount;
+    }
+
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            out = null;
+            outFile = null;
+        }
+    }
+
+    private void dispatch(Entry e) {
+        e.inFlight = true;
+        e.dueAt = clock.elapsedRealtime();
+        host.send(e.id, e.destination, e.text);
+    }
+
+    private void fail(Entry e, long now) {
+        e.attempts++;
+        if (e.attempts >= maxAttempts) {
+            entries.remove(e.id);
+            abandonedCount++;
+            append(REC_ABANDONED, e.id);
+            return;
+        }
+        retryCount++;
+        long backoff = baseBackoffMs << Math.min(e.attempts - 1, 20);
+        e.dueAt = now + Math.min(backoff, maxBackoffMs);
+        try {
+            ensureOpen();
+            out.writeByte(REC_FAILED);
+            out.writeLong(e.id);
+            out.writeInt(e.attempts);
+            out.flush();
+            records++;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void append(byte type, long id) {
+        try {
+            ensureOpen();
+            out.writeByte(type);
+            out.writeLong(id);
+            out.flush();
+            records++;
+            if (records > COMPACT_AFTER_RECORDS && records > entries.size() * 4) {
+                compact();
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    // Reescribe el diario solo con lo vivo: escribir aparte y renombrar
+    private void compact() throws IOException {
+        close();
+        File tmp = new File(journal.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream tmpOut = new DataOutputStream(fos)) {
+            List<Entry> live = new ArrayList<>(entries.values());
+            records = 0;
+            if (nextId > 1) {
+                tmpOut.writeByte(REC_HIGH_WATER);
+                tmpOut.writeLong(nextId - 1);
+                records++;
+            }
+            for (Entry e : live) {
+                tmpOut.writeByte(REC_ENQUEUED);
+                tmpOut.writeLong(e.id);
+                tmpOut.writeUTF(e.destination);
+                tmpOut.writeUTF(e.text);
+                records++;
+                if (e.sent) {
+                    tmpOut.writeByte(REC_SENT);
+                    tmpOut.writeLong(e.id);
+                    records++;
+                } else if (e.attempts > 0) {
+                    tmpOut.writeByte(REC_FAILED);
+                    tmpOut.writeLong(e.id);
+                    tmpOut.writeInt(e.attempts);
+                    records++;
+                }
+            }
+            tmpOut.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(journal)) {
+            throw new IOException("No se pudo renombrar " + tmp);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (out == null) {
+            outFile = new FileOutputStream(journal, true);
+            out = new DataOutputStream(outFile);
+        }
+    }
+
+    private void sync() throws IOException {
+        out.flush();
+        outFile.getFD().sync();
+    }
+}
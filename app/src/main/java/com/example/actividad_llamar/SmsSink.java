@@ -0,0 +1,16 @@
+package com.example.actividad_llamar;
+
+/**
+ * Salida de los SMS hacia la radio. En el teléfono es SmsManager; en las
+ * pruebas, uno falso que confirma el envío pasado un tiempo. El resultado
+ * se devuelve a {@link AlertPipeline#onSmsSent} y
+ * {@link AlertPipeline#onSmsDelivered} con el mismo id.
+ */
+public interface SmsSink {
+
+    /**
+     * Entrega el SMS a la radio. Devuelve false si ni siquiera se pudo
+     * entregar; el fallo llega igualmente por {@link AlertPipeline#onSmsSent}.
+     */
+    boolean send(long id, String destination, String text);
+}
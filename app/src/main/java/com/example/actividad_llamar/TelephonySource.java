@@ -0,0 +1,18 @@
+package com.example.actividad_llamar;
+
+/**
+ * Origen de los estados de llamada. En el teléfono es el PhoneStateListener
+ * de {@link BackgroundService}; en las pruebas, uno falso que los genera.
+ */
+public interface TelephonySource {
+
+    interface Sink {
+        /** Estados de {@link CallStateEngine}; llega en el hilo de trabajo. */
+        void onCallStateChanged(int state, String phoneNumber);
+    }
+
+    /** Empieza a entregar estados. Devuelve false si no se puede (falta el permiso). */
+    boolean start(Sink sink);
+
+    void stop();
+}
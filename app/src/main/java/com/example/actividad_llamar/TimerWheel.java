@@ -0,0 +1,202 @@
+package com.example.actividad_llamar;
+
+/**
+ * Rueda de temporizadores con huecos hash. Cada acción lógica (alerta, reenvío,
+ * rellamada...) tiene un único {@link Timer} creado de antemano, así que nunca
+ * hay dos instancias pendientes de la misma acción: programarla otra vez solo
+ * la mueve de hueco. Programar y cancelar son O(1).
+ *
+ * El anfitrión despierta la rueda con {@link #advance()} cuando se lo pide
+ * {@link Host#scheduleTick(long)}; sin temporizadores pendientes no hay ticks.
+ * Debe usarse siempre desde el mismo hilo.
+ */
+public final class TimerWheel {
+
+    public interface Host {
+        /** Programa una única llamada a {@link #advance()}, sustituyendo la anterior. */
+        void scheduleTick(long delayMs);
+
+        void cancelTick();
+    }
+
+    public static final long DEFAULT_TICK_MS = 100;
+    public static final int DEFAULT_SLOTS = 1024;
+
+    public final class Timer {
+        final String name;
+        final Runnable action;
+        long deadlineTick;
+        boolean pending;
+        Timer prev;
+        Timer next;
+
+        Timer(String name, Runnable action) {
+            this.name = name;
+            this.action = action;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isPending() {
+            return pending;
+        }
+
+        /** Milisegundos hasta que venza, o -1 si no está pendiente. */
+        public long remainingMs() {
+            return pending ? Math.max(0, deadlineTick * tickMs - clock.elapsedRealtime()) : -1;
+        }
+    }
+
+    private final Clock clock;
+    private final Host host;
+    private final long tickMs;
+    private final Timer[] slots;
+    private final int mask;
+
+    private long currentTick;
+    private long scheduledTick = Long.MAX_VALUE;
+    private int pending;
+    private long fired;
+
+    public TimerWheel(Clock clock, Host host) {
+        this(clock, host, DEFAULT_TICK_MS, DEFAULT_SLOTS);
+    }
+
+    public TimerWheel(Clock clock, Host host, long tickMs, int slotCount) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("slotCount debe ser potencia de 2");
+        }
+        this.clock = clock;
+        this.host = host;
+        this.tickMs = tickMs;
+        this.slots = new Timer[slotCount];
+        this.mask = slotCount - 1;
+        this.currentTick = clock.elapsedRealtime() / tickMs;
+    }
+
+    public Timer newTimer(String name, Runnable action) {
+        return new Timer(name, action);
+    }
+
+    /** Programa el temporizador; si ya estaba pendiente se sustituye su vencimiento. */
+    public void schedule(Timer timer, long delayMs) {
+        if (timer.pending) {
+            unlink(timer);
+        }
+        long now = clock.elapsedRealtime();
+        // Redondeo hacia arriba: nunca vence antes de lo pedido
+        long tick = (now + Math.max(0, delayMs) + tickMs - 1) / tickMs;
+        if (tick <= currentTick) {
+            tick = currentTick + 1;
+        }
+        timer.deadlineTick = tick;
+        link(timer);
+        if (tick < scheduledTick) {
+            requestTick(tick, now);
+        }
+    }
+
+    /** Programa solo si no hay ya una instancia pendiente. */
+    public void scheduleIfIdle(Timer timer, long delayMs) {
+        if (!timer.pending) {
+            schedule(timer, delayMs);
+        }
+    }
+
+    public void cancel(Timer timer) {
+        if (timer.pending) {
+            unlink(timer);
+            if (pending == 0) {
+                scheduledTick = Long.MAX_VALUE;
+                host.cancelTick();
+            }
+        }
+    }
+
+    public int pendingCount() {
+        return pending;
+    }
+
+    public long getFiredCount() {
+        return fired;
+    }
+
+    /** Ejecuta los temporizadores vencidos y pide el siguiente tick. */
+    public void advance() {
+        long now = clock.elapsedRealtime();
+        long nowTick = now / tickMs;
+        scheduledTick = Long.MAX_VALUE;
+        // Si ha pasado más de una vuelta basta con recorrer cada hueco una vez
+        long from = Math.max(currentTick + 1, nowTick - mask);
+        if (nowTick > currentTick) {
+            // Lo que se programe desde las acciones cae como pronto en el tick siguiente
+            currentTick = nowTick;
+        }
+        for (long t = from; t <= nowTick; t++) {
+            int slot = (int) (t & mask);
+            Timer timer = slots[slot];
+            while (timer != null) {
+                if (timer.deadlineTick <= nowTick) {
+                    unlink(timer);
+                    fired++;
+                    timer.action.run();
+                    // La acción puede haber tocado este hueco: se vuelve a empezar
+                    timer = slots[slot];
+                } else {
+                    timer = timer.next;
+                }
+            }
+        }
+        if (pending > 0) {
+            requestTick(nextOccupiedTick(), now);
+        } else {
+            host.cancelTick();
+        }
+    }
+
+    private void requestTick(long tick, long now) {
+        scheduledTick = tick;
+        host.scheduleTick(Math.max(0, tick * tickMs - now));
+    }
+
+    // Primer hueco ocupado a partir del actual; si sus temporizadores son de
+    // vueltas posteriores el tick será en balde, pero como mucho uno por vuelta
+    private long nextOccupiedTick() {
+        for (long t = currentTick + 1; t <= currentTick + slots.length; t++) {
+            if (slots[(int) (t & mask)] != null) {
+                return t;
+            }
+        }
+        return currentTick + slots.length;
+    }
+
+    private void link(Timer timer) {
+        int slot = (int) (timer.deadlineTick & mask);
+        Timer head = slots[slot];
+        timer.prev = null;
+        timer.next = head;
+        if (head != null) {
+            head.prev = timer;
+        }
+        slots[slot] = timer;
+        timer.pending = true;
+        pending++;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            slots[(int) (timer.deadlineTick & mask)] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.pending = false;
+        pending--;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.actividad_llamar;
+
+/**
+ * Índice de números de confianza. Cada número se normaliza a E.164 y se guarda
+ * como un {@code long} en una tabla hash abierta, junto al perfil que le aplica.
+ * La consulta en el timbre es de tiempo constante y no reserva memoria.
+ *
+ * Para cambiar la lista se construye un índice nuevo y se sustituye el anterior.
+ */
+public final class TrustedNumberIndex {
+
+    public static final int NO_PROFILE = -1;
+    public static final int DEFAULT_PROFILE = 0;
+    public static final int DEFAULT_COUNTRY_CODE = 34;
+    public static final long INVALID = -1L;
+
+    private static final int MAX_E164_DIGITS = 15;
+    private static final long EMPTY = 0L;
+
+    private final int countryCode;
+    private final boolean nationalTrunkZero;
+
+    private long[] keys;
+    private int[] profiles;
+    private int mask;
+    private int shift;
+    private int size;
+
+    public TrustedNumberIndex() {
+        this(DEFAULT_COUNTRY_CODE, false);
+    }
+
+    /**
+     * @param countryCode       prefijo de país para los números nacionales
+     * @param nationalTrunkZero si los números nacionales llevan un 0 inicial que hay que quitar
+     */
+    public TrustedNumberIndex(int countryCode, boolean nationalTrunkZero) {
+        this.countryCode = countryCode;
+        this.nationalTrunkZero = nationalTrunkZero;
+        keys = new long[16];
+        profiles = new int[16];
+        mask = keys.length - 1;
+        shift = 64 - 4;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Devuelve false si el número no se puede normalizar. */
+    public boolean add(CharSequence number, int profile) {
+        long key = normalize(number, countryCode, nationalTrunkZero);
+        if (key == INVALID) {
+            return false;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                profiles[slot] = profile;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        profiles[slot] = profile;
+        size++;
+        return true;
+    }
+
+    public boolean isTrusted(CharSequence number) {
+        return profileOf(number) != NO_PROFILE;
+    }
+
+    /** Perfil del llamante o {@link #NO_PROFILE} si no es de confianza. */
+    public int profileOf(CharSequence number) {
+        long key = normalize(number, countryCode, nationalTrunkZero);
+        if (key == INVALID || size == 0) {
+            return NO_PROFILE;
+        }
+        int slot = slot(key);
+        long k;
+        while ((k = keys[slot]) != EMPTY) {
+            if (k == key) {
+                return profiles[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_PROFILE;
+    }
+
+    /**
+     * Convierte "+34 600 11 12 22", "0034600111222" o "600111222" en el mismo
+     * valor (34600111222). Ignora espacios, guiones, puntos y paréntesis.
+     * Devuelve {@link #INVALID} si el número está vacío o no es válido.
+     */
+    public static long normalize(CharSequence number, int countryCode, boolean nationalTrunkZero) {
+        if (number == null) {
+            return INVALID;
+        }
+        int length = number.length();
+        boolean international = false;
+        int zeros = 0;
+        int digits = 0;
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits == 0 && c == '0') {
+                    // Ceros iniciales: "00" es el prefijo internacional y "0" el troncal
+                    zeros++;
+                    continue;
+                }
+                if (++digits > MAX_E164_DIGITS) {
+                    return INVALID;
+                }
+                value = value * 10 + (c - '0');
+            } else if (c == '+' && digits == 0 && zeros == 0 && !international) {
+                international = true;
+            } else if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')') {
+                return INVALID;
+            }
+        }
+        if (digits == 0) {
+            return INVALID;
+        }
+        if (international) {
+            return zeros == 0 ? value : INVALID;
+        }
+        if (zeros == 2) {
+            return value;
+        }
+        if (zeros > 1 || (zeros == 1 && !nationalTrunkZero)) {
+            return INVALID;
+        }
+        long scale = 1;
+        for (int i = 0; i < digits; i++) {
+            scale *= 10;
+        }
+        if (digits + countryDigits(countryCode) > MAX_E164_DIGITS) {
+            return INVALID;
+        }
+        return countryCode * scale + value;
+    }
+
+    private static int countryDigits(int countryCode) {
+        return countryCode >= 100 ? 3 : countryCode >= 10 ? 2 : 1;
+    }
+
+    // Hash de Fibonacci: los bits altos del producto dan el hueco
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldProfiles = profiles;
+        keys = new long[capacity];
+        profiles = new int[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = slot(key);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                profiles[slot] = oldProfiles[i];
+            }
+        }
+    }
+}
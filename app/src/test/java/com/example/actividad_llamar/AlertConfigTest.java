@@ -0,0 +1,116 @@
+package com.example.actividad_llamar;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AlertConfigTest {
+
+    @Test
+    public void empty_hasDefaultsAndNoContacts() {
+        AlertConfig config = AlertConfig.EMPTY;
+        assertFalse(config.isConfigured());
+        assertNull(config.getPrimaryNumber());
+        assertEquals(TrustedNumberIndex.NO_PROFILE, config.getTrustedNumbers().profileOf("600111222"));
+        assertEquals(CallStateEngine.DEFAULT_ALERT_DELAY_MS, config.getAlertDelayMs());
+        assertEquals(AlertMessageEncoder.DEFAULT_PREFIX, config.getAlertPrefix());
+    }
+
+    @Test
+    public void profileIsContactPosition() {
+        AlertConfig config = new AlertConfig.Builder()
+                .addContact("600111222", "Casa")
+                .addContact("+34 611 000 000", "Trabajo")
+                .build();
+        int profile = config.getTrustedNumbers().profileOf("611000000");
+        assertEquals(1, profile);
+        assertEquals("Trabajo", config.contactForProfile(profile).getName());
+        assertNull(config.contactForProfile(TrustedNumberIndex.NO_PROFILE));
+    }
+
+    @Test
+    public void toBuilder_leavesOriginalUntouched() {
+        AlertConfig original = new AlertConfig.Builder().addContact("600111222", "Casa").build();
+        AlertConfig changed = original.toBuilder().setPrimaryNumber(" 611000000 ").setAlertDelayMs(1000).build();
+
+        assertEquals("600111222", original.getPrimaryNumber());
+        assertEquals(CallStateEngine.DEFAULT_ALERT_DELAY_MS, original.getAlertDelayMs());
+        assertEquals("611000000", changed.getPrimaryNumber());
+        assertEquals("Casa", changed.getContacts().get(0).getName());
+        assertEquals(1000, changed.getAlertDelayMs());
+
+        assertFalse(changed.toBuilder().setPrimaryNumber("").build().isConfigured());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void contacts_areReadOnly() {
+        new AlertConfig.Builder().addContact("600111222", "Casa").build().getContacts().clear();
+    }
+
+    @Test
+    public void alertRecipients_callerFirstThenFlaggedContactsWithoutRepeats() {
+        AlertConfig config = new AlertConfig.Builder()
+                .addContact("600111222", "Casa")
+                .addContact("611000000", "Supervisor")
+                .addContact("622000000", "Solo rellamada", AlertConfig.FLAG_REDIAL)
+                .addContact("633000000", "Supervisora")
+                .build();
+        List<String> out = new ArrayList<>();
+        config.alertRecipients("+34 600 111 222", out, 8);
+        assertEquals(Arrays.asList("+34 600 111 222", "611000000", "633000000"), out);
+
+        out.clear();
+        config.alertRecipients("611000000", out, 2);
+        assertEquals(Arrays.asList("611000000", "600111222"), out);
+    }
+
+    @Test
+    public void alertRecipients_groupMembersOnlyWhenCalling() {
+        AlertConfig config = new AlertConfig.Builder()
+                .addContact("600111222", "Casa")
+                .addContact("611000000", "Solo rellamada", AlertConfig.FLAG_REDIAL)
+                .addContact("644000000", "Del grupo", AlertConfig.DEFAULT_CONTACT_FLAGS | AlertConfig.FLAG_FROM_GROUP)
+                .addContact("655000000", "Del grupo", AlertConfig.FLAG_REDIAL | AlertConfig.FLAG_FROM_GROUP)
+                .build();
+        List<String> out = new ArrayList<>();
+        config.alertRecipients("644000000", out, 8);
+        assertEquals(Arrays.asList("644000000", "600111222"), out);
+
+        out.clear();
+        config.alertRecipients("611000000", out, 8);
+        assertEquals(Arrays.asList("611000000", "600111222"), out);
+    }
+
+    @Test
+    public void ownContacts_areLimitedButGroupMembersAreNot() {
+        AlertConfig.Builder b = new AlertConfig.Builder();
+        for (int i = 0; i < AlertConfig.MAX_CONTACTS; i++) {
+            b.addContact("6" + (10000000 + i), "");
+        }
+        try {
+            b.addContact("699999999", "");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains(String.valueOf(AlertConfig.MAX_CONTACTS)));
+        }
+        // El grupo puede sumar más, y cambiar el principal no cuenta como añadir
+        b.addContact("711000000", "", AlertConfig.FLAG_REDIAL | AlertConfig.FLAG_FROM_GROUP);
+        b.setPrimaryNumber("622000000");
+        AlertConfig config = b.build();
+        assertEquals(AlertConfig.MAX_CONTACTS + 1, config.getContacts().size());
+        assertTrue(config.getTrustedNumbers().isTrusted("711000000"));
+
+        AlertConfig.Builder again = config.toBuilder();
+        try {
+            again.addContact("699999999", "");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        again.setPrimaryNumber("");
+        again.addContact("699999999", "");
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AlertFanoutTest {
+
+    private long now;
+    private long timerDelay = -1;
+    private long nextId = 1;
+    private final List<String> sent = new ArrayList<>();
+    private final Map<String, Long> waits = new HashMap<>();
+    private final List<String> refused = new ArrayList<>();
+    private int doneSent = -1;
+    private int doneFailed = -1;
+    private long doneMs = -2;
+    private AlertFanout fanout;
+
+    @Before
+    public void setUp() {
+        fanout = new AlertFanout(() -> now, new AlertFanout.Host() {
+            @Override
+            public long send(int index, String recipient, String text) {
+                if (refused.contains(recipient)) {
+                    return -1;
+                }
+                sent.add(recipient + ":" + text);
+                return nextId++;
+            }
+
+            @Override
+            public long msUntilAllowed(String recipient) {
+                Long until = waits.get(recipient);
+                return until == null ? 0 : Math.max(0, until - now);
+            }
+
+            @Override
+            public void scheduleTimer(long delayMs) {
+                timerDelay = delayMs;
+            }
+
+            @Override
+            public void cancelTimer() {
+                timerDelay = -1;
+            }
+
+            @Override
+            public void onFanoutDone(int sentCount, int failed, long msToLastSent) {
+                doneSent = sentCount;
+                doneFailed = failed;
+                doneMs = msToLastSent;
+            }
+        });
+    }
+
+    private void runUntil(long until) {
+        while (timerDelay >= 0 && now + timerDelay <= until) {
+            now += timerDelay;
+            timerDelay = -1;
+            fanout.onTimer();
+        }
+        now = until;
+    }
+
+    @Test
+    public void allRecipientsQueuedAtOnce_reportsTimeToLastSent() {
+        fanout.start("alerta", Arrays.asList("600111222", "611000000", "622000000"));
+        assertEquals(Arrays.asList("600111222:alerta", "611000000:alerta", "622000000:alerta"), sent);
+        assertEquals(AlertFanout.Status.QUEUED, fanout.getStatus(1));
+
+        now = 800;
+        fanout.onSent(2, true);
+        fanout.onSent(1, false);
+        now = 1500;
+        fanout.onDelivered(3);
+        assertTrue(fanout.isActive());
+        now = 4000;
+        fanout.onSent(1, true);
+
+        assertFalse(fanout.isActive());
+        assertEquals(3, doneSent);
+        assertEquals(0, doneFailed);
+        assertEquals(4000, doneMs);
+        assertEquals(AlertFanout.Status.DELIVERED, fanout.getStatus(2));
+        assertEquals(800, fanout.getSentAfterMs(1));
+        assertEquals(-1, timerDelay);
+    }
+
+    @Test
+    public void pacedRecipient_doesNotDelayOthers() {
+        waits.put("611000000", 20000L);
+        fanout.start("alerta", Arrays.asList("600111222", "611000000"));
+        assertEquals(1, sent.size());
+        assertEquals(AlertFanout.Status.WAITING, fanout.getStatus(1));
+        assertEquals(20000, timerDelay);
+
+        fanout.onSent(1, true);
+        runUntil(20000);
+        assertEquals(2, sent.size());
+        fanout.onSent(2, true);
+        assertEquals(2, doneSent);
+        assertEquals(20000, doneMs);
+    }
+
+    @Test
+    public void refusedAndOverlongWaits_failWithoutBlocking() {
+        refused.add("600111222");
+        waits.put("611000000", AlertFanout.DEFAULT_MAX_WAIT_MS + 1);
+        fanout.start("alerta", Arrays.asList("600111222", "611000000"));
+        assertFalse(fanout.isActive());
+        assertEquals(AlertFanout.Status.FAILED, fanout.getStatus(0));
+        assertEquals(AlertFanout.Status.SKIPPED, fanout.getStatus(1));
+        assertEquals(0, doneSent);
+        assertEquals(2, doneFailed);
+        assertEquals(-1, doneMs);
+    }
+
+    @Test
+    public void unconfirmedAtDeadline_givesUp() {
+        fanout.start("alerta", Arrays.asList("600111222"));
+        assertEquals(AlertFanout.DEFAULT_DEADLINE_MS, timerDelay);
+        runUntil(AlertFanout.DEFAULT_DEADLINE_MS);
+        assertFalse(fanout.isActive());
+        assertEquals(AlertFanout.Status.FAILED, fanout.getStatus(0));
+        assertEquals(1, doneFailed);
+    }
+
+    @Test
+    public void newAlert_closesPreviousFanout() {
+        fanout.start("primera", Arrays.asList("600111222", "611000000"));
+        fanout.onSent(1, true);
+        fanout.start("segunda", Arrays.asList("600111222"));
+        assertEquals(1, doneSent);
+        assertEquals(2, fanout.getFanoutCount());
+        assertEquals("600111222:segunda", sent.get(2));
+        // El resultado tardío de la primera no se confunde con la segunda
+        fanout.onSent(2, true);
+        assertTrue(fanout.isActive());
+    }
+}
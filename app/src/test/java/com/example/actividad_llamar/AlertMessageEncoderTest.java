@@ -0,0 +1,101 @@
+package com.example.actividad_llamar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AlertMessageEncoderTest {
+
+    @Test
+    public void appendFixed_roundsAndPads() {
+        StringBuilder sb = new StringBuilder();
+        AlertMessageEncoder.appendFixed(sb, 40.4167754, 5);
+        sb.append(' ');
+        AlertMessageEncoder.appendFixed(sb, -3.7037902, 5);
+        sb.append(' ');
+        AlertMessageEncoder.appendFixed(sb, -0.000001, 4);
+        sb.append(' ');
+        AlertMessageEncoder.appendFixed(sb, 2.05, 3);
+        assertEquals("40.41678 -3.70379 0.0000 2.050", sb.toString());
+    }
+
+    @Test
+    public void segmentCount_gsm7AndUcs2() {
+        StringBuilder gsm = new StringBuilder();
+        for (int i = 0; i < 160; i++) {
+            gsm.append('a');
+        }
+        assertEquals(1, AlertMessageEncoder.segmentCount(gsm));
+        gsm.append('a');
+        assertEquals(2, AlertMessageEncoder.segmentCount(gsm));
+        assertEquals(2, AlertMessageEncoder.gsm7Length("€"));
+        assertFalse(AlertMessageEncoder.isGsm7("ubicación"));
+        assertTrue(AlertMessageEncoder.isGsm7(AlertMessageEncoder.toGsm7("ubicación")));
+        assertEquals(2, AlertMessageEncoder.segmentCount(gsm.substring(0, 71) + "ó"));
+    }
+
+    @Test
+    public void encodeNoLocation_keepsPrefix() {
+        AlertMessageEncoder encoder = new AlertMessageEncoder();
+        assertEquals("Llamada detectada. Sin ubicacion disponible.", encoder.encodeNoLocation());
+        encoder.setPrefix("Aviso de Ana:");
+        String text = encoder.encodeNoLocation();
+        assertEquals("Aviso de Ana: Sin ubicacion disponible.", text);
+        assertEquals(1, AlertMessageEncoder.segmentCount(text));
+    }
+
+    @Test
+    public void encodeAlert_fitsSingleGsm7Segment() {
+        AlertMessageEncoder encoder = new AlertMessageEncoder();
+        String text = encoder.encodeAlert(40.4167754, -3.7037902, 12.4f, 25 * 60000);
+        assertEquals("Llamada detectada. Estoy en 40.41678,-3.70379 (+-12m) hace 25 min "
+                + "https://maps.google.com/?q=40.41678,-3.70379", text);
+        assertTrue(AlertMessageEncoder.isGsm7(text));
+        assertEquals(1, AlertMessageEncoder.segmentCount(text));
+    }
+
+    @Test
+    public void encodeAlert_degradesLongPrefix() {
+        AlertMessageEncoder encoder = new AlertMessageEncoder();
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < 9; i++) {
+            prefix.append("Aviso de ayuda ");
+        }
+        encoder.setPrefix(prefix.toString());
+        String text = encoder.encodeAlert(40.4167754, -3.7037902, 0, 0);
+        assertFalse(text.contains("maps.google.com"));
+        assertEquals(1, AlertMessageEncoder.segmentCount(text));
+    }
+
+    @Test
+    public void encodeAlert_appendsTrailWithinSegment() {
+        AlertMessageEncoder encoder = new AlertMessageEncoder();
+        int[] trail = new int[64];
+        for (int i = 0; i < 32; i++) {
+            trail[2 * i] = -12;
+            trail[2 * i + 1] = 7;
+        }
+        String text = encoder.encodeAlert(40.4167754, -3.7037902, 12.4f, 0, trail, 32, 10);
+        assertTrue(text.contains(" Ruta 10min:-12,7;-12,7"));
+        assertTrue(AlertMessageEncoder.gsm7Length(text) <= AlertMessageEncoder.GSM7_SINGLE_SEGMENT);
+        assertEquals(1, AlertMessageEncoder.segmentCount(text));
+    }
+
+    @Test
+    public void encodeAlert_placeGoesBeforeTrailAndNeverEvictsLink() {
+        AlertMessageEncoder encoder = new AlertMessageEncoder();
+        int[] trail = {3, -2, 5, 0};
+        String text = encoder.encodeAlert(40.4167754, -3.7037902, 12f, 0, "Plaza de Cibeles", trail, 2, 10);
+        assertTrue(text, text.contains("https://maps.google.com/?q=40.41678,-3.70379 Cerca de Plaza de Cibeles."));
+        assertTrue(text, text.endsWith(" Ruta 10min:3,-2;5,0"));
+        assertEquals(1, AlertMessageEncoder.segmentCount(text));
+
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            longName.append("Avenida ");
+        }
+        String withoutPlace = encoder.encodeAlert(40.4167754, -3.7037902, 12f, 0, longName.toString(), null, 0, 0);
+        assertFalse(withoutPlace.contains("Cerca de"));
+        assertTrue(withoutPlace.contains("maps.google.com"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.actividad_llamar;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+import static org.junit.Assert.*;
+
+public class AlertMetricsTest {
+
+    private static final long MS = 1000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void alertPath_recordsEachStageFromRing() {
+        AlertMetrics metrics = new AlertMetrics();
+        metrics.onRing(true, 0);
+        metrics.onUsableFix(2500 * MS);
+        metrics.onUsableFix(2600 * MS);
+        metrics.onAlertDue(7000 * MS);
+        // Otro SMS pendiente se emite antes que la alerta
+        metrics.onSmsIssued(3, 7010 * MS);
+        metrics.onSmsIssued(4, 7020 * MS);
+        metrics.onAlertQueued(4);
+        metrics.onSmsSent(3, true, 7500 * MS);
+        metrics.onSmsSent(4, true, 8020 * MS);
+        metrics.onSmsDelivered(4, 12000 * MS);
+
+        assertEquals(1, metrics.histogram(AlertMetrics.Stage.RING_TO_FIX).getCount());
+        assertEquals(2500000, metrics.histogram(AlertMetrics.Stage.RING_TO_FIX).getMax());
+        assertEquals(7020000, metrics.histogram(AlertMetrics.Stage.RING_TO_SMS_ISSUED).getMax());
+        assertEquals(1, metrics.histogram(AlertMetrics.Stage.RING_TO_SMS_SENT).getCount());
+        assertEquals(1000000, metrics.histogram(AlertMetrics.Stage.SMS_ISSUED_TO_SENT).getMax());
+        assertEquals(12000000, metrics.histogram(AlertMetrics.Stage.RING_TO_SMS_DELIVERED).getMax());
+        assertEquals(1, metrics.get(AlertMetrics.Counter.TRUSTED_MATCHES));
+        assertEquals(2, metrics.get(AlertMetrics.Counter.SMS_SENT));
+    }
+
+    @Test
+    public void untrustedRing_onlyCounts() {
+        AlertMetrics metrics = new AlertMetrics();
+        metrics.onRing(false, 0);
+        metrics.onUsableFix(MS);
+        assertEquals(1, metrics.get(AlertMetrics.Counter.RINGS));
+        assertEquals(0, metrics.get(AlertMetrics.Counter.TRUSTED_MATCHES));
+        assertEquals(0, metrics.histogram(AlertMetrics.Stage.RING_TO_FIX).getCount());
+    }
+
+    @Test
+    public void writeTo_producesReadableDump() throws Exception {
+        AlertMetrics metrics = new AlertMetrics();
+        metrics.onRing(true, 0);
+        metrics.onAlertDue(7000 * MS);
+        metrics.set(AlertMetrics.Counter.GPS_ON_MS, 42000);
+        File file = new File(folder.getRoot(), "metrics.bin");
+        metrics.writeTo(file, "Pixel 7 API 33 v1.0", 1760000000000L);
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            assertEquals(0x414C4D31, in.readInt());
+            assertEquals(1, in.readInt());
+            assertEquals(1760000000000L, in.readLong());
+            assertEquals("Pixel 7 API 33 v1.0", in.readUTF());
+            int counters = in.readShort();
+            long gps = -1;
+            for (int i = 0; i < counters; i++) {
+                String name = in.readUTF();
+                long value = in.readLong();
+                if (name.equals("gps_encendido_ms")) {
+                    gps = value;
+                }
+            }
+            assertEquals(42000, gps);
+            int histograms = in.readShort();
+            assertEquals(AlertMetrics.Stage.values().length, histograms);
+            boolean found = false;
+            for (int i = 0; i < histograms; i++) {
+                LatencyHistogram h = LatencyHistogram.readFrom(in);
+                if (h.getName().equals("timbre_alerta")) {
+                    found = h.getCount() == 1;
+                }
+            }
+            assertTrue(found);
+        }
+        StringBuilder sb = new StringBuilder();
+        metrics.dump(sb);
+        assertTrue(sb.toString().contains("alertas=1\n"));
+    }
+}
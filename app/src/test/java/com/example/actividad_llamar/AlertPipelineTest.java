@@ -0,0 +1,514 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+public class AlertPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String UNKNOWN = "+34911000000";
+    private static final String[] ALERT_CONTACTS = {"+34699000001", "+34699000002"};
+    private static final int TRUSTED_CALLERS = 20;
+    private static final long SMS_SENT_AFTER_MS = 200;
+    private static final long SMS_DELIVERED_AFTER_MS = 1500;
+
+    // Reloj virtual: los temporizadores, las confirmaciones y los fixes se
+    // ejecutan en orden sin esperar
+    private long now = 1000;
+    private long wheelTickAt = -1;
+    private long seq;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+
+    private final FakeTelephony telephony = new FakeTelephony();
+    private final FakeLocation location = new FakeLocation();
+    private final FakeSmsSink sms = new FakeSmsSink();
+    private final List<String> messages = new ArrayList<>();
+    // Con fixesViaWorker, el aviso de fix espera aquí a que lo recoja el hilo de trabajo
+    private volatile boolean fixesViaWorker;
+    private final Queue<Runnable> workerInbox = new ConcurrentLinkedQueue<>();
+    private AlertMetrics metrics;
+    private TimerWheel timers;
+    private AlertPipeline pipeline;
+
+    private static final class Event implements Comparable<Event> {
+        final long at;
+        final long seq;
+        final Runnable action;
+
+        Event(long at, long seq, Runnable action) {
+            this.at = at;
+            this.seq = seq;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            return at != o.at ? Long.compare(at, o.at) : Long.compare(seq, o.seq);
+        }
+    }
+
+    /** Estados de llamada a mano, como los daría el PhoneStateListener. */
+    static final class FakeTelephony implements TelephonySource {
+        boolean permitted = true;
+        TelephonySource.Sink sink;
+
+        @Override
+        public boolean start(TelephonySource.Sink sink) {
+            if (!permitted) {
+                return false;
+            }
+            this.sink = sink;
+            return true;
+        }
+
+        @Override
+        public void stop() {
+            sink = null;
+        }
+
+        void emit(int state, String number) {
+            if (sink != null) {
+                sink.onCallStateChanged(state, number);
+            }
+        }
+    }
+
+    /** Posiciones a mano; la última se entrega de nuevo en {@link #seed()}. */
+    final class FakeLocation implements LocationSource {
+        LocationSource.Sink sink;
+        double latitude = 40.4168;
+        double longitude = -3.7038;
+        float accuracyM = 12f;
+        boolean hasLast;
+        int seeds;
+        long gpsIntervalMs;
+        float gpsMinDistanceM;
+        int cadenceChanges;
+
+        @Override
+        public boolean start(LocationSource.Sink sink) {
+            this.sink = sink;
+            return true;
+        }
+
+        @Override
+        public void seed() {
+            seeds++;
+            if (hasLast) {
+                sink.onFix(LocationFixCache.PROVIDER_PASSIVE, latitude, longitude, accuracyM, now, now);
+            }
+        }
+
+        @Override
+        public boolean startGps() {
+            return true;
+        }
+
+        @Override
+        public void stopGps() {
+        }
+
+        @Override
+        public void setGpsCadence(long intervalMs, float minDistanceM) {
+            gpsIntervalMs = intervalMs;
+            gpsMinDistanceM = minDistanceM;
+            cadenceChanges++;
+        }
+
+        @Override
+        public void stop() {
+            sink = null;
+        }
+
+        void emit(double latitude, double longitude, float accuracyM) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracyM = accuracyM;
+            hasLast = true;
+            if (sink != null) {
+                sink.onFix(LocationFixCache.PROVIDER_GPS, latitude, longitude, accuracyM, now, now);
+            }
+        }
+    }
+
+    /** Radio falsa: confirma el envío y la entrega pasado un rato; puede fallar uno de cada N. */
+    final class FakeSmsSink implements SmsSink {
+        int failEvery;
+        int calls;
+        final List<String> sent = new ArrayList<>();
+        // Sesión en la que salió cada id por primera vez
+        final Map<Long, String> firstSend = new HashMap<>();
+        int session;
+
+        @Override
+        public boolean send(long id, String destination, String text) {
+            calls++;
+            sent.add(destination + ":" + text);
+            if (!firstSend.containsKey(id)) {
+                firstSend.put(id, session + ":" + destination);
+            }
+            boolean ok = failEvery == 0 || calls % failEvery != 0;
+            at(now + SMS_SENT_AFTER_MS, () -> pipeline.onSmsSent(id, ok));
+            if (ok) {
+                at(now + SMS_DELIVERED_AFTER_MS, () -> pipeline.onSmsDelivered(id));
+            }
+            return true;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new AlertMetrics();
+        timers = new TimerWheel(() -> now, new TimerWheel.Host() {
+            @Override
+            public void scheduleTick(long delayMs) {
+                wheelTickAt = now + delayMs;
+            }
+
+            @Override
+            public void cancelTick() {
+                wheelTickAt = -1;
+            }
+        });
+        // Sin abrir: el diario no escribe nada
+        EventJournal journal = new EventJournal(new File(folder.getRoot(), "events.bin"), () -> now);
+        pipeline = new AlertPipeline(() -> now, timers, metrics, journal, telephony, location, sms,
+                AlertPolicy.NO_DAY_CLOCK, new AlertPipeline.Host() {
+            @Override
+            public long elapsedRealtimeNanos() {
+                return now * 1000000L;
+            }
+
+            @Override
+            public void onFixReceived(float accuracyM, long fixTimeMs) {
+                // En el servicio se pasa por el hilo de trabajo; aquí ya se está en él
+                if (fixesViaWorker) {
+                    workerInbox.add(pipeline::onFixAvailable);
+                } else {
+                    pipeline.onFixAvailable();
+                }
+            }
+
+            @Override
+            public void onSessionChanged() {
+            }
+
+            @Override
+            public void showMessage(String text) {
+                messages.add(text);
+            }
+
+            @Override
+            public void log(String text) {
+            }
+        });
+        AlertConfig.Builder b = new AlertConfig.Builder();
+        for (int i = 0; i < TRUSTED_CALLERS; i++) {
+            b.addContact(trustedCaller(i), "", AlertConfig.FLAG_REDIAL);
+        }
+        for (String contact : ALERT_CONTACTS) {
+            b.addContact(contact, "", AlertConfig.FLAG_ALERT_SMS);
+        }
+        pipeline.getCallEngine().setConfig(b.setAlertDelayMs(7000).build());
+        pipeline.openOutbox(new File(folder.getRoot(), "sms_outbox.journal"));
+        location.start(pipeline);
+        assertTrue(pipeline.startCallDetection());
+    }
+
+    @Test
+    public void trustedRing_alertsCallerAndContactsOnce() {
+        location.emit(40.4168, -3.7038, 10f);
+        ring(trustedCaller(0));
+        runFor(9000);
+        telephony.emit(CallStateEngine.CALL_STATE_IDLE, null);
+        runFor(5000);
+
+        assertEquals(3, sms.sent.size());
+        assertTrue(sms.sent.get(0).startsWith(trustedCaller(0) + ":"));
+        assertTrue(sms.sent.get(1).startsWith(ALERT_CONTACTS[0] + ":"));
+        assertTrue(sms.sent.get(2).startsWith(ALERT_CONTACTS[1] + ":"));
+        assertEquals(1, metrics.get(AlertMetrics.Counter.ALERTS));
+        assertEquals(3, pipeline.getSmsOutbox().getDeliveredCount());
+        assertTrue(pipeline.isAlertQueued());
+    }
+
+    @Test
+    public void numberInSecondRinging_stillAlerts() {
+        location.emit(40.4168, -3.7038, 10f);
+        telephony.emit(CallStateEngine.CALL_STATE_RINGING, "");
+        runFor(1000);
+        telephony.emit(CallStateEngine.CALL_STATE_RINGING, trustedCaller(0));
+        runFor(9000);
+        assertEquals(3, sms.sent.size());
+        // Un solo timbre, identificado en el segundo aviso
+        assertEquals(1, metrics.get(AlertMetrics.Counter.RINGS));
+        assertEquals(1, metrics.get(AlertMetrics.Counter.TRUSTED_MATCHES));
+    }
+
+    @Test
+    public void unknownRing_sendsNothing() {
+        location.emit(40.4168, -3.7038, 10f);
+        ring(UNKNOWN);
+        runFor(20000);
+        telephony.emit(CallStateEngine.CALL_STATE_IDLE, null);
+        assertTrue(sms.sent.isEmpty());
+        assertEquals(1, metrics.get(AlertMetrics.Counter.RINGS));
+        assertEquals(0, metrics.get(AlertMetrics.Counter.TRUSTED_MATCHES));
+    }
+
+    @Test
+    public void alertWithoutFix_waitsForFirstUsableFix() {
+        ring(trustedCaller(1));
+        runFor(7000 + 500);
+        // Venció el plazo sin fix: se pidió la última conocida y no había
+        assertTrue(location.seeds > 0);
+        assertTrue(sms.sent.isEmpty());
+        location.emit(40.4168, -3.7038, 8f);
+        assertEquals(3, sms.sent.size());
+        runFor(AlertPipeline.ALERT_FIX_WAIT_MS);
+        assertEquals(3, sms.sent.size());
+    }
+
+    @Test
+    public void alertWithoutAnyFix_sendsNoLocationAfterWait() {
+        ring(trustedCaller(1));
+        runFor(7000 + AlertPipeline.ALERT_FIX_WAIT_MS + 500);
+        assertTrue(messages.contains("Sin ubicación disponible"));
+        // Sale igual, a los mismos destinatarios y sin coordenadas
+        assertEquals(3, sms.sent.size());
+        assertTrue(sms.sent.get(0).startsWith(trustedCaller(1) + ":"));
+        assertTrue(sms.sent.get(0).endsWith("Sin ubicacion disponible."));
+        assertEquals(1, metrics.get(AlertMetrics.Counter.ALERTS_WITHOUT_LOCATION));
+        assertTrue(pipeline.isAlertQueued());
+        // Un fix tardío no repite la alerta
+        location.emit(40.4168, -3.7038, 8f);
+        runFor(1000);
+        assertEquals(3, sms.sent.size());
+    }
+
+    @Test
+    public void timeToFix_reachesMetrics() {
+        ring(trustedCaller(0));
+        now += 2500;
+        location.emit(40.4168, -3.7038, 8f);
+        telephony.emit(CallStateEngine.CALL_STATE_IDLE, null);
+        pipeline.refreshMetricGauges();
+        assertEquals(2500, metrics.get(AlertMetrics.Counter.TIME_TO_FIX_MEAN_MS));
+        assertEquals(2500, metrics.get(AlertMetrics.Counter.TIME_TO_FIX_MAX_MS));
+        assertEquals(0, metrics.get(AlertMetrics.Counter.RINGS_WITHOUT_FIX));
+        StringBuilder sb = new StringBuilder();
+        metrics.dump(sb);
+        assertTrue(sb.toString().contains("fix_tras_timbre_medio_ms=2500\n"));
+    }
+
+    @Test
+    public void fixFromLocationThread_isHandledOnWorker() throws Exception {
+        fixesViaWorker = true;
+        ring(trustedCaller(0));
+        runFor(7000 + 500);
+        assertTrue(sms.sent.isEmpty());
+
+        // El hilo de ubicación solo deja el fix en la caché y avisa
+        Thread locationThread = new Thread(() -> location.emit(40.4168, -3.7038, 8f), "LocationWorker");
+        locationThread.start();
+        locationThread.join();
+        assertTrue(pipeline.getLocationCache().hasUsableFix());
+        assertTrue(sms.sent.isEmpty());
+        assertEquals(1, workerInbox.size());
+
+        // La alerta sale cuando el hilo de trabajo recoge el aviso
+        Runnable task;
+        while ((task = workerInbox.poll()) != null) {
+            task.run();
+        }
+        assertEquals(3, sms.sent.size());
+    }
+
+    @Test
+    public void trailSampling_followsMinInterval() throws Exception {
+        BreadcrumbTrail trail = new BreadcrumbTrail(new File(folder.getRoot(), "trail.bin"), 256);
+        trail.open();
+        pipeline.setTrail(trail);
+        pipeline.setTrailMinIntervalMs(ProtectionProfiles.Profile.SURVIVAL.getTrailMinIntervalMs());
+        for (int i = 0; i < 120; i++) {
+            location.emit(40.4168 + i * 1e-4, -3.7038, 8f);
+            now += 1000;
+        }
+        // Cuatro minutos a un fix por segundo: uno cada 30 s
+        assertEquals(4, trail.getAppendedCount());
+        // Cambiar de perfil no reinicia nada: vale desde el siguiente fix
+        pipeline.setTrailMinIntervalMs(0);
+        for (int i = 0; i < 10; i++) {
+            location.emit(40.43 + i * 1e-4, -3.7038, 8f);
+            now += 1000;
+        }
+        assertEquals(14, trail.getAppendedCount());
+        trail.close();
+    }
+
+    @Test
+    public void profileSwitch_changesGpsRequest() {
+        pipeline.applyProfile(ProtectionProfiles.Profile.AGGRESSIVE);
+        long aggressiveMs = location.gpsIntervalMs;
+        float aggressiveM = location.gpsMinDistanceM;
+        assertEquals(ProtectionProfiles.Profile.AGGRESSIVE.getGpsIntervalMs(), aggressiveMs);
+
+        pipeline.applyProfile(ProtectionProfiles.Profile.BALANCED);
+        assertEquals(2, location.cadenceChanges);
+        assertTrue(location.gpsIntervalMs > aggressiveMs);
+        assertTrue(location.gpsMinDistanceM > aggressiveM);
+
+        pipeline.applyProfile(ProtectionProfiles.Profile.SURVIVAL);
+        assertEquals(ProtectionProfiles.Profile.SURVIVAL.getGpsIntervalMs(), location.gpsIntervalMs);
+        assertEquals(ProtectionProfiles.Profile.SURVIVAL.getGpsMinDistanceM(), location.gpsMinDistanceM, 0);
+    }
+
+    @Test
+    public void resumedAlert_usesSavedContactsAndRules() {
+        AlertConfig.Builder b = pipeline.getCallEngine().getConfig().toBuilder();
+        b.setPolicyRules(trustedCaller(0) + " * plantilla=\"Retomada.\"");
+        pipeline.getCallEngine().setConfig(b.build());
+        location.emit(40.4168, -3.7038, 10f);
+        // Murió el proceso con la alerta vencida y sin repartir
+        CallSessionStore.Snapshot session = new CallSessionStore.Snapshot();
+        session.state = CallStateEngine.State.ALERTED;
+        session.number = trustedCaller(0);
+        session.trusted = true;
+        session.profile = pipeline.getCallEngine().getConfig().getTrustedNumbers().profileOf(trustedCaller(0));
+        pipeline.resume(session, now);
+        runFor(1000);
+
+        assertEquals(1 + ALERT_CONTACTS.length, sms.sent.size());
+        assertTrue(sms.sent.get(0).startsWith(trustedCaller(0) + ":Retomada."));
+        assertTrue(sms.sent.get(1).startsWith(ALERT_CONTACTS[0] + ":Retomada."));
+        assertTrue(sms.sent.get(2).startsWith(ALERT_CONTACTS[1] + ":Retomada."));
+        assertTrue(pipeline.isAlertQueued());
+    }
+
+    @Test
+    public void telephonyWithoutPermission_canRetry() {
+        pipeline.stopCallDetection();
+        telephony.permitted = false;
+        assertFalse(pipeline.startCallDetection());
+        assertFalse(pipeline.isCallDetectionStarted());
+        telephony.permitted = true;
+        assertTrue(pipeline.startCallDetection());
+        assertTrue(pipeline.isCallDetectionStarted());
+    }
+
+    @Test
+    public void burstOfCalls_keepsThroughputAndNoDuplicateAlerts() {
+        int sessions = 400;
+        // Uno de cada 25 envíos falla y lo reintenta la bandeja
+        sms.failEvery = 25;
+        long fixes = 0;
+        long callEvents = 0;
+        int trustedSessions = 0;
+        long start = System.nanoTime();
+        for (int s = 0; s < sessions; s++) {
+            sms.session = s;
+            boolean trusted = s % 2 == 0;
+            String caller = trusted ? trustedCaller((s / 2) % TRUSTED_CALLERS) : UNKNOWN;
+            long sessionEnd = now + 30000;
+            ring(caller);
+            callEvents++;
+            long hangUpAt = now + (trusted ? 12000 : 3000);
+            while (now < sessionEnd) {
+                // Un fix por segundo, moviéndose despacio
+                fixes++;
+                location.emit(40.4168 + fixes * 1e-5, -3.7038 + fixes * 1e-5, 8f + (fixes % 20));
+                runFor(1000);
+                if (hangUpAt >= 0 && now >= hangUpAt) {
+                    telephony.emit(CallStateEngine.CALL_STATE_IDLE, null);
+                    callEvents++;
+                    hangUpAt = -1;
+                }
+            }
+            if (trusted) {
+                trustedSessions++;
+            }
+        }
+        // Que terminen los reintentos pendientes
+        runFor(10 * 60 * 1000);
+        long elapsedNs = System.nanoTime() - start;
+
+        // Una alerta por llamada de confianza, a quien llama y a cada contacto, sin repetir
+        assertEquals(trustedSessions, metrics.get(AlertMetrics.Counter.ALERTS));
+        Map<String, Integer> perSessionRecipient = new HashMap<>();
+        for (String key : sms.firstSend.values()) {
+            Integer n = perSessionRecipient.get(key);
+            perSessionRecipient.put(key, n == null ? 1 : n + 1);
+        }
+        assertEquals(trustedSessions * (1 + ALERT_CONTACTS.length), perSessionRecipient.size());
+        Set<Integer> counts = new HashSet<>(perSessionRecipient.values());
+        assertEquals(1, counts.size());
+        assertTrue(counts.contains(1));
+        assertEquals(0, metrics.get(AlertMetrics.Counter.SMS_SUPPRESSED));
+        assertEquals(trustedSessions * (1 + ALERT_CONTACTS.length), pipeline.getSmsOutbox().getDeliveredCount());
+        assertEquals(0, pipeline.getSmsOutbox().pendingCount());
+
+        // Latencias en tiempo virtual: plazo de 7 s más la confirmación de la radio
+        LatencyHistogram ringToSent = metrics.histogram(AlertMetrics.Stage.RING_TO_SMS_SENT);
+        assertTrue(ringToSent.getCount() >= trustedSessions * 9 / 10);
+        long p50 = ringToSent.valueAtPercentile(50);
+        long p99 = ringToSent.valueAtPercentile(99);
+        assertTrue("p50 " + p50 + " us", p50 >= 7000 * 1000L && p50 <= 7700 * 1000L);
+        assertTrue("p99 " + p99 + " us", p99 <= 20000 * 1000L);
+
+        // Rendimiento en tiempo real; el umbral es holgado porque la bandeja hace fsync
+        long handled = callEvents + fixes + sms.calls;
+        double perSecond = handled * 1e9 / elapsedNs;
+        assertTrue("eventos/s " + perSecond, perSecond > 200);
+    }
+
+    private static String trustedCaller(int i) {
+        return "+3460010" + String.format("%04d", i);
+    }
+
+    private void ring(String number) {
+        telephony.emit(CallStateEngine.CALL_STATE_RINGING, number);
+    }
+
+    private void at(long time, Runnable action) {
+        events.add(new Event(time, seq++, action));
+    }
+
+    // Avanza el reloj virtual ejecutando en orden ticks de la rueda y eventos
+    private void runFor(long ms) {
+        long end = now + ms;
+        while (true) {
+            Event next = events.peek();
+            long eventAt = next == null ? Long.MAX_VALUE : next.at;
+            long tickAt = wheelTickAt < 0 ? Long.MAX_VALUE : wheelTickAt;
+            long t = Math.min(eventAt, tickAt);
+            if (t > end) {
+                break;
+            }
+            now = Math.max(now, t);
+            if (tickAt <= eventAt) {
+                wheelTickAt = -1;
+                timers.advance();
+            } else {
+                events.poll().action.run();
+            }
+        }
+        now = end;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.actividad_llamar;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class AlertPolicyTest {
+
+    private static final int NOON = 12 * 60;
+
+    private static AlertConfig config(String rules) {
+        return new AlertConfig.Builder()
+                .addContact("600111222", "Casa")
+                .addContact("611000000", "Ana", AlertConfig.FLAG_ALERT_SMS)
+                .addContact("622000000", "Grupo", AlertConfig.DEFAULT_CONTACT_FLAGS | AlertConfig.FLAG_FROM_GROUP)
+                .setAlertDelayMs(7000)
+                .setPolicyRules(rules)
+                .build();
+    }
+
+    @Test
+    public void noRules_useConfigAndContactFlags() {
+        AlertPolicy policy = config("").getPolicy();
+        int casa = policy.decide(0, NOON);
+        assertEquals(7000, policy.getAlertDelayMs(casa));
+        assertEquals(AlertConfig.DEFAULT_RESEND_DELAY_MS, policy.getResendDelayMs(casa));
+        assertTrue(policy.shouldMute(casa));
+        assertTrue(policy.shouldRedial(casa));
+        assertEquals(AlertConfig.DEFAULT_ALERT_PREFIX, policy.getAlertPrefix(casa));
+        // Sin FLAG_REDIAL no se vuelve a llamar
+        assertFalse(policy.shouldRedial(policy.decide(1, NOON)));
+        assertEquals(2, policy.getDecisionCount());
+    }
+
+    @Test
+    public void nightWindow_crossesMidnight() {
+        AlertPolicy policy = config("* 23:00-07:00 retardo=3s").getPolicy();
+        assertEquals(3000, policy.getAlertDelayMs(policy.decide(0, 23 * 60)));
+        assertEquals(3000, policy.getAlertDelayMs(policy.decide(0, 0)));
+        assertEquals(3000, policy.getAlertDelayMs(policy.decide(0, 7 * 60 - 1)));
+        assertEquals(7000, policy.getAlertDelayMs(policy.decide(0, 7 * 60)));
+        assertEquals(7000, policy.getAlertDelayMs(policy.decide(0, 23 * 60 - 1)));
+        // Sin hora solo valen las reglas de todo el día
+        assertEquals(7000, policy.getAlertDelayMs(policy.decide(0, AlertPolicy.NO_TIME)));
+    }
+
+    @Test
+    public void laterRules_overrideOnlyWhatTheyName() {
+        AlertPolicy policy = config("# noche más corta\n"
+                + "*          22:00-08:00 retardo=4000 silenciar=no\n"
+                + "+34600111222 *         rellamar=no retardo=2s\n"
+                + "grupo      *           plantilla=\"Ayuda urgente.\" reenvio=30s\n").getPolicy();
+        int casaNight = policy.decide(0, 23 * 60);
+        assertEquals(2000, policy.getAlertDelayMs(casaNight));
+        assertFalse(policy.shouldMute(casaNight));
+        assertFalse(policy.shouldRedial(casaNight));
+
+        int anaNight = policy.decide(1, 23 * 60);
+        assertEquals(4000, policy.getAlertDelayMs(anaNight));
+        assertEquals(AlertConfig.DEFAULT_ALERT_PREFIX, policy.getAlertPrefix(anaNight));
+
+        int group = policy.decide(2, NOON);
+        assertEquals("Ayuda urgente.", policy.getAlertPrefix(group));
+        assertEquals(30000, policy.getResendDelayMs(group));
+        assertTrue(policy.shouldMute(group));
+        assertTrue(policy.shouldRedial(group));
+    }
+
+    @Test
+    public void unknownProfileAndMinute_fallBackToFirstRow() {
+        AlertPolicy policy = config("* * retardo=5s").getPolicy();
+        assertEquals(5000, policy.getAlertDelayMs(policy.decide(TrustedNumberIndex.NO_PROFILE, NOON)));
+        assertEquals(5000, policy.getAlertDelayMs(policy.decide(99, 5000)));
+    }
+
+    @Test
+    public void table_staysSmallWithManyContacts() {
+        AlertConfig.Builder b = new AlertConfig.Builder().setPolicyRules("* 22:00-08:00 retardo=3s");
+        for (int i = 0; i < 500; i++) {
+            b.addContact("6" + (10000000 + i), "");
+        }
+        AlertPolicy policy = b.build().getPolicy();
+        // Una fila para quien no está en la lista y otra para todos los contactos;
+        // tres tramos horarios más la columna sin hora
+        assertEquals(2 * 4, policy.getTableSize());
+        assertEquals(3000, policy.getAlertDelayMs(policy.decide(499, 0)));
+    }
+
+    @Test
+    public void invalidRules_reportTheLine() {
+        String[] bad = {
+                "* * retardo",
+                "* 25:00-07:00 retardo=3s",
+                "* 07:00-07:00 retardo=3s",
+                "abc * retardo=3s",
+                "* * volumen=3",
+                "* * silenciar=quizas",
+                "* * plantilla=\"sin cerrar",
+                "* *"
+        };
+        for (String rules : bad) {
+            try {
+                new AlertConfig.Builder().setPolicyRules("# comentario\n" + rules);
+                fail(rules);
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().startsWith("Regla 2:"));
+            }
+        }
+    }
+
+    @Test
+    public void minuteOfDay_usesLocalOffset() {
+        TimeZone madrid = TimeZone.getTimeZone("Europe/Madrid");
+        // 2024-01-15 22:30 UTC es 23:30 en Madrid; en julio, 00:30 del día siguiente
+        assertEquals(23 * 60 + 30, AlertPolicy.minuteOfDay(1705357800000L, madrid));
+        assertEquals(30, AlertPolicy.minuteOfDay(1721082600000L, madrid));
+    }
+}
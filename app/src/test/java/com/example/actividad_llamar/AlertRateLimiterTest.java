@@ -0,0 +1,121 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.example.actividad_llamar.AlertRateLimiter.Action.CALL;
+import static com.example.actividad_llamar.AlertRateLimiter.Action.SMS;
+import static com.example.actividad_llamar.AlertRateLimiter.Decision.ALLOWED;
+import static com.example.actividad_llamar.AlertRateLimiter.Decision.DUPLICATE;
+import static com.example.actividad_llamar.AlertRateLimiter.Decision.RATE_LIMITED;
+import static org.junit.Assert.*;
+
+public class AlertRateLimiterTest {
+
+    private long now = 1000;
+    private AlertRateLimiter limiter;
+
+    @Before
+    public void setUp() {
+        limiter = new AlertRateLimiter(() -> now);
+        limiter.setLimit(SMS, 2, 10000);
+        limiter.setDedupWindowMs(5000);
+    }
+
+    @Test
+    public void burstAboveCapacity_isLimitedUntilRefill() {
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600111222", "uno"));
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "+34 600 111 222", "dos"));
+        assertEquals(RATE_LIMITED, limiter.tryAcquire(SMS, "600111222", "tres"));
+        assertEquals(10000, limiter.msUntilAvailable(SMS, "600111222"));
+
+        now += 4000;
+        assertEquals(RATE_LIMITED, limiter.tryAcquire(SMS, "600111222", "tres"));
+        assertEquals(6000, limiter.msUntilAvailable(SMS, "600111222"));
+        now += 6000;
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600111222", "tres"));
+        assertEquals(2, limiter.getLimitedCount(SMS));
+    }
+
+    @Test
+    public void bucketsAreSeparatePerRecipientAndAction() {
+        limiter.setLimit(CALL, 1, 60000);
+        limiter.setDedupWindowMs(0);
+        assertEquals(ALLOWED, limiter.tryAcquire(CALL, "600111222", null));
+        assertEquals(RATE_LIMITED, limiter.tryAcquire(CALL, "600111222", null));
+        assertEquals(ALLOWED, limiter.tryAcquire(CALL, "611000000", null));
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600111222", "aviso"));
+    }
+
+    @Test
+    public void sameContentWithinWindow_isDuplicateAndKeepsToken() {
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600111222", "aviso"));
+        assertEquals(DUPLICATE, limiter.tryAcquire(SMS, "0034600111222", "aviso"));
+        assertEquals(1, limiter.getDuplicateCount(SMS));
+        // El duplicado no gastó ficha
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600111222", "otro"));
+
+        now += 25000;
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600111222", "aviso"));
+        // Mismo texto a otra persona no es duplicado
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "611000000", "aviso"));
+    }
+
+    @Test
+    public void partialRefill_isNotLost() {
+        limiter.setLimit(SMS, 1, 10000);
+        limiter.setDedupWindowMs(0);
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600111222", "a"));
+        // Consultas frecuentes no deben impedir que la ficha se recupere
+        for (int i = 0; i < 9; i++) {
+            now += 1000;
+            assertEquals(RATE_LIMITED, limiter.tryAcquire(SMS, "600111222", "a"));
+        }
+        now += 1000;
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600111222", "a"));
+    }
+
+    @Test
+    public void unparseableRecipient_stillHasABucket() {
+        limiter.setLimit(CALL, 1, 60000);
+        limiter.setDedupWindowMs(0);
+        assertEquals(ALLOWED, limiter.tryAcquire(CALL, "*123#", null));
+        assertEquals(RATE_LIMITED, limiter.tryAcquire(CALL, "*123#", null));
+    }
+
+    @Test
+    public void repeatedCall_isOnlyRateLimited() {
+        // Volver a llamar tras una llamada cortada no es un duplicado
+        assertEquals(ALLOWED, limiter.tryAcquire(CALL, "600111222", null));
+        assertEquals(ALLOWED, limiter.tryAcquire(CALL, "600111222", null));
+        // Dos llamadas por defecto: la tercera ya no pasa
+        assertEquals(RATE_LIMITED, limiter.tryAcquire(CALL, "600111222", null));
+        assertEquals(0, limiter.getDuplicateCount(CALL));
+        // Ni una llamada cuenta como envío reciente para un SMS
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600111222", null));
+    }
+
+    @Test
+    public void manyRecipients_forgetLeastRecentlyUsed() {
+        limiter.setLimit(SMS, 1, 60000);
+        limiter.setDedupWindowMs(0);
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "600000000", "a"));
+        for (int i = 1; i <= 200; i++) {
+            assertEquals(ALLOWED, limiter.tryAcquire(SMS, "6" + (10000000 + i), "a"));
+            // El primero se sigue usando y no se olvida
+            assertEquals(RATE_LIMITED, limiter.tryAcquire(SMS, "600000000", "a"));
+        }
+        // Los más recientes siguen sin ficha; los antiguos se olvidaron
+        assertEquals(RATE_LIMITED, limiter.tryAcquire(SMS, "610000200", "a"));
+        assertEquals(RATE_LIMITED, limiter.tryAcquire(SMS, "610000150", "a"));
+        assertEquals(ALLOWED, limiter.tryAcquire(SMS, "610000001", "a"));
+    }
+
+    @Test
+    public void numbering_followsIndexSettings() {
+        AlertRateLimiter uk = new AlertRateLimiter(() -> now, 44, true);
+        uk.setLimit(SMS, 1, 60000);
+        assertEquals(ALLOWED, uk.tryAcquire(SMS, "07700900123", "a"));
+        assertEquals(RATE_LIMITED, uk.tryAcquire(SMS, "+44 7700 900123", "b"));
+    }
+}
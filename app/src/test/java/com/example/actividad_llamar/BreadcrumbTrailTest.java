@@ -0,0 +1,114 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BreadcrumbTrailTest {
+
+    private static final long T0 = 1760000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private final List<double[]> points = new ArrayList<>();
+    private final BreadcrumbTrail.Visitor collector =
+            (latitude, longitude, accuracyM, timeMs) -> points.add(new double[]{latitude, longitude, accuracyM, timeMs});
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "trail.bin");
+    }
+
+    @Test
+    public void append_readsBackDeltasAndKeyframes() throws Exception {
+        BreadcrumbTrail trail = new BreadcrumbTrail(file, 256);
+        trail.open();
+        for (int i = 0; i < 50; i++) {
+            trail.append(40.416775 + i * 0.0001, -3.703790 - i * 0.0002, 8f, T0 + i * 5000);
+        }
+        // Salto grande: no cabe en un delta
+        trail.append(41.385064, 2.173403, 300f, T0 + 60 * 5000);
+
+        assertEquals(51, trail.read(0, collector));
+        assertEquals(40.416775, points.get(0)[0], 1e-7);
+        assertEquals(40.416775 + 49 * 0.0001, points.get(49)[0], 1e-7);
+        assertEquals(-3.703790 - 49 * 0.0002, points.get(49)[1], 1e-7);
+        assertEquals(T0 + 49 * 5000, (long) points.get(49)[3]);
+        assertEquals(8, points.get(10)[2], 0);
+        assertEquals(2.173403, points.get(50)[1], 1e-7);
+        assertEquals(254, points.get(50)[2], 0);
+    }
+
+    @Test
+    public void read_filtersByTimeAndIgnoresOlderFixes() throws Exception {
+        BreadcrumbTrail trail = new BreadcrumbTrail(file, 256);
+        trail.open();
+        for (int i = 0; i < 20; i++) {
+            trail.append(40.0, -3.0 + i * 0.001, 10f, T0 + i * 60000);
+        }
+        trail.append(40.0, -3.0, 10f, T0);
+        assertEquals(5, trail.read(T0 + 15 * 60000, collector));
+        assertEquals(20, trail.getAppendedCount());
+    }
+
+    @Test
+    public void ring_keepsNewestAfterWrapping() throws Exception {
+        BreadcrumbTrail trail = new BreadcrumbTrail(file, 64);
+        trail.open();
+        for (int i = 0; i < 500; i++) {
+            trail.append(40.0 + i * 0.00001, -3.0, 5f, T0 + i * 1000);
+        }
+        int n = trail.read(0, collector);
+        assertTrue(n > 32 && n < 64);
+        assertEquals(64, trail.getUsedSlots());
+        double[] newest = points.get(points.size() - 1);
+        assertEquals(40.0 + 499 * 0.00001, newest[0], 1e-7);
+        assertEquals(T0 + 499 * 1000, (long) newest[3]);
+        for (int i = 1; i < points.size(); i++) {
+            assertEquals(1000, (long) (points.get(i)[3] - points.get(i - 1)[3]));
+        }
+        assertEquals(64 * 8 + 32, file.length());
+    }
+
+    @Test
+    public void reopen_survivesAndContinues() throws Exception {
+        BreadcrumbTrail trail = new BreadcrumbTrail(file, 128);
+        trail.open();
+        for (int i = 0; i < 10; i++) {
+            trail.append(40.0, -3.0 + i * 0.001, 5f, T0 + i * 1000);
+        }
+        trail.close();
+
+        BreadcrumbTrail reopened = new BreadcrumbTrail(file, 128);
+        reopened.open();
+        reopened.append(40.0, -3.0 + 10 * 0.001, 5f, T0 + 10 * 1000);
+        assertEquals(11, reopened.read(0, collector));
+        assertEquals(-2.99, points.get(10)[1], 1e-7);
+    }
+
+    @Test
+    public void summarize_walksBackFromOrigin() throws Exception {
+        BreadcrumbTrail trail = new BreadcrumbTrail(file, 256);
+        trail.open();
+        for (int i = 0; i < 10; i++) {
+            trail.append(40.0 + i * 0.001, -3.0, 5f, T0 + i * 1000);
+        }
+        int[] out = new int[2 * BreadcrumbTrail.MAX_SUMMARY_POINTS];
+        int pairs = trail.summarize(0, 40.0 + 9 * 0.001, -3.0, 2, out);
+        // El punto más reciente coincide con el origen y se omite
+        assertEquals(9, pairs);
+        for (int i = 0; i < pairs; i++) {
+            assertEquals(-10, out[2 * i]);
+            assertEquals(0, out[2 * i + 1]);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.actividad_llamar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class CallSessionStoreTest {
+
+    private static final long BOOT = 1700000000000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File file;
+    private CallSessionStore store;
+    private final CallSessionStore.Snapshot snapshot = new CallSessionStore.Snapshot();
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(tmp.getRoot(), "call_session.bin");
+        store = new CallSessionStore(file);
+        assertFalse(store.open(snapshot));
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    private CallSessionStore.Snapshot reopen() throws IOException {
+        store.close();
+        store = new CallSessionStore(file);
+        CallSessionStore.Snapshot out = new CallSessionStore.Snapshot();
+        assertTrue(store.open(out));
+        return out;
+    }
+
+    @Test
+    public void roundTrip_keepsLatestTransition() throws IOException {
+        snapshot.state = CallStateEngine.State.RINGING;
+        snapshot.number = "+34 600 111 222";
+        snapshot.trusted = true;
+        snapshot.profile = 2;
+        snapshot.alertDueAt = 17000;
+        store.save(snapshot, 10000, BOOT);
+        snapshot.state = CallStateEngine.State.ALERTED;
+        snapshot.alertDueAt = -1;
+        snapshot.alertQueued = true;
+        store.save(snapshot, 17000, BOOT);
+
+        CallSessionStore.Snapshot out = reopen();
+        assertEquals(CallStateEngine.State.ALERTED, out.state);
+        assertEquals("+34 600 111 222", out.number);
+        assertTrue(out.trusted);
+        assertEquals(2, out.profile);
+        assertEquals(-1, out.alertDueAt);
+        assertTrue(out.alertQueued);
+        assertEquals(2 * 128, file.length());
+    }
+
+    @Test
+    public void tornWrite_fallsBackToPreviousSlot() throws IOException {
+        snapshot.state = CallStateEngine.State.RINGING;
+        snapshot.number = "600111222";
+        snapshot.alertDueAt = 17000;
+        store.save(snapshot, 10000, BOOT);
+        snapshot.state = CallStateEngine.State.ANSWERED;
+        store.save(snapshot, 12000, BOOT);
+        // El proceso murió a mitad de la segunda escritura (hueco 0)
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(40);
+            raf.write(0x7F);
+        }
+
+        CallSessionStore.Snapshot out = reopen();
+        assertEquals(CallStateEngine.State.RINGING, out.state);
+        assertEquals(17000, out.alertDueAt);
+
+        // Se sigue escribiendo a continuación sin pisar el hueco válido
+        out.state = CallStateEngine.State.IDLE;
+        store.save(out, 13000, BOOT);
+        assertEquals(CallStateEngine.State.IDLE, reopen().state);
+    }
+
+    @Test
+    public void isCurrent_rejectsOtherBootIdleAndOldSessions() throws IOException {
+        snapshot.state = CallStateEngine.State.RINGING;
+        store.save(snapshot, 10000, BOOT);
+        CallSessionStore.Snapshot out = reopen();
+
+        assertTrue(out.isCurrent(15000, BOOT + 2000));
+        assertFalse(out.isCurrent(15000, BOOT + 10 * 60 * 1000));
+        // Tras reiniciar, elapsedRealtime vuelve a empezar
+        assertFalse(out.isCurrent(5000, BOOT));
+        assertFalse(out.isCurrent(10000 + CallSessionStore.MAX_AGE_MS + 1, BOOT));
+        out.state = CallStateEngine.State.IDLE;
+        assertFalse(out.isCurrent(15000, BOOT));
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class CallStateEngineTest {
+
+    private final List<String> events = new ArrayList<>();
+    private long armedDelay = -1;
+    private CallStateEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new CallStateEngine(new CallStateEngine.AlertTimer() {
+            @Override
+            public void arm(long delayMs) {
+                armedDelay = delayMs;
+            }
+
+            @Override
+            public void disarm() {
+                armedDelay = -1;
+            }
+        });
+        engine.setConfig(new AlertConfig.Builder().addContact("+34 600 111 222", "Casa").build());
+        engine.addListener(new CallStateEngine.Listener() {
+            @Override
+            public void onIncomingCall(String number, boolean trusted) {
+                events.add("incoming " + number + " " + trusted);
+            }
+
+            @Override
+            public void onAlertDue(String number) {
+                events.add("alert " + number);
+            }
+
+            @Override
+            public void onCallAnswered(String number, boolean trusted, boolean alertSent) {
+                events.add("answered " + alertSent);
+            }
+
+            @Override
+            public void onCallEnded(String number, boolean trusted, boolean answered) {
+                events.add("ended " + number + " " + answered);
+            }
+        });
+    }
+
+    @Test
+    public void trustedRing_armsTimerAndAlertsOnce() {
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        assertEquals(CallStateEngine.DEFAULT_ALERT_DELAY_MS, armedDelay);
+
+        engine.onAlertTimerExpired();
+        engine.onAlertTimerExpired();
+        assertEquals(CallStateEngine.State.ALERTED, engine.getState());
+
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        assertEquals(CallStateEngine.State.IDLE, engine.getState());
+        assertEquals(-1, armedDelay);
+        assertEquals(3, events.size());
+        assertEquals("incoming 600111222 true", events.get(0));
+        assertEquals("alert 600111222", events.get(1));
+        assertEquals("ended 600111222 false", events.get(2));
+    }
+
+    @Test
+    public void numberInSecondRinging_identifiesTrustedCaller() {
+        // API 29+: primero sin número y después con él
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "");
+        assertFalse(engine.isTrustedCall());
+        assertEquals(-1, armedDelay);
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        assertTrue(engine.isTrustedCall());
+        assertEquals(CallStateEngine.DEFAULT_ALERT_DELAY_MS, armedDelay);
+        // Un tercer aviso no vuelve a armar ni a avisar
+        armedDelay = -1;
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        assertEquals(-1, armedDelay);
+
+        engine.onAlertTimerExpired();
+        assertEquals(CallStateEngine.State.ALERTED, engine.getState());
+        assertEquals("incoming  false", events.get(0));
+        assertEquals("incoming 600111222 true", events.get(1));
+        assertEquals("alert 600111222", events.get(2));
+        assertEquals(3, events.size());
+    }
+
+    @Test
+    public void numberInSecondRinging_untrustedStaysSilent() {
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "");
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "699999999");
+        assertFalse(engine.isTrustedCall());
+        assertEquals(-1, armedDelay);
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        assertEquals("ended 699999999 false", events.get(1));
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void listeners_addedOnceAndRemovable() {
+        List<String> other = new ArrayList<>();
+        CallStateEngine.Listener listener = new CallStateEngine.Listener() {
+            @Override
+            public void onIncomingCall(String number, boolean trusted) {
+                other.add("incoming");
+            }
+
+            @Override
+            public void onAlertDue(String number) {
+            }
+
+            @Override
+            public void onCallAnswered(String number, boolean trusted, boolean alertSent) {
+            }
+
+            @Override
+            public void onCallEnded(String number, boolean trusted, boolean answered) {
+                other.add("ended");
+            }
+        };
+        engine.addListener(listener);
+        engine.addListener(listener);
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        engine.removeListener(listener);
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        assertEquals(Arrays.asList("incoming"), other);
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void listeners_changeFromOtherThreadWhileDispatching() throws Exception {
+        CallStateEngine.Listener idle = new CallStateEngine.Listener() {
+            @Override
+            public void onIncomingCall(String number, boolean trusted) {
+            }
+
+            @Override
+            public void onAlertDue(String number) {
+            }
+
+            @Override
+            public void onCallAnswered(String number, boolean trusted, boolean alertSent) {
+            }
+
+            @Override
+            public void onCallEnded(String number, boolean trusted, boolean answered) {
+            }
+        };
+        // Una actividad que se suscribe y se va mientras el hilo de trabajo avisa
+        AtomicBoolean done = new AtomicBoolean();
+        Thread ui = new Thread(() -> {
+            while (!done.get()) {
+                engine.addListener(idle);
+                engine.removeListener(idle);
+            }
+        }, "main");
+        ui.start();
+        int calls = 2000;
+        for (int i = 0; i < calls; i++) {
+            engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+            engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        }
+        done.set(true);
+        ui.join();
+        // El listener fijo no se pierde ningún aviso
+        assertEquals(2 * calls, events.size());
+    }
+
+    @Test
+    public void untrustedRing_neverAlerts() {
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "699999999");
+        assertEquals(-1, armedDelay);
+        engine.onAlertTimerExpired();
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_OFFHOOK, null);
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, null);
+
+        assertEquals(3, events.size());
+        assertEquals("incoming 699999999 false", events.get(0));
+        assertEquals("answered false", events.get(1));
+        assertEquals("ended 699999999 true", events.get(2));
+    }
+
+    @Test
+    public void answerBeforeDeadline_disarmsTimer() {
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_OFFHOOK, "600111222");
+        assertEquals(-1, armedDelay);
+        engine.onAlertTimerExpired();
+        assertEquals(CallStateEngine.State.ANSWERED, engine.getState());
+        assertFalse(events.contains("alert 600111222"));
+    }
+
+    @Test
+    public void outgoingCall_isSilent() {
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_OFFHOOK, "");
+        assertEquals(CallStateEngine.State.OUTGOING, engine.getState());
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void newConfig_appliesFromNextRing() {
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        engine.setConfig(engine.getConfig().toBuilder()
+                .setPrimaryNumber("611000000")
+                .setAlertDelayMs(3000)
+                .build());
+        assertEquals(CallStateEngine.DEFAULT_ALERT_DELAY_MS, armedDelay);
+        assertTrue(engine.isTrustedCall());
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        assertFalse(engine.isTrustedCall());
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "+34 611 000 000");
+        assertEquals(3000, armedDelay);
+    }
+
+    @Test
+    public void restoredRing_rearmsRemainingDelayWithoutRinging() {
+        engine.restore(CallStateEngine.State.RINGING, "600111222", true, 0, 2500);
+        assertEquals(2500, armedDelay);
+        assertTrue(events.isEmpty());
+        // La telefonía repite el estado actual al volver a registrarse
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "");
+        assertEquals(2500, armedDelay);
+
+        engine.onAlertTimerExpired();
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        assertEquals("alert 600111222", events.get(0));
+        assertEquals("ended 600111222 false", events.get(1));
+    }
+
+    @Test
+    public void restoredAlert_isNotRepeated() {
+        engine.restore(CallStateEngine.State.ALERTED, "600111222", true, 0, -1);
+        assertEquals(-1, armedDelay);
+        engine.onAlertTimerExpired();
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_OFFHOOK, "");
+        assertEquals(1, events.size());
+        assertEquals("answered true", events.get(0));
+
+        // Con una llamada ya en curso no se retoma nada
+        engine.restore(CallStateEngine.State.RINGING, "611000000", true, 0, 0);
+        assertEquals(CallStateEngine.State.ANSWERED, engine.getState());
+    }
+
+    @Test
+    public void policy_setsDelayForCallerAndTimeOfDay() {
+        int[] minute = {23 * 60};
+        engine = new CallStateEngine(new CallStateEngine.AlertTimer() {
+            @Override
+            public void arm(long delayMs) {
+                armedDelay = delayMs;
+            }
+
+            @Override
+            public void disarm() {
+                armedDelay = -1;
+            }
+        }, () -> minute[0]);
+        engine.setConfig(new AlertConfig.Builder()
+                .addContact("+34 600 111 222", "Casa")
+                .setPolicyRules("* 22:00-08:00 retardo=3s\n600111222 * rellamar=no")
+                .build());
+
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        assertEquals(3000, armedDelay);
+        assertFalse(engine.getCallPolicy().shouldRedial(engine.getCallDecision()));
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        assertEquals(-1, engine.getCallDecision());
+
+        minute[0] = 12 * 60;
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        assertEquals(CallStateEngine.DEFAULT_ALERT_DELAY_MS, armedDelay);
+    }
+}
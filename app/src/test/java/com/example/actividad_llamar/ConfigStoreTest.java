@@ -0,0 +1,183 @@
+package com.example.actividad_llamar;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ConfigStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void missingFile_isUnconfigured() throws Exception {
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        assertNull(store.getTrustedNumber());
+        assertFalse(store.isConfigured());
+    }
+
+    @Test
+    public void setTrustedNumber_survivesReload() throws Exception {
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        store.setTrustedNumber(" +34 600 111 222 ");
+        assertEquals("+34 600 111 222", store.getTrustedNumber());
+
+        ConfigStore reopened = new ConfigStore(folder.getRoot());
+        assertEquals("+34 600 111 222", reopened.getTrustedNumber());
+        assertFalse(new File(folder.getRoot(), ConfigStore.FILE_NAME + ".tmp").exists());
+
+        reopened.setTrustedNumber("");
+        reopened.load();
+        assertFalse(reopened.isConfigured());
+    }
+
+    @Test
+    public void corruptFile_isIgnored() throws Exception {
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        try (FileOutputStream out = new FileOutputStream(store.getFile())) {
+            out.write(new byte[]{0x43, 0x46, 0x47});
+        }
+        assertNull(store.getTrustedNumber());
+        try (FileOutputStream out = new FileOutputStream(store.getFile())) {
+            out.write("numero_guardado=600111222".getBytes("UTF-8"));
+        }
+        store.load();
+        assertNull(store.getTrustedNumber());
+    }
+
+    @Test
+    public void otherVersion_isIgnored() throws Exception {
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(store.getFile()))) {
+            out.writeInt(0x43464731);
+            out.writeInt(99);
+            out.writeUTF("600111222");
+        }
+        assertFalse(store.load().isConfigured());
+
+        // Al guardar se reescribe con el formato actual
+        store.setTrustedNumber("611000000");
+        AlertConfig reread = new ConfigStore(folder.getRoot()).load();
+        assertEquals("611000000", reread.getPrimaryNumber());
+    }
+
+    @Test
+    public void fullConfig_roundTrips() throws Exception {
+        AlertConfig config = new AlertConfig.Builder()
+                .addContact("600111222", "Casa")
+                .addContact("611000000", "Trabajo", AlertConfig.FLAG_ALERT_SMS)
+                .setAlertDelayMs(4000)
+                .setAlertPrefix("Aviso.")
+                .setResendPrefix("Me muevo.")
+                .setResendDelayMs(20000)
+                .setMinDisplacementM(80f)
+                .setTrailWindowMs(5 * 60 * 1000)
+                .setBackgroundCadence(60000, 20000)
+                .setMaxAccuracyM(30f)
+                .build();
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        store.save(config);
+        assertSame(config, store.get());
+
+        AlertConfig read = new ConfigStore(folder.getRoot()).load();
+        assertEquals(2, read.getContacts().size());
+        assertEquals("Trabajo", read.getContacts().get(1).getName());
+        assertFalse(read.getContacts().get(1).has(AlertConfig.FLAG_REDIAL));
+        assertEquals(4000, read.getAlertDelayMs());
+        assertEquals("Aviso.", read.getAlertPrefix());
+        assertEquals("Me muevo.", read.getResendPrefix());
+        assertEquals(20000, read.getResendDelayMs());
+        assertEquals(80f, read.getMinDisplacementM(), 0);
+        assertEquals(5 * 60 * 1000, read.getTrailWindowMs());
+        assertEquals(60000, read.getBackgroundIntervalMs());
+        assertEquals(20000, read.getBackgroundSessionMs());
+        assertEquals(30f, read.getMaxAccuracyM(), 0);
+        assertEquals(1, read.getTrustedNumbers().profileOf("+34 611 000 000"));
+    }
+
+    @Test
+    public void setTrustedNumber_keepsOtherSettings() throws Exception {
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        store.save(new AlertConfig.Builder()
+                .addContact("600111222", "Casa")
+                .addContact("611000000", "Trabajo")
+                .setAlertDelayMs(4000)
+                .build());
+        store.setTrustedNumber("622333444");
+
+        AlertConfig read = new ConfigStore(folder.getRoot()).load();
+        assertEquals("622333444", read.getPrimaryNumber());
+        assertEquals("Casa", read.getContacts().get(0).getName());
+        assertEquals(2, read.getContacts().size());
+        assertEquals(4000, read.getAlertDelayMs());
+    }
+
+    @Test
+    public void failedWrite_keepsPreviousFile() throws Exception {
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        store.setTrustedNumber("600111222");
+        // Un directorio en lugar del temporal hace fallar la escritura
+        assertTrue(new File(store.getFile().getPath() + ".tmp").mkdir());
+        try {
+            store.setTrustedNumber("611000000");
+            fail();
+        } catch (java.io.IOException expected) {
+        }
+        assertEquals("600111222", store.get().getPrimaryNumber());
+        assertEquals("600111222", new ConfigStore(folder.getRoot()).load().getPrimaryNumber());
+    }
+
+    @Test
+    public void groupContacts_areNotSaved() throws Exception {
+        AlertConfig config = new AlertConfig.Builder()
+                .addContact("600111222", "Casa")
+                .addContact("611000000", "Ana", AlertConfig.FLAG_FROM_GROUP)
+                .setTrustedGroup("Emergencia")
+                .build();
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        store.save(config);
+
+        AlertConfig read = new ConfigStore(folder.getRoot()).load();
+        assertEquals("Emergencia", read.getTrustedGroup());
+        assertEquals(1, read.getContacts().size());
+        assertEquals("600111222", read.getPrimaryNumber());
+    }
+
+    @Test
+    public void policyRules_roundTripAndCompile() throws Exception {
+        AlertConfig config = new AlertConfig.Builder()
+                .addContact("600111222", "Casa")
+                .setPolicyRules("* 23:00-07:00 retardo=3s\n600111222 * rellamar=no")
+                .build();
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        store.save(config);
+
+        AlertConfig read = new ConfigStore(folder.getRoot()).load();
+        assertEquals(config.getPolicyRules(), read.getPolicyRules());
+        AlertPolicy policy = read.getPolicy();
+        assertEquals(2, policy.getRuleCount());
+        assertEquals(3000, policy.getAlertDelayMs(policy.decide(0, 0)));
+        assertFalse(policy.shouldRedial(policy.decide(0, 12 * 60)));
+    }
+
+    @Test
+    public void hundredsOfContacts_roundTrip() throws Exception {
+        AlertConfig.Builder b = new AlertConfig.Builder();
+        for (int i = 0; i < 500; i++) {
+            b.addContact("6" + (10000000 + i), "Contacto " + i);
+        }
+        ConfigStore store = new ConfigStore(folder.getRoot());
+        store.save(b.build());
+
+        AlertConfig read = new ConfigStore(folder.getRoot()).load();
+        assertEquals(500, read.getContacts().size());
+        assertEquals(499, read.getTrustedNumbers().profileOf("610000499"));
+        assertEquals("Contacto 499", read.getContacts().get(499).getName());
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ContactGroupTrustTest {
+
+    private final List<AlertConfig.Contact> agenda = new ArrayList<>();
+    private boolean readable = true;
+    private String lastGroup;
+    private ContactGroupTrust trust;
+
+    @Before
+    public void setUp() {
+        trust = new ContactGroupTrust((groupTitle, out) -> {
+            lastGroup = groupTitle;
+            if (!readable) {
+                return false;
+            }
+            out.addAll(agenda);
+            return true;
+        });
+    }
+
+    @Test
+    public void noGroup_neverReadsContacts() {
+        assertFalse(trust.refresh());
+        assertEquals(0, trust.getReadCount());
+        AlertConfig base = new AlertConfig.Builder().addContact("600111222", "Casa").build();
+        assertSame(base, trust.merge(base));
+    }
+
+    @Test
+    public void members_becomeTrustedAfterOwnContacts() {
+        agenda.add(contact("611 00 00 00", "Ana"));
+        agenda.add(contact("+34 600111222", "Casa otra vez"));
+        trust.setGroup(" Emergencia ");
+        assertTrue(trust.refresh());
+        assertEquals("Emergencia", lastGroup);
+
+        AlertConfig merged = trust.merge(new AlertConfig.Builder().addContact("600111222", "Casa").build());
+        assertEquals(2, merged.getContacts().size());
+        assertEquals(0, merged.getTrustedNumbers().profileOf("600111222"));
+        int profile = merged.getTrustedNumbers().profileOf("+34611000000");
+        assertEquals(1, profile);
+        assertTrue(merged.contactForProfile(profile).has(AlertConfig.FLAG_FROM_GROUP));
+    }
+
+    @Test
+    public void unchangedNumbers_doNotPublish() {
+        agenda.add(contact("611000000", "Ana"));
+        agenda.add(contact("622000000", "Luis"));
+        trust.setGroup("Emergencia");
+        assertTrue(trust.refresh());
+
+        // Otro orden o formato: mismos números
+        agenda.clear();
+        agenda.add(contact("+34 622 000 000", "Luis"));
+        agenda.add(contact("611-000-000", "Ana"));
+        assertFalse(trust.refresh());
+
+        agenda.remove(0);
+        assertTrue(trust.refresh());
+        assertEquals(1, trust.getMembers().size());
+        assertEquals(3, trust.getReadCount());
+    }
+
+    @Test
+    public void unreadableContacts_keepPreviousMembers() {
+        agenda.add(contact("611000000", "Ana"));
+        trust.setGroup("Emergencia");
+        trust.refresh();
+        readable = false;
+        assertFalse(trust.refresh());
+        assertEquals(1, trust.getMembers().size());
+    }
+
+    @Test
+    public void changingGroup_dropsMembers() {
+        agenda.add(contact("611000000", "Ana"));
+        trust.setGroup("Emergencia");
+        trust.refresh();
+        trust.setGroup("");
+        assertTrue(trust.getMembers().isEmpty());
+        assertFalse(trust.refresh());
+    }
+
+    private static AlertConfig.Contact contact(String number, String name) {
+        return new AlertConfig.Contact(number, name, AlertConfig.DEFAULT_CONTACT_FLAGS);
+    }
+}
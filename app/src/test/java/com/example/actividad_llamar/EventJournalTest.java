@@ -0,0 +1,150 @@
+package com.example.actividad_llamar;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long now = 5000;
+
+    @Test
+    public void records_roundTripWithTimes() throws Exception {
+        File file = new File(folder.getRoot(), "events.bin");
+        EventJournal journal = new EventJournal(file, () -> now);
+        journal.open(1700000000000L);
+        journal.recordConfig(new AlertConfig.Builder().addContact("600111222", "Casa").setAlertDelayMs(7000).build());
+        now += 10;
+        journal.recordCallState(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        now += 300;
+        journal.recordFix(LocationFixCache.PROVIDER_GPS, 40.4168, -3.7038, 12.5f, now - 200);
+        now += 7000;
+        journal.recordAlert("600111222");
+        journal.recordSms("600111222", 95, AlertRateLimiter.Decision.ALLOWED);
+        now += 1000;
+        journal.recordCall("600111222", AlertRateLimiter.Decision.RATE_LIMITED);
+        journal.recordCallState(CallStateEngine.CALL_STATE_IDLE, null);
+        journal.close();
+
+        List<String> seen = new ArrayList<>();
+        int records = EventJournal.read(file, new RecordingVisitor(seen));
+        assertEquals(8, records);
+        assertEquals("start 5000 1700000000000", seen.get(0));
+        assertEquals("config 5000 7000 600111222", seen.get(1));
+        assertEquals("state 5010 1 600111222", seen.get(2));
+        assertEquals("fix 5310 0 40.4168 -3.7038 12.5 5110", seen.get(3));
+        assertEquals("alert 12310 600111222", seen.get(4));
+        assertEquals("sms 12310 600111222 95 ALLOWED", seen.get(5));
+        assertEquals("call 13310 600111222 RATE_LIMITED", seen.get(6));
+        assertEquals("state 13310 0 ", seen.get(7));
+    }
+
+    @Test
+    public void reopen_addsStartMarkAndRepeatsConfig() throws Exception {
+        File file = new File(folder.getRoot(), "events.bin");
+        EventJournal journal = new EventJournal(file, () -> now);
+        journal.open(1L);
+        journal.recordConfig(new AlertConfig.Builder().addContact("600111222", "").build());
+        journal.close();
+        // Reinicio del teléfono: el reloj vuelve a empezar
+        now = 100;
+        journal.open(2L);
+        journal.recordCallState(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        journal.close();
+
+        List<String> seen = new ArrayList<>();
+        EventJournal.read(file, new RecordingVisitor(seen));
+        assertEquals("start 100 2", seen.get(2));
+        assertEquals("config 100 7000 600111222", seen.get(3));
+        assertEquals("state 100 1 600111222", seen.get(4));
+    }
+
+    @Test
+    public void truncatedTail_isIgnored() throws Exception {
+        File file = new File(folder.getRoot(), "events.bin");
+        EventJournal journal = new EventJournal(file, () -> now);
+        journal.open(1L);
+        journal.recordCallState(CallStateEngine.CALL_STATE_RINGING, "600111222");
+        journal.recordCallState(CallStateEngine.CALL_STATE_IDLE, "600111222");
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        List<String> seen = new ArrayList<>();
+        assertEquals(2, EventJournal.read(file, new RecordingVisitor(seen)));
+    }
+
+    @Test
+    public void overMaxSize_rotatesToPreviousFile() throws Exception {
+        File file = new File(folder.getRoot(), "events.bin");
+        EventJournal journal = new EventJournal(file, () -> now, 8192);
+        journal.open(1L);
+        journal.recordConfig(new AlertConfig.Builder().addContact("600111222", "").build());
+        for (int i = 0; i < 2000; i++) {
+            now += 1000;
+            journal.recordFix(LocationFixCache.PROVIDER_GPS, 40.4, -3.7, 10f, now);
+        }
+        journal.close();
+        assertTrue(journal.getPreviousFile().exists());
+        assertTrue(file.length() < 8192);
+
+        // El fichero nuevo se puede reproducir solo: empieza con la configuración
+        List<String> seen = new ArrayList<>();
+        EventJournal.read(file, new RecordingVisitor(seen));
+        assertTrue(seen.get(0).startsWith("start "));
+        assertTrue(seen.get(1).startsWith("config "));
+    }
+
+    static final class RecordingVisitor implements EventJournal.Visitor {
+        private final List<String> out;
+
+        RecordingVisitor(List<String> out) {
+            this.out = out;
+        }
+
+        @Override
+        public void onStart(long elapsedMs, long wallTimeMs) {
+            out.add("start " + elapsedMs + " " + wallTimeMs);
+        }
+
+        @Override
+        public void onConfig(long timeMs, long alertDelayMs, String[] trustedNumbers) {
+            out.add("config " + timeMs + " " + alertDelayMs + " " + String.join(",", trustedNumbers));
+        }
+
+        @Override
+        public void onCallState(long timeMs, int callState, String number) {
+            out.add("state " + timeMs + " " + callState + " " + number);
+        }
+
+        @Override
+        public void onFix(long timeMs, int provider, double latitude, double longitude, float accuracyM, long fixTimeMs) {
+            out.add("fix " + timeMs + " " + provider + " " + latitude + " " + longitude + " " + accuracyM + " " + fixTimeMs);
+        }
+
+        @Override
+        public void onAlert(long timeMs, String number) {
+            out.add("alert " + timeMs + " " + number);
+        }
+
+        @Override
+        public void onSms(long timeMs, String recipient, int length, AlertRateLimiter.Decision decision) {
+            out.add("sms " + timeMs + " " + recipient + " " + length + " " + decision);
+        }
+
+        @Override
+        public void onCall(long timeMs, String recipient, AlertRateLimiter.Decision decision) {
+            out.add("call " + timeMs + " " + recipient + " " + decision);
+        }
+    }
+}
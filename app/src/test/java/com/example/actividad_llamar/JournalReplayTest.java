@@ -0,0 +1,101 @@
+package com.example.actividad_llamar;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class JournalReplayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long now = 1000;
+
+    @Test
+    public void recordedSessions_replayWithSameAlerts() throws Exception {
+        File file = record(7000, 7000, 50);
+        JournalReplay.Result result = JournalReplay.replay(file);
+        assertEquals(1, result.runs);
+        assertEquals(100, result.rings);
+        assertEquals(50, result.trustedRings);
+        assertEquals(50, result.alerts);
+        assertEquals(50, result.recordedAlerts);
+        assertTrue(result.matches());
+        // Muchos minutos de tiempo virtual sin esperar
+        assertTrue(result.virtualMs > 50 * 60 * 1000);
+    }
+
+    @Test
+    public void longerDelay_showsMissingAlerts() throws Exception {
+        // Grabado con un plazo de 7 s pero la configuración dice 20 s: se
+        // descuelga antes, así que al reproducir no hay alertas
+        File file = record(20000, 7000, 10);
+        JournalReplay.Result result = JournalReplay.replay(file);
+        assertEquals(0, result.alerts);
+        assertEquals(10, result.missingAlerts);
+        assertFalse(result.matches());
+    }
+
+    @Test
+    public void limiterDecisions_areCompared() throws Exception {
+        File file = new File(folder.getRoot(), "events.bin");
+        EventJournal journal = new EventJournal(file, () -> now);
+        journal.open(0);
+        // Cuatro SMS seguidos: el cuarto lo frenó el cubo (tres por defecto)
+        for (int i = 0; i < 3; i++) {
+            journal.recordSms("600111222", 90, AlertRateLimiter.Decision.ALLOWED);
+        }
+        journal.recordSms("600111222", 90, AlertRateLimiter.Decision.DUPLICATE);
+        journal.recordSms("600111222", 90, AlertRateLimiter.Decision.RATE_LIMITED);
+        // Grabado como permitido aunque el cubo estaba vacío: discrepancia
+        journal.recordSms("600111222", 90, AlertRateLimiter.Decision.ALLOWED);
+        journal.close();
+
+        JournalReplay.Result result = JournalReplay.replay(file);
+        assertEquals(6, result.actions);
+        assertEquals(1, result.decisionMismatches);
+    }
+
+    @Test
+    public void inMemoryReplay_handlesManySessions() throws Exception {
+        byte[] bytes = Files.readAllBytes(record(7000, 7000, 1000).toPath());
+        JournalReplay.Result result = JournalReplay.replay(bytes);
+        assertEquals(1000, result.alerts);
+        assertTrue(result.matches());
+        assertTrue(result.nanosPerRecord() > 0);
+    }
+
+    // Sesiones alternas: un desconocido que cuelga y el número de confianza,
+    // que no contesta hasta pasado el plazo grabado
+    private File record(long configDelayMs, long recordedDelayMs, int sessions) throws Exception {
+        File file = new File(folder.getRoot(), "events-" + configDelayMs + "-" + sessions + ".bin");
+        EventJournal journal = new EventJournal(file, () -> now);
+        journal.open(1700000000000L);
+        journal.recordConfig(new AlertConfig.Builder().addContact("+34600111222", "").setAlertDelayMs(configDelayMs).build());
+        for (int i = 0; i < sessions; i++) {
+            journal.recordCallState(CallStateEngine.CALL_STATE_RINGING, "699000000");
+            now += 3000;
+            journal.recordCallState(CallStateEngine.CALL_STATE_IDLE, "699000000");
+            now += 30000;
+
+            journal.recordCallState(CallStateEngine.CALL_STATE_RINGING, "600111222");
+            now += 2000;
+            journal.recordFix(LocationFixCache.PROVIDER_GPS, 40.4168, -3.7038, 8f, now - 100);
+            // El teléfono real dispara un poco después del plazo
+            now += recordedDelayMs - 2000 + 15;
+            journal.recordAlert("600111222");
+            now += 2000;
+            journal.recordCallState(CallStateEngine.CALL_STATE_OFFHOOK, "600111222");
+            now += 60000;
+            journal.recordCallState(CallStateEngine.CALL_STATE_IDLE, "600111222");
+            now += 120000;
+        }
+        journal.close();
+        return file;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.actividad_llamar;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_areContiguousAndBounded() {
+        for (long v = 0; v < 100000; v++) {
+            int i = LatencyHistogram.indexOf(v);
+            assertTrue(LatencyHistogram.highestEquivalent(i) >= v);
+            if (i > 0) {
+                assertTrue(LatencyHistogram.highestEquivalent(i - 1) < v);
+            }
+        }
+        long top = LatencyHistogram.MAX_TRACKABLE_US;
+        assertEquals(top, LatencyHistogram.highestEquivalent(LatencyHistogram.indexOf(top)));
+    }
+
+    @Test
+    public void percentiles_withinRelativeError() {
+        LatencyHistogram h = new LatencyHistogram("prueba");
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1000, h.getMin());
+        assertEquals(1000000, h.getMax());
+        assertEquals(500500, h.getMean());
+        assertEquals(500000, h.valueAtPercentile(50), 500000 * 0.0625);
+        assertEquals(990000, h.valueAtPercentile(99), 990000 * 0.0625);
+        assertEquals(1000000, h.valueAtPercentile(100));
+    }
+
+    @Test
+    public void writeTo_roundTrips() throws Exception {
+        LatencyHistogram h = new LatencyHistogram("timbre_alerta");
+        h.recordNanos(7000000000L);
+        h.recordNanos(7300000000L);
+        h.record(-5);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        h.writeTo(new DataOutputStream(bytes));
+
+        LatencyHistogram read = LatencyHistogram.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals("timbre_alerta", read.getName());
+        assertEquals(3, read.getCount());
+        assertEquals(0, read.getMin());
+        assertEquals(h.valueAtPercentile(90), read.valueAtPercentile(90));
+        StringBuilder sb = new StringBuilder();
+        read.appendSummary(sb);
+        assertTrue(sb.toString().startsWith("timbre_alerta: n=3"));
+    }
+}
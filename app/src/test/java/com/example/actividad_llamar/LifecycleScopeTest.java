@@ -0,0 +1,148 @@
+package com.example.actividad_llamar;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LifecycleScopeTest {
+
+    // Lo que vive más que la actividad: el gestor de ubicación, la cola del
+    // Looper principal y el motor de llamadas del servicio
+    private final List<Object> locationListeners = new ArrayList<>();
+    private final List<Runnable> mainQueue = new ArrayList<>();
+    private final CallStateEngine engine = new CallStateEngine(new CallStateEngine.AlertTimer() {
+        @Override
+        public void arm(long delayMs) {
+        }
+
+        @Override
+        public void disarm() {
+        }
+    });
+
+    /** Imita a MainActivity2: registra fuera y deja lambdas que la capturan. */
+    private final class FakeActivity implements CallStateEngine.Listener {
+        final LifecycleScope scope = new LifecycleScope();
+        final TimerWheel timers = new TimerWheel(() -> 0, new TimerWheel.Host() {
+            @Override
+            public void scheduleTick(long delayMs) {
+                mainQueue.add(FakeActivity.this::tick);
+            }
+
+            @Override
+            public void cancelTick() {
+                mainQueue.clear();
+            }
+        });
+        final TimerWheel.Timer resendTimer = timers.newTimer("resend", this::tick);
+
+        void tick() {
+        }
+
+        void onCreate() {
+            scope.hold("handler", LifecycleScope.Until.DESTROY, mainQueue::clear);
+            scope.hold("temporizadores", LifecycleScope.Until.DESTROY, () -> timers.cancel(resendTimer));
+            timers.schedule(resendTimer, 10000);
+        }
+
+        void onStart() {
+            if (scope.hold("llamadas", LifecycleScope.Until.STOP, () -> engine.removeListener(this))) {
+                engine.addListener(this);
+            }
+        }
+
+        void onResume() {
+            if (scope.hold("ubicacion", LifecycleScope.Until.PAUSE, () -> locationListeners.remove(this))) {
+                locationListeners.add(this);
+            }
+        }
+
+        @Override
+        public void onIncomingCall(String number, boolean trusted) {
+        }
+
+        @Override
+        public void onAlertDue(String number) {
+        }
+
+        @Override
+        public void onCallAnswered(String number, boolean trusted, boolean alertSent) {
+        }
+
+        @Override
+        public void onCallEnded(String number, boolean trusted, boolean answered) {
+        }
+    }
+
+    private WeakReference<FakeActivity> runLifecycle() {
+        FakeActivity activity = new FakeActivity();
+        activity.onCreate();
+        activity.onStart();
+        activity.onResume();
+        // Un permiso concedido vuelve a pedir lo mismo
+        activity.onResume();
+        activity.onStart();
+        assertEquals(1, locationListeners.size());
+        assertEquals(2, activity.scope.getRefusedCount());
+        assertFalse(mainQueue.isEmpty());
+
+        activity.scope.onPause();
+        activity.scope.onStop();
+        activity.scope.onDestroy();
+        assertEquals(0, activity.scope.getHeldCount());
+        return new WeakReference<>(activity);
+    }
+
+    @Test
+    public void destroyedActivity_isNotRetained() throws InterruptedException {
+        WeakReference<FakeActivity> ref = runLifecycle();
+        assertTrue(locationListeners.isEmpty());
+        assertTrue(mainQueue.isEmpty());
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        // El motor sigue funcionando sin la actividad
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "600111222");
+    }
+
+    @Test
+    public void releasesByStageInReverseOrder() {
+        LifecycleScope scope = new LifecycleScope();
+        List<String> released = new ArrayList<>();
+        scope.hold("handler", LifecycleScope.Until.DESTROY, () -> released.add("handler"));
+        scope.hold("servicio", LifecycleScope.Until.STOP, () -> released.add("servicio"));
+        scope.hold("llamadas", LifecycleScope.Until.STOP, () -> released.add("llamadas"));
+        scope.hold("ubicacion", LifecycleScope.Until.PAUSE, () -> released.add("ubicacion"));
+
+        scope.onPause();
+        assertEquals("[ubicacion]", released.toString());
+        assertTrue(scope.isHeld("servicio"));
+        scope.onStop();
+        assertEquals("[ubicacion, llamadas, servicio]", released.toString());
+        // Vuelve a primer plano: se puede registrar otra vez
+        assertTrue(scope.hold("ubicacion", LifecycleScope.Until.PAUSE, () -> released.add("ubicacion")));
+        scope.onDestroy();
+        assertEquals("[ubicacion, llamadas, servicio, ubicacion, handler]", released.toString());
+        assertEquals(5, scope.getReleasedCount());
+    }
+
+    @Test
+    public void afterDestroy_lateRegistrationsAreRefused() {
+        LifecycleScope scope = new LifecycleScope();
+        scope.onDestroy();
+        assertTrue(scope.isDestroyed());
+        assertFalse(scope.hold("llamadas", LifecycleScope.Until.STOP, () -> fail()));
+        assertEquals(0, scope.getHeldCount());
+        assertEquals(1, scope.getRefusedCount());
+
+        // Soltar una clave que no está no hace nada
+        scope.release("llamadas");
+        assertEquals(0, scope.getReleasedCount());
+    }
+}
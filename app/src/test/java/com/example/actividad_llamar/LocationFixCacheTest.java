@@ -0,0 +1,76 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocationFixCacheTest {
+
+    private long now;
+    private LocationFixCache cache;
+    private final LocationFixCache.Fix fix = new LocationFixCache.Fix();
+
+    @Before
+    public void setUp() {
+        cache = new LocationFixCache(() -> now);
+    }
+
+    @Test
+    public void best_prefersFreshNetworkOverOldGps() {
+        now = 1000;
+        assertFalse(cache.best(fix));
+        cache.put(LocationFixCache.PROVIDER_GPS, 40.0, -3.0, 5f, 1000);
+        now = 121000;
+        cache.put(LocationFixCache.PROVIDER_NETWORK, 40.1, -3.1, 40f, 120000);
+
+        assertTrue(cache.best(fix));
+        assertEquals(LocationFixCache.PROVIDER_NETWORK, fix.provider);
+        assertEquals(40.1, fix.latitude, 0);
+        assertTrue(cache.isUsable(fix));
+        assertFalse(cache.isStale(fix));
+    }
+
+    @Test
+    public void best_returnsStaleFixFlagged() {
+        cache.put(LocationFixCache.PROVIDER_GPS, 40.0, -3.0, 5f, 0);
+        now = 2 * 60 * 60 * 1000;
+        assertTrue(cache.best(fix));
+        assertTrue(cache.isStale(fix));
+        assertFalse(cache.hasUsableFix());
+    }
+
+    @Test
+    public void markRing_tracksTimeToUsableFix() {
+        now = 5000;
+        cache.markRing();
+        now = 7500;
+        cache.put(LocationFixCache.PROVIDER_NETWORK, 40.0, -3.0, 500f, 7500);
+        now = 8200;
+        cache.put(LocationFixCache.PROVIDER_GPS, 40.0, -3.0, 8f, 8200);
+        assertEquals(3200, cache.getLastTimeToFixMs());
+        assertEquals(3200, cache.getMaxTimeToFixMs());
+
+        // Un timbre sin fix y otro que ya lo tiene al sonar
+        now = 20000;
+        cache.put(LocationFixCache.PROVIDER_GPS, 40.0, -3.0, 8f, 20000);
+        cache.markRing();
+        now = 60000;
+        cache.markRing();
+        cache.markRing();
+        assertEquals(1, cache.getRingsWithoutFix());
+        assertEquals((3200 + 0) / 2, cache.getMeanTimeToFixMs());
+    }
+
+    @Test
+    public void unknownAccuracy_neverUsableAndRankedLast() {
+        cache.put(LocationFixCache.PROVIDER_PASSIVE, 40.0, -3.0, 0f, 0);
+        assertFalse(cache.hasUsableFix());
+        assertTrue(cache.best(fix));
+        assertEquals(LocationFixCache.UNKNOWN_ACCURACY_M, fix.accuracyM, 0);
+
+        cache.put(LocationFixCache.PROVIDER_NETWORK, 40.1, -3.1, 900f, 0);
+        assertTrue(cache.best(fix));
+        assertEquals(LocationFixCache.PROVIDER_NETWORK, fix.provider);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocationSchedulerTest {
+
+    private boolean gps;
+    private int ringStarts;
+    private long scheduledDelay = -1;
+    private LocationScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new LocationScheduler(new LocationScheduler.Host() {
+            @Override
+            public boolean startGps(boolean ring, long sessionMs) {
+                if (ring) {
+                    ringStarts++;
+                }
+                gps = true;
+                return true;
+            }
+
+            @Override
+            public void stopGps() {
+                gps = false;
+            }
+
+            @Override
+            public void scheduleCheck(long delayMs) {
+                scheduledDelay = delayMs;
+            }
+        });
+        scheduler.setBackgroundCadence(600000, 20000);
+    }
+
+    @Test
+    public void backgroundSession_stopsOnGoodFix() {
+        scheduler.start(0);
+        assertTrue(gps);
+        assertEquals(20000, scheduledDelay);
+
+        scheduler.onFix(200f, 3000, 3000);
+        assertTrue(gps);
+        scheduler.onFix(12f, 4000, 4000);
+        assertFalse(gps);
+        assertEquals(4000, scheduler.getGpsOnTimeMs(10000));
+        assertEquals(596000, scheduledDelay);
+    }
+
+    @Test
+    public void trustedRing_warmsUpForAlertWindowOnly() {
+        scheduler.start(0);
+        scheduler.onCheck(20000);
+        assertFalse(gps);
+
+        scheduler.onTrustedRing(100000, 10000);
+        assertTrue(gps);
+        assertEquals(10000, scheduledDelay);
+        scheduler.onCheck(100000 + 10000);
+        assertFalse(gps);
+        assertEquals(20000 + 10000, scheduler.getGpsOnTimeMs(200000));
+        assertEquals(2, scheduler.getSessionCount());
+        assertEquals(0, scheduler.getSessionsWithFix());
+    }
+
+    @Test
+    public void trustedRing_gpsStaysOnWhileAlertWaitsForFix() {
+        scheduler.start(0);
+        scheduler.onCheck(20000);
+        // Una regla con retardo=30s alarga la ventana de esta llamada
+        long alertDelayMs = 30000;
+        scheduler.onTrustedRing(100000, alertDelayMs + AlertPipeline.ALERT_FIX_WAIT_MS);
+        scheduler.onCheck(100000 + alertDelayMs);
+        // Se dispara la alerta: el GPS sigue encendido mientras espera el fix
+        assertTrue(gps);
+        scheduler.onCheck(100000 + alertDelayMs + AlertPipeline.ALERT_FIX_WAIT_MS - 1);
+        assertTrue(gps);
+        scheduler.onCheck(100000 + alertDelayMs + AlertPipeline.ALERT_FIX_WAIT_MS);
+        assertFalse(gps);
+    }
+
+    @Test
+    public void trustedRing_skippedWhenFixIsFresh() {
+        scheduler.start(0);
+        scheduler.onFix(10f, 1000, 1000);
+        scheduler.onTrustedRing(5000, 10000);
+        assertFalse(gps);
+        assertTrue(scheduler.hasUsableFix(5000));
+        assertFalse(scheduler.hasUsableFix(1000 + LocationScheduler.DEFAULT_MAX_FIX_AGE_MS + 1));
+    }
+
+    @Test
+    public void revokedSession_countsTimeAndRetriesOnNextInterval() {
+        scheduler.start(0);
+        scheduler.onGpsRevoked(5000);
+        assertEquals(5000, scheduler.getGpsOnTimeMs(9000));
+        assertEquals(600000 - 5000, scheduledDelay);
+        // No se vuelve a encender hasta la siguiente lectura
+        gps = false;
+        scheduler.onCheck(30000);
+        assertFalse(gps);
+    }
+
+    @Test
+    public void ringDuringBackgroundSession_upgradesLease() {
+        scheduler.start(0);
+        assertEquals(0, ringStarts);
+        scheduler.onTrustedRing(1000, 10000);
+        assertEquals(1, ringStarts);
+        scheduler.onTrustedRing(2000, 10000);
+        assertEquals(1, ringStarts);
+        assertEquals(1, scheduler.getSessionCount());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.actividad_llamar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MovementFilterTest {
+
+    // Unos 1e-5 grados de latitud son 1,11 m
+    private static final double LAT = 40.4167754;
+    private static final double LON = -3.7037902;
+
+    @Test
+    public void distance_equirectangularMatchesHaversine() {
+        double d = MovementFilter.distanceM(LAT, LON, LAT + 0.001, LON + 0.001);
+        double h = MovementFilter.haversineM(LAT, LON, LAT + 0.001, LON + 0.001);
+        assertEquals(h, d, 0.01);
+        assertEquals(111.2, MovementFilter.haversineM(0, 0, 0.001, 0), 0.1);
+        assertEquals(504000, MovementFilter.haversineM(LAT, LON, 41.3850639, 2.1734035), 2000);
+    }
+
+    @Test
+    public void jitter_doesNotTriggerResend() {
+        MovementFilter filter = new MovementFilter();
+        assertFalse(filter.onFix(LAT, LON, 15f, 0));
+        for (int i = 1; i <= 60; i++) {
+            // Saltos de ±20 m alrededor del mismo punto
+            double noise = (i % 2 == 0 ? 1 : -1) * 0.00018;
+            assertFalse(filter.onFix(LAT + noise, LON - noise, 15f, i * 1000L));
+        }
+    }
+
+    @Test
+    public void walking_triggersAfterMinDisplacement() {
+        MovementFilter filter = new MovementFilter();
+        filter.setSmoothing(MovementFilter.Smoothing.NONE, 0);
+        filter.onFix(LAT, LON, 5f, 0);
+        // 1,4 m/s hacia el norte
+        int firstTrigger = -1;
+        for (int i = 1; i <= 120 && firstTrigger < 0; i++) {
+            if (filter.onFix(LAT + i * 1.4 / 111195, LON, 5f, i * 1000L)) {
+                firstTrigger = i;
+            }
+        }
+        assertTrue(firstTrigger >= 36 && firstTrigger <= 37);
+        filter.markSent(firstTrigger * 1000L);
+        assertFalse(filter.hasMoved());
+    }
+
+    @Test
+    public void driving_raisesThresholdWithSpeed() {
+        MovementFilter filter = new MovementFilter();
+        filter.setSmoothing(MovementFilter.Smoothing.EMA, 0.8);
+        filter.onFix(LAT, LON, 5f, 0);
+        for (int i = 1; i <= 20; i++) {
+            filter.onFix(LAT + i * 25.0 / 111195, LON, 5f, i * 1000L);
+        }
+        assertEquals(25, filter.getSpeedMps(), 3);
+        assertTrue(filter.getThresholdM() > 200);
+    }
+
+    @Test
+    public void kalman_weightsByAccuracy() {
+        MovementFilter filter = new MovementFilter();
+        filter.onFix(LAT, LON, 5f, 0);
+        // Un salto de 500 m con 1 km de error apenas mueve la estimación
+        filter.onFix(LAT + 0.0045, LON, 1000f, 1000);
+        assertTrue(MovementFilter.distanceM(LAT, LON, filter.getLatitude(), filter.getLongitude()) < 5);
+        assertFalse(filter.hasMoved());
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.actividad_llamar;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OfflineGeocoderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    private int indexes;
+
+    private OfflineGeocoder build(List<OfflineGeocoder.Place> places) throws IOException {
+        File file = new File(tmp.getRoot(), "geocoder" + (++indexes) + ".idx");
+        OfflineGeocoder.write(file, places, OfflineGeocoder.DEFAULT_PRECISION_BITS);
+        return OfflineGeocoder.open(file);
+    }
+
+    @Test
+    public void lookup_returnsNearestPlace() throws IOException {
+        OfflineGeocoder geocoder = build(Arrays.asList(
+                new OfflineGeocoder.Place("Puerta del Sol", 40.416900, -3.703500),
+                new OfflineGeocoder.Place("Plaza Mayor", 40.415500, -3.707400),
+                new OfflineGeocoder.Place("Plaza de Cibeles", 40.419300, -3.693100),
+                new OfflineGeocoder.Place("Sevilla, Plaza Nueva", 37.388900, -5.995500)));
+        assertEquals(4, geocoder.getPlaceCount());
+
+        OfflineGeocoder.Match match = new OfflineGeocoder.Match();
+        assertTrue(geocoder.lookup(40.4160, -3.7068, match));
+        assertEquals("Plaza Mayor", match.name);
+        assertEquals(40.4155, match.latitude, 1e-6);
+        assertTrue(match.distanceM > 50 && match.distanceM < 90);
+
+        assertTrue(geocoder.lookup(40.4192, -3.6935, match));
+        assertEquals("Plaza de Cibeles", match.name);
+    }
+
+    @Test
+    public void lookup_findsPlaceInNeighbourCell() throws IOException {
+        // Las celdas de 30 bits miden unos 0,0055 grados de latitud
+        double edge = 90 - 180.0 * 23713 / 32768;
+        OfflineGeocoder geocoder = build(Arrays.asList(
+                new OfflineGeocoder.Place("Al otro lado", edge + 0.0005, 2.0)));
+        OfflineGeocoder.Match match = new OfflineGeocoder.Match();
+        assertTrue(geocoder.lookup(edge - 0.0005, 2.0, match));
+        assertEquals("Al otro lado", match.name);
+    }
+
+    @Test
+    public void lookup_farAwayOrEmpty_returnsFalse() throws IOException {
+        OfflineGeocoder geocoder = build(Arrays.asList(
+                new OfflineGeocoder.Place("Puerta del Sol", 40.416900, -3.703500)));
+        OfflineGeocoder.Match match = new OfflineGeocoder.Match();
+        assertFalse(geocoder.lookup(40.4215, -3.7035, match));
+        geocoder.setMaxDistanceM(5000);
+        assertTrue(geocoder.lookup(40.4215, -3.7035, match));
+
+        OfflineGeocoder empty = build(new ArrayList<>());
+        assertFalse(empty.lookup(40.4169, -3.7035, match));
+    }
+
+    @Test
+    public void manyPlaces_sameCellAndAntimeridian() throws IOException {
+        List<OfflineGeocoder.Place> places = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            places.add(new OfflineGeocoder.Place("Calle " + i, 40.4100 + i * 0.0001, -3.7000));
+        }
+        places.add(new OfflineGeocoder.Place("Fiyi", -17.0, 179.9999));
+        OfflineGeocoder geocoder = build(places);
+        OfflineGeocoder.Match match = new OfflineGeocoder.Match();
+        assertTrue(geocoder.lookup(40.41505, -3.7000, match));
+        assertTrue(match.name, match.name.equals("Calle 50") || match.name.equals("Calle 51"));
+        assertTrue(geocoder.lookup(-17.0, -179.9999, match));
+        assertEquals("Fiyi", match.name);
+    }
+
+    @Test(expected = IOException.class)
+    public void open_rejectsForeignFile() throws IOException {
+        File file = tmp.newFile("otro.idx");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[64]);
+        }
+        OfflineGeocoder.open(file);
+    }
+}
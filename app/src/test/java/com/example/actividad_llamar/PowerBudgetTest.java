@@ -0,0 +1,120 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PowerBudgetTest {
+
+    private long now;
+    private long checkDelay = -1;
+    private int revocations;
+    private PowerBudget budget;
+
+    @Before
+    public void setUp() {
+        budget = new PowerBudget(() -> now, new PowerBudget.Host() {
+            @Override
+            public void scheduleCheck(long delayMs) {
+                checkDelay = delayMs;
+            }
+
+            @Override
+            public void cancelCheck() {
+                checkDelay = -1;
+            }
+        });
+    }
+
+    private void runUntil(long until) {
+        while (checkDelay >= 0 && now + checkDelay <= until) {
+            now += checkDelay;
+            budget.onCheck();
+        }
+        now = until;
+    }
+
+    @Test
+    public void lease_cappedAtReasonMaximumAndRevokedOnExpiry() {
+        PowerBudget.Lease lease = budget.acquire(PowerBudget.Reason.PROXIMITY, Long.MAX_VALUE, () -> revocations++);
+        assertNotNull(lease);
+        assertEquals(PowerBudget.Reason.PROXIMITY.maxLeaseMs, lease.getDurationMs());
+
+        runUntil(PowerBudget.Reason.PROXIMITY.maxLeaseMs + 1000);
+        assertEquals(1, revocations);
+        assertFalse(lease.isActive());
+        assertEquals(PowerBudget.Reason.PROXIMITY.maxLeaseMs, budget.getHeldMs(PowerBudget.Reason.PROXIMITY));
+        assertEquals(1, budget.getRevokedCount(PowerBudget.Reason.PROXIMITY));
+        assertEquals(-1, checkDelay);
+    }
+
+    @Test
+    public void release_accountsHeldTimeWithoutRevoking() {
+        PowerBudget.Lease lease = budget.acquire(PowerBudget.Reason.GPS_BACKGROUND, 30000, () -> revocations++);
+        now = 12000;
+        assertEquals(12000, budget.getHeldMs(PowerBudget.Reason.GPS_BACKGROUND));
+        lease.release();
+        lease.release();
+        now = 50000;
+        assertEquals(12000, budget.getHeldMs(PowerBudget.Reason.GPS_BACKGROUND));
+        assertEquals(0, revocations);
+        assertEquals(0, budget.getActiveCount());
+        assertEquals(-1, checkDelay);
+    }
+
+    @Test
+    public void dailyBudgetSpent_deniesOptionalAndShortensEssential() {
+        budget.setDailyBudgetMs(PowerBudget.Reason.GPS_BACKGROUND, 10000);
+        budget.setDailyBudgetMs(PowerBudget.Reason.GPS_RING, 10000);
+        budget.acquire(PowerBudget.Reason.GPS_BACKGROUND, 10000, null);
+        budget.acquire(PowerBudget.Reason.GPS_RING, 10000, null);
+        runUntil(20000);
+
+        assertNull(budget.acquire(PowerBudget.Reason.GPS_BACKGROUND, 10000, null));
+        assertEquals(1, budget.getDeniedCount(PowerBudget.Reason.GPS_BACKGROUND));
+        PowerBudget.Lease ring = budget.acquire(PowerBudget.Reason.GPS_RING, Long.MAX_VALUE, null);
+        assertNotNull(ring);
+        assertEquals(PowerBudget.Reason.GPS_RING.maxLeaseMs / 2, ring.getDurationMs());
+        ring.release();
+
+        // Al día siguiente vuelve el cupo
+        now += PowerBudget.DAY_MS;
+        assertEquals(0, budget.getTodayMs(PowerBudget.Reason.GPS_BACKGROUND));
+        assertNotNull(budget.acquire(PowerBudget.Reason.GPS_BACKGROUND, 10000, null));
+    }
+
+    @Test
+    public void lowBattery_cutsRunningOptionalLeases() {
+        PowerBudget.Lease proximity = budget.acquire(PowerBudget.Reason.PROXIMITY, 600000, () -> revocations++);
+        PowerBudget.Lease ring = budget.acquire(PowerBudget.Reason.GPS_RING, 100000, () -> revocations++);
+        now = 5000;
+
+        budget.setBattery(12, false);
+        assertEquals(PowerBudget.Policy.SAVER, budget.getPolicy());
+        assertEquals(1, revocations);
+        assertFalse(proximity.isActive());
+        assertTrue(ring.isActive());
+        assertEquals(PowerBudget.Reason.GPS_RING.maxLeaseMs / 2, ring.getDurationMs());
+
+        budget.setBattery(3, false);
+        assertEquals(PowerBudget.Policy.CRITICAL, budget.getPolicy());
+        assertEquals(PowerBudget.Reason.GPS_RING.maxLeaseMs / 4, ring.getDurationMs());
+
+        // Enchufado no hay recortes
+        budget.setBattery(3, true);
+        assertEquals(PowerBudget.Policy.NORMAL, budget.getPolicy());
+        assertNotNull(budget.acquire(PowerBudget.Reason.PROXIMITY, 1000, null));
+    }
+
+    @Test
+    public void dump_listsEveryReason() {
+        budget.acquire(PowerBudget.Reason.PROXIMITY, 1000, null);
+        StringBuilder sb = new StringBuilder();
+        budget.dump(sb);
+        String text = sb.toString();
+        assertTrue(text.contains("energia proximidad total=0ms"));
+        assertTrue(text.contains("energia gps_timbre"));
+        assertTrue(text.contains("energia gps_fondo"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProtectionProfilesTest {
+
+    private long now;
+    private long checkAt = -1;
+    private final List<ProtectionProfiles.Profile> changes = new ArrayList<>();
+    private ProtectionProfiles profiles;
+
+    @Before
+    public void setUp() {
+        profiles = new ProtectionProfiles(() -> now, new ProtectionProfiles.Host() {
+            @Override
+            public void onProfileChanged(ProtectionProfiles.Profile profile) {
+                changes.add(profile);
+            }
+
+            @Override
+            public void scheduleCheck(long delayMs) {
+                checkAt = now + delayMs;
+            }
+        });
+    }
+
+    private void runUntil(long until) {
+        while (checkAt >= 0 && checkAt <= until) {
+            now = checkAt;
+            checkAt = -1;
+            profiles.onCheck();
+        }
+        now = until;
+    }
+
+    @Test
+    public void stillOnBattery_isBalanced() {
+        profiles.setBattery(80, false);
+        assertEquals(ProtectionProfiles.Profile.BALANCED, profiles.getProfile());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void charging_isAggressive() {
+        profiles.setBattery(10, true);
+        assertEquals(ProtectionProfiles.Profile.AGGRESSIVE, profiles.getProfile());
+        profiles.setBattery(10, false);
+        assertEquals(ProtectionProfiles.Profile.SURVIVAL, profiles.getProfile());
+    }
+
+    @Test
+    public void motion_isAggressiveUntilStill() {
+        profiles.setBattery(80, false);
+        profiles.onMotion();
+        assertEquals(ProtectionProfiles.Profile.AGGRESSIVE, profiles.getProfile());
+        assertTrue(profiles.isMoving());
+
+        // Otra señal a mitad de plazo lo alarga
+        runUntil(ProtectionProfiles.STILL_AFTER_MS / 2);
+        profiles.onMotion();
+        runUntil(ProtectionProfiles.STILL_AFTER_MS + 1000);
+        assertEquals(ProtectionProfiles.Profile.AGGRESSIVE, profiles.getProfile());
+
+        runUntil(ProtectionProfiles.STILL_AFTER_MS * 2);
+        assertEquals(ProtectionProfiles.Profile.BALANCED, profiles.getProfile());
+        assertFalse(profiles.isMoving());
+        assertEquals(2, profiles.getChangeCount());
+    }
+
+    @Test
+    public void motionWithLowBattery_staysBalanced() {
+        profiles.setBattery(ProtectionProfiles.AGGRESSIVE_MIN_PERCENT - 1, false);
+        profiles.onMotion();
+        assertEquals(ProtectionProfiles.Profile.BALANCED, profiles.getProfile());
+    }
+
+    @Test
+    public void survival_hasHysteresis() {
+        profiles.setBattery(ProtectionProfiles.SURVIVAL_PERCENT, false);
+        assertEquals(ProtectionProfiles.Profile.SURVIVAL, profiles.getProfile());
+        // Una lectura que sube un punto no basta para salir
+        profiles.setBattery(ProtectionProfiles.SURVIVAL_PERCENT + 1, false);
+        assertEquals(ProtectionProfiles.Profile.SURVIVAL, profiles.getProfile());
+        profiles.setBattery(ProtectionProfiles.SURVIVAL_EXIT_PERCENT + 1, false);
+        assertEquals(ProtectionProfiles.Profile.BALANCED, profiles.getProfile());
+        assertEquals(2, changes.size());
+    }
+
+    @Test
+    public void cadences_relaxFromAggressiveToSurvival() {
+        ProtectionProfiles.Profile a = ProtectionProfiles.Profile.AGGRESSIVE;
+        ProtectionProfiles.Profile b = ProtectionProfiles.Profile.BALANCED;
+        ProtectionProfiles.Profile s = ProtectionProfiles.Profile.SURVIVAL;
+        long background = LocationScheduler.DEFAULT_BACKGROUND_INTERVAL_MS;
+        assertEquals(background, b.backgroundIntervalMs(background));
+        assertTrue(a.backgroundIntervalMs(background) < background);
+        assertTrue(s.backgroundIntervalMs(background) > background);
+        assertEquals(AlertConfig.DEFAULT_RESEND_DELAY_MS, b.resendDelayMs(AlertConfig.DEFAULT_RESEND_DELAY_MS));
+        assertTrue(s.resendDelayMs(AlertConfig.DEFAULT_RESEND_DELAY_MS) > AlertConfig.DEFAULT_RESEND_DELAY_MS);
+        for (ProtectionProfiles.Profile[] pair : new ProtectionProfiles.Profile[][]{{a, b}, {b, s}}) {
+            assertTrue(pair[0].getGpsIntervalMs() < pair[1].getGpsIntervalMs());
+            assertTrue(pair[0].getGpsMinDistanceM() < pair[1].getGpsMinDistanceM());
+            assertTrue(pair[0].getTrailMinIntervalMs() < pair[1].getTrailMinIntervalMs());
+            assertTrue(pair[0].getActivityIntervalMs() < pair[1].getActivityIntervalMs());
+        }
+    }
+
+    @Test
+    public void drain_isChargedToActiveProfile() {
+        profiles.setBattery(90, false);
+        now += 60 * 60 * 1000;
+        profiles.setBattery(84, false);
+        assertEquals(6, profiles.getDrainedPercent(ProtectionProfiles.Profile.BALANCED));
+        assertEquals(6f, profiles.getDrainPercentPerHour(ProtectionProfiles.Profile.BALANCED), 0.01f);
+
+        profiles.onMotion();
+        now += 30 * 60 * 1000;
+        profiles.setBattery(80, false);
+        assertEquals(4, profiles.getDrainedPercent(ProtectionProfiles.Profile.AGGRESSIVE));
+        assertEquals(8f, profiles.getDrainPercentPerHour(ProtectionProfiles.Profile.AGGRESSIVE), 0.01f);
+        assertEquals(60 * 60 * 1000, profiles.getOnBatteryMs(ProtectionProfiles.Profile.BALANCED));
+        assertEquals(-1f, profiles.getDrainPercentPerHour(ProtectionProfiles.Profile.SURVIVAL), 0f);
+    }
+
+    @Test
+    public void charging_isNotMeasured() {
+        profiles.setBattery(50, true);
+        now += 60 * 60 * 1000;
+        // Subida con el cargador y bajada al desenchufar: no cuenta
+        profiles.setBattery(70, true);
+        profiles.setBattery(70, false);
+        for (ProtectionProfiles.Profile p : ProtectionProfiles.Profile.values()) {
+            assertEquals(0, profiles.getOnBatteryMs(p));
+            assertEquals(0, profiles.getDrainedPercent(p));
+        }
+        StringBuilder sb = new StringBuilder();
+        profiles.dump(sb);
+        assertTrue(sb.toString().startsWith("perfil equilibrado bateria=70%"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SmsOutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Long> sends = new ArrayList<>();
+    private long retryDelay = -1;
+    private long now;
+    private File journal;
+
+    @Before
+    public void setUp() throws Exception {
+        journal = new File(folder.getRoot(), "outbox.journal");
+    }
+
+    private SmsOutbox newOutbox() {
+        return new SmsOutbox(journal, () -> now, new SmsOutbox.Host() {
+            @Override
+            public void send(long id, String destination, String text) {
+                sends.add(id);
+            }
+
+            @Override
+            public void scheduleRetry(long delayMs) {
+                retryDelay = delayMs;
+            }
+        });
+    }
+
+    @Test
+    public void failedSend_retriesWithBackoff() throws Exception {
+        SmsOutbox outbox = newOutbox();
+        outbox.load();
+        long id = outbox.enqueue("+34600111222", "alerta");
+        assertEquals(1, sends.size());
+
+        outbox.onSent(id, false);
+        assertEquals(SmsOutbox.DEFAULT_BASE_BACKOFF_MS, retryDelay);
+        now += retryDelay;
+        outbox.onRetryTimer();
+        assertEquals(2, sends.size());
+
+        outbox.onSent(id, false);
+        assertEquals(2 * SmsOutbox.DEFAULT_BASE_BACKOFF_MS, retryDelay);
+        now += retryDelay;
+        outbox.onRetryTimer();
+        outbox.onSent(id, true);
+        outbox.onDelivered(id);
+
+        assertEquals(0, outbox.pendingCount());
+        assertEquals(2, outbox.getRetryCount());
+        assertEquals(1, outbox.getDeliveredCount());
+    }
+
+    @Test
+    public void pendingMessages_replayAfterRestart() throws Exception {
+        SmsOutbox first = newOutbox();
+        first.load();
+        long sent = first.enqueue("+34600111222", "uno");
+        long lost = first.enqueue("+34600111222", "dos");
+        first.onSent(sent, true);
+        // El proceso muere sin cerrar la bandeja ni recibir el resultado de "dos"
+
+        sends.clear();
+        SmsOutbox second = newOutbox();
+        second.load();
+        assertEquals(1, second.pendingCount());
+        second.flushPending();
+        assertEquals(1, sends.size());
+        assertEquals(lost, (long) sends.get(0));
+        assertTrue(second.enqueue("+34600111222", "tres") > lost);
+    }
+
+    @Test
+    public void gaveUpAfterMaxAttempts() throws Exception {
+        SmsOutbox outbox = newOutbox();
+        outbox.setRetryPolicy(10, 100, 3);
+        outbox.load();
+        long id = outbox.enqueue("+34600111222", "alerta");
+        for (int i = 0; i < 3; i++) {
+            outbox.onSent(id, false);
+            now += 1000;
+            outbox.onRetryTimer();
+        }
+        assertEquals(0, outbox.pendingCount());
+        assertEquals(1, outbox.getAbandonedCount());
+        assertEquals(3, sends.size());
+    }
+
+    @Test
+    public void ids_notReusedAfterRestart() throws Exception {
+        SmsOutbox first = newOutbox();
+        first.load();
+        long a = first.enqueue("+34600111222", "uno");
+        long b = first.enqueue("+34600111222", "dos");
+        first.onSent(a, true);
+        first.onSent(b, true);
+        first.close();
+
+        // Al cargar se descartan los enviados y se compacta: no queda ninguno
+        SmsOutbox second = newOutbox();
+        second.load();
+        assertEquals(0, second.pendingCount());
+        second.close();
+
+        SmsOutbox third = newOutbox();
+        third.load();
+        assertTrue(third.enqueue("+34600111222", "tres") > b);
+    }
+
+    @Test
+    public void delivered_ignoredBeforeSent() throws Exception {
+        SmsOutbox outbox = newOutbox();
+        outbox.load();
+        long id = outbox.enqueue("+34600111222", "alerta");
+        outbox.onDelivered(id);
+        assertEquals(1, outbox.pendingCount());
+        assertEquals(0, outbox.getDeliveredCount());
+
+        outbox.onSent(id, true);
+        outbox.onDelivered(id);
+        assertEquals(0, outbox.pendingCount());
+        assertEquals(1, outbox.getDeliveredCount());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.actividad_llamar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+    private long now;
+    private long tickDelay = -1;
+    private final List<String> fired = new ArrayList<>();
+    private TimerWheel wheel;
+
+    @Before
+    public void setUp() {
+        wheel = new TimerWheel(() -> now, new TimerWheel.Host() {
+            @Override
+            public void scheduleTick(long delayMs) {
+                tickDelay = delayMs;
+            }
+
+            @Override
+            public void cancelTick() {
+                tickDelay = -1;
+            }
+        }, 100, 16);
+    }
+
+    private void runUntil(long until) {
+        while (tickDelay >= 0 && now + tickDelay <= until) {
+            now += tickDelay;
+            wheel.advance();
+        }
+        now = until;
+    }
+
+    @Test
+    public void reschedule_keepsSinglePendingInstance() {
+        TimerWheel.Timer resend = wheel.newTimer("resend", () -> fired.add("resend"));
+        for (int i = 0; i < 50; i++) {
+            wheel.schedule(resend, 10000);
+            now += 10;
+        }
+        assertEquals(1, wheel.pendingCount());
+        runUntil(now + 10000);
+        assertEquals(1, fired.size());
+        assertEquals(0, wheel.pendingCount());
+        assertEquals(-1, tickDelay);
+    }
+
+    @Test
+    public void timersFireInOrderAcrossRounds() {
+        TimerWheel.Timer alert = wheel.newTimer("alert", () -> fired.add("alert"));
+        TimerWheel.Timer retry = wheel.newTimer("retry", () -> fired.add("retry"));
+        TimerWheel.Timer check = wheel.newTimer("check", () -> fired.add("check"));
+        wheel.schedule(check, 5000);
+        wheel.schedule(alert, 7000);
+        wheel.schedule(retry, 1200);
+        assertEquals(3, wheel.pendingCount());
+
+        runUntil(1199);
+        assertTrue(fired.isEmpty());
+        runUntil(4000);
+        assertEquals(1, fired.size());
+        runUntil(20000);
+        assertEquals("retry", fired.get(0));
+        assertEquals("check", fired.get(1));
+        assertEquals("alert", fired.get(2));
+    }
+
+    @Test
+    public void cancel_isImmediate() {
+        TimerWheel.Timer alert = wheel.newTimer("alert", () -> fired.add("alert"));
+        wheel.schedule(alert, 7000);
+        wheel.cancel(alert);
+        assertFalse(alert.isPending());
+        assertEquals(-1, tickDelay);
+        now = 8000;
+        wheel.advance();
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    public void actionCanRescheduleItself() {
+        TimerWheel.Timer[] holder = new TimerWheel.Timer[1];
+        holder[0] = wheel.newTimer("periodic", () -> {
+            fired.add("tick");
+            wheel.schedule(holder[0], 1000);
+        });
+        wheel.schedule(holder[0], 1000);
+        runUntil(5000);
+        assertEquals(5, fired.size());
+        assertEquals(1, wheel.pendingCount());
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.actividad_llamar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrustedNumberIndexTest {
+
+    @Test
+    public void normalize_equivalentFormats() {
+        long expected = 34600111222L;
+        assertEquals(expected, TrustedNumberIndex.normalize("+34600111222", 34, false));
+        assertEquals(expected, TrustedNumberIndex.normalize("0034600111222", 34, false));
+        assertEquals(expected, TrustedNumberIndex.normalize("600 11 12 22", 34, false));
+        assertEquals(expected, TrustedNumberIndex.normalize("(+34) 600-111-222", 34, false));
+        assertEquals(447700900123L, TrustedNumberIndex.normalize("07700 900123", 44, true));
+    }
+
+    @Test
+    public void normalize_rejectsInvalid() {
+        assertEquals(TrustedNumberIndex.INVALID, TrustedNumberIndex.normalize(null, 34, false));
+        assertEquals(TrustedNumberIndex.INVALID, TrustedNumberIndex.normalize("", 34, false));
+        assertEquals(TrustedNumberIndex.INVALID, TrustedNumberIndex.normalize("*123#", 34, false));
+        assertEquals(TrustedNumberIndex.INVALID, TrustedNumberIndex.normalize("+0034600111222", 34, false));
+        assertEquals(TrustedNumberIndex.INVALID, TrustedNumberIndex.normalize("1234567890123456", 34, false));
+    }
+
+    @Test
+    public void profileOf_manyNumbers() {
+        TrustedNumberIndex index = new TrustedNumberIndex();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(index.add("+34 6" + String.format("%08d", i), i % 3));
+        }
+        assertEquals(500, index.size());
+        assertEquals(1, index.profileOf("0034600000001"));
+        assertEquals(2, index.profileOf("600000497"));
+        assertEquals(TrustedNumberIndex.NO_PROFILE, index.profileOf("600000500"));
+        assertFalse(index.isTrusted(""));
+
+        index.add("600000001", 7);
+        assertEquals(500, index.size());
+        assertEquals(7, index.profileOf("+34600000001"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.actividad_llamar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Composición del texto de la alerta y cálculo de segmentos. */
+@State(Scope.Thread)
+public class AlertMessageBenchmark {
+
+    private final AlertMessageEncoder encoder = new AlertMessageEncoder();
+    private final StringBuilder sb = new StringBuilder(32);
+    private final String alert = new AlertMessageEncoder().encodeAlert(40.4167754, -3.7037902, 12.4f, 0);
+    private final int[] trail = {-12, 7, -3, 0, 5, 5, -8, 2, 1, -9};
+
+    @Benchmark
+    public String encodeAlert() {
+        return encoder.encodeAlert(40.4167754, -3.7037902, 12.4f, 0);
+    }
+
+    @Benchmark
+    public String encodeAlertWithTrail() {
+        return encoder.encodeAlert(40.4167754, -3.7037902, 12.4f, 0, trail, 5, 10);
+    }
+
+    @Benchmark
+    public int appendFixed() {
+        sb.setLength(0);
+        AlertMessageEncoder.appendFixed(sb, -3.7037902, 5);
+        return sb.length();
+    }
+
+    // Referencia: lo que hacía String.format antes
+    @Benchmark
+    public String stringFormat() {
+        return String.format("%.5f,%.5f", 40.4167754, -3.7037902);
+    }
+
+    @Benchmark
+    public int segmentCount() {
+        return AlertMessageEncoder.segmentCount(alert);
+    }
+}
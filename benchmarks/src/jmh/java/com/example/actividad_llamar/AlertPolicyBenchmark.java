@@ -0,0 +1,66 @@
+package com.example.actividad_llamar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Coste de decidir al sonar el teléfono según cuántas reglas haya, frente
+ * al de compilarlas al cargar la configuración. La decisión debería
+ * costar lo mismo con 0 que con {@link AlertPolicy#MAX_RULES} reglas.
+ */
+@State(Scope.Thread)
+public class AlertPolicyBenchmark {
+
+    @Param({"0", "8", "64"})
+    public int rules;
+
+    private AlertConfig config;
+    private AlertPolicy policy;
+    private String text;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        AlertConfig.Builder b = new AlertConfig.Builder();
+        for (int i = 0; i < 50; i++) {
+            b.addContact("6" + (10000000 + i), "");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rules; i++) {
+            // Franjas y contactos distintos para que la tabla crezca de verdad
+            int from = (i * 37) % AlertPolicy.MINUTES_PER_DAY;
+            int to = (from + 90) % AlertPolicy.MINUTES_PER_DAY;
+            String who = i % 2 == 0 ? "*" : "6" + (10000000 + i % 50);
+            sb.append(who).append(' ')
+                    .append(from / 60).append(':').append(from % 60).append('-')
+                    .append(to / 60).append(':').append(to % 60)
+                    .append(" retardo=").append(1000 + i).append(i % 3 == 0 ? " rellamar=no" : "")
+                    .append('\n');
+        }
+        text = sb.toString();
+        config = b.setPolicyRules(text).build();
+        policy = config.getPolicy();
+    }
+
+    @Benchmark
+    public long decide() {
+        int i = next++;
+        int decision = policy.decide(i % 50, (i * 7) % AlertPolicy.MINUTES_PER_DAY);
+        return policy.getAlertDelayMs(decision);
+    }
+
+    // Lo que se hacía antes: un único retardo para todos
+    @Benchmark
+    public long fixedDelay() {
+        next++;
+        return config.getAlertDelayMs();
+    }
+
+    @Benchmark
+    public AlertPolicy compile() {
+        return AlertPolicy.compile(text, config);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.actividad_llamar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Transiciones de la máquina de estados de llamada, sin temporizador real. */
+@State(Scope.Thread)
+public class CallStateEngineBenchmark {
+
+    private CallStateEngine engine;
+
+    @Setup
+    public void setUp() {
+        engine = new CallStateEngine(new CallStateEngine.AlertTimer() {
+            @Override
+            public void arm(long delayMs) {
+            }
+
+            @Override
+            public void disarm() {
+            }
+        });
+        engine.setConfig(new AlertConfig.Builder().addContact("600111222", "").build());
+    }
+
+    // Timbre de confianza, alerta, descolgar y colgar
+    @Benchmark
+    public long trustedCallCycle() {
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "+34600111222");
+        engine.onAlertTimerExpired();
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_OFFHOOK, "+34600111222");
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        return engine.getTransitionCount();
+    }
+
+    // Timbre de un desconocido que cuelga
+    @Benchmark
+    public long unknownRing() {
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "699999999");
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_IDLE, "");
+        return engine.getTransitionCount();
+    }
+
+    // Eventos repetidos del sistema que no cambian de estado
+    @Benchmark
+    public long duplicateRinging() {
+        engine.onCallStateChanged(CallStateEngine.CALL_STATE_RINGING, "699999999");
+        return engine.getTransitionCount();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.actividad_llamar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Reproducción de un diario sintético con {@code sessions} sesiones de
+ * llamada (un desconocido y el número de confianza con alerta). El tiempo por
+ * operación dividido entre los registros da el coste por evento.
+ */
+@State(Scope.Benchmark)
+public class JournalReplayBenchmark {
+
+    @Param({"1", "1000"})
+    public int sessions;
+
+    private byte[] journal;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File file = File.createTempFile("events", ".bin");
+        try {
+            now = 1000;
+            EventJournal writer = new EventJournal(file, () -> now);
+            writer.open(0);
+            writer.recordConfig(new AlertConfig.Builder().addContact("600111222", "").build());
+            for (int i = 0; i < sessions; i++) {
+                writer.recordCallState(CallStateEngine.CALL_STATE_RINGING, "699000000");
+                now += 3000;
+                writer.recordCallState(CallStateEngine.CALL_STATE_IDLE, "699000000");
+                now += 30000;
+                writer.recordCallState(CallStateEngine.CALL_STATE_RINGING, "+34600111222");
+                now += 2000;
+                writer.recordFix(LocationFixCache.PROVIDER_GPS, 40.4168, -3.7038, 8f, now - 100);
+                now += 5050;
+                writer.recordAlert("+34600111222");
+                writer.recordSms("+34600111222", 96, AlertRateLimiter.Decision.ALLOWED);
+                now += 60000;
+                writer.recordCallState(CallStateEngine.CALL_STATE_IDLE, "+34600111222");
+                now += 600000;
+            }
+            writer.close();
+            journal = Files.readAllBytes(file.toPath());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void check() throws IOException {
+        if (!JournalReplay.replay(journal).matches()) {
+            throw new IllegalStateException("La reproducción no coincide con el diario");
+        }
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        return JournalReplay.replay(journal).records;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.actividad_llamar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Consultas de la caché de posiciones que hace la alerta. */
+@State(Scope.Thread)
+public class LocationFixCacheBenchmark {
+
+    private long now = 120000;
+    private LocationFixCache cache;
+    private final LocationFixCache.Fix fix = new LocationFixCache.Fix();
+
+    @Setup
+    public void setUp() {
+        cache = new LocationFixCache(() -> now);
+        cache.put(LocationFixCache.PROVIDER_GPS, 40.4167754, -3.7037902, 8f, 60000);
+        cache.put(LocationFixCache.PROVIDER_NETWORK, 40.4170000, -3.7040000, 40f, 115000);
+        cache.put(LocationFixCache.PROVIDER_PASSIVE, 40.4160000, -3.7030000, 25f, 90000);
+    }
+
+    @Benchmark
+    public boolean best() {
+        return cache.best(fix);
+    }
+
+    @Benchmark
+    public boolean hasUsableFix() {
+        return cache.hasUsableFix();
+    }
+
+    @Benchmark
+    public boolean put() {
+        now++;
+        cache.put(LocationFixCache.PROVIDER_NETWORK, 40.4170000, -3.7040000, 40f, now);
+        return cache.hasUsableFix();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.actividad_llamar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Búsqueda del lugar más cercano en un índice proyectado en memoria. */
+@State(Scope.Thread)
+public class OfflineGeocoderBenchmark {
+
+    private static final int PLACES = 200000;
+
+    private OfflineGeocoder geocoder;
+    private final OfflineGeocoder.Match match = new OfflineGeocoder.Match();
+    private final double[] queries = new double[2 * 1024];
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Lugares repartidos por la península, con la densidad de una ciudad
+        Random random = new Random(7);
+        List<OfflineGeocoder.Place> places = new ArrayList<>(PLACES);
+        for (int i = 0; i < PLACES; i++) {
+            places.add(new OfflineGeocoder.Place("Calle " + i,
+                    40.0 + random.nextDouble() * 0.5, -4.0 + random.nextDouble() * 0.6));
+        }
+        File file = File.createTempFile("geocoder", ".idx");
+        file.deleteOnExit();
+        OfflineGeocoder.write(file, places, OfflineGeocoder.DEFAULT_PRECISION_BITS);
+        geocoder = OfflineGeocoder.open(file);
+        for (int i = 0; i < queries.length; i += 2) {
+            queries[i] = 40.0 + random.nextDouble() * 0.5;
+            queries[i + 1] = -4.0 + random.nextDouble() * 0.6;
+        }
+    }
+
+    @Benchmark
+    public boolean lookup() {
+        int i = next;
+        next = (next + 2) & (queries.length - 1);
+        return geocoder.lookup(queries[i], queries[i + 1], match);
+    }
+}
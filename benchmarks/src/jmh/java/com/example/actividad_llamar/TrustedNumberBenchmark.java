@@ -0,0 +1,54 @@
+package com.example.actividad_llamar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Coincidencia del número entrante con la lista de confianza, comparada con
+ * el {@code String.equals} que se usaba antes con un solo número guardado.
+ */
+@State(Scope.Thread)
+public class TrustedNumberBenchmark {
+
+    @Param({"1", "500"})
+    public int size;
+
+    private final String[] callers = {"+34600000123", "0034600000077", "600000999", "+34699999999"};
+    private TrustedNumberIndex index;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        index = new TrustedNumberIndex();
+        for (int i = 0; i < size; i++) {
+            index.add("6" + String.format("%08d", 123 + i), TrustedNumberIndex.DEFAULT_PROFILE);
+        }
+    }
+
+    private String nextCaller() {
+        return callers[next++ & 3];
+    }
+
+    @Benchmark
+    public boolean equalsSingleNumber() {
+        return "600000123".equals(nextCaller());
+    }
+
+    @Benchmark
+    public boolean isTrusted() {
+        return index.isTrusted(nextCaller());
+    }
+
+    @Benchmark
+    public int profileOf() {
+        return index.profileOf(nextCaller());
+    }
+
+    @Benchmark
+    public long normalize() {
+        return TrustedNumberIndex.normalize(nextCaller(), TrustedNumberIndex.DEFAULT_COUNTRY_CODE, false);
+    }
+}